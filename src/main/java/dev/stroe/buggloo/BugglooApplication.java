@@ -1,11 +1,14 @@
 package dev.stroe.buggloo;
 
+import dev.stroe.buggloo.config.BugglooRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
 @ConfigurationPropertiesScan
+@ImportRuntimeHints(BugglooRuntimeHints.class)
 public class BugglooApplication {
 
 	public static void main(String[] args) {
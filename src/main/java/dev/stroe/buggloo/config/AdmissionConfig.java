@@ -0,0 +1,152 @@
+package dev.stroe.buggloo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+
+import java.time.Duration;
+
+/**
+ * Configuration properties for admission control of the {@code /insect} endpoints.
+ * Identification and chat requests queue separately and share the request slots by
+ * weight, each within its own budget of OpenAI tokens per minute.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "admission")
+@Validated
+public class AdmissionConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Requests served at the same time across all lanes; the rest wait in their lane's queue.
+     */
+    @Min(value = 1, message = "Maximum concurrent requests must be at least 1")
+    private int maxConcurrentRequests = 64;
+
+    @Valid
+    private Lane identify = new Lane(1, 100, Duration.ofSeconds(15), 400_000, 3_000);
+
+    @Valid
+    private Lane chat = new Lane(4, 200, Duration.ofSeconds(5), 200_000, 1_000);
+
+    // Getters and setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public Lane getIdentify() {
+        return identify;
+    }
+
+    public void setIdentify(Lane identify) {
+        this.identify = identify;
+    }
+
+    public Lane getChat() {
+        return chat;
+    }
+
+    public void setChat(Lane chat) {
+        this.chat = chat;
+    }
+
+    /**
+     * Queue and budget of one kind of request.
+     */
+    public static class Lane {
+
+        /**
+         * Share of the freed request slots this lane gets while several lanes have requests waiting.
+         */
+        @Min(value = 1, message = "Lane weight must be at least 1")
+        private int weight;
+
+        @Min(value = 1, message = "Queue capacity must be at least 1")
+        private int queueCapacity;
+
+        /**
+         * Longest a request waits in the queue before it is rejected.
+         */
+        private Duration queueTimeout;
+
+        /**
+         * OpenAI tokens this lane may spend per minute, which is also its burst allowance.
+         */
+        @Min(value = 1, message = "Tokens per minute must be at least 1")
+        private long tokensPerMinute;
+
+        /**
+         * OpenAI tokens, prompt and completion, reserved for a request of this lane while it
+         * runs; the request is then charged what its OpenAI calls actually used.
+         */
+        @Min(value = 1, message = "Estimated tokens must be at least 1")
+        private long estimatedTokens;
+
+        public Lane() {
+        }
+
+        Lane(int weight, int queueCapacity, Duration queueTimeout, long tokensPerMinute, long estimatedTokens) {
+            this.weight = weight;
+            this.queueCapacity = queueCapacity;
+            this.queueTimeout = queueTimeout;
+            this.tokensPerMinute = tokensPerMinute;
+            this.estimatedTokens = estimatedTokens;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public void setWeight(int weight) {
+            this.weight = weight;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Duration getQueueTimeout() {
+            return queueTimeout;
+        }
+
+        public void setQueueTimeout(Duration queueTimeout) {
+            this.queueTimeout = queueTimeout;
+        }
+
+        public long getTokensPerMinute() {
+            return tokensPerMinute;
+        }
+
+        public void setTokensPerMinute(long tokensPerMinute) {
+            this.tokensPerMinute = tokensPerMinute;
+        }
+
+        public long getEstimatedTokens() {
+            return estimatedTokens;
+        }
+
+        public void setEstimatedTokens(long estimatedTokens) {
+            this.estimatedTokens = estimatedTokens;
+        }
+    }
+}
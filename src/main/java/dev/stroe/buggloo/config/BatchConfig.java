@@ -0,0 +1,72 @@
+package dev.stroe.buggloo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Min;
+
+/**
+ * Configuration properties for batch identification.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "batch")
+@Validated
+public class BatchConfig {
+
+    @Min(value = 1, message = "Maximum images must be at least 1")
+    private int maxImages = 200;
+
+    /**
+     * Images of one batch identified at the same time.
+     */
+    @Min(value = 1, message = "Parallelism must be at least 1")
+    private int parallelism = 8;
+
+    /**
+     * Largest batch request accepted. Defaults to room for {@code max-images} images of the
+     * largest upload size.
+     */
+    private DataSize maxRequestSize;
+
+    // Getters and setters
+    public int getMaxImages() {
+        return maxImages;
+    }
+
+    public void setMaxImages(int maxImages) {
+        this.maxImages = maxImages;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public DataSize getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    public void setMaxRequestSize(DataSize maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    /**
+     * Returns the largest batch request accepted: {@code max-request-size} if set, or else
+     * {@code max-images} images of the given size plus room for the part headers.
+     */
+    public DataSize requestSizeLimit(DataSize maxFileSize) {
+        if (maxRequestSize != null) {
+            return maxRequestSize;
+        }
+        if (maxFileSize.isNegative()) {
+            // Uploads are unlimited
+            return maxFileSize;
+        }
+        return DataSize.ofBytes(maxImages * maxFileSize.toBytes() + DataSize.ofMegabytes(1).toBytes());
+    }
+}
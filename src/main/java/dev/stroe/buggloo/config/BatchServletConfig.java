@@ -0,0 +1,43 @@
+package dev.stroe.buggloo.config;
+
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.web.servlet.MultipartProperties;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * Gives batch identification a request size limit of its own. The servlet container
+ * enforces one multipart limit per servlet, so {@code /insect/identify/batch} is mapped to
+ * a second {@link DispatcherServlet} over the same application context, limited to
+ * {@link BatchConfig#requestSizeLimit} instead of {@code spring.servlet.multipart.max-request-size}.
+ * Every other endpoint keeps the global limit.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class BatchServletConfig {
+
+    private static final String BATCH_PATH = "/insect/identify/batch";
+
+    @Bean
+    public ServletRegistrationBean<DispatcherServlet> batchDispatcherServlet(WebApplicationContext applicationContext,
+                                                                             MultipartProperties multipartProperties,
+                                                                             BatchConfig batchConfig) {
+        // An exact mapping leaves the whole path to the handler mappings, as the default servlet does
+        ServletRegistrationBean<DispatcherServlet> registration =
+                new ServletRegistrationBean<>(new DispatcherServlet(applicationContext), BATCH_PATH);
+        registration.setName("batchDispatcherServlet");
+        registration.setAsyncSupported(true);
+        registration.setLoadOnStartup(1);
+
+        MultipartConfigElement defaults = multipartProperties.createMultipartConfig();
+        registration.setMultipartConfig(new MultipartConfigElement(defaults.getLocation(),
+                defaults.getMaxFileSize(),
+                batchConfig.requestSizeLimit(multipartProperties.getMaxFileSize()).toBytes(),
+                defaults.getFileSizeThreshold()));
+        return registration;
+    }
+}
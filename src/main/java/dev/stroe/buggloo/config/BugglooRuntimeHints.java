@@ -0,0 +1,91 @@
+package dev.stroe.buggloo.config;
+
+import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.models.BatchItemResult;
+import dev.stroe.buggloo.models.BatchSummary;
+import dev.stroe.buggloo.models.ChatMessage;
+import dev.stroe.buggloo.models.ChatRequest;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.InsectField;
+import dev.stroe.buggloo.models.InsectIdentification;
+import dev.stroe.buggloo.models.SightingCount;
+import dev.stroe.buggloo.models.SpeciesCount;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.type.classreading.CachingMetadataReaderFactory;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Reflection and resource hints for the native image, for what Spring cannot infer from
+ * the controllers' signatures on its own.
+ * <p>
+ * {@link Insect} and {@link InsectIdentification} are reflected on by the OpenAI SDK to
+ * generate the structured-output JSON schema and to read the model's answer, and several
+ * models are written by hand with Jackson into event streams, rejections and persistence
+ * files. The SDK's own request and response classes and its JSON field wrappers are
+ * (de)serialized through Jackson creators and custom serializers, so every class of the
+ * packages this service uses is registered.
+ */
+public class BugglooRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final String[] OPENAI_PACKAGES = {
+            "com/openai/models",
+            "com/openai/models/chat/completions",
+            "com/openai/models/completions",
+            "com/openai/core",
+    };
+
+    private static final MemberCategory[] JACKSON_MEMBERS = {
+            MemberCategory.DECLARED_FIELDS,
+            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+            MemberCategory.INVOKE_DECLARED_METHODS,
+    };
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+                Insect.class, InsectIdentification.class, ApiResponse.class, ChatMessage.class, ChatRequest.class,
+                InsectField.class, BatchItemResult.class, BatchSummary.class, SightingCount.class, SpeciesCount.class);
+        // The schema generator also walks the structured-output types' annotated fields
+        for (Class<?> structuredOutput : new Class<?>[] {Insect.class, InsectIdentification.class}) {
+            hints.reflection().registerType(structuredOutput, MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INTROSPECT_DECLARED_METHODS, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        }
+
+        // Private records of the persistence files
+        hints.reflection()
+                .registerType(TypeReference.of("dev.stroe.buggloo.services.ConversationStore$StoredConversation"),
+                        JACKSON_MEMBERS)
+                .registerType(TypeReference.of("dev.stroe.buggloo.services.SpeciesKnowledgeStore$Entry"),
+                        JACKSON_MEMBERS);
+
+        registerOpenAIClasses(hints, classLoader);
+
+        // The tokenizer's vocabulary, loaded from the classpath on first use
+        hints.resources().registerPattern("com/knuddels/jtokkit/o200k_base.tiktoken");
+    }
+
+    private static void registerOpenAIClasses(RuntimeHints hints, ClassLoader classLoader) {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(classLoader);
+        MetadataReaderFactory readers = new CachingMetadataReaderFactory(resolver);
+        try {
+            for (String openAIPackage : OPENAI_PACKAGES) {
+                for (Resource resource : resolver.getResources("classpath*:" + openAIPackage + "/*.class")) {
+                    String className = readers.getMetadataReader(resource).getClassMetadata().getClassName();
+                    hints.reflection().registerType(TypeReference.of(className), JACKSON_MEMBERS);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list the OpenAI SDK classes", e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package dev.stroe.buggloo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import java.time.Duration;
+
+/**
+ * Configuration properties for the semantic cache of answers to first-turn chat questions.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "chat-cache")
+@Validated
+public class ChatCacheConfig {
+
+    private boolean enabled = false;
+
+    @Min(value = 1, message = "Maximum entries must be at least 1")
+    private int maxEntries = 5000;
+
+    /**
+     * Questions kept per insect; each lookup compares against all of them.
+     */
+    @Min(value = 1, message = "Maximum entries per insect must be at least 1")
+    private int maxEntriesPerInsect = 64;
+
+    /**
+     * How long an answer is reused before the question is asked of the model again.
+     */
+    @NotNull
+    private Duration ttl = Duration.ofHours(24);
+
+    /**
+     * Cosine similarity from which a question counts as a rephrasing of a cached one.
+     */
+    @DecimalMin(value = "0.0", message = "Similarity threshold must be between 0 and 1")
+    @DecimalMax(value = "1.0", message = "Similarity threshold must be between 0 and 1")
+    private double similarityThreshold = 0.9;
+
+    /**
+     * Length of the question vectors.
+     */
+    @Min(value = 16, message = "Dimensions must be at least 16")
+    private int dimensions = 256;
+
+    // Getters and setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public int getMaxEntriesPerInsect() {
+        return maxEntriesPerInsect;
+    }
+
+    public void setMaxEntriesPerInsect(int maxEntriesPerInsect) {
+        this.maxEntriesPerInsect = maxEntriesPerInsect;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    public void setSimilarityThreshold(double similarityThreshold) {
+        this.similarityThreshold = similarityThreshold;
+    }
+
+    public int getDimensions() {
+        return dimensions;
+    }
+
+    public void setDimensions(int dimensions) {
+        this.dimensions = dimensions;
+    }
+}
@@ -0,0 +1,101 @@
+package dev.stroe.buggloo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import java.time.Duration;
+
+/**
+ * Configuration properties for the server-side chat conversation store.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "conversation")
+@Validated
+public class ConversationConfig {
+
+    @Min(value = 1, message = "Maximum conversations must be at least 1")
+    private int maxConversations = 10_000;
+
+    /**
+     * Messages kept per conversation; older ones are dropped first.
+     */
+    @Min(value = 2, message = "Maximum messages must be at least 2")
+    private int maxMessages = 20;
+
+    /**
+     * Total message characters held across all conversations before the least
+     * recently used conversations are evicted.
+     */
+    @Min(1)
+    private long maxTotalCharacters = 20_000_000L;
+
+    /**
+     * How long a conversation is kept after its last message.
+     */
+    @NotNull
+    private Duration ttl = Duration.ofHours(1);
+
+    /**
+     * Tokens of past messages, counted with the model's tokenizer, sent with each chat request
+     * at most; once over it, the oldest messages are dropped down to half of it.
+     */
+    @Min(value = 0, message = "Context token budget must not be negative")
+    private int contextTokenBudget = 1500;
+
+    /**
+     * Optional file the store is loaded from at startup and saved to at shutdown.
+     */
+    private String persistenceFile;
+
+    // Getters and setters
+    public int getMaxConversations() {
+        return maxConversations;
+    }
+
+    public void setMaxConversations(int maxConversations) {
+        this.maxConversations = maxConversations;
+    }
+
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    public void setMaxMessages(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    public long getMaxTotalCharacters() {
+        return maxTotalCharacters;
+    }
+
+    public void setMaxTotalCharacters(long maxTotalCharacters) {
+        this.maxTotalCharacters = maxTotalCharacters;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public int getContextTokenBudget() {
+        return contextTokenBudget;
+    }
+
+    public void setContextTokenBudget(int contextTokenBudget) {
+        this.contextTokenBudget = contextTokenBudget;
+    }
+
+    public String getPersistenceFile() {
+        return persistenceFile;
+    }
+
+    public void setPersistenceFile(String persistenceFile) {
+        this.persistenceFile = persistenceFile;
+    }
+}
@@ -0,0 +1,70 @@
+package dev.stroe.buggloo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+
+/**
+ * Configuration properties for preprocessing uploaded images before they are sent to OpenAI.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "image.preprocessing")
+@Validated
+public class ImagePreprocessingConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Longest edge, in pixels, of the image sent to the vision model.
+     */
+    @Min(value = 64, message = "Maximum edge must be at least 64 pixels")
+    private int maxEdge = 1024;
+
+    @DecimalMin("0.1")
+    @DecimalMax("1.0")
+    private float quality = 0.85f;
+
+    /**
+     * Largest width x height accepted for decoding, checked from the image header
+     * before any pixel data is read.
+     */
+    @Min(1)
+    private long maxPixels = 50_000_000L;
+
+    // Getters and setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEdge() {
+        return maxEdge;
+    }
+
+    public void setMaxEdge(int maxEdge) {
+        this.maxEdge = maxEdge;
+    }
+
+    public float getQuality() {
+        return quality;
+    }
+
+    public void setQuality(float quality) {
+        this.quality = quality;
+    }
+
+    public long getMaxPixels() {
+        return maxPixels;
+    }
+
+    public void setMaxPixels(long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
+}
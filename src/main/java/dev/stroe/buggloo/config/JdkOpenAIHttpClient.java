@@ -0,0 +1,179 @@
+package dev.stroe.buggloo.config;
+
+import com.openai.core.RequestOptions;
+import com.openai.core.Timeout;
+import com.openai.core.http.Headers;
+import com.openai.core.http.HttpClient;
+import com.openai.core.http.HttpRequest;
+import com.openai.core.http.HttpRequestBody;
+import com.openai.core.http.HttpResponse;
+import com.openai.errors.OpenAIIoException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * OpenAI SDK transport backed by the JDK {@link java.net.http.HttpClient}.
+ * <p>
+ * Unlike the bundled OkHttp transport, asynchronous calls are not capped by a per-host
+ * dispatcher limit, and HTTP/2 lets many in-flight calls share one connection. This
+ * keeps the async client from becoming the bottleneck of the reactive endpoints.
+ */
+public class JdkOpenAIHttpClient implements HttpClient {
+
+    /**
+     * Headers the JDK client manages itself and refuses to have set explicitly.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final java.net.http.HttpClient httpClient;
+    private final String baseUrl;
+    private final Timeout defaultTimeout;
+
+    public JdkOpenAIHttpClient(String baseUrl, Timeout defaultTimeout, Executor executor) {
+        java.net.http.HttpClient.Builder builder = java.net.http.HttpClient.newBuilder()
+                .version(java.net.http.HttpClient.Version.HTTP_2)
+                .connectTimeout(defaultTimeout.connect());
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        this.httpClient = builder.build();
+        this.baseUrl = baseUrl;
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request, RequestOptions requestOptions) {
+        try {
+            return toResponse(httpClient.send(toRequest(request, requestOptions),
+                    java.net.http.HttpResponse.BodyHandlers.ofInputStream()));
+        } catch (IOException e) {
+            throw new OpenAIIoException("Request failed", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OpenAIIoException("Request interrupted", new IOException(e));
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> executeAsync(HttpRequest request, RequestOptions requestOptions) {
+        java.net.http.HttpRequest jdkRequest;
+        try {
+            jdkRequest = toRequest(request, requestOptions);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return httpClient.sendAsync(jdkRequest, java.net.http.HttpResponse.BodyHandlers.ofInputStream())
+                .handle((response, error) -> {
+                    if (error != null) {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        throw new OpenAIIoException("Request failed", cause);
+                    }
+                    return toResponse(response);
+                });
+    }
+
+    @Override
+    public void close() {
+        httpClient.close();
+    }
+
+    private java.net.http.HttpRequest toRequest(HttpRequest request, RequestOptions requestOptions) {
+        Timeout timeout = requestOptions.getTimeout() != null ? requestOptions.getTimeout() : defaultTimeout;
+        // The JDK client can only time out waiting for the response headers, which is where a
+        // non-streamed completion spends its time, so the read timeout applies there
+        java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(toUri(request))
+                .timeout(timeout.read());
+
+        Headers headers = request.headers();
+        for (String name : headers.names()) {
+            if (RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                continue;
+            }
+            for (String value : headers.values(name)) {
+                builder.header(name, value);
+            }
+        }
+
+        HttpRequestBody body = request.body();
+        if (body == null) {
+            return builder.method(request.method().name(), java.net.http.HttpRequest.BodyPublishers.noBody()).build();
+        }
+        if (body.contentType() != null && headers.values("Content-Type").isEmpty()) {
+            builder.header("Content-Type", body.contentType());
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream((int) Math.max(32, body.contentLength()));
+        body.writeTo(content);
+        return builder.method(request.method().name(),
+                java.net.http.HttpRequest.BodyPublishers.ofByteArray(content.toByteArray())).build();
+    }
+
+    private URI toUri(HttpRequest request) {
+        // The request only carries a URL when a per-request override was set; otherwise
+        // the transport owns the base URL, as the OkHttp transport does
+        StringBuilder url = new StringBuilder(request.url() != null ? request.url() : baseUrl);
+        if (url.charAt(url.length() - 1) == '/') {
+            url.setLength(url.length() - 1);
+        }
+        for (String segment : request.pathSegments()) {
+            url.append('/').append(encode(segment));
+        }
+
+        char separator = '?';
+        for (String key : request.queryParams().keys()) {
+            for (String value : request.queryParams().values(key)) {
+                url.append(separator).append(encode(key)).append('=').append(encode(value));
+                separator = '&';
+            }
+        }
+        return URI.create(url.toString());
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static HttpResponse toResponse(java.net.http.HttpResponse<InputStream> response) {
+        Headers.Builder headers = Headers.builder();
+        for (Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            headers.put(header.getKey(), header.getValue());
+        }
+        Headers responseHeaders = headers.build();
+
+        return new HttpResponse() {
+            @Override
+            public int statusCode() {
+                return response.statusCode();
+            }
+
+            @Override
+            public Headers headers() {
+                return responseHeaders;
+            }
+
+            @Override
+            public InputStream body() {
+                return response.body();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    response.body().close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+}
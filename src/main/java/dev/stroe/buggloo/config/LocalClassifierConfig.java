@@ -0,0 +1,114 @@
+package dev.stroe.buggloo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
+
+/**
+ * Configuration properties for the local on-CPU insect classifier.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "identification.local")
+@Validated
+public class LocalClassifierConfig {
+
+    /**
+     * When enabled, images are first classified by the local model, and confident
+     * classifications of species with a stored record are answered without calling OpenAI.
+     */
+    private boolean enabled = false;
+
+    /**
+     * ONNX model taking a {@code [1, 3, inputSize, inputSize]} float tensor of
+     * ImageNet-normalised RGB pixels and returning one score per label.
+     */
+    private String modelPath;
+
+    /**
+     * Text file with the scientific name of each model class, one per line, in output order.
+     */
+    private String labelsPath;
+
+    @Min(value = 1, message = "Input size must be at least 1")
+    private int inputSize = 224;
+
+    /**
+     * Whether the model returns logits that still need a softmax, rather than probabilities.
+     */
+    private boolean softmax = true;
+
+    /**
+     * Minimum probability of the top class for the local answer to be used.
+     */
+    @DecimalMin(value = "0.0", message = "Confidence threshold must be between 0 and 1")
+    @DecimalMax(value = "1.0", message = "Confidence threshold must be between 0 and 1")
+    private double confidenceThreshold = 0.85;
+
+    /**
+     * Number of images classified at the same time, each on a single core. Defaults to the
+     * number of available processors.
+     */
+    @Min(value = 0, message = "Threads must not be negative")
+    private int threads = 0;
+
+    // Getters and setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getModelPath() {
+        return modelPath;
+    }
+
+    public void setModelPath(String modelPath) {
+        this.modelPath = modelPath;
+    }
+
+    public String getLabelsPath() {
+        return labelsPath;
+    }
+
+    public void setLabelsPath(String labelsPath) {
+        this.labelsPath = labelsPath;
+    }
+
+    public int getInputSize() {
+        return inputSize;
+    }
+
+    public void setInputSize(int inputSize) {
+        this.inputSize = inputSize;
+    }
+
+    public boolean isSoftmax() {
+        return softmax;
+    }
+
+    public void setSoftmax(boolean softmax) {
+        this.softmax = softmax;
+    }
+
+    public double getConfidenceThreshold() {
+        return confidenceThreshold;
+    }
+
+    public void setConfidenceThreshold(double confidenceThreshold) {
+        this.confidenceThreshold = confidenceThreshold;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+}
@@ -0,0 +1,68 @@
+package dev.stroe.buggloo.config;
+
+import com.openai.client.OpenAIClient;
+import com.openai.client.OpenAIClientImpl;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+import com.openai.core.ClientOptions;
+import com.openai.core.Timeout;
+
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the shared OpenAI client used by the services.
+ */
+@Configuration
+public class OpenAIClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public OpenAIClient openAIClient(OpenAIConfig config, Environment environment) {
+        // Blocking calls already run on the (virtual) request thread; streaming
+        // callbacks get a virtual thread each instead of a shared platform pool.
+        ExecutorService virtualThreads = Threading.VIRTUAL.isActive(environment)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : null;
+
+        // Bound connecting and stalled reads; the whole-call deadline is enforced around each call
+        OpenAIConfig.Resilience resilience = config.getResilience();
+        Timeout timeout = Timeout.builder()
+                .connect(resilience.getConnectTimeout())
+                .read(resilience.getReadTimeout())
+                .build();
+
+        if (config.getHttpClient() == OpenAIConfig.HttpClientType.JDK) {
+            String baseUrl = hasBaseUrl(config) ? config.getBaseUrl() : ClientOptions.PRODUCTION_URL;
+            ClientOptions.Builder options = ClientOptions.builder()
+                    .httpClient(new JdkOpenAIHttpClient(baseUrl, timeout, virtualThreads))
+                    .baseUrl(baseUrl)
+                    .apiKey(config.getApiKey())
+                    .timeout(timeout)
+                    .maxRetries(resilience.getMaxRetries());
+            if (virtualThreads != null) {
+                options.streamHandlerExecutor(virtualThreads);
+            }
+            return new OpenAIClientImpl(options.build());
+        }
+
+        OpenAIOkHttpClient.Builder builder = OpenAIOkHttpClient.builder()
+                .apiKey(config.getApiKey())
+                .timeout(timeout)
+                .maxRetries(resilience.getMaxRetries());
+        if (hasBaseUrl(config)) {
+            builder.baseUrl(config.getBaseUrl());
+        }
+        if (virtualThreads != null) {
+            builder.streamHandlerExecutor(virtualThreads);
+        }
+        return builder.build();
+    }
+
+    private static boolean hasBaseUrl(OpenAIConfig config) {
+        return config.getBaseUrl() != null && !config.getBaseUrl().isBlank();
+    }
+}
@@ -4,8 +4,16 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.validation.annotation.Validated;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Configuration properties for OpenAI integration.
  */
@@ -17,8 +25,48 @@ public class OpenAIConfig {
     @NotBlank(message = "OpenAI API key is required")
     private String apiKey;
 
+    /**
+     * Overrides the OpenAI API base URL, e.g. to point at a local stub server.
+     */
+    private String baseUrl;
+
+    /**
+     * HTTP transport used by the OpenAI client. The JDK transport has no per-host
+     * limit on asynchronous calls, which the reactive endpoints rely on.
+     */
+    private HttpClientType httpClient = HttpClientType.OKHTTP;
+
+    /**
+     * Model for chat and identification, and the large tier of the model cascade.
+     */
+    @NotBlank(message = "OpenAI model is required")
+    private String model = "gpt-4.1";
+
     private int maxTokens = 2048;
 
+    /**
+     * Maximum number of photos of one specimen sent together in a single identification call.
+     */
+    @Min(value = 1, message = "Maximum images per identification must be at least 1")
+    private int maxImagesPerIdentification = 4;
+
+    private Cache cache = new Cache();
+
+    @Valid
+    private Concurrency concurrency = new Concurrency();
+
+    @Valid
+    private Resilience resilience = new Resilience();
+
+    @Valid
+    private Cascade cascade = new Cascade();
+
+    /**
+     * Prices of the models, by model name, for the identification cost metrics.
+     */
+    @Valid
+    private Map<String, Pricing> pricing = new HashMap<>();
+
     // Getters and setters
     public String getApiKey() {
         return apiKey;
@@ -28,6 +76,30 @@ public class OpenAIConfig {
         this.apiKey = apiKey;
     }
     
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public HttpClientType getHttpClient() {
+        return httpClient;
+    }
+
+    public void setHttpClient(HttpClientType httpClient) {
+        this.httpClient = httpClient;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
     public int getMaxTokens() {
         return maxTokens;
     }
@@ -35,4 +107,518 @@ public class OpenAIConfig {
     public void setMaxTokens(int maxTokens) {
         this.maxTokens = maxTokens;
     }
-} 
\ No newline at end of file
+
+    public int getMaxImagesPerIdentification() {
+        return maxImagesPerIdentification;
+    }
+
+    public void setMaxImagesPerIdentification(int maxImagesPerIdentification) {
+        this.maxImagesPerIdentification = maxImagesPerIdentification;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    public Concurrency getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(Concurrency concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public Resilience getResilience() {
+        return resilience;
+    }
+
+    public void setResilience(Resilience resilience) {
+        this.resilience = resilience;
+    }
+
+    public Cascade getCascade() {
+        return cascade;
+    }
+
+    public void setCascade(Cascade cascade) {
+        this.cascade = cascade;
+    }
+
+    public Map<String, Pricing> getPricing() {
+        return pricing;
+    }
+
+    public void setPricing(Map<String, Pricing> pricing) {
+        this.pricing = pricing;
+    }
+
+    public enum HttpClientType {
+        OKHTTP,
+        JDK
+    }
+
+    /**
+     * Settings for the perceptual-hash identification cache.
+     */
+    public static class Cache {
+
+        private boolean enabled = true;
+
+        private int maxEntries = 1000;
+
+        private Duration ttl = Duration.ofHours(6);
+
+        /**
+         * Maximum number of differing bits between two 64-bit image hashes
+         * for them to be treated as the same photo.
+         */
+        private int hammingThreshold = 4;
+
+        private boolean cacheNegativeResults = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public int getHammingThreshold() {
+            return hammingThreshold;
+        }
+
+        public void setHammingThreshold(int hammingThreshold) {
+            this.hammingThreshold = hammingThreshold;
+        }
+
+        public boolean isCacheNegativeResults() {
+            return cacheNegativeResults;
+        }
+
+        public void setCacheNegativeResults(boolean cacheNegativeResults) {
+            this.cacheNegativeResults = cacheNegativeResults;
+        }
+    }
+
+    /**
+     * Limits on concurrent calls to OpenAI. With virtual threads the servlet stack no
+     * longer caps concurrency, so this keeps us inside the upstream rate limits.
+     * <p>
+     * When adaptive, the limit starts at {@code maxConcurrentRequests} and backs off when
+     * OpenAI answers with 429 or calls slow down, then grows back while calls stay fast.
+     */
+    public static class Concurrency {
+
+        private int maxConcurrentRequests = 64;
+
+        private Duration acquireTimeout = Duration.ofSeconds(30);
+
+        private boolean adaptive = true;
+
+        @Min(value = 1, message = "Minimum concurrent requests must be at least 1")
+        private int minConcurrentRequests = 4;
+
+        /**
+         * Factor the limit is multiplied by when backing off.
+         */
+        @DecimalMin(value = "0.1", message = "Backoff ratio must be at least 0.1")
+        @DecimalMax(value = "0.99", message = "Backoff ratio must be at most 0.99")
+        private double backoffRatio = 0.9;
+
+        /**
+         * How many times slower than their usual median recent calls may get before the
+         * limit backs off.
+         */
+        @DecimalMin(value = "1.0", message = "Latency tolerance must be at least 1")
+        private double latencyTolerance = 2.0;
+
+        public int getMaxConcurrentRequests() {
+            return maxConcurrentRequests;
+        }
+
+        public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+            this.maxConcurrentRequests = maxConcurrentRequests;
+        }
+
+        public Duration getAcquireTimeout() {
+            return acquireTimeout;
+        }
+
+        public void setAcquireTimeout(Duration acquireTimeout) {
+            this.acquireTimeout = acquireTimeout;
+        }
+
+        public boolean isAdaptive() {
+            return adaptive;
+        }
+
+        public void setAdaptive(boolean adaptive) {
+            this.adaptive = adaptive;
+        }
+
+        public int getMinConcurrentRequests() {
+            return minConcurrentRequests;
+        }
+
+        public void setMinConcurrentRequests(int minConcurrentRequests) {
+            this.minConcurrentRequests = minConcurrentRequests;
+        }
+
+        public double getBackoffRatio() {
+            return backoffRatio;
+        }
+
+        public void setBackoffRatio(double backoffRatio) {
+            this.backoffRatio = backoffRatio;
+        }
+
+        public double getLatencyTolerance() {
+            return latencyTolerance;
+        }
+
+        public void setLatencyTolerance(double latencyTolerance) {
+            this.latencyTolerance = latencyTolerance;
+        }
+    }
+
+    /**
+     * Timeouts, hedging and circuit breaking for calls to OpenAI.
+     */
+    public static class Resilience {
+
+        private Duration connectTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Longest wait for the next bytes of a response, which bounds stalled streams.
+         */
+        private Duration readTimeout = Duration.ofSeconds(90);
+
+        /**
+         * Retries of a failed request made by the OpenAI client itself, within the deadline.
+         */
+        @Min(value = 0, message = "Max retries cannot be negative")
+        private int maxRetries = 1;
+
+        /**
+         * Longest a non-streamed call may take, including hedged requests and retries.
+         */
+        private Duration deadline = Duration.ofSeconds(90);
+
+        @Valid
+        private Hedge hedge = new Hedge();
+
+        @Valid
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public Duration getDeadline() {
+            return deadline;
+        }
+
+        public void setDeadline(Duration deadline) {
+            this.deadline = deadline;
+        }
+
+        public Hedge getHedge() {
+            return hedge;
+        }
+
+        public void setHedge(Hedge hedge) {
+            this.hedge = hedge;
+        }
+
+        public CircuitBreaker getCircuitBreaker() {
+            return circuitBreaker;
+        }
+
+        public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+            this.circuitBreaker = circuitBreaker;
+        }
+    }
+
+    /**
+     * Sends a second request when a call is still unanswered after the given percentile of
+     * recent latencies of the same kind of call, and uses whichever answers first.
+     */
+    public static class Hedge {
+
+        private boolean enabled = true;
+
+        @DecimalMin(value = "0.5", message = "Hedge percentile must be at least 0.5")
+        @DecimalMax(value = "0.999", message = "Hedge percentile must be below 1")
+        private double percentile = 0.95;
+
+        private Duration minDelay = Duration.ofSeconds(2);
+
+        /**
+         * Latencies observed before calls of a kind are hedged.
+         */
+        private int minSamples = 20;
+
+        /**
+         * Hedged requests allowed per call, which bounds the extra load and token spend.
+         */
+        @DecimalMin(value = "0.0", message = "Hedge budget cannot be negative")
+        private double budget = 0.1;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public Duration getMinDelay() {
+            return minDelay;
+        }
+
+        public void setMinDelay(Duration minDelay) {
+            this.minDelay = minDelay;
+        }
+
+        public int getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public double getBudget() {
+            return budget;
+        }
+
+        public void setBudget(double budget) {
+            this.budget = budget;
+        }
+    }
+
+    /**
+     * Stops calling OpenAI for a while once too many of the recent calls failed with server
+     * errors, connection failures or timeouts, failing calls immediately instead.
+     */
+    public static class CircuitBreaker {
+
+        private boolean enabled = true;
+
+        /**
+         * Number of recent calls the failure rate is computed over.
+         */
+        @Min(value = 1, message = "Circuit breaker window size must be at least 1")
+        private int windowSize = 20;
+
+        private int minimumCalls = 10;
+
+        @DecimalMin(value = "0.01", message = "Failure rate threshold must be above 0")
+        @DecimalMax(value = "1.0", message = "Failure rate threshold must be at most 1")
+        private double failureRateThreshold = 0.5;
+
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * Trial calls let through after the open duration to probe whether OpenAI recovered.
+         */
+        @Min(value = 1, message = "Half-open calls must be at least 1")
+        private int halfOpenCalls = 3;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        public int getHalfOpenCalls() {
+            return halfOpenCalls;
+        }
+
+        public void setHalfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+        }
+    }
+
+    /**
+     * Settings for the model cascade, which asks a small, fast model first and escalates
+     * to {@code openai.model} only when the small model is unsure of its answer.
+     * <p>
+     * The small model reports its confidence alongside the answer. An answer is accepted
+     * at {@code confidenceThreshold} or above, but one saying the photo shows no insect
+     * must reach the higher {@code noInsectConfidenceThreshold}, since turning away a real
+     * insect is the costlier mistake.
+     */
+    public static class Cascade {
+
+        private boolean enabled = false;
+
+        @NotBlank(message = "Cascade model is required")
+        private String model = "gpt-4.1-mini";
+
+        @DecimalMin(value = "0.0", message = "Confidence threshold must be at least 0")
+        @DecimalMax(value = "1.0", message = "Confidence threshold must be at most 1")
+        private double confidenceThreshold = 0.8;
+
+        @DecimalMin(value = "0.0", message = "No-insect confidence threshold must be at least 0")
+        @DecimalMax(value = "1.0", message = "No-insect confidence threshold must be at most 1")
+        private double noInsectConfidenceThreshold = 0.95;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getModel() {
+            return model;
+        }
+
+        public void setModel(String model) {
+            this.model = model;
+        }
+
+        public double getConfidenceThreshold() {
+            return confidenceThreshold;
+        }
+
+        public void setConfidenceThreshold(double confidenceThreshold) {
+            this.confidenceThreshold = confidenceThreshold;
+        }
+
+        public double getNoInsectConfidenceThreshold() {
+            return noInsectConfidenceThreshold;
+        }
+
+        public void setNoInsectConfidenceThreshold(double noInsectConfidenceThreshold) {
+            this.noInsectConfidenceThreshold = noInsectConfidenceThreshold;
+        }
+    }
+
+    /**
+     * Price of a model in US dollars per million tokens.
+     */
+    public static class Pricing {
+
+        @DecimalMin(value = "0.0", message = "Input price must not be negative")
+        private double input;
+
+        /**
+         * Price of prompt tokens served from OpenAI's prompt cache.
+         */
+        @DecimalMin(value = "0.0", message = "Cached input price must not be negative")
+        private double cachedInput;
+
+        @DecimalMin(value = "0.0", message = "Output price must not be negative")
+        private double output;
+
+        public double getInput() {
+            return input;
+        }
+
+        public void setInput(double input) {
+            this.input = input;
+        }
+
+        public double getCachedInput() {
+            return cachedInput;
+        }
+
+        public void setCachedInput(double cachedInput) {
+            this.cachedInput = cachedInput;
+        }
+
+        public double getOutput() {
+            return output;
+        }
+
+        public void setOutput(double output) {
+            this.output = output;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package dev.stroe.buggloo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import java.time.Duration;
+
+/**
+ * Configuration properties for the log of identified insects.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "sightings")
+@Validated
+public class SightingConfig {
+
+    private boolean enabled = true;
+
+    /**
+     * Directory the log segments are kept in. Without one, sightings are only kept in
+     * memory until shutdown, in at most {@code max-memory-segments} segments.
+     */
+    private String directory;
+
+    /**
+     * Sightings per segment file; each takes 24 bytes.
+     */
+    @Min(value = 1024, message = "Segments must hold at least 1024 sightings")
+    @Max(value = 50_000_000, message = "Segments must hold at most 50000000 sightings")
+    private int segmentRecords = 262_144;
+
+    /**
+     * Segments kept on the heap when there is no directory; once they are full, the oldest
+     * segment's sightings are dropped to make room.
+     */
+    @Min(value = 1, message = "At least one in-memory segment must be kept")
+    private int maxMemorySegments = 4;
+
+    /**
+     * How often segments are flushed to disk, expired sightings dropped and small
+     * segments merged.
+     */
+    @NotNull
+    private Duration compactionInterval = Duration.ofMinutes(10);
+
+    /**
+     * How long sightings are kept; zero keeps them forever.
+     */
+    @NotNull
+    private Duration retention = Duration.ZERO;
+
+    // Getters and setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public int getSegmentRecords() {
+        return segmentRecords;
+    }
+
+    public void setSegmentRecords(int segmentRecords) {
+        this.segmentRecords = segmentRecords;
+    }
+
+    public int getMaxMemorySegments() {
+        return maxMemorySegments;
+    }
+
+    public void setMaxMemorySegments(int maxMemorySegments) {
+        this.maxMemorySegments = maxMemorySegments;
+    }
+
+    public Duration getCompactionInterval() {
+        return compactionInterval;
+    }
+
+    public void setCompactionInterval(Duration compactionInterval) {
+        this.compactionInterval = compactionInterval;
+    }
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    public void setRetention(Duration retention) {
+        this.retention = retention;
+    }
+}
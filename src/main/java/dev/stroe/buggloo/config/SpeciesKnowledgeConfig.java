@@ -0,0 +1,71 @@
+package dev.stroe.buggloo.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import java.time.Duration;
+
+/**
+ * Configuration properties for the species knowledge store and two-phase identification.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "species-knowledge")
+@Validated
+public class SpeciesKnowledgeConfig {
+
+    /**
+     * When enabled, identifications first ask only for the species and reuse the stored
+     * record for it, falling back to the full structured call for unknown species.
+     */
+    private boolean enabled = true;
+
+    @Min(value = 1, message = "Maximum entries must be at least 1")
+    private int maxEntries = 5000;
+
+    /**
+     * How long a species record is reused before it is generated again.
+     */
+    @NotNull
+    private Duration ttl = Duration.ofDays(30);
+
+    /**
+     * Optional file the store is loaded from at startup and saved to at shutdown.
+     */
+    private String persistenceFile;
+
+    // Getters and setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public String getPersistenceFile() {
+        return persistenceFile;
+    }
+
+    public void setPersistenceFile(String persistenceFile) {
+        this.persistenceFile = persistenceFile;
+    }
+}
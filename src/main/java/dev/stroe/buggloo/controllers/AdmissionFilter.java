@@ -0,0 +1,206 @@
+package dev.stroe.buggloo.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.stroe.buggloo.exceptions.AdmissionRejectedException;
+import dev.stroe.buggloo.exceptions.GlobalExceptionHandler;
+import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.services.AdmissionService;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Holds requests to {@link BugglooController} until {@link AdmissionService} admits them,
+ * before their body is read, and answers rejected ones with the error body and
+ * {@code Retry-After} header from {@link GlobalExceptionHandler}. Streamed responses keep
+ * their slot until the stream ends.
+ * <p>
+ * A request that has to queue is put in asynchronous mode, so that it waits without holding
+ * a container thread, and is dispatched again once it is admitted or rejected. A client that
+ * disconnects while queued withdraws its request.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final String ADMISSION_ATTRIBUTE = AdmissionFilter.class.getName() + ".admission";
+
+    private final AdmissionService admissionService;
+    private final GlobalExceptionHandler exceptionHandler;
+    private final ObjectMapper objectMapper;
+
+    public AdmissionFilter(AdmissionService admissionService, GlobalExceptionHandler exceptionHandler,
+                           ObjectMapper objectMapper) {
+        this.admissionService = admissionService;
+        this.exceptionHandler = exceptionHandler;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !admissionService.isEnabled() || AdmissionService.Lane.forPath(request.getRequestURI()).isEmpty();
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        // Queued requests resume in an async dispatch
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Only await() sets the attribute, always to an admission future
+        @SuppressWarnings("unchecked")
+        CompletableFuture<AdmissionService.Admission> admission =
+                (CompletableFuture<AdmissionService.Admission>) request.getAttribute(ADMISSION_ATTRIBUTE);
+        if (admission != null) {
+            request.removeAttribute(ADMISSION_ATTRIBUTE);
+        } else if (isAsyncDispatch(request)) {
+            // Completion of a response that was admitted already
+            chain.doFilter(request, response);
+            return;
+        } else {
+            admission = admissionService.admit(AdmissionService.Lane.forPath(request.getRequestURI()).orElseThrow());
+            if (!admission.isDone()) {
+                await(request, admission);
+                return;
+            }
+        }
+
+        Optional<AdmissionService.Admission> admitted = admitted(admission, response);
+        if (admitted.isEmpty()) {
+            return;
+        }
+
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener(admitted.get()));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                admitted.get().close();
+            }
+        }
+    }
+
+    /**
+     * Releases the container thread while the request is queued, and dispatches the request
+     * again once the admission has completed either way.
+     */
+    private void await(HttpServletRequest request, CompletableFuture<AdmissionService.Admission> admission) {
+        AsyncContext asyncContext = request.startAsync();
+        // The queue timeout of the lane bounds the wait
+        asyncContext.setTimeout(0);
+        asyncContext.addListener(new WithdrawingListener(admission));
+        admission.whenComplete((admitted, error) -> {
+            if (admission.isCancelled()) {
+                return;
+            }
+            request.setAttribute(ADMISSION_ATTRIBUTE, admission);
+            try {
+                asyncContext.dispatch();
+            } catch (IllegalStateException e) {
+                // The request ended while it was being admitted
+                if (admitted != null) {
+                    admitted.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the admission of a completed admission future, or answers the request and
+     * returns empty if it was rejected.
+     */
+    private Optional<AdmissionService.Admission> admitted(CompletableFuture<AdmissionService.Admission> admission,
+                                                          HttpServletResponse response) throws IOException {
+        try {
+            return Optional.of(admission.get());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AdmissionRejectedException rejected) {
+                reject(response, exceptionHandler.handleAdmissionRejectedException(rejected));
+                return Optional.empty();
+            }
+            throw new IllegalStateException("Admission failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for admission", e);
+        }
+    }
+
+    private void reject(HttpServletResponse response, ResponseEntity<ApiResponse<Void>> rejection) throws IOException {
+        response.setStatus(rejection.getStatusCode().value());
+        rejection.getHeaders().forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), rejection.getBody());
+    }
+
+    /**
+     * Withdraws a queued request whose client has gone away.
+     */
+    private record WithdrawingListener(CompletableFuture<AdmissionService.Admission> admission)
+            implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            admission.cancel(false);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            admission.cancel(false);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    /**
+     * Frees the slot of a request whose response is completed asynchronously.
+     */
+    private record ReleasingListener(AdmissionService.Admission admission) implements AsyncListener {
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            admission.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            admission.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            admission.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -1,53 +1,154 @@
 package dev.stroe.buggloo.controllers;
 
 import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.models.BatchImage;
+import dev.stroe.buggloo.models.ChatReply;
+import dev.stroe.buggloo.models.Coordinates;
+import dev.stroe.buggloo.models.ImageHeader;
 import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.InsectProjection;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.services.BatchIdentificationService;
+import dev.stroe.buggloo.services.ConversationService;
+import dev.stroe.buggloo.services.IdentificationEngine;
+import dev.stroe.buggloo.services.ImagePreprocessingService;
 import dev.stroe.buggloo.services.ImageValidationService;
 import dev.stroe.buggloo.services.OpenAIService;
+import dev.stroe.buggloo.services.SightingLog;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * REST controller for Buggloo application endpoints.
  */
 @RestController
 @RequestMapping("/insect")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class BugglooController {
 
+    /**
+     * Response header carrying the ID of the conversation a chat response belongs to.
+     */
+    static final String CONVERSATION_ID_HEADER = "X-Conversation-Id";
+
     private static final Logger logger = LoggerFactory.getLogger(BugglooController.class);
 
     private final OpenAIService openAIService;
+    private final IdentificationEngine identificationEngine;
+    private final ConversationService conversationService;
+    private final BatchIdentificationService batchIdentificationService;
     private final ImageValidationService imageValidationService;
+    private final ImagePreprocessingService imagePreprocessingService;
+    private final EventStreamMapper eventStreamMapper;
+    private final SightingLog sightingLog;
+    private final ObjectMapper objectMapper;
 
-    public BugglooController(OpenAIService openAIService, ImageValidationService imageValidationService) {
+    public BugglooController(OpenAIService openAIService, IdentificationEngine identificationEngine,
+                             ConversationService conversationService,
+                             BatchIdentificationService batchIdentificationService,
+                             ImageValidationService imageValidationService,
+                             ImagePreprocessingService imagePreprocessingService, EventStreamMapper eventStreamMapper,
+                             SightingLog sightingLog, ObjectMapper objectMapper) {
         this.openAIService = openAIService;
+        this.identificationEngine = identificationEngine;
+        this.conversationService = conversationService;
+        this.batchIdentificationService = batchIdentificationService;
         this.imageValidationService = imageValidationService;
+        this.imagePreprocessingService = imagePreprocessingService;
+        this.eventStreamMapper = eventStreamMapper;
+        this.sightingLog = sightingLog;
+        this.objectMapper = objectMapper;
     }
 
     /**
-     * Identifies an insect from an uploaded image.
+     * Identifies an insect from an uploaded image and logs the sighting. With
+     * {@code fields}, only the listed {@link Insect} properties (and {@code isInsect}) are
+     * generated and returned. The response is JSON, or CBOR or Smile when the client
+     * accepts {@code application/cbor} or {@code application/x-jackson-smile}.
      * 
      * @param imageFile the uploaded image file
+     * @param latitude where the photo was taken (optional, with {@code longitude})
+     * @param longitude where the photo was taken (optional, with {@code latitude})
+     * @param fields comma-separated properties to return (optional, all by default)
      * @return ResponseEntity containing the identification results
      */
     @PostMapping(value = "/identify")
-    public ResponseEntity<ApiResponse<Insect>> identifyInsect(@RequestParam("image") MultipartFile imageFile) throws Exception {
+    public ResponseEntity<ApiResponse<Object>> identifyInsect(
+            @RequestParam("image") MultipartFile imageFile,
+            @RequestParam(value = "latitude", required = false) Double latitude,
+            @RequestParam(value = "longitude", required = false) Double longitude,
+            @RequestParam(value = "fields", required = false) String fields) throws Exception {
         logger.info("Received insect identification request for file: {}", imageFile.getOriginalFilename());
 
         try {
-            // Validate the uploaded image
-            imageValidationService.validateImage(imageFile);
+            Coordinates coordinates = Coordinates.of(latitude, longitude);
+            InsectProjection projection = InsectProjection.parse(fields);
+
+            // Validate the uploaded image and sniff its real format
+            ImageHeader header = imageValidationService.validateImage(imageFile);
 
-            // Convert to bytes and identify
-            byte[] imageBytes = imageFile.getBytes();
-            Insect result = openAIService.identifyInsect(imageBytes);
+            // Shrink for the vision model straight from the upload stream and identify
+            PreparedImage image = imagePreprocessingService.preprocess(
+                    imageFile, imageFile.getSize(), header.getMimeType());
+            Insect result = identificationEngine.identifyInsect(image, projection);
 
             logger.info("Successfully identified insect: {} (is_insect: {})", 
                     result.commonName, result.isInsect);
+            sightingLog.record(result, coordinates);
+
+            return ResponseEntity.ok(ApiResponse.success(projection.apply(result, objectMapper),
+                    "Insect identification completed successfully"));
+        } catch (Exception e) {
+            logger.error("Error processing insect identification request", e);
+            // Re-throw to let GlobalExceptionHandler handle it
+            throw e;
+        }
+    }
+
+    /**
+     * Identifies an insect from several photos of the same specimen, such as its top, side
+     * and underside, in a single model call that considers all of them together, and logs
+     * the sighting.
+     * 
+     * @param imageFiles the uploaded image files
+     * @param latitude where the photos were taken (optional, with {@code longitude})
+     * @param longitude where the photos were taken (optional, with {@code latitude})
+     * @return ResponseEntity containing the consolidated identification results
+     */
+    @PostMapping(value = "/identify/views")
+    public ResponseEntity<ApiResponse<Insect>> identifyInsectViews(
+            @RequestParam("images") List<MultipartFile> imageFiles,
+            @RequestParam(value = "latitude", required = false) Double latitude,
+            @RequestParam(value = "longitude", required = false) Double longitude) throws Exception {
+        logger.info("Received insect identification request for {} views of one specimen", imageFiles.size());
+
+        try {
+            Coordinates coordinates = Coordinates.of(latitude, longitude);
+            List<PreparedImage> views = new ArrayList<>(imageFiles.size());
+            for (MultipartFile imageFile : imageFiles) {
+                ImageHeader header = imageValidationService.validateImage(imageFile);
+                views.add(imagePreprocessingService.preprocess(
+                        imageFile, imageFile.getSize(), header.getMimeType()));
+            }
+            Insect result = openAIService.identifyInsect(views);
+
+            logger.info("Successfully identified insect: {} (is_insect: {})", 
+                    result.commonName, result.isInsect);
+            sightingLog.record(result, coordinates);
 
             return ResponseEntity.ok(ApiResponse.success(result, "Insect identification completed successfully"));
         } catch (Exception e) {
@@ -58,27 +159,92 @@ public class BugglooController {
     }
 
     /**
-     * Generates a chat response about insects using OpenAI API.
+     * Streams the identification of an insect from an uploaded image as Server-Sent Events.
+     * Emits a {@code field} event for each property of {@link Insect} as soon as it is
+     * generated, then a {@code done} event with the full result in an {@link ApiResponse},
+     * or an {@code error} event with the usual error body if the request fails. The stream
+     * ends early with a {@code NO_INSECT} error as soon as the model reports that the image
+     * contains no insect. A completed identification is logged as a sighting.
      * 
-     * @param pastConversation the previous conversation context (optional)
+     * @param imageFile the uploaded image file
+     * @param latitude where the photo was taken (optional, with {@code longitude})
+     * @param longitude where the photo was taken (optional, with {@code latitude})
+     * @return the event stream
+     */
+    @PostMapping(value = "/identify/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> identifyInsectStream(
+            @RequestParam("image") MultipartFile imageFile,
+            @RequestParam(value = "latitude", required = false) Double latitude,
+            @RequestParam(value = "longitude", required = false) Double longitude) {
+        logger.info("Received streaming insect identification request for file: {}", imageFile.getOriginalFilename());
+
+        AtomicReference<Coordinates> coordinates = new AtomicReference<>();
+        return eventStreamMapper.toIdentificationEvents(Flux.defer(() -> {
+            coordinates.set(Coordinates.of(latitude, longitude));
+            ImageHeader header = imageValidationService.validateImage(imageFile);
+            PreparedImage image = imagePreprocessingService.preprocess(
+                    imageFile, imageFile.getSize(), header.getMimeType());
+            return openAIService.streamInsectIdentification(image);
+        }), result -> sightingLog.record(result, coordinates.get()));
+    }
+
+    /**
+     * Identifies the insects in many uploaded images, streaming a {@code result} event per
+     * image as soon as it is identified. Each event carries the image's {@code index} in the
+     * request, its {@code filename} and the {@code result} that identifying it alone would
+     * have returned, so invalid images and images without an insect fail individually with
+     * {@code INVALID_IMAGE} or {@code NO_INSECT}. A final {@code done} event carries the
+     * number of images that succeeded and failed. A batch of more than {@code batch.max-images}
+     * images is rejected as a whole with {@code INVALID_REQUEST}.
+     * 
+     * @param imageFiles the uploaded image files
+     * @return the event stream
+     */
+    @PostMapping(value = "/identify/batch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> identifyInsectBatch(@RequestParam("images") List<MultipartFile> imageFiles) {
+        logger.info("Received batch insect identification request for {} files", imageFiles.size());
+        batchIdentificationService.checkBatchSize(imageFiles.size());
+
+        Flux<BatchImage> images = Flux.range(0, imageFiles.size())
+                .map(index -> {
+                    MultipartFile file = imageFiles.get(index);
+                    return new BatchImage(index, file.getOriginalFilename(), file.getContentType(), file.getSize(), file);
+                });
+        return eventStreamMapper.toBatchEvents(batchIdentificationService.identifyBatch(images));
+    }
+
+    /**
+     * Generates a chat response about insects using OpenAI API. The conversation history is
+     * kept on the server: omit {@code conversationId} to start a new conversation, whose ID
+     * is returned in the {@code X-Conversation-Id} header, and send it with later messages.
+     * 
+     * @param conversationId the conversation to continue (optional)
+     * @param pastConversation the previous conversation context, for clients that keep the
+     *                         history themselves (optional, deprecated)
      * @param message the current user message
      * @param insectName the name of the insect being discussed (optional)
      * @return ResponseEntity containing the chat response
      */
     @PostMapping(value = "/chat")
     public ResponseEntity<ApiResponse<String>> chat(
+            @RequestParam(value = "conversationId", required = false) String conversationId,
             @RequestParam(value = "pastConversation", required = false) String pastConversation,
             @RequestParam("message") String message,
             @RequestParam(value = "insectName", required = false) String insectName) throws Exception {
         
-        logger.info("Received chat request - insectName: {}, message: {}", insectName, message);
+        logger.info("Received chat request - conversationId: {}, insectName: {}, message: {}",
+                conversationId, insectName, message);
 
         try {
-            String response = openAIService.generateChatResponse(pastConversation, message, insectName);
+            ChatReply reply = conversationService.chat(conversationId, pastConversation, message, insectName);
 
-            logger.info("Successfully generated chat response of length: {}", response.length());
+            logger.info("Successfully generated chat response of length: {}", reply.getContent().length());
 
-            return ResponseEntity.ok(ApiResponse.success(response, "Chat response generated successfully"));
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (reply.getConversationId() != null) {
+                response.header(CONVERSATION_ID_HEADER, reply.getConversationId());
+            }
+            return response.body(ApiResponse.success(reply.getContent(), "Chat response generated successfully"));
         } catch (Exception e) {
             logger.error("Error processing chat request", e);
             // Re-throw to let GlobalExceptionHandler handle it
@@ -86,6 +252,34 @@ public class BugglooController {
         }
     }
 
+    /**
+     * Streams a chat response about insects as Server-Sent Events while it is generated.
+     * Emits a {@code conversation} event with the conversation ID, {@code token} events with
+     * response text, then a {@code done} event with the full response in an {@link ApiResponse},
+     * or an {@code error} event with the usual error body if the request fails. A client
+     * disconnect cancels the upstream completion.
+     * 
+     * @param conversationId the conversation to continue (optional)
+     * @param pastConversation the previous conversation context (optional, deprecated)
+     * @param message the current user message
+     * @param insectName the name of the insect being discussed (optional)
+     * @return the event stream
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> chatStream(
+            @RequestParam(value = "conversationId", required = false) String conversationId,
+            @RequestParam(value = "pastConversation", required = false) String pastConversation,
+            @RequestParam("message") String message,
+            @RequestParam(value = "insectName", required = false) String insectName) {
+
+        logger.info("Received streaming chat request - conversationId: {}, insectName: {}, message: {}",
+                conversationId, insectName, message);
+
+        // Deferred so that validation failures also reach the client as an error event
+        return eventStreamMapper.toChatEvents(Mono.fromCallable(
+                () -> conversationService.streamChat(conversationId, pastConversation, message, insectName)));
+    }
+
     /**
      * Health check endpoint.
      * 
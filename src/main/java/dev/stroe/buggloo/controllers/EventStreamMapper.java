@@ -0,0 +1,153 @@
+package dev.stroe.buggloo.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.stroe.buggloo.exceptions.ConversationNotFoundException;
+import dev.stroe.buggloo.exceptions.GlobalExceptionHandler;
+import dev.stroe.buggloo.exceptions.InvalidImageException;
+import dev.stroe.buggloo.exceptions.InvalidRequestException;
+import dev.stroe.buggloo.exceptions.NoInsectException;
+import dev.stroe.buggloo.exceptions.ServiceException;
+import dev.stroe.buggloo.exceptions.UpstreamBusyException;
+import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.models.BatchItemOutcome;
+import dev.stroe.buggloo.models.BatchItemResult;
+import dev.stroe.buggloo.models.BatchSummary;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.InsectField;
+import dev.stroe.buggloo.services.ConversationService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Turns streamed service results into the Server-Sent Events served by the streaming
+ * endpoints. Every stream ends with a {@code done} event carrying the complete result in
+ * the usual {@link ApiResponse} envelope, or with an {@code error} event carrying the same
+ * error body {@link GlobalExceptionHandler} would have returned.
+ */
+@Component
+public class EventStreamMapper {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventStreamMapper.class);
+
+    private final GlobalExceptionHandler exceptionHandler;
+    private final ObjectMapper objectMapper;
+
+    public EventStreamMapper(GlobalExceptionHandler exceptionHandler, ObjectMapper objectMapper) {
+        this.exceptionHandler = exceptionHandler;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Sends a {@code conversation} event with the conversation ID, if any, followed by each
+     * chat delta as a {@code token} event with the raw text as data.
+     */
+    public Flux<ServerSentEvent<Object>> toChatEvents(Mono<ConversationService.StreamedReply> reply) {
+        return Flux.defer(() -> {
+            StringBuilder response = new StringBuilder();
+            return reply
+                    .flatMapMany(streamed -> Flux.concat(
+                            Mono.justOrEmpty(streamed.getConversationId()).map(id -> event("conversation", id)),
+                            streamed.getDeltas()
+                                    .doOnNext(response::append)
+                                    .map(delta -> event("token", delta))))
+                    .concatWith(Mono.fromSupplier(() -> {
+                        logger.info("Successfully streamed chat response of length: {}", response.length());
+                        return event("done", ApiResponse.success(response.toString(), "Chat response generated successfully"));
+                    }))
+                    .onErrorResume(error -> Mono.just(event("error", toErrorBody(error))))
+                    .doOnCancel(() -> logger.info("Chat stream cancelled by client after {} characters", response.length()));
+        });
+    }
+
+    /**
+     * Sends each completed {@link Insect} property as a {@code field} event with
+     * {@code name} and {@code value} as data.
+     *
+     * @param fields the streamed properties
+     * @param onIdentified called with the complete result before the {@code done} event
+     */
+    public Flux<ServerSentEvent<Object>> toIdentificationEvents(Flux<InsectField> fields, Consumer<Insect> onIdentified) {
+        return Flux.defer(() -> {
+            ObjectNode insect = objectMapper.createObjectNode();
+            return fields
+                    .doOnNext(field -> insect.set(field.getName(), field.getValue()))
+                    .map(field -> event("field", field))
+                    .concatWith(Mono.fromCallable(() -> {
+                        Insect result = toInsect(insect);
+                        logger.info("Successfully streamed insect identification: {}", result.commonName);
+                        onIdentified.accept(result);
+                        return event("done", ApiResponse.success(result, "Insect identification completed successfully"));
+                    }))
+                    .onErrorResume(error -> Mono.just(event("error", toErrorBody(error))))
+                    .doOnCancel(() -> logger.info("Identification stream cancelled by client after {} fields", insect.size()));
+        });
+    }
+
+    /**
+     * Sends the outcome of each image of a batch as a {@code result} event as soon as it is
+     * identified, with the image's {@code index} and {@code filename} and the {@code result}
+     * a single identification would have returned. The {@code done} event carries the
+     * number of images that succeeded and failed.
+     */
+    public Flux<ServerSentEvent<Object>> toBatchEvents(Flux<BatchItemOutcome> outcomes) {
+        return Flux.defer(() -> {
+            AtomicInteger succeeded = new AtomicInteger();
+            AtomicInteger failed = new AtomicInteger();
+            return outcomes
+                    .map(outcome -> {
+                        ApiResponse<?> result;
+                        if (outcome.isSuccess()) {
+                            succeeded.incrementAndGet();
+                            result = ApiResponse.success(outcome.getInsect(), "Insect identification completed successfully");
+                        } else {
+                            failed.incrementAndGet();
+                            result = toErrorBody(outcome.getError());
+                        }
+                        return event("result", new BatchItemResult(outcome.getIndex(), outcome.getFilename(), result));
+                    })
+                    .concatWith(Mono.fromSupplier(() -> {
+                        BatchSummary summary = new BatchSummary(succeeded.get() + failed.get(), succeeded.get(), failed.get());
+                        logger.info("Completed batch identification of {} images ({} failed)", summary.getTotal(), summary.getFailed());
+                        return event("done", ApiResponse.success(summary, "Batch identification completed"));
+                    }))
+                    .onErrorResume(error -> Mono.just(event("error", toErrorBody(error))))
+                    .doOnCancel(() -> logger.info("Batch stream cancelled by client after {} images",
+                            succeeded.get() + failed.get()));
+        });
+    }
+
+    private Insect toInsect(ObjectNode insect) {
+        try {
+            return objectMapper.treeToValue(insect, Insect.class);
+        } catch (JsonProcessingException e) {
+            throw new ServiceException("Failed to identify insect: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private ApiResponse<Void> toErrorBody(Throwable error) {
+        return switch (error) {
+            case ServiceException e -> exceptionHandler.handleServiceException(e).getBody();
+            case UpstreamBusyException e -> exceptionHandler.handleUpstreamBusyException(e).getBody();
+            case InvalidImageException e -> exceptionHandler.handleInvalidImageException(e).getBody();
+            case InvalidRequestException e -> exceptionHandler.handleInvalidRequestException(e).getBody();
+            case NoInsectException e -> exceptionHandler.handleNoInsectException(e).getBody();
+            case ConversationNotFoundException e -> exceptionHandler.handleConversationNotFoundException(e).getBody();
+            case Exception e -> exceptionHandler.handleGenericException(e).getBody();
+            default -> exceptionHandler.handleGenericException(new RuntimeException(error)).getBody();
+        };
+    }
+
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
+}
@@ -0,0 +1,67 @@
+package dev.stroe.buggloo.controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.stroe.buggloo.exceptions.AdmissionRejectedException;
+import dev.stroe.buggloo.exceptions.GlobalExceptionHandler;
+import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.services.AdmissionService;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking variant of {@link AdmissionFilter} for {@link ReactiveBugglooController}.
+ * Queued requests wait without holding a thread, and a client that disconnects while
+ * queued withdraws its request.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveAdmissionFilter implements WebFilter {
+
+    private final AdmissionService admissionService;
+    private final GlobalExceptionHandler exceptionHandler;
+    private final ObjectMapper objectMapper;
+
+    public ReactiveAdmissionFilter(AdmissionService admissionService, GlobalExceptionHandler exceptionHandler,
+                                   ObjectMapper objectMapper) {
+        this.admissionService = admissionService;
+        this.exceptionHandler = exceptionHandler;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!admissionService.isEnabled()) {
+            return chain.filter(exchange);
+        }
+        return AdmissionService.Lane.forPath(exchange.getRequest().getPath().value())
+                .map(lane -> Mono.usingWhen(
+                                Mono.fromFuture(() -> admissionService.admit(lane)),
+                                admission -> chain.filter(exchange),
+                                admission -> Mono.fromRunnable(admission::close))
+                        .onErrorResume(AdmissionRejectedException.class, rejected -> reject(exchange.getResponse(),
+                                exceptionHandler.handleAdmissionRejectedException(rejected))))
+                .orElseGet(() -> chain.filter(exchange));
+    }
+
+    private Mono<Void> reject(ServerHttpResponse response, ResponseEntity<ApiResponse<Void>> rejection) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(rejection.getBody());
+        } catch (JsonProcessingException e) {
+            return Mono.error(e);
+        }
+        response.setStatusCode(rejection.getStatusCode());
+        response.getHeaders().addAll(rejection.getHeaders());
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        return response.writeWith(Mono.just(response.bufferFactory().wrap(body)));
+    }
+}
@@ -0,0 +1,263 @@
+package dev.stroe.buggloo.controllers;
+
+import dev.stroe.buggloo.exceptions.InvalidImageException;
+import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.models.BatchImage;
+import dev.stroe.buggloo.models.ChatRequest;
+import dev.stroe.buggloo.models.Coordinates;
+import dev.stroe.buggloo.models.ImageHeader;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.InsectProjection;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.services.BatchIdentificationService;
+import dev.stroe.buggloo.services.ConversationService;
+import dev.stroe.buggloo.services.IdentificationEngine;
+import dev.stroe.buggloo.services.ImagePreprocessingService;
+import dev.stroe.buggloo.services.ImageValidationService;
+import dev.stroe.buggloo.services.OpenAIService;
+import dev.stroe.buggloo.services.SightingLog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.web.reactive.ReactiveMultipartProperties;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Non-blocking variant of {@link BugglooController}, active when the application runs
+ * on WebFlux ({@code spring.main.web-application-type=reactive}). It serves the same
+ * endpoints with the same {@link ApiResponse} contract on top of the async OpenAI client.
+ */
+@RestController
+@RequestMapping("/insect")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveBugglooController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveBugglooController.class);
+
+    private final OpenAIService openAIService;
+    private final IdentificationEngine identificationEngine;
+    private final ConversationService conversationService;
+    private final BatchIdentificationService batchIdentificationService;
+    private final ImageValidationService imageValidationService;
+    private final ImagePreprocessingService imagePreprocessingService;
+    private final EventStreamMapper eventStreamMapper;
+    private final SightingLog sightingLog;
+    private final ObjectMapper objectMapper;
+    private final ReactiveMultipartProperties multipartProperties;
+
+    public ReactiveBugglooController(OpenAIService openAIService, IdentificationEngine identificationEngine,
+                                     ConversationService conversationService,
+                                     BatchIdentificationService batchIdentificationService,
+                                     ImageValidationService imageValidationService,
+                                     ImagePreprocessingService imagePreprocessingService, EventStreamMapper eventStreamMapper,
+                                     SightingLog sightingLog, ObjectMapper objectMapper,
+                                     ReactiveMultipartProperties multipartProperties) {
+        this.openAIService = openAIService;
+        this.identificationEngine = identificationEngine;
+        this.conversationService = conversationService;
+        this.batchIdentificationService = batchIdentificationService;
+        this.imageValidationService = imageValidationService;
+        this.imagePreprocessingService = imagePreprocessingService;
+        this.eventStreamMapper = eventStreamMapper;
+        this.sightingLog = sightingLog;
+        this.objectMapper = objectMapper;
+        this.multipartProperties = multipartProperties;
+    }
+
+    /**
+     * Identifies an insect from an uploaded image and logs the sighting. See
+     * {@link BugglooController#identifyInsect} for {@code fields} and the response encodings.
+     * 
+     * @param imagePart the uploaded image part
+     * @param latitude where the photo was taken (optional query parameter, with {@code longitude})
+     * @param longitude where the photo was taken (optional query parameter, with {@code latitude})
+     * @param fields comma-separated properties to return (optional query parameter, all by default)
+     * @return the identification results
+     */
+    @PostMapping(value = "/identify", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ApiResponse<Object>> identifyInsect(@RequestPart("image") Mono<FilePart> imagePart,
+                                                    @RequestParam(value = "latitude", required = false) Double latitude,
+                                                    @RequestParam(value = "longitude", required = false) Double longitude,
+                                                    @RequestParam(value = "fields", required = false) String fields) {
+        Coordinates coordinates = Coordinates.of(latitude, longitude);
+        InsectProjection projection = InsectProjection.parse(fields);
+        return Mono.usingWhen(Mono.fromSupplier(this::newSpool), spool -> imagePart
+                        .doOnNext(part -> logger.info("Received insect identification request for file: {}", part.filename()))
+                        .doOnNext(imageValidationService::validateImage)
+                        .flatMap(part -> prepareImage(part, spool))
+                        .flatMap(image -> Mono.fromFuture(() -> identificationEngine.identifyInsectAsync(image, projection))),
+                        UploadSpool::delete)
+                .doOnNext(result -> logger.info("Successfully identified insect: {} (is_insect: {})",
+                        result.commonName, result.isInsect))
+                .doOnNext(result -> sightingLog.record(result, coordinates))
+                .map(result -> ApiResponse.success(projection.apply(result, objectMapper),
+                        "Insect identification completed successfully"))
+                .doOnError(e -> logger.error("Error processing insect identification request", e));
+    }
+
+    /**
+     * Identifies an insect from several photos of the same specimen in a single model call
+     * and logs the sighting.
+     * 
+     * @param imageParts the uploaded image parts
+     * @param latitude where the photos were taken (optional query parameter, with {@code longitude})
+     * @param longitude where the photos were taken (optional query parameter, with {@code latitude})
+     * @return the consolidated identification results
+     */
+    @PostMapping(value = "/identify/views", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ApiResponse<Insect>> identifyInsectViews(@RequestPart("images") Flux<FilePart> imageParts,
+                                                         @RequestParam(value = "latitude", required = false) Double latitude,
+                                                         @RequestParam(value = "longitude", required = false) Double longitude) {
+        Coordinates coordinates = Coordinates.of(latitude, longitude);
+        return Mono.usingWhen(Mono.fromSupplier(this::newSpool), spool -> imageParts
+                        .doOnNext(part -> logger.info("Received insect identification view: {}", part.filename()))
+                        .doOnNext(imageValidationService::validateImage)
+                        .concatMap(part -> prepareImage(part, spool))
+                        .collectList()
+                        .flatMap(views -> Mono.fromFuture(() -> openAIService.identifyInsectAsync(views))),
+                        UploadSpool::delete)
+                .doOnNext(result -> logger.info("Successfully identified insect: {} (is_insect: {})",
+                        result.commonName, result.isInsect))
+                .doOnNext(result -> sightingLog.record(result, coordinates))
+                .map(result -> ApiResponse.success(result, "Insect identification completed successfully"))
+                .doOnError(e -> logger.error("Error processing insect identification request", e));
+    }
+
+    /**
+     * Streams the identification of an insect from an uploaded image as Server-Sent Events.
+     * See {@link BugglooController#identifyInsectStream} for the event format.
+     * 
+     * @param imagePart the uploaded image part
+     * @param latitude where the photo was taken (optional query parameter, with {@code longitude})
+     * @param longitude where the photo was taken (optional query parameter, with {@code latitude})
+     * @return the event stream
+     */
+    @PostMapping(value = "/identify/stream", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> identifyInsectStream(@RequestPart("image") Mono<FilePart> imagePart,
+                                                              @RequestParam(value = "latitude", required = false) Double latitude,
+                                                              @RequestParam(value = "longitude", required = false) Double longitude) {
+        AtomicReference<Coordinates> coordinates = new AtomicReference<>();
+        return eventStreamMapper.toIdentificationEvents(Flux.usingWhen(Mono.fromSupplier(this::newSpool), spool -> imagePart
+                        .doOnNext(part -> coordinates.set(Coordinates.of(latitude, longitude)))
+                        .doOnNext(part -> logger.info("Received streaming insect identification request for file: {}", part.filename()))
+                        .doOnNext(imageValidationService::validateImage)
+                        .flatMap(part -> prepareImage(part, spool))
+                        .flatMapMany(openAIService::streamInsectIdentification),
+                        UploadSpool::delete),
+                result -> sightingLog.record(result, coordinates.get()));
+    }
+
+    /**
+     * Identifies the insects in many uploaded images.
+     * See {@link BugglooController#identifyInsectBatch} for the event format.
+     * 
+     * @param imageParts the uploaded image parts
+     * @return the event stream
+     */
+    @PostMapping(value = "/identify/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> identifyInsectBatch(@RequestPart("images") Flux<FilePart> imageParts) {
+        logger.info("Received batch insect identification request");
+
+        // Parts arrive one after another, so each is written to disk in full before the next;
+        // the batch pulls parts only as identification slots free up
+        return eventStreamMapper.toBatchEvents(Flux.usingWhen(Mono.fromSupplier(this::newSpool),
+                spool -> batchIdentificationService.identifyBatch(imageParts
+                        .index()
+                        .concatMap(indexed -> readPart(indexed.getT1().intValue(), indexed.getT2(), spool))),
+                UploadSpool::delete));
+    }
+
+    /**
+     * Generates a chat response about insects using OpenAI API.
+     * See {@link BugglooController#chat} for how conversations are continued.
+     * 
+     * @param request the conversation ID or context, current message and insect name
+     * @return the chat response
+     */
+    @PostMapping(value = "/chat")
+    public Mono<ResponseEntity<ApiResponse<String>>> chat(@ModelAttribute ChatRequest request) {
+        logger.info("Received chat request - conversationId: {}, insectName: {}, message: {}",
+                request.getConversationId(), request.getInsectName(), request.getMessage());
+
+        return Mono.fromFuture(() -> conversationService.chatAsync(request.getConversationId(),
+                        request.getPastConversation(), request.getMessage(), request.getInsectName()))
+                .doOnNext(reply -> logger.info("Successfully generated chat response of length: {}", reply.getContent().length()))
+                .map(reply -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (reply.getConversationId() != null) {
+                        response.header(BugglooController.CONVERSATION_ID_HEADER, reply.getConversationId());
+                    }
+                    return response.body(ApiResponse.success(reply.getContent(), "Chat response generated successfully"));
+                })
+                .doOnError(e -> logger.error("Error processing chat request", e));
+    }
+
+    /**
+     * Streams a chat response about insects as Server-Sent Events while it is generated.
+     * See {@link BugglooController#chatStream} for the event format.
+     * 
+     * @param request the conversation ID or context, current message and insect name
+     * @return the event stream
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Object>> chatStream(@ModelAttribute ChatRequest request) {
+        logger.info("Received streaming chat request - conversationId: {}, insectName: {}, message: {}",
+                request.getConversationId(), request.getInsectName(), request.getMessage());
+
+        return eventStreamMapper.toChatEvents(Mono.fromCallable(() -> conversationService.streamChat(
+                request.getConversationId(), request.getPastConversation(), request.getMessage(), request.getInsectName())));
+    }
+
+    /**
+     * Health check endpoint.
+     * 
+     * @return indication of service status
+     */
+    @GetMapping("/health")
+    public Mono<ApiResponse<String>> health() {
+        return Mono.just(ApiResponse.success("Service is running", "Buggloo service is healthy"));
+    }
+
+    private UploadSpool newSpool() {
+        return new UploadSpool(multipartProperties);
+    }
+
+    /**
+     * Writes one part of a batch to disk.
+     */
+    private Mono<BatchImage> readPart(int index, FilePart part, UploadSpool spool) {
+        MediaType contentType = part.headers().getContentType();
+        return spool.write(part.content())
+                .map(spooled -> new BatchImage(index, part.filename(),
+                        contentType != null ? contentType.getType() + "/" + contentType.getSubtype() : null,
+                        spooled.size(), spooled.resource()));
+    }
+
+    /**
+     * Writes the part to disk, then decodes and shrinks it off the event loop. The header is
+     * checked as soon as its bytes arrive, so the rest of a non-image or oversized image is
+     * never read.
+     */
+    private Mono<PreparedImage> prepareImage(FilePart part, UploadSpool spool) {
+        AtomicReference<ImageHeader> header = new AtomicReference<>();
+        return spool.write(imageValidationService.inspectContent(part.content(), header::set))
+                .filter(spooled -> spooled.size() > 0)
+                .switchIfEmpty(Mono.error(() -> new InvalidImageException("No image file provided")))
+                .publishOn(Schedulers.boundedElastic())
+                .map(spooled -> imagePreprocessingService.preprocess(spooled.resource(), spooled.size(),
+                        header.get().getMimeType()));
+    }
+}
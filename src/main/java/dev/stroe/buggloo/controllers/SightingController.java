@@ -0,0 +1,116 @@
+package dev.stroe.buggloo.controllers;
+
+import dev.stroe.buggloo.exceptions.InvalidRequestException;
+import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.models.SightingCount;
+import dev.stroe.buggloo.models.SpeciesCount;
+import dev.stroe.buggloo.models.TaxonRank;
+import dev.stroe.buggloo.services.SightingLog;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * Aggregate queries over the logged sightings, served on both the servlet and the reactive
+ * stack. Queries are answered from in-memory rollups and return synchronously.
+ * <p>
+ * Every query takes a time window of ISO-8601 instants, {@code from} inclusive (default:
+ * the beginning of the log) and {@code to} exclusive (default: now), and optionally a
+ * {@code rank} ({@code order}, {@code family}, {@code genus} or {@code species}) with the
+ * {@code taxon} of that rank to restrict it to.
+ */
+@RestController
+@RequestMapping("/sightings")
+public class SightingController {
+
+    private static final int MAX_LIMIT = 1000;
+
+    private final SightingLog sightingLog;
+
+    public SightingController(SightingLog sightingLog) {
+        this.sightingLog = sightingLog;
+    }
+
+    /**
+     * Counts the sightings in a time window.
+     *
+     * @param from the start of the window (optional)
+     * @param to the end of the window (optional)
+     * @param rank the rank of {@code taxon} (optional)
+     * @param taxon the taxon to count (optional, with {@code rank})
+     * @return the number of sightings
+     */
+    @GetMapping("/count")
+    public ApiResponse<SightingCount> count(
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "rank", required = false) String rank,
+            @RequestParam(value = "taxon", required = false) String taxon) {
+        Instant start = parseInstant("from", from, Instant.EPOCH);
+        Instant end = parseInstant("to", to, Instant.now());
+        TaxonRank taxonRank = parseRank(rank, taxon);
+
+        long count = sightingLog.count(start, end, taxonRank, taxon);
+        return ApiResponse.success(new SightingCount(start, end, taxonRank, taxonRank != null ? taxon : null, count),
+                "Sightings counted successfully");
+    }
+
+    /**
+     * Returns the most sighted species in a time window.
+     *
+     * @param from the start of the window (optional)
+     * @param to the end of the window (optional)
+     * @param rank the rank of {@code taxon} (optional)
+     * @param taxon the taxon to restrict the species to (optional, with {@code rank})
+     * @param limit the maximum number of species, from 1 to 1000 (default: 10)
+     * @return the species, most sighted first
+     */
+    @GetMapping("/top-species")
+    public ApiResponse<List<SpeciesCount>> topSpecies(
+            @RequestParam(value = "from", required = false) String from,
+            @RequestParam(value = "to", required = false) String to,
+            @RequestParam(value = "rank", required = false) String rank,
+            @RequestParam(value = "taxon", required = false) String taxon,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        Instant start = parseInstant("from", from, Instant.EPOCH);
+        Instant end = parseInstant("to", to, Instant.now());
+        TaxonRank taxonRank = parseRank(rank, taxon);
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new InvalidRequestException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+
+        return ApiResponse.success(sightingLog.topSpecies(start, end, taxonRank, taxon, limit),
+                "Top species retrieved successfully");
+    }
+
+    private static Instant parseInstant(String name, String value, Instant defaultValue) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            // Sightings are timestamped in epoch milliseconds, which cover about 292 million years either way
+            return Instant.ofEpochMilli(Instant.parse(value.trim()).toEpochMilli());
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw new InvalidRequestException("Parameter '" + name + "' must be an ISO-8601 instant, such as 2025-06-01T00:00:00Z");
+        }
+    }
+
+    private static TaxonRank parseRank(String rank, String taxon) {
+        boolean hasRank = rank != null && !rank.trim().isEmpty();
+        boolean hasTaxon = taxon != null && !taxon.trim().isEmpty();
+        if (hasRank != hasTaxon) {
+            throw new InvalidRequestException("Parameters 'rank' and 'taxon' must be given together");
+        }
+        if (!hasRank) {
+            return null;
+        }
+        return TaxonRank.parse(rank)
+                .orElseThrow(() -> new InvalidRequestException("Rank must be one of order, family, genus or species"));
+    }
+}
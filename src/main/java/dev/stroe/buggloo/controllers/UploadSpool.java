@@ -0,0 +1,113 @@
+package dev.stroe.buggloo.controllers;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.web.reactive.ReactiveMultipartProperties;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Temporary files holding the uploaded parts of one request. A part is written to its
+ * file buffer by buffer as it arrives, so no more than a few buffers of it are on the heap,
+ * and is read back from disk by the preprocessing and encoding. The files are deleted
+ * together by {@link #delete()} once the request has been handled.
+ */
+final class UploadSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(UploadSpool.class);
+
+    private final Path directory;
+    private final long maxPartSize;
+    private final List<Path> files = new ArrayList<>();
+    private boolean deleted;
+
+    /**
+     * Creates a spool in {@code spring.webflux.multipart.file-storage-directory}, or the
+     * system temporary directory, that limits each part to
+     * {@code spring.webflux.multipart.max-disk-usage-per-part}.
+     */
+    UploadSpool(ReactiveMultipartProperties multipartProperties) {
+        String storageDirectory = multipartProperties.getFileStorageDirectory();
+        this.directory = storageDirectory != null ? Path.of(storageDirectory) : null;
+        this.maxPartSize = multipartProperties.getMaxDiskUsagePerPart().toBytes();
+    }
+
+    /**
+     * A part written to disk.
+     */
+    record SpooledPart(Path file, long size) {
+
+        FileSystemResource resource() {
+            return new FileSystemResource(file);
+        }
+    }
+
+    /**
+     * Writes the content of a part to a new file.
+     *
+     * @param content the content of the part, released as it is written
+     * @return the written part, or an error with {@link DataBufferLimitException} once the
+     *         content goes over the part limit
+     */
+    Mono<SpooledPart> write(Flux<DataBuffer> content) {
+        AtomicLong size = new AtomicLong();
+        return Mono.fromCallable(this::createFile)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(file -> DataBufferUtils.write(content.<DataBuffer>handle((buffer, sink) -> {
+                            if (maxPartSize >= 0 && size.addAndGet(buffer.readableByteCount()) > maxPartSize) {
+                                DataBufferUtils.release(buffer);
+                                sink.error(new DataBufferLimitException(
+                                        "Part exceeds the limit of " + maxPartSize + " bytes"));
+                                return;
+                            }
+                            sink.next(buffer);
+                        }), file)
+                        .then(Mono.fromSupplier(() -> new SpooledPart(file, size.get()))));
+    }
+
+    /**
+     * Deletes the files of every part written so far; parts cannot be written afterwards.
+     */
+    Mono<Void> delete() {
+        return Mono.<Void>fromRunnable(() -> {
+                    List<Path> written;
+                    synchronized (this) {
+                        deleted = true;
+                        written = List.copyOf(files);
+                    }
+                    written.forEach(UploadSpool::deleteFile);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private synchronized Path createFile() throws IOException {
+        if (deleted) {
+            throw new IllegalStateException("The request has already been handled");
+        }
+        Path file = directory != null
+                ? Files.createTempFile(directory, "upload-", ".part")
+                : Files.createTempFile("upload-", ".part");
+        files.add(file);
+        return file;
+    }
+
+    private static void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Failed to delete uploaded part {}", file, e);
+        }
+    }
+}
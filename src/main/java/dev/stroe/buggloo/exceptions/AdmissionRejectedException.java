@@ -0,0 +1,36 @@
+package dev.stroe.buggloo.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Exception thrown when a request is not admitted, either because its queue is full or
+ * it waited too long ({@link Reason#OVERLOADED}), or because its lane's OpenAI token
+ * budget would not allow it in time ({@link Reason#RATE_LIMITED}).
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    public enum Reason {
+        OVERLOADED,
+        RATE_LIMITED
+    }
+
+    private final Reason reason;
+    private final Duration retryAfter;
+
+    public AdmissionRejectedException(Reason reason, String message, Duration retryAfter) {
+        super(message);
+        this.reason = reason;
+        this.retryAfter = retryAfter;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * Returns how long the client should wait before retrying.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,16 @@
+package dev.stroe.buggloo.exceptions;
+
+/**
+ * Exception thrown when a chat request refers to a conversation that does not
+ * exist or has expired.
+ */
+public class ConversationNotFoundException extends RuntimeException {
+    
+    public ConversationNotFoundException(String message) {
+        super(message);
+    }
+    
+    public ConversationNotFoundException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -1,8 +1,12 @@
 package dev.stroe.buggloo.exceptions;
 
 import dev.stroe.buggloo.models.ApiResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -10,45 +14,96 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.multipart.MaxUploadSizeExceededException;
 
 /**
- * Global exception handler for consistent error responses.
+ * Global exception handler for consistent error responses. Every error response is
+ * counted in {@code buggloo.errors}, tagged with its error code.
  */
 @RestControllerAdvice
 public class GlobalExceptionHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
 
+    private final MeterRegistry meterRegistry;
+
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @ExceptionHandler(ServiceException.class)
     public ResponseEntity<ApiResponse<Void>> handleServiceException(ServiceException ex) {
         logger.error("Service error: {}", ex.getMessage(), ex);
-        return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
-                .body(ApiResponse.error("SERVICE_FAILED", ex.getMessage()));
+        return error(HttpStatus.BAD_GATEWAY, "SERVICE_FAILED", ex.getMessage());
+    }
+
+    @ExceptionHandler(UpstreamBusyException.class)
+    public ResponseEntity<ApiResponse<Void>> handleUpstreamBusyException(UpstreamBusyException ex) {
+        logger.warn("Upstream busy: {}", ex.getMessage());
+        return error(HttpStatus.SERVICE_UNAVAILABLE, "UPSTREAM_BUSY", ex.getMessage());
+    }
+
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<ApiResponse<Void>> handleAdmissionRejectedException(AdmissionRejectedException ex) {
+        logger.warn("Request not admitted: {}", ex.getMessage());
+        HttpStatus status = ex.getReason() == AdmissionRejectedException.Reason.RATE_LIMITED
+                ? HttpStatus.TOO_MANY_REQUESTS
+                : HttpStatus.SERVICE_UNAVAILABLE;
+        long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+        countError(ex.getReason().name());
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(ApiResponse.error(ex.getReason().name(), ex.getMessage()));
     }
 
     @ExceptionHandler(InvalidImageException.class)
     public ResponseEntity<ApiResponse<Void>> handleInvalidImageException(InvalidImageException ex) {
         logger.error("Invalid image uploaded: {}", ex.getMessage());
-        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                .body(ApiResponse.error("INVALID_IMAGE", ex.getMessage()));
+        return error(HttpStatus.BAD_REQUEST, "INVALID_IMAGE", ex.getMessage());
+    }
+
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<ApiResponse<Void>> handleInvalidRequestException(InvalidRequestException ex) {
+        logger.warn("Invalid request: {}", ex.getMessage());
+        return error(HttpStatus.BAD_REQUEST, "INVALID_REQUEST", ex.getMessage());
+    }
+
+    @ExceptionHandler(ConversationNotFoundException.class)
+    public ResponseEntity<ApiResponse<Void>> handleConversationNotFoundException(ConversationNotFoundException ex) {
+        logger.warn("Conversation not found: {}", ex.getMessage());
+        return error(HttpStatus.NOT_FOUND, "CONVERSATION_NOT_FOUND", ex.getMessage());
     }
 
     @ExceptionHandler(MaxUploadSizeExceededException.class)
     public ResponseEntity<ApiResponse<Void>> handleMaxUploadSizeExceededException(MaxUploadSizeExceededException ex) {
         logger.error("Image file size too large: {}", ex.getMessage());
-        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
-                .body(ApiResponse.error("FILE_TOO_LARGE", "The uploaded image is too large"));
+        return error(HttpStatus.PAYLOAD_TOO_LARGE, "FILE_TOO_LARGE", "The uploaded image is too large");
+    }
+
+    @ExceptionHandler(DataBufferLimitException.class)
+    public ResponseEntity<ApiResponse<Void>> handleDataBufferLimitException(DataBufferLimitException ex) {
+        logger.error("Image file size too large: {}", ex.getMessage());
+        return error(HttpStatus.PAYLOAD_TOO_LARGE, "FILE_TOO_LARGE", "The uploaded image is too large");
     }
 
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ApiResponse<Void>> handleGenericException(Exception ex) {
         logger.error("Unexpected error occurred", ex);
-        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body(ApiResponse.error("INTERNAL_ERROR", "An unexpected error occurred"));
+        return error(HttpStatus.INTERNAL_SERVER_ERROR, "INTERNAL_ERROR", "An unexpected error occurred");
     }
 
     @ExceptionHandler(NoInsectException.class)
     public ResponseEntity<ApiResponse<Void>> handleNoInsectException(NoInsectException ex) {
         logger.error("No insect identified: {}", ex.getMessage());
-        return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                .body(ApiResponse.error("NO_INSECT", "No insect identified"));
+        return error(HttpStatus.NOT_FOUND, "NO_INSECT", "No insect identified");
+    }
+
+    private ResponseEntity<ApiResponse<Void>> error(HttpStatus status, String code, String message) {
+        countError(code);
+        return ResponseEntity.status(status).body(ApiResponse.error(code, message));
+    }
+
+    private void countError(String code) {
+        Counter.builder("buggloo.errors")
+                .tag("code", code)
+                .register(meterRegistry)
+                .increment();
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,15 @@
+package dev.stroe.buggloo.exceptions;
+
+/**
+ * Exception thrown when a request parameter other than an image is missing or invalid.
+ */
+public class InvalidRequestException extends RuntimeException {
+    
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+    
+    public InvalidRequestException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,16 @@
+package dev.stroe.buggloo.exceptions;
+
+/**
+ * Exception thrown when a call to OpenAI cannot be started because the
+ * upstream concurrency limit is exhausted.
+ */
+public class UpstreamBusyException extends RuntimeException {
+    
+    public UpstreamBusyException(String message) {
+        super(message);
+    }
+    
+    public UpstreamBusyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,47 @@
+package dev.stroe.buggloo.models;
+
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * One uploaded image of a batch identification request.
+ */
+public class BatchImage {
+
+    private final int index;
+    private final String filename;
+    private final String contentType;
+    private final long size;
+    private final InputStreamSource source;
+
+    public BatchImage(int index, String filename, String contentType, long size, InputStreamSource source) {
+        this.index = index;
+        this.filename = filename;
+        this.contentType = contentType;
+        this.size = size;
+        this.source = source;
+    }
+
+    // Getters
+    /**
+     * Returns the position of the image in the request, starting at 0.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public InputStreamSource getSource() {
+        return source;
+    }
+}
@@ -0,0 +1,49 @@
+package dev.stroe.buggloo.models;
+
+/**
+ * The outcome of identifying one image of a batch: either the identified insect or
+ * the exception identification failed with.
+ */
+public class BatchItemOutcome {
+
+    private final int index;
+    private final String filename;
+    private final Insect insect;
+    private final Throwable error;
+
+    private BatchItemOutcome(int index, String filename, Insect insect, Throwable error) {
+        this.index = index;
+        this.filename = filename;
+        this.insect = insect;
+        this.error = error;
+    }
+
+    public static BatchItemOutcome success(BatchImage image, Insect insect) {
+        return new BatchItemOutcome(image.getIndex(), image.getFilename(), insect, null);
+    }
+
+    public static BatchItemOutcome failure(BatchImage image, Throwable error) {
+        return new BatchItemOutcome(image.getIndex(), image.getFilename(), null, error);
+    }
+
+    // Getters
+    public int getIndex() {
+        return index;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public Insect getInsect() {
+        return insect;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
@@ -0,0 +1,31 @@
+package dev.stroe.buggloo.models;
+
+/**
+ * The result of one image of a batch, as returned to the client: its position and
+ * filename, and the response a single identification of it would have returned.
+ */
+public class BatchItemResult {
+
+    private final int index;
+    private final String filename;
+    private final ApiResponse<?> result;
+
+    public BatchItemResult(int index, String filename, ApiResponse<?> result) {
+        this.index = index;
+        this.filename = filename;
+        this.result = result;
+    }
+
+    // Getters
+    public int getIndex() {
+        return index;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public ApiResponse<?> getResult() {
+        return result;
+    }
+}
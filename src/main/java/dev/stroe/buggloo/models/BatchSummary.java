@@ -0,0 +1,30 @@
+package dev.stroe.buggloo.models;
+
+/**
+ * Totals of a completed batch identification.
+ */
+public class BatchSummary {
+
+    private final int total;
+    private final int succeeded;
+    private final int failed;
+
+    public BatchSummary(int total, int succeeded, int failed) {
+        this.total = total;
+        this.succeeded = succeeded;
+        this.failed = failed;
+    }
+
+    // Getters
+    public int getTotal() {
+        return total;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,42 @@
+package dev.stroe.buggloo.models;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A single role-tagged message of a chat conversation.
+ */
+public class ChatMessage {
+
+    public enum Role {
+        DEVELOPER,
+        USER,
+        ASSISTANT
+    }
+
+    private final Role role;
+    private final String content;
+
+    @JsonCreator
+    public ChatMessage(@JsonProperty("role") Role role, @JsonProperty("content") String content) {
+        this.role = role;
+        this.content = content;
+    }
+
+    public static ChatMessage user(String content) {
+        return new ChatMessage(Role.USER, content);
+    }
+
+    public static ChatMessage assistant(String content) {
+        return new ChatMessage(Role.ASSISTANT, content);
+    }
+
+    // Getters
+    public Role getRole() {
+        return role;
+    }
+
+    public String getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,26 @@
+package dev.stroe.buggloo.models;
+
+/**
+ * A generated chat response and the conversation it belongs to.
+ */
+public class ChatReply {
+
+    private final String conversationId;
+    private final String content;
+
+    public ChatReply(String conversationId, String content) {
+        this.conversationId = conversationId;
+        this.content = content;
+    }
+
+    /**
+     * Returns the conversation ID, or null if the request was not part of a stored conversation.
+     */
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public String getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,45 @@
+package dev.stroe.buggloo.models;
+
+/**
+ * Form fields of a chat request, bound from form or multipart data by the reactive endpoints.
+ */
+public class ChatRequest {
+
+    private String conversationId;
+    private String pastConversation;
+    private String message;
+    private String insectName;
+
+    // Getters and setters
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public String getPastConversation() {
+        return pastConversation;
+    }
+
+    public void setPastConversation(String pastConversation) {
+        this.pastConversation = pastConversation;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public String getInsectName() {
+        return insectName;
+    }
+
+    public void setInsectName(String insectName) {
+        this.insectName = insectName;
+    }
+}
@@ -0,0 +1,27 @@
+package dev.stroe.buggloo.models;
+
+/**
+ * The top class of a local image classification and the model's confidence in it.
+ */
+public class Classification {
+
+    private final String scientificName;
+    private final double confidence;
+
+    public Classification(String scientificName, double confidence) {
+        this.scientificName = scientificName;
+        this.confidence = confidence;
+    }
+
+    // Getters
+    public String getScientificName() {
+        return scientificName;
+    }
+
+    /**
+     * Returns the probability of the class, between 0 and 1.
+     */
+    public double getConfidence() {
+        return confidence;
+    }
+}
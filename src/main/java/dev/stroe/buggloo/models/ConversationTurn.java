@@ -0,0 +1,35 @@
+package dev.stroe.buggloo.models;
+
+import java.util.List;
+
+/**
+ * The context of one chat request: the conversation it belongs to, the insect being
+ * discussed and the past messages that fit the context budget, oldest first.
+ */
+public class ConversationTurn {
+
+    private final String conversationId;
+    private final String insectName;
+    private final List<ChatMessage> history;
+
+    public ConversationTurn(String conversationId, String insectName, List<ChatMessage> history) {
+        this.conversationId = conversationId;
+        this.insectName = insectName;
+        this.history = history;
+    }
+
+    /**
+     * Returns the conversation ID, or null for a one-off turn that is not stored.
+     */
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public String getInsectName() {
+        return insectName;
+    }
+
+    public List<ChatMessage> getHistory() {
+        return history;
+    }
+}
@@ -0,0 +1,47 @@
+package dev.stroe.buggloo.models;
+
+import dev.stroe.buggloo.exceptions.InvalidRequestException;
+
+/**
+ * Where an insect was photographed, in WGS 84 degrees.
+ */
+public class Coordinates {
+
+    private final double latitude;
+    private final double longitude;
+
+    public Coordinates(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    /**
+     * Validates optional request parameters.
+     *
+     * @param latitude the latitude, or null
+     * @param longitude the longitude, or null
+     * @return the coordinates, or null if neither was given
+     * @throws InvalidRequestException if only one was given or either is out of range
+     */
+    public static Coordinates of(Double latitude, Double longitude) {
+        if (latitude == null && longitude == null) {
+            return null;
+        }
+        if (latitude == null || longitude == null) {
+            throw new InvalidRequestException("Both latitude and longitude are required for a location");
+        }
+        if (!(latitude >= -90 && latitude <= 90) || !(longitude >= -180 && longitude <= 180)) {
+            throw new InvalidRequestException("Latitude must be within [-90, 90] and longitude within [-180, 180]");
+        }
+        return new Coordinates(latitude, longitude);
+    }
+
+    // Getters
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+}
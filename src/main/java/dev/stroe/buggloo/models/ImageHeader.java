@@ -0,0 +1,49 @@
+package dev.stroe.buggloo.models;
+
+/**
+ * The format and dimensions of an image, as read from the first bytes of its content
+ * rather than from what the client declared.
+ */
+public class ImageHeader {
+
+    private final String mimeType;
+    private final int width;
+    private final int height;
+
+    public ImageHeader(String mimeType, int width, int height) {
+        this.mimeType = mimeType;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Creates a header whose dimensions were not within the bytes that were inspected.
+     */
+    public ImageHeader(String mimeType) {
+        this(mimeType, 0, 0);
+    }
+
+    /**
+     * Returns whether the width and height are known.
+     */
+    public boolean hasDimensions() {
+        return width > 0 && height > 0;
+    }
+
+    public long getPixelCount() {
+        return (long) width * height;
+    }
+
+    // Getters
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
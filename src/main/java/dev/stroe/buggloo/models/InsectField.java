@@ -0,0 +1,27 @@
+package dev.stroe.buggloo.models;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A single top-level property of an {@link Insect}, emitted as soon as the model has
+ * finished generating it during a streamed identification.
+ */
+public class InsectField {
+
+    private final String name;
+    private final JsonNode value;
+
+    public InsectField(String name, JsonNode value) {
+        this.name = name;
+        this.value = value;
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public JsonNode getValue() {
+        return value;
+    }
+}
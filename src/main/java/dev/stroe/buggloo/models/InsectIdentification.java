@@ -0,0 +1,25 @@
+package dev.stroe.buggloo.models;
+
+import com.fasterxml.jackson.annotation.JsonPropertyDescription;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+/**
+ * The photo-dependent part of an {@link Insect}: whether the image shows an insect and
+ * which species it is. Requested on its own when the rest of the record can be reused
+ * from the species knowledge store.
+ */
+public class InsectIdentification {
+
+    @JsonPropertyDescription("Indicates if the organism is an insect.")
+    @NotNull
+    public Boolean isInsect;
+
+    @JsonPropertyDescription("The common name of the insect.")
+    @Size(max = 100, message = "Common name must not exceed 100 characters")
+    public String commonName;
+
+    @JsonPropertyDescription("The scientific (Latin) name of the insect, at the most specific rank you can determine.")
+    @Size(max = 100, message = "Scientific name must not exceed 100 characters")
+    public String scientificName;
+}
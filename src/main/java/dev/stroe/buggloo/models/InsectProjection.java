@@ -0,0 +1,109 @@
+package dev.stroe.buggloo.models;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.stroe.buggloo.exceptions.InvalidRequestException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The {@link Insect} properties a client asked for with the {@code fields} parameter.
+ * {@code isInsect} is always included, since it decides whether there is a result at all.
+ */
+public final class InsectProjection {
+
+    /**
+     * The JSON property names of {@link Insect}, in declaration order.
+     */
+    public static final Set<String> PROPERTIES = propertiesOf(Insect.class);
+
+    public static final InsectProjection ALL = new InsectProjection(PROPERTIES);
+
+    private static final String IS_INSECT = "isInsect";
+
+    private final Set<String> properties;
+
+    private InsectProjection(Set<String> properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Parses a comma-separated list of property names.
+     *
+     * @param fields the list, or null or blank for all properties
+     * @return the projection
+     * @throws InvalidRequestException if a name is not an {@link Insect} property
+     */
+    public static InsectProjection parse(String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return ALL;
+        }
+
+        Set<String> requested = new TreeSet<>();
+        requested.add(IS_INSECT);
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!PROPERTIES.contains(name)) {
+                throw new InvalidRequestException("Unknown field '" + name + "'; fields must be Insect properties, such as commonName");
+            }
+            requested.add(name);
+        }
+        return requested.size() == PROPERTIES.size() ? ALL : new InsectProjection(Collections.unmodifiableSet(requested));
+    }
+
+    /**
+     * Returns whether every property is included.
+     */
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    /**
+     * Returns the JSON property names included.
+     */
+    public Set<String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Returns the included properties of an insect: the insect itself when all are, or a
+     * JSON object with just the included ones otherwise.
+     */
+    public Object apply(Insect insect, ObjectMapper objectMapper) {
+        if (isAll()) {
+            return insect;
+        }
+        ObjectNode projected = objectMapper.valueToTree(insect);
+        projected.retain(properties);
+        return projected;
+    }
+
+    @Override
+    public String toString() {
+        return isAll() ? "*" : String.join(",", properties);
+    }
+
+    private static Set<String> propertiesOf(Class<?> type) {
+        Set<String> properties = new LinkedHashSet<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (Modifier.isPublic(field.getModifiers()) && !Modifier.isStatic(field.getModifiers())) {
+                properties.add(propertyName(field));
+            }
+        }
+        return Collections.unmodifiableSet(properties);
+    }
+
+    private static String propertyName(Field field) {
+        JsonProperty property = field.getAnnotation(JsonProperty.class);
+        return property != null && !property.value().isEmpty() ? property.value() : field.getName();
+    }
+}
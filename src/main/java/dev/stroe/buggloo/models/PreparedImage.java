@@ -0,0 +1,63 @@
+package dev.stroe.buggloo.models;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An image ready to be sent to the vision model, together with its real MIME type.
+ * The content is read from its source on demand, so uploads that are passed through
+ * unchanged are streamed from the multipart part instead of being copied onto the heap.
+ */
+public class PreparedImage {
+
+    private final InputStreamSource source;
+    private final long size;
+    private final String mimeType;
+    private final long originalSize;
+
+    public PreparedImage(InputStreamSource source, long size, String mimeType, long originalSize) {
+        this.source = source;
+        this.size = size;
+        this.mimeType = mimeType;
+        this.originalSize = originalSize;
+    }
+
+    public PreparedImage(InputStreamSource source, long size, String mimeType) {
+        this(source, size, mimeType, size);
+    }
+
+    public PreparedImage(byte[] data, String mimeType, long originalSize) {
+        this(new ByteArrayResource(data), data.length, mimeType, originalSize);
+    }
+
+    public PreparedImage(byte[] data, String mimeType) {
+        this(data, mimeType, data.length);
+    }
+
+    /**
+     * Opens a new stream over the image content. Each call starts from the beginning.
+     */
+    public InputStream openStream() throws IOException {
+        return source.getInputStream();
+    }
+
+    // Getters
+    public long getSize() {
+        return size;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getOriginalSize() {
+        return originalSize;
+    }
+
+    public long getBytesSaved() {
+        return originalSize - size;
+    }
+}
@@ -0,0 +1,44 @@
+package dev.stroe.buggloo.models;
+
+import java.time.Instant;
+
+/**
+ * The number of sightings in a time window, optionally of one taxon only.
+ */
+public class SightingCount {
+
+    private final Instant from;
+    private final Instant to;
+    private final TaxonRank rank;
+    private final String taxon;
+    private final long count;
+
+    public SightingCount(Instant from, Instant to, TaxonRank rank, String taxon, long count) {
+        this.from = from;
+        this.to = to;
+        this.rank = rank;
+        this.taxon = taxon;
+        this.count = count;
+    }
+
+    // Getters
+    public Instant getFrom() {
+        return from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+
+    public TaxonRank getRank() {
+        return rank;
+    }
+
+    public String getTaxon() {
+        return taxon;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,42 @@
+package dev.stroe.buggloo.models;
+
+/**
+ * The number of sightings of one species, with the higher ranks it was identified under.
+ */
+public class SpeciesCount {
+
+    private final String species;
+    private final String genus;
+    private final String family;
+    private final String order;
+    private final long count;
+
+    public SpeciesCount(String species, String genus, String family, String order, long count) {
+        this.species = species;
+        this.genus = genus;
+        this.family = family;
+        this.order = order;
+        this.count = count;
+    }
+
+    // Getters
+    public String getSpecies() {
+        return species;
+    }
+
+    public String getGenus() {
+        return genus;
+    }
+
+    public String getFamily() {
+        return family;
+    }
+
+    public String getOrder() {
+        return order;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,26 @@
+package dev.stroe.buggloo.models;
+
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * The taxonomic ranks sightings can be filtered and grouped by, from the broadest.
+ */
+public enum TaxonRank {
+    ORDER,
+    FAMILY,
+    GENUS,
+    SPECIES;
+
+    /**
+     * Returns the rank with the given name, ignoring case.
+     */
+    public static Optional<TaxonRank> parse(String name) {
+        for (TaxonRank rank : values()) {
+            if (rank.name().equals(name.trim().toUpperCase(Locale.ROOT))) {
+                return Optional.of(rank);
+            }
+        }
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,365 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.AdmissionConfig;
+import dev.stroe.buggloo.exceptions.AdmissionRejectedException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides when requests to the {@code /insect} endpoints may run. At most
+ * {@code admission.max-concurrent-requests} run at once; the others wait in a bounded
+ * queue per {@link Lane}. Freed slots go to the waiting lanes in proportion to their
+ * weights, so a burst of large identification uploads cannot starve cheap chat requests.
+ * <p>
+ * Each lane also has a token bucket sized in OpenAI tokens per minute, so a lane is held
+ * back before it would run into the upstream rate limits. A request reserves the lane's
+ * estimated tokens while it runs and is {@link #charge charged} what its OpenAI calls
+ * actually use, so a batch making many calls pays for every one of them. Requests that
+ * cannot be served in time are rejected up front: when the queue is full or the token
+ * budget would not allow them within the queue timeout. Requests still queued at the
+ * timeout are rejected then.
+ */
+@Service
+public class AdmissionService {
+
+    private static final String METRIC_PREFIX = "buggloo.admission";
+
+    /**
+     * Kind of request, each with its own queue and budget.
+     */
+    public enum Lane {
+        IDENTIFY("/insect/identify"),
+        CHAT("/insect/chat");
+
+        private final String pathPrefix;
+
+        Lane(String pathPrefix) {
+            this.pathPrefix = pathPrefix;
+        }
+
+        /**
+         * Returns the lane of the endpoint at the given path, or empty if it is not admission controlled.
+         */
+        public static Optional<Lane> forPath(String path) {
+            for (Lane lane : values()) {
+                if (path.startsWith(lane.pathPrefix)) {
+                    return Optional.of(lane);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    private final AdmissionConfig config;
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Runs the queue timeouts, removed once their request leaves the queue, and the refills.
+     */
+    private final ScheduledThreadPoolExecutor timers =
+            new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().daemon().name("admission-timers").factory());
+
+    private int running;
+    private boolean refillScheduled;
+
+    public AdmissionService(AdmissionConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.meterRegistry = meterRegistry;
+        lanes.put(Lane.IDENTIFY, new LaneState(Lane.IDENTIFY, config.getIdentify(), meterRegistry));
+        lanes.put(Lane.CHAT, new LaneState(Lane.CHAT, config.getChat(), meterRegistry));
+        Gauge.builder(METRIC_PREFIX + ".running", this, AdmissionService::running).register(meterRegistry);
+        timers.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    void close() {
+        timers.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * Waits for the request to be admitted.
+     *
+     * @param lane the kind of request
+     * @return a future completed with the admission once the request may run, or failed with
+     *         {@link AdmissionRejectedException}; cancelling it withdraws the request
+     */
+    public CompletableFuture<Admission> admit(Lane lane) {
+        LaneState state = lanes.get(lane);
+        Waiter waiter = new Waiter(state);
+        synchronized (this) {
+            if (state.queue.size() >= state.settings.getQueueCapacity()) {
+                return rejected(state, "queue_full", new AdmissionRejectedException(AdmissionRejectedException.Reason.OVERLOADED,
+                        "Too many " + lane.name().toLowerCase() + " requests waiting, please retry later",
+                        state.settings.getQueueTimeout()));
+            }
+            Duration budgetWait = state.bucket.timeUntil(
+                    (state.queue.size() + 1) * state.settings.getEstimatedTokens());
+            if (budgetWait.compareTo(state.settings.getQueueTimeout()) > 0) {
+                return rejected(state, "budget", new AdmissionRejectedException(AdmissionRejectedException.Reason.RATE_LIMITED,
+                        "The " + lane.name().toLowerCase() + " token budget is exhausted, please retry later", budgetWait));
+            }
+            state.queue.addLast(waiter);
+        }
+
+        ScheduledFuture<?> timeout = timers.schedule(() -> expire(waiter),
+                state.settings.getQueueTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        waiter.future.whenComplete((admission, error) -> {
+            timeout.cancel(false);
+            if (waiter.future.isCancelled()) {
+                withdraw(waiter);
+            }
+        });
+        dispatch();
+        return waiter.future;
+    }
+
+    /**
+     * Debits the tokens an OpenAI call made for a request of the lane used.
+     *
+     * @param lane the kind of request the call was made for
+     * @param tokens the prompt and completion tokens of the call
+     */
+    public void charge(Lane lane, long tokens) {
+        if (!isEnabled() || tokens <= 0) {
+            return;
+        }
+        LaneState state = lanes.get(lane);
+        synchronized (this) {
+            state.bucket.take(tokens);
+        }
+    }
+
+    /**
+     * A running request's slot and token reservation, freed on {@link #close()}; closing it
+     * again has no effect.
+     */
+    public final class Admission implements AutoCloseable {
+
+        private final LaneState state;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Admission(LaneState state) {
+            this.state = state;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                synchronized (AdmissionService.this) {
+                    running--;
+                    // The request's calls have been charged what they used
+                    state.bucket.give(state.settings.getEstimatedTokens());
+                }
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Admits waiting requests while slots are free, picking among the lanes with budget
+     * left by smooth weighted round robin.
+     */
+    private void dispatch() {
+        List<Waiter> admitted = new ArrayList<>();
+        synchronized (this) {
+            while (running < config.getMaxConcurrentRequests()) {
+                LaneState next = null;
+                int totalWeight = 0;
+                for (LaneState state : lanes.values()) {
+                    if (state.queue.isEmpty() || !state.bucket.hasTokens(state.settings.getEstimatedTokens())) {
+                        continue;
+                    }
+                    state.currentWeight += state.settings.getWeight();
+                    totalWeight += state.settings.getWeight();
+                    if (next == null || state.currentWeight > next.currentWeight) {
+                        next = state;
+                    }
+                }
+                if (next == null) {
+                    scheduleRefill();
+                    break;
+                }
+                next.currentWeight -= totalWeight;
+                next.bucket.take(next.settings.getEstimatedTokens());
+                admitted.add(next.queue.removeFirst());
+                running++;
+            }
+        }
+
+        for (Waiter waiter : admitted) {
+            waiter.state.waitTime.record(System.nanoTime() - waiter.enqueued, TimeUnit.NANOSECONDS);
+            Admission admission = new Admission(waiter.state);
+            if (!waiter.future.complete(admission)) {
+                // Withdrawn while being admitted
+                admission.close();
+            }
+        }
+    }
+
+    /**
+     * Retries dispatching once the first lane held back only by its budget can afford a request.
+     */
+    private void scheduleRefill() {
+        if (refillScheduled) {
+            return;
+        }
+        Duration wait = null;
+        for (LaneState state : lanes.values()) {
+            if (!state.queue.isEmpty()) {
+                Duration laneWait = state.bucket.timeUntil(state.settings.getEstimatedTokens());
+                if (wait == null || laneWait.compareTo(wait) < 0) {
+                    wait = laneWait;
+                }
+            }
+        }
+        if (wait == null) {
+            return;
+        }
+        refillScheduled = true;
+        timers.schedule(() -> {
+            synchronized (this) {
+                refillScheduled = false;
+            }
+            dispatch();
+        }, Math.max(1, wait.toNanos()), TimeUnit.NANOSECONDS);
+    }
+
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            if (!waiter.state.queue.remove(waiter)) {
+                return;
+            }
+        }
+        countRejection(waiter.state, "timeout");
+        waiter.future.completeExceptionally(new AdmissionRejectedException(AdmissionRejectedException.Reason.OVERLOADED,
+                "The server is busy, please retry later", waiter.state.settings.getQueueTimeout()));
+    }
+
+    private synchronized void withdraw(Waiter waiter) {
+        waiter.state.queue.remove(waiter);
+    }
+
+    private CompletableFuture<Admission> rejected(LaneState state, String reason, AdmissionRejectedException e) {
+        countRejection(state, reason);
+        return CompletableFuture.failedFuture(e);
+    }
+
+    private void countRejection(LaneState state, String reason) {
+        Counter.builder(METRIC_PREFIX + ".rejected")
+                .tags("lane", state.tag, "reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private synchronized int running() {
+        return running;
+    }
+
+    private static final class Waiter {
+
+        private final LaneState state;
+        private final CompletableFuture<Admission> future = new CompletableFuture<>();
+        private final long enqueued = System.nanoTime();
+
+        Waiter(LaneState state) {
+            this.state = state;
+        }
+    }
+
+    private final class LaneState {
+
+        private final AdmissionConfig.Lane settings;
+        private final String tag;
+        private final Deque<Waiter> queue = new ArrayDeque<>();
+        private final TokenBucket bucket;
+        private final Timer waitTime;
+        private int currentWeight;
+
+        LaneState(Lane lane, AdmissionConfig.Lane settings, MeterRegistry meterRegistry) {
+            this.settings = settings;
+            this.tag = lane.name().toLowerCase();
+            this.bucket = new TokenBucket(Math.max(settings.getTokensPerMinute(), settings.getEstimatedTokens()),
+                    settings.getTokensPerMinute());
+            this.waitTime = Timer.builder(METRIC_PREFIX + ".wait").tag("lane", tag).register(meterRegistry);
+            Gauge.builder(METRIC_PREFIX + ".queue.depth", AdmissionService.this, service -> service.queueDepth(this))
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+        }
+    }
+
+    private synchronized int queueDepth(LaneState state) {
+        return state.queue.size();
+    }
+
+    /**
+     * Budget of OpenAI tokens, refilled continuously at the per-minute rate. Guarded by the
+     * service's lock.
+     */
+    private static final class TokenBucket {
+
+        private final double capacity;
+        private final double tokensPerNano;
+        private double tokens;
+        private long refilled = System.nanoTime();
+
+        TokenBucket(long capacity, long tokensPerMinute) {
+            this.capacity = capacity;
+            this.tokensPerNano = tokensPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.tokens = capacity;
+        }
+
+        boolean hasTokens(long amount) {
+            refill();
+            return tokens >= amount;
+        }
+
+        void take(long amount) {
+            refill();
+            tokens -= amount;
+        }
+
+        void give(long amount) {
+            refill();
+            tokens = Math.min(capacity, tokens + amount);
+        }
+
+        /**
+         * Returns how long until the bucket holds the given amount, assuming nothing else is taken.
+         */
+        Duration timeUntil(long amount) {
+            refill();
+            double missing = amount - tokens;
+            return missing <= 0 ? Duration.ZERO : Duration.ofNanos((long) Math.ceil(missing / tokensPerNano));
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilled) * tokensPerNano);
+            refilled = now;
+        }
+    }
+}
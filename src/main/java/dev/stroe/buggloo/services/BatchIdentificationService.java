@@ -0,0 +1,133 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.BatchConfig;
+import dev.stroe.buggloo.exceptions.InvalidImageException;
+import dev.stroe.buggloo.exceptions.InvalidRequestException;
+import dev.stroe.buggloo.exceptions.ServiceException;
+import dev.stroe.buggloo.models.BatchImage;
+import dev.stroe.buggloo.models.BatchItemOutcome;
+import dev.stroe.buggloo.models.Insect;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Identifies the insects in many uploaded images at once. Images are identified with
+ * bounded parallelism and every image yields its own outcome, so one invalid image or
+ * failed identification does not fail the rest of the batch.
+ */
+@Service
+public class BatchIdentificationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchIdentificationService.class);
+
+    private final BatchConfig config;
+    private final IdentificationEngine identificationEngine;
+    private final ImageValidationService imageValidationService;
+    private final ImagePreprocessingService imagePreprocessingService;
+    private final SightingLog sightingLog;
+    private final Counter duplicates;
+
+    public BatchIdentificationService(BatchConfig config, IdentificationEngine identificationEngine,
+                                      ImageValidationService imageValidationService,
+                                      ImagePreprocessingService imagePreprocessingService, SightingLog sightingLog,
+                                      MeterRegistry meterRegistry) {
+        this.config = config;
+        this.identificationEngine = identificationEngine;
+        this.imageValidationService = imageValidationService;
+        this.imagePreprocessingService = imagePreprocessingService;
+        this.sightingLog = sightingLog;
+        this.duplicates = Counter.builder("buggloo.batch.duplicates").register(meterRegistry);
+    }
+
+    /**
+     * Rejects a batch of more images than the configured maximum, for callers that know the
+     * number of images before reading them.
+     *
+     * @param images the number of images in the batch
+     * @throws InvalidRequestException if there are too many
+     */
+    public void checkBatchSize(int images) {
+        if (images > config.getMaxImages()) {
+            throw tooManyImages();
+        }
+    }
+
+    /**
+     * Identifies every image of a batch. Images with identical content within the batch are
+     * preprocessed and identified once and share the outcome. Every identified image is
+     * logged as a sighting, duplicates included.
+     * <p>
+     * An image beyond the configured maximum is not read: the images before it are still
+     * identified, and the outcomes then end with an {@link InvalidRequestException}.
+     *
+     * @param images the uploaded images, consumed at most {@code parallelism} ahead
+     * @return one outcome per image, in completion order
+     */
+    public Flux<BatchItemOutcome> identifyBatch(Flux<BatchImage> images) {
+        return Flux.defer(() -> {
+            Map<String, Mono<Insect>> identifications = new ConcurrentHashMap<>();
+            return images
+                    .<BatchImage>handle((image, sink) -> {
+                        if (image.getIndex() < config.getMaxImages()) {
+                            sink.next(image);
+                        } else {
+                            sink.error(tooManyImages());
+                        }
+                    })
+                    .flatMapDelayError(image -> identify(image, identifications)
+                            .doOnNext(insect -> sightingLog.record(insect, null))
+                            .map(insect -> BatchItemOutcome.success(image, insect))
+                            .onErrorResume(error -> Mono.just(BatchItemOutcome.failure(image, error))),
+                    config.getParallelism(), 1);
+        });
+    }
+
+    private InvalidRequestException tooManyImages() {
+        return new InvalidRequestException("Batch exceeds the maximum of " + config.getMaxImages() + " images");
+    }
+
+    private Mono<Insect> identify(BatchImage image, Map<String, Mono<Insect>> identifications) {
+        // Hop with publishOn rather than fromCallable().subscribeOn(): a callable failing there
+        // is cancelled while its task still runs, interrupting the thread writing the response
+        return Mono.just(image)
+                .publishOn(Schedulers.boundedElastic())
+                .map(candidate -> Tuples.of(imageValidationService.validateImage(candidate), digestOf(candidate)))
+                .flatMap(validated -> {
+                    String digest = validated.getT2();
+                    boolean[] first = new boolean[1];
+                    Mono<Insect> identification = identifications.computeIfAbsent(digest, key -> {
+                        first[0] = true;
+                        return Mono.fromCallable(() -> imagePreprocessingService.preprocess(
+                                        image.getSource(), image.getSize(), validated.getT1().getMimeType()))
+                                .flatMap(prepared -> Mono.fromFuture(() -> identificationEngine.identifyInsectAsync(prepared)))
+                                .cache();
+                    });
+                    if (!first[0]) {
+                        logger.debug("Image {} of batch is a duplicate, reusing its identification", image.getIndex());
+                        duplicates.increment();
+                    }
+                    return identification;
+                });
+    }
+
+    private static String digestOf(BatchImage image) {
+        try (InputStream content = image.getSource().getInputStream()) {
+            return RequestCoalescer.digest(content);
+        } catch (IOException e) {
+            throw new ServiceException("Failed to read uploaded image: " + e.getMessage(), e);
+        }
+    }
+}
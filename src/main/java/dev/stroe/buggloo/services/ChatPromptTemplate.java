@@ -0,0 +1,78 @@
+package dev.stroe.buggloo.services;
+
+import com.openai.models.chat.completions.ChatCompletionAssistantMessageParam;
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import com.openai.models.chat.completions.ChatCompletionDeveloperMessageParam;
+import dev.stroe.buggloo.models.ChatMessage;
+
+import java.util.List;
+
+/**
+ * The messages of a chat completion request, ordered so that consecutive requests share
+ * the longest possible prefix for OpenAI's prompt caching.
+ * <p>
+ * The fixed rules come first as one precomputed, byte-identical developer message for
+ * every request. Only then follow the parts that vary: the insect being discussed, which
+ * rarely changes within a conversation, the earlier turns, and the current message. A
+ * turn of a conversation therefore repeats the previous turn's prompt as its prefix,
+ * which is billed at the cached rate once the prompt reaches the 1024 tokens caching
+ * starts at. The exception is the turn on which {@link ConversationStore} trims the
+ * history: it drops to half the context budget at once, so that the turns after it share
+ * a prefix again.
+ */
+final class ChatPromptTemplate {
+
+    static final String INSTRUCTIONS = "You are an expert insect assistant. "
+            + "ONLY respond to questions and conversations about insects, bugs, and related entomology topics. "
+            + "If the user asks about anything unrelated to insects, politely redirect them back to insect topics. "
+            + "Provide concise, accurate information about insects only. "
+            + "Keep responses brief, conversational, and in a single paragraph without line breaks or newlines. "
+            + "Avoid using \\n or multiple paragraphs in your response.";
+
+    private static final ChatCompletionDeveloperMessageParam INSTRUCTIONS_MESSAGE = developerMessage(INSTRUCTIONS);
+    private static final ChatCompletionDeveloperMessageParam GENERAL_TOPIC_MESSAGE = topicMessage("insects in general");
+
+    private ChatPromptTemplate() {
+    }
+
+    /**
+     * Adds the messages for a chat turn to a request.
+     *
+     * @param builder the request, with its model and limits already set
+     * @param history the earlier messages of the conversation, oldest first, already
+     *                trimmed to the context token budget
+     * @param message the current user message
+     * @param insectName the name of the insect being discussed, or null
+     * @return the builder
+     */
+    static ChatCompletionCreateParams.Builder apply(ChatCompletionCreateParams.Builder builder,
+                                                    List<ChatMessage> history, String message, String insectName) {
+        builder.addMessage(INSTRUCTIONS_MESSAGE)
+                .addMessage(insectName != null && !insectName.trim().isEmpty()
+                        ? topicMessage(insectName)
+                        : GENERAL_TOPIC_MESSAGE);
+
+        // Replay the earlier turns as proper role-tagged messages
+        for (ChatMessage pastMessage : history) {
+            switch (pastMessage.getRole()) {
+                case DEVELOPER -> builder.addDeveloperMessage(pastMessage.getContent());
+                case USER -> builder.addUserMessage(pastMessage.getContent());
+                case ASSISTANT -> builder.addMessage(ChatCompletionAssistantMessageParam.builder()
+                        .content(pastMessage.getContent())
+                        .build());
+            }
+        }
+
+        return builder.addUserMessage(message);
+    }
+
+    private static ChatCompletionDeveloperMessageParam topicMessage(String topic) {
+        return developerMessage("You are discussing " + topic + ".");
+    }
+
+    private static ChatCompletionDeveloperMessageParam developerMessage(String content) {
+        return ChatCompletionDeveloperMessageParam.builder()
+                .content(content)
+                .build();
+    }
+}
@@ -0,0 +1,107 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.exceptions.ConversationNotFoundException;
+import dev.stroe.buggloo.exceptions.ServiceException;
+import dev.stroe.buggloo.models.ChatReply;
+import dev.stroe.buggloo.models.ConversationTurn;
+
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs chat requests within their server-side conversation: loads the context from the
+ * {@link ConversationStore}, generates the response and records the exchange.
+ */
+@Service
+public class ConversationService {
+
+    private final ConversationStore conversationStore;
+    private final OpenAIService openAIService;
+
+    public ConversationService(ConversationStore conversationStore, OpenAIService openAIService) {
+        this.conversationStore = conversationStore;
+        this.openAIService = openAIService;
+    }
+
+    /**
+     * Generates a chat response within a conversation.
+     *
+     * @param conversationId the conversation to continue, or null to start a new one
+     * @param pastConversation client-supplied history of a legacy request, or null
+     * @param message the current user message
+     * @param insectName the name of the insect being discussed, or null to keep the conversation's
+     * @return the response and its conversation ID
+     * @throws ConversationNotFoundException if the conversation does not exist or has expired
+     * @throws ServiceException if chat generation fails
+     */
+    public ChatReply chat(String conversationId, String pastConversation, String message, String insectName) {
+        ConversationTurn turn = conversationStore.begin(conversationId, insectName, pastConversation);
+        String response = openAIService.generateChatResponse(turn.getHistory(), message, turn.getInsectName());
+        conversationStore.record(turn, message, response);
+        return new ChatReply(turn.getConversationId(), response);
+    }
+
+    /**
+     * Non-blocking variant of {@link #chat(String, String, String, String)}.
+     */
+    public CompletableFuture<ChatReply> chatAsync(String conversationId, String pastConversation, String message, String insectName) {
+        ConversationTurn turn;
+        try {
+            turn = conversationStore.begin(conversationId, insectName, pastConversation);
+        } catch (ConversationNotFoundException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return openAIService.generateChatResponseAsync(turn.getHistory(), message, turn.getInsectName())
+                .thenApply(response -> {
+                    conversationStore.record(turn, message, response);
+                    return new ChatReply(turn.getConversationId(), response);
+                });
+    }
+
+    /**
+     * Streams a chat response within a conversation. The exchange is recorded once the
+     * stream completes; cancelled or failed streams leave the conversation unchanged.
+     *
+     * @return the conversation ID and the response deltas
+     * @throws ConversationNotFoundException if the conversation does not exist or has expired
+     * @throws ServiceException if the message is empty
+     */
+    public StreamedReply streamChat(String conversationId, String pastConversation, String message, String insectName) {
+        ConversationTurn turn = conversationStore.begin(conversationId, insectName, pastConversation);
+        Flux<String> deltas = Flux.defer(() -> {
+            StringBuilder response = new StringBuilder();
+            return openAIService.streamChatResponse(turn.getHistory(), message, turn.getInsectName())
+                    .doOnNext(response::append)
+                    .doOnComplete(() -> conversationStore.record(turn, message, response.toString()));
+        });
+        return new StreamedReply(turn.getConversationId(), deltas);
+    }
+
+    /**
+     * A chat response being streamed, with the conversation it belongs to.
+     */
+    public static class StreamedReply {
+
+        private final String conversationId;
+        private final Flux<String> deltas;
+
+        private StreamedReply(String conversationId, Flux<String> deltas) {
+            this.conversationId = conversationId;
+            this.deltas = deltas;
+        }
+
+        /**
+         * Returns the conversation ID, or null if the request was not part of a stored conversation.
+         */
+        public String getConversationId() {
+            return conversationId;
+        }
+
+        public Flux<String> getDeltas() {
+            return deltas;
+        }
+    }
+}
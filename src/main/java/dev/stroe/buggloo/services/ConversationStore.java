@@ -0,0 +1,324 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.stroe.buggloo.config.ConversationConfig;
+import dev.stroe.buggloo.exceptions.ConversationNotFoundException;
+import dev.stroe.buggloo.models.ChatMessage;
+import dev.stroe.buggloo.models.ConversationTurn;
+import dev.stroe.buggloo.utils.TokenCounter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Keeps chat conversations on the server so clients only send the new message.
+ * <p>
+ * Each conversation holds a bounded ring of role-tagged messages. Requests are sent the
+ * messages from a window start on, so consecutive turns share their prompt prefix for
+ * OpenAI's prompt caching. Once those messages outgrow the context token budget, counted
+ * with the model's tokenizer, or the oldest of them drops out of the ring, the window start
+ * moves forward in one step to half the budget and half the ring, and stays there for the
+ * following turns. The request size stays bounded however long the conversation gets.
+ * Conversations expire after a period of inactivity and are evicted in LRU order when the
+ * store exceeds its conversation count or total character limit.
+ */
+@Service
+public class ConversationStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConversationStore.class);
+    private static final String METRIC_PREFIX = "buggloo.conversations";
+
+    private static final String LEGACY_CONTEXT_PREFIX = "Previous conversation context: ";
+
+    private final ConversationConfig settings;
+    private final ObjectMapper objectMapper;
+    private final LinkedHashMap<String, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalCharacters;
+
+    private final Counter sizeEvictions;
+    private final Counter memoryEvictions;
+    private final Counter expirations;
+
+    public ConversationStore(ConversationConfig settings, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.objectMapper = objectMapper;
+        this.sizeEvictions = Counter.builder(METRIC_PREFIX + ".evictions").tag("cause", "size").register(meterRegistry);
+        this.memoryEvictions = Counter.builder(METRIC_PREFIX + ".evictions").tag("cause", "memory").register(meterRegistry);
+        this.expirations = Counter.builder(METRIC_PREFIX + ".evictions").tag("cause", "expired").register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".active", this, ConversationStore::size).register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".characters", this, ConversationStore::characters).register(meterRegistry);
+    }
+
+    /**
+     * Prepares the context of a chat request.
+     * <p>
+     * Without a conversation ID a new conversation is started, unless the client sent
+     * the history itself in {@code pastConversation}; such legacy requests get a one-off
+     * turn that is not stored, holding the end of that history that fits the budget.
+     *
+     * @param conversationId the conversation to continue, or null
+     * @param insectName the insect being discussed, or null to keep the conversation's
+     * @param pastConversation client-supplied history of a legacy request, or null
+     * @return the turn to generate a response for
+     * @throws ConversationNotFoundException if the conversation does not exist or has expired
+     */
+    public ConversationTurn begin(String conversationId, String insectName, String pastConversation) {
+        if (conversationId == null && hasText(pastConversation)) {
+            // Touches no stored conversation, so the client's history is tokenized without the lock
+            int budget = settings.getContextTokenBudget() - TokenCounter.countMessage(LEGACY_CONTEXT_PREFIX);
+            return new ConversationTurn(null, insectName, List.of(new ChatMessage(ChatMessage.Role.DEVELOPER,
+                    LEGACY_CONTEXT_PREFIX + TokenCounter.keepLast(pastConversation, Math.max(0, budget)))));
+        }
+        return beginStored(conversationId, insectName);
+    }
+
+    private synchronized ConversationTurn beginStored(String conversationId, String insectName) {
+        evictExpired(System.currentTimeMillis());
+
+        if (conversationId == null) {
+            Conversation conversation = new Conversation(UUID.randomUUID().toString(), insectName);
+            conversation.touch(settings.getTtl().toMillis());
+            conversations.put(conversation.id, conversation);
+            evictOverflow();
+            return new ConversationTurn(conversation.id, insectName, List.of());
+        }
+
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            throw new ConversationNotFoundException("Conversation not found or expired: " + conversationId);
+        }
+        if (hasText(insectName)) {
+            conversation.insectName = insectName;
+        }
+        conversation.touch(settings.getTtl().toMillis());
+        return new ConversationTurn(conversation.id, conversation.insectName, context(conversation));
+    }
+
+    /**
+     * Appends a completed exchange to the turn's conversation. Does nothing for one-off turns
+     * or conversations evicted while the response was being generated.
+     */
+    public void record(ConversationTurn turn, String message, String response) {
+        if (turn.getConversationId() == null) {
+            return;
+        }
+        // Counted once here, outside the lock, instead of on every later turn
+        CountedMessage question = CountedMessage.of(ChatMessage.user(message));
+        CountedMessage answer = CountedMessage.of(ChatMessage.assistant(response));
+        record(turn.getConversationId(), question, answer);
+    }
+
+    private synchronized void record(String conversationId, CountedMessage question, CountedMessage answer) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            logger.debug("Conversation {} was evicted before its response completed", conversationId);
+            return;
+        }
+
+        totalCharacters += conversation.append(question, settings.getMaxMessages());
+        totalCharacters += conversation.append(answer, settings.getMaxMessages());
+        conversation.touch(settings.getTtl().toMillis());
+        evictOverflow();
+    }
+
+    /**
+     * Returns the number of stored conversations.
+     */
+    public synchronized int size() {
+        return conversations.size();
+    }
+
+    private synchronized long characters() {
+        return totalCharacters;
+    }
+
+    /**
+     * Selects the messages from the conversation's window start on, first moving the start
+     * forward if they no longer fit.
+     */
+    private List<ChatMessage> context(Conversation conversation) {
+        List<CountedMessage> messages = List.copyOf(conversation.messages);
+        int first = (int) Math.max(0, conversation.windowStart - conversation.dropped);
+        int tokens = 0;
+        for (int i = first; i < messages.size(); i++) {
+            tokens += messages.get(i).tokens();
+        }
+
+        int budget = settings.getContextTokenBudget();
+        if (tokens > budget || conversation.windowStart < conversation.dropped) {
+            // Trimming one message per turn would change the prompt prefix on every turn
+            while (first < messages.size()
+                    && (tokens > budget / 2 || messages.size() - first > settings.getMaxMessages() / 2)) {
+                tokens -= messages.get(first).tokens();
+                first++;
+            }
+            conversation.windowStart = conversation.dropped + first;
+        }
+        return messages.subList(first, messages.size()).stream()
+                .map(CountedMessage::message)
+                .toList();
+    }
+
+    /**
+     * The TTL is refreshed on every message, so the least recently used conversations
+     * are also the first to expire.
+     */
+    private void evictExpired(long now) {
+        Iterator<Conversation> eldestFirst = conversations.values().iterator();
+        while (eldestFirst.hasNext()) {
+            Conversation conversation = eldestFirst.next();
+            if (!conversation.isExpired(now)) {
+                break;
+            }
+            eldestFirst.remove();
+            totalCharacters -= conversation.characters;
+            expirations.increment();
+        }
+    }
+
+    private void evictOverflow() {
+        Iterator<Conversation> eldestFirst = conversations.values().iterator();
+        while (eldestFirst.hasNext()
+                && (conversations.size() > settings.getMaxConversations() || totalCharacters > settings.getMaxTotalCharacters())) {
+            Conversation conversation = eldestFirst.next();
+            (conversations.size() > settings.getMaxConversations() ? sizeEvictions : memoryEvictions).increment();
+            eldestFirst.remove();
+            totalCharacters -= conversation.characters;
+        }
+    }
+
+    @PostConstruct
+    synchronized void load() {
+        Path file = persistenceFile();
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+
+        try {
+            List<StoredConversation> stored = objectMapper.readValue(file.toFile(), new TypeReference<>() {});
+            long now = System.currentTimeMillis();
+            for (StoredConversation entry : stored) {
+                Conversation conversation = new Conversation(entry.id(), entry.insectName());
+                conversation.expiresAt = entry.expiresAt();
+                if (conversation.isExpired(now)) {
+                    continue;
+                }
+                for (ChatMessage message : entry.messages()) {
+                    totalCharacters += conversation.append(CountedMessage.of(message), settings.getMaxMessages());
+                }
+                conversations.put(conversation.id, conversation);
+            }
+            evictOverflow();
+            logger.info("Loaded {} conversations from {}", conversations.size(), file);
+        } catch (IOException e) {
+            logger.warn("Failed to load conversations from {}, starting empty", file, e);
+        }
+    }
+
+    @PreDestroy
+    synchronized void save() {
+        Path file = persistenceFile();
+        if (file == null) {
+            return;
+        }
+
+        List<StoredConversation> stored = conversations.values().stream()
+                .map(conversation -> new StoredConversation(conversation.id, conversation.insectName,
+                        conversation.expiresAt, conversation.messages.stream().map(CountedMessage::message).toList()))
+                .toList();
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temporary.toFile(), stored);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Saved {} conversations to {}", stored.size(), file);
+        } catch (IOException e) {
+            logger.error("Failed to save conversations to {}", file, e);
+        }
+    }
+
+    private Path persistenceFile() {
+        return hasText(settings.getPersistenceFile()) ? Path.of(settings.getPersistenceFile()) : null;
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.trim().isEmpty();
+    }
+
+    private record StoredConversation(String id, String insectName, long expiresAt, List<ChatMessage> messages) {
+    }
+
+    /**
+     * A stored message with the tokens it takes up in a prompt.
+     */
+    private record CountedMessage(ChatMessage message, int tokens) {
+
+        static CountedMessage of(ChatMessage message) {
+            return new CountedMessage(message, TokenCounter.countMessage(message.getContent()));
+        }
+    }
+
+    private static final class Conversation {
+
+        private final String id;
+        private final ArrayDeque<CountedMessage> messages = new ArrayDeque<>();
+        private String insectName;
+        private long characters;
+        private long expiresAt;
+
+        /**
+         * Messages dropped from the ring so far.
+         */
+        private long dropped;
+
+        /**
+         * Position of the first message sent with requests, counting the dropped ones.
+         */
+        private long windowStart;
+
+        private Conversation(String id, String insectName) {
+            this.id = id;
+            this.insectName = insectName;
+        }
+
+        /**
+         * Appends a message, dropping the oldest ones beyond the limit.
+         *
+         * @return the change in stored characters
+         */
+        private long append(CountedMessage message, int maxMessages) {
+            long before = characters;
+            messages.addLast(message);
+            characters += message.message().getContent().length();
+            while (messages.size() > maxMessages) {
+                characters -= messages.removeFirst().message().getContent().length();
+                dropped++;
+            }
+            return characters - before;
+        }
+
+        private void touch(long ttlMillis) {
+            expiresAt = System.currentTimeMillis() + ttlMillis;
+        }
+
+        private boolean isExpired(long now) {
+            return now > expiresAt;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.exceptions.NoInsectException;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.utils.PerceptualHash;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Caches identification results keyed by a perceptual hash of the uploaded image,
+ * so that repeated or near-identical photos are answered without calling OpenAI.
+ * Entries are bounded in number, expire after a fixed TTL and are evicted in LRU order.
+ */
+@Service
+public class IdentificationCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdentificationCache.class);
+    private static final String METRIC_PREFIX = "buggloo.identification.cache";
+
+    private final OpenAIConfig.Cache settings;
+    private final LinkedHashMap<Long, Entry> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expirations;
+
+    public IdentificationCache(OpenAIConfig config, MeterRegistry meterRegistry) {
+        this.settings = config.getCache();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                if (size() > settings.getMaxEntries()) {
+                    sizeEvictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+
+        this.hits = Counter.builder(METRIC_PREFIX + ".gets").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder(METRIC_PREFIX + ".gets").tag("result", "miss").register(meterRegistry);
+        this.sizeEvictions = Counter.builder(METRIC_PREFIX + ".evictions").tag("cause", "size").register(meterRegistry);
+        this.expirations = Counter.builder(METRIC_PREFIX + ".evictions").tag("cause", "expired").register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".size", this, IdentificationCache::size).register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached identification for an image close enough to the given one,
+     * or runs the identifier and caches its outcome.
+     *
+     * @param image the uploaded image
+     * @param identifier performs the actual identification on a cache miss
+     * @return the identified insect
+     * @throws NoInsectException if the image (or a cached near-duplicate) contains no insect
+     */
+    public Insect getOrIdentify(PreparedImage image, Supplier<Insect> identifier) {
+        return getOrIdentify(image, identifier, true);
+    }
+
+    /**
+     * Returns the cached identification for an image close enough to the given one, or
+     * runs the identifier, caching its outcome only if asked to. Identifiers that produce
+     * partial results still have their "no insect" outcomes cached, which do not depend
+     * on the properties requested.
+     *
+     * @param image the uploaded image
+     * @param identifier performs the actual identification on a cache miss
+     * @param cacheResult whether an identified insect is complete and may be cached
+     * @return the identified insect
+     * @throws NoInsectException if the image (or a cached near-duplicate) contains no insect
+     */
+    public Insect getOrIdentify(PreparedImage image, Supplier<Insect> identifier, boolean cacheResult) {
+        if (!settings.isEnabled()) {
+            return identifier.get();
+        }
+
+        OptionalLong hash = hash(image);
+        if (hash.isEmpty()) {
+            logger.debug("Could not compute perceptual hash, bypassing identification cache");
+            misses.increment();
+            return identifier.get();
+        }
+
+        Entry cached = lookup(hash.getAsLong());
+        if (cached != null) {
+            hits.increment();
+            logger.debug("Identification cache hit for hash {}", Long.toHexString(hash.getAsLong()));
+            if (cached.insect == null) {
+                throw new NoInsectException("No insect identified");
+            }
+            return cached.insect;
+        }
+
+        misses.increment();
+        try {
+            Insect result = identifier.get();
+            if (cacheResult) {
+                store(hash.getAsLong(), result);
+            }
+            return result;
+        } catch (NoInsectException e) {
+            if (settings.isCacheNegativeResults()) {
+                store(hash.getAsLong(), null);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #getOrIdentify(PreparedImage, Supplier)}.
+     *
+     * @param image the uploaded image
+     * @param identifier starts the actual identification on a cache miss
+     * @return a future with the identified insect, failed with {@link NoInsectException}
+     *         if the image (or a cached near-duplicate) contains no insect
+     */
+    public CompletableFuture<Insect> getOrIdentifyAsync(PreparedImage image, Supplier<CompletableFuture<Insect>> identifier) {
+        return getOrIdentifyAsync(image, identifier, true);
+    }
+
+    /**
+     * Non-blocking variant of {@link #getOrIdentify(PreparedImage, Supplier, boolean)}.
+     *
+     * @param image the uploaded image
+     * @param identifier starts the actual identification on a cache miss
+     * @param cacheResult whether an identified insect is complete and may be cached
+     * @return a future with the identified insect, failed with {@link NoInsectException}
+     *         if the image (or a cached near-duplicate) contains no insect
+     */
+    public CompletableFuture<Insect> getOrIdentifyAsync(PreparedImage image, Supplier<CompletableFuture<Insect>> identifier,
+                                                        boolean cacheResult) {
+        if (!settings.isEnabled()) {
+            return identifier.get();
+        }
+
+        OptionalLong hash = hash(image);
+        if (hash.isEmpty()) {
+            misses.increment();
+            return identifier.get();
+        }
+
+        Entry cached = lookup(hash.getAsLong());
+        if (cached != null) {
+            hits.increment();
+            return cached.insect == null
+                    ? CompletableFuture.failedFuture(new NoInsectException("No insect identified"))
+                    : CompletableFuture.completedFuture(cached.insect);
+        }
+
+        misses.increment();
+        return identifier.get().whenComplete((insect, error) -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause == null && cacheResult) {
+                store(hash.getAsLong(), insect);
+            } else if (cause instanceof NoInsectException && settings.isCacheNegativeResults()) {
+                store(hash.getAsLong(), null);
+            }
+        });
+    }
+
+    /**
+     * Returns the number of cached identifications.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static OptionalLong hash(PreparedImage image) {
+        try (InputStream content = image.openStream()) {
+            return PerceptualHash.dHash(content);
+        } catch (IOException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    private synchronized Entry lookup(long hash) {
+        long now = System.nanoTime();
+
+        Entry exact = entries.get(hash);
+        if (exact != null) {
+            if (!exact.isExpired(now)) {
+                return exact;
+            }
+            entries.remove(hash);
+            expirations.increment();
+        }
+
+        Entry closest = null;
+        int closestDistance = Integer.MAX_VALUE;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.isExpired(now)) {
+                iterator.remove();
+                expirations.increment();
+                continue;
+            }
+            int distance = PerceptualHash.distance(hash, entry.hash);
+            if (distance <= settings.getHammingThreshold() && distance < closestDistance) {
+                closest = entry;
+                closestDistance = distance;
+            }
+        }
+
+        if (closest != null) {
+            // Touch the entry so it moves to the most recently used position
+            entries.get(closest.hash);
+        }
+        return closest;
+    }
+
+    private synchronized void store(long hash, Insect insect) {
+        long expiresAt = System.nanoTime() + settings.getTtl().toNanos();
+        entries.put(hash, new Entry(hash, insect, expiresAt));
+    }
+
+    private static final class Entry {
+
+        private final long hash;
+        private final Insect insect;
+        private final long expiresAt;
+
+        private Entry(long hash, Insect insect, long expiresAt) {
+            this.hash = hash;
+            this.insect = insect;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
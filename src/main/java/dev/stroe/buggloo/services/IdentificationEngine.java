@@ -0,0 +1,60 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.exceptions.NoInsectException;
+import dev.stroe.buggloo.exceptions.ServiceException;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.InsectProjection;
+import dev.stroe.buggloo.models.PreparedImage;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Identifies the insect in a single prepared image.
+ */
+public interface IdentificationEngine {
+
+    /**
+     * Identifies the insect in the image.
+     *
+     * @param image the prepared image data and its MIME type
+     * @return Insect object with identification results
+     * @throws NoInsectException if the image shows no insect
+     * @throws ServiceException if identification fails
+     */
+    Insect identifyInsect(PreparedImage image);
+
+    /**
+     * Non-blocking variant of {@link #identifyInsect(PreparedImage)}.
+     *
+     * @param image the prepared image data and its MIME type
+     * @return a future completed with the identification results, or failed with the same
+     *         exceptions the blocking variant throws
+     */
+    CompletableFuture<Insect> identifyInsectAsync(PreparedImage image);
+
+    /**
+     * Identifies the insect in the image, generating only the properties of a projection
+     * where the engine can. The others may be null or hold known values.
+     *
+     * @param image the prepared image data and its MIME type
+     * @param projection the properties the caller needs
+     * @return Insect object with at least the projected properties
+     * @throws NoInsectException if the image shows no insect
+     * @throws ServiceException if identification fails
+     */
+    default Insect identifyInsect(PreparedImage image, InsectProjection projection) {
+        return identifyInsect(image);
+    }
+
+    /**
+     * Non-blocking variant of {@link #identifyInsect(PreparedImage, InsectProjection)}.
+     *
+     * @param image the prepared image data and its MIME type
+     * @param projection the properties the caller needs
+     * @return a future completed with the identification results, or failed with the same
+     *         exceptions the blocking variant throws
+     */
+    default CompletableFuture<Insect> identifyInsectAsync(PreparedImage image, InsectProjection projection) {
+        return identifyInsectAsync(image);
+    }
+}
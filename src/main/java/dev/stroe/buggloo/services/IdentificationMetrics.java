@@ -0,0 +1,101 @@
+package dev.stroe.buggloo.services;
+
+import io.micrometer.core.instrument.LongTaskTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Times the stages an identification request passes through, so it is visible where
+ * the time of a slow request goes. Each stage has a timer, {@code buggloo.identify.stage},
+ * and a long task timer, {@code buggloo.identify.stage.active}, whose active count is the
+ * number of requests currently in that stage.
+ */
+@Service
+public class IdentificationMetrics {
+
+    private static final String METRIC_NAME = "buggloo.identify.stage";
+
+    /**
+     * Stage of an identification request, in the order they are passed.
+     */
+    public enum Stage {
+        /** Checking the upload's content type and filename. */
+        VALIDATION,
+        /** Reading the upload and shrinking it for the vision model. */
+        PREPROCESSING,
+        /** Base64 encoding the prepared image into a data URL. */
+        ENCODING,
+        /** Waiting for OpenAI, including queueing for a permit; once per call when several are made. */
+        UPSTREAM,
+        /** Parsing the structured completion into the result. */
+        PARSING
+    }
+
+    private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongTaskTimer> activeTimers = new EnumMap<>(Stage.class);
+
+    public IdentificationMetrics(MeterRegistry meterRegistry) {
+        for (Stage stage : Stage.values()) {
+            String tag = stage.name().toLowerCase();
+            timers.put(stage, Timer.builder(METRIC_NAME).tag("stage", tag).register(meterRegistry));
+            activeTimers.put(stage, LongTaskTimer.builder(METRIC_NAME + ".active").tag("stage", tag).register(meterRegistry));
+        }
+    }
+
+    /**
+     * Runs the work as the given stage, whether it completes or fails.
+     */
+    public <T> T record(Stage stage, Supplier<T> work) {
+        Sample sample = start(stage);
+        try {
+            return work.get();
+        } finally {
+            sample.stop();
+        }
+    }
+
+    /**
+     * Runs the work as the given stage, whether it completes or fails.
+     */
+    public void record(Stage stage, Runnable work) {
+        Sample sample = start(stage);
+        try {
+            work.run();
+        } finally {
+            sample.stop();
+        }
+    }
+
+    /**
+     * Starts timing a stage that completes asynchronously.
+     */
+    public Sample start(Stage stage) {
+        return new Sample(stage, Timer.start(), activeTimers.get(stage).start());
+    }
+
+    /**
+     * A stage in progress, recorded on {@link #stop()}.
+     */
+    public final class Sample {
+
+        private final Stage stage;
+        private final Timer.Sample timerSample;
+        private final LongTaskTimer.Sample activeSample;
+
+        private Sample(Stage stage, Timer.Sample timerSample, LongTaskTimer.Sample activeSample) {
+            this.stage = stage;
+            this.timerSample = timerSample;
+            this.activeSample = activeSample;
+        }
+
+        public void stop() {
+            activeSample.stop();
+            timerSample.stop(timers.get(stage));
+        }
+    }
+}
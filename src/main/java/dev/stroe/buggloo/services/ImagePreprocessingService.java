@@ -0,0 +1,183 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.ImagePreprocessingConfig;
+import dev.stroe.buggloo.exceptions.InvalidImageException;
+import dev.stroe.buggloo.models.PreparedImage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Service for shrinking uploaded images before they are sent to the vision model.
+ * Images are downscaled to a maximum edge and re-encoded as JPEG without metadata.
+ */
+@Service
+public class ImagePreprocessingService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImagePreprocessingService.class);
+    private static final String OUTPUT_MIME_TYPE = "image/jpeg";
+
+    private final ImagePreprocessingConfig config;
+    private final IdentificationMetrics metrics;
+    private final DistributionSummary uploadSize;
+    private final DistributionSummary bytesSaved;
+
+    public ImagePreprocessingService(ImagePreprocessingConfig config, IdentificationMetrics metrics,
+                                     MeterRegistry meterRegistry) {
+        this.config = config;
+        this.metrics = metrics;
+        this.uploadSize = DistributionSummary.builder("buggloo.image.upload.size")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.bytesSaved = DistributionSummary.builder("buggloo.image.preprocessing.bytes.saved")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Prepares an uploaded image for the vision model. The upload is decoded straight
+     * from its stream; images that cannot be decoded locally (e.g. WebP) or would not
+     * shrink are passed through unchanged, still backed by the upload itself.
+     *
+     * @param upload the uploaded image, e.g. a {@code MultipartFile}
+     * @param size the upload size in bytes
+     * @param mimeType the MIME type sniffed from the content by {@link ImageValidationService},
+     *                 sent along with the image when it is passed through
+     * @return the prepared image
+     * @throws InvalidImageException if the image exceeds the pixel budget
+     */
+    public PreparedImage preprocess(InputStreamSource upload, long size, String mimeType) {
+        uploadSize.record(size);
+        return metrics.record(IdentificationMetrics.Stage.PREPROCESSING, () -> prepare(upload, size, mimeType));
+    }
+
+    private PreparedImage prepare(InputStreamSource upload, long size, String mimeType) {
+        PreparedImage passThrough = new PreparedImage(upload, size, normaliseMimeType(mimeType));
+        if (!config.isEnabled()) {
+            return passThrough;
+        }
+
+        PreparedImage prepared;
+        try (InputStream content = upload.getInputStream();
+             ImageInputStream input = ImageIO.createImageInputStream(content)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                logger.debug("No local decoder for {}, sending image unchanged", mimeType);
+                return passThrough;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                prepared = resize(reader, upload, size);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to preprocess image, sending it unchanged: {}", e.getMessage());
+            return passThrough;
+        }
+
+        bytesSaved.record(Math.max(0, prepared.getBytesSaved()));
+        logger.debug("Preprocessed image from {} to {} bytes ({} bytes saved)",
+                prepared.getOriginalSize(), prepared.getSize(), prepared.getBytesSaved());
+        return prepared;
+    }
+
+    private PreparedImage resize(ImageReader reader, InputStreamSource upload, long size) throws IOException {
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        if ((long) width * height > config.getMaxPixels()) {
+            throw new InvalidImageException("Image dimensions " + width + "x" + height + " exceed the allowed pixel count");
+        }
+
+        // Subsample while decoding by the largest whole step that still leaves at least
+        // max-edge pixels, so that a large photo is decoded at under twice max-edge rather
+        // than at full resolution; images under twice max-edge are decoded in full
+        int maxEdge = config.getMaxEdge();
+        int step = Math.max(1, Math.max(width, height) / maxEdge);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(step, step, 0, 0);
+        BufferedImage decoded = reader.read(0, param);
+
+        boolean downscaled = Math.max(width, height) > maxEdge;
+        byte[] encoded = encodeJpeg(toRgb(decoded, maxEdge));
+
+        // Re-encoding an already small, well-compressed image can make it larger
+        if (!downscaled && encoded.length >= size) {
+            return new PreparedImage(upload, size, mimeTypeOf(reader));
+        }
+        return new PreparedImage(encoded, OUTPUT_MIME_TYPE, size);
+    }
+
+    private BufferedImage toRgb(BufferedImage source, int maxEdge) {
+        double scale = Math.min(1.0, (double) maxEdge / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // JPEG has no alpha channel, so flatten transparent areas onto white
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(config.getQuality());
+            writer.setOutput(imageOutput);
+            // No metadata is passed, so EXIF/GPS and other segments are dropped
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    private static String mimeTypeOf(ImageReader reader) {
+        String[] mimeTypes = reader.getOriginatingProvider().getMIMETypes();
+        return mimeTypes != null && mimeTypes.length > 0 ? normaliseMimeType(mimeTypes[0]) : OUTPUT_MIME_TYPE;
+    }
+
+    private static String normaliseMimeType(String mimeType) {
+        if (mimeType == null) {
+            return OUTPUT_MIME_TYPE;
+        }
+        String normalised = mimeType.toLowerCase(Locale.ROOT);
+        return normalised.equals("image/jpg") ? OUTPUT_MIME_TYPE : normalised;
+    }
+}
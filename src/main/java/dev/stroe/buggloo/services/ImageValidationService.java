@@ -1,13 +1,32 @@
 package dev.stroe.buggloo.services;
 
+import dev.stroe.buggloo.config.ImagePreprocessingConfig;
 import dev.stroe.buggloo.exceptions.InvalidImageException;
+import dev.stroe.buggloo.exceptions.ServiceException;
+import dev.stroe.buggloo.models.BatchImage;
+import dev.stroe.buggloo.models.ImageHeader;
+import dev.stroe.buggloo.utils.ImageHeaderSniffer;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.FilePart;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
- * Service for validating uploaded images.
+ * Service for validating uploaded images. Besides the declared content type and filename,
+ * the first bytes of the content are sniffed for the real format and dimensions, so that
+ * non-images, truncated images and images over the pixel budget are rejected before
+ * anything decodes them.
  */
 @Service
 public class ImageValidationService {
@@ -21,25 +40,186 @@ public class ImageValidationService {
             "image/webp"
     );
 
+    private static final String UNSUPPORTED_FORMAT = "Invalid image format. Supported formats: JPEG, PNG, GIF, BMP, WebP";
+
+    private final IdentificationMetrics metrics;
+    private final ImagePreprocessingConfig preprocessingConfig;
+
+    public ImageValidationService(IdentificationMetrics metrics, ImagePreprocessingConfig preprocessingConfig) {
+        this.metrics = metrics;
+        this.preprocessingConfig = preprocessingConfig;
+    }
+
     /**
      * Validates the uploaded image file.
      * 
      * @param file the uploaded file
+     * @return the header sniffed from the content
      * @throws InvalidImageException if the file is invalid
      */
-    public void validateImage(MultipartFile file) {
+    public ImageHeader validateImage(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new InvalidImageException("No image file provided");
         }
 
-        String contentType = file.getContentType();
+        validate(file.getContentType(), file.getOriginalFilename());
+        return inspect(file);
+    }
+
+    /**
+     * Validates the headers of an image part uploaded to the reactive endpoints.
+     * The content itself has not been read yet; it is checked by {@link #inspectContent}
+     * as it arrives.
+     * 
+     * @param part the uploaded part
+     * @throws InvalidImageException if the part is invalid
+     */
+    public void validateImage(FilePart part) {
+        if (part == null) {
+            throw new InvalidImageException("No image file provided");
+        }
+
+        MediaType contentType = part.headers().getContentType();
+        validate(contentType != null ? contentType.getType() + "/" + contentType.getSubtype() : null, part.filename());
+    }
+
+    /**
+     * Validates one image of a batch upload.
+     * 
+     * @param image the uploaded image
+     * @return the header sniffed from the content
+     * @throws InvalidImageException if the image is invalid
+     */
+    public ImageHeader validateImage(BatchImage image) {
+        if (image == null || image.getSize() == 0) {
+            throw new InvalidImageException("No image file provided");
+        }
+
+        validate(image.getContentType(), image.getFilename());
+        return inspect(image.getSource());
+    }
+
+    /**
+     * Passes the content of a part through while checking its header. The header is
+     * sniffed as soon as the first {@link ImageHeaderSniffer#HEADER_WINDOW} bytes, or the
+     * whole content if it is shorter, have arrived; an invalid one fails the returned
+     * Flux and cancels reading the rest of the part.
+     * 
+     * @param content the content of an uploaded part
+     * @param headerConsumer receives the sniffed header once the content has passed the check
+     * @return the content
+     */
+    public Flux<DataBuffer> inspectContent(Flux<DataBuffer> content, Consumer<ImageHeader> headerConsumer) {
+        return Flux.defer(() -> {
+            HeaderWindow window = new HeaderWindow();
+            return content
+                    .<DataBuffer>handle((buffer, sink) -> {
+                        if (window.append(buffer)) {
+                            try {
+                                headerConsumer.accept(inspect(window.bytes, window.length, false));
+                            } catch (InvalidImageException e) {
+                                DataBufferUtils.release(buffer);
+                                sink.error(e);
+                                return;
+                            }
+                        }
+                        sink.next(buffer);
+                    })
+                    .concatWith(Mono.fromRunnable(() -> {
+                        if (!window.full()) {
+                            headerConsumer.accept(inspect(window.bytes, window.length, true));
+                        }
+                    }));
+        });
+    }
+
+    /**
+     * Checks the leading bytes of an upload: that they hold a supported image format
+     * with an intact header, and that its dimensions are within the pixel budget.
+     * 
+     * @param head the first bytes of the content
+     * @param length the number of valid bytes in {@code head}
+     * @param complete whether {@code head} holds the whole content
+     * @return the sniffed header
+     * @throws InvalidImageException if the content is not an acceptable image
+     */
+    public ImageHeader inspect(byte[] head, int length, boolean complete) {
+        return metrics.record(IdentificationMetrics.Stage.VALIDATION, () -> checkContent(head, length, complete));
+    }
+
+    private ImageHeader inspect(InputStreamSource upload) {
+        try (InputStream content = upload.getInputStream()) {
+            byte[] head = content.readNBytes(ImageHeaderSniffer.HEADER_WINDOW);
+            return inspect(head, head.length, head.length < ImageHeaderSniffer.HEADER_WINDOW);
+        } catch (IOException e) {
+            throw new ServiceException("Failed to read uploaded image: " + e.getMessage(), e);
+        }
+    }
+
+    private ImageHeader checkContent(byte[] head, int length, boolean complete) {
+        if (length == 0 && complete) {
+            throw new InvalidImageException("No image file provided");
+        }
+
+        ImageHeader header;
+        try {
+            header = ImageHeaderSniffer.sniff(head, length, complete)
+                    .orElseThrow(() -> new InvalidImageException(UNSUPPORTED_FORMAT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidImageException(e.getMessage(), e);
+        }
+
+        if (header.hasDimensions() && header.getPixelCount() > preprocessingConfig.getMaxPixels()) {
+            throw new InvalidImageException("Image dimensions " + header.getWidth() + "x" + header.getHeight()
+                    + " exceed the allowed pixel count");
+        }
+        return header;
+    }
+
+    private void validate(String contentType, String filename) {
+        metrics.record(IdentificationMetrics.Stage.VALIDATION, () -> checkHeaders(contentType, filename));
+    }
+
+    private static void checkHeaders(String contentType, String filename) {
         if (contentType == null || !ALLOWED_CONTENT_TYPES.contains(contentType.toLowerCase())) {
-            throw new InvalidImageException("Invalid image format. Supported formats: JPEG, PNG, GIF, BMP, WebP");
+            throw new InvalidImageException(UNSUPPORTED_FORMAT);
         }
 
-        String filename = file.getOriginalFilename();
         if (filename == null || filename.trim().isEmpty()) {
             throw new InvalidImageException("Invalid filename");
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * The first bytes of a part's content, collected across the buffers they arrive in.
+     */
+    private static final class HeaderWindow {
+
+        private final byte[] bytes = new byte[ImageHeaderSniffer.HEADER_WINDOW];
+        private int length;
+
+        /**
+         * Copies the start of the buffer into the window without consuming it.
+         * 
+         * @return whether this buffer filled the window
+         */
+        boolean append(DataBuffer buffer) {
+            if (full()) {
+                return false;
+            }
+            try (DataBuffer.ByteBufferIterator iterator = buffer.readableByteBuffers()) {
+                while (iterator.hasNext() && !full()) {
+                    ByteBuffer chunk = iterator.next();
+                    int count = Math.min(chunk.remaining(), bytes.length - length);
+                    chunk.get(bytes, length, count);
+                    length += count;
+                }
+            }
+            return full();
+        }
+
+        boolean full() {
+            return length == bytes.length;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.openai.core.JsonValue;
+import com.openai.models.ChatModel;
+import com.openai.models.ResponseFormatJsonSchema;
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.InsectIdentification;
+import dev.stroe.buggloo.models.InsectProjection;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Structured-output formats for {@link Insect} restricted to the properties of an
+ * {@link InsectProjection}, so that the model generates only what the client asked for,
+ * and for the {@link InsectIdentification} triage call.
+ * <p>
+ * Deriving a format from a class means generating and validating its JSON schema, so each
+ * format is built once, together with its {@link ModelCascade#withConfidence confidence}
+ * variant for the small model. The restricted schemas are cut from the one the SDK
+ * generates for the whole class, so property descriptions and types stay the same. The
+ * most recently requested projections are kept, up to a small bound, since clients tend
+ * to ask for the same few.
+ */
+final class InsectResponseFormat {
+
+    private static final int MAX_CACHED_FORMATS = 64;
+
+    private static final Variants FULL = Variants.of(generate(Insect.class));
+
+    private static final Variants SPECIES = Variants.of(generate(InsectIdentification.class));
+
+    private static final Map<Set<String>, Variants> RESTRICTED = new ConcurrentHashMap<>();
+
+    private InsectResponseFormat() {
+    }
+
+    /**
+     * Returns the response format generating the properties of a projection.
+     *
+     * @param projection the properties to generate
+     * @param withConfidence whether the model also reports how sure it is
+     */
+    static ResponseFormatJsonSchema of(InsectProjection projection, boolean withConfidence) {
+        return variants(projection).get(withConfidence);
+    }
+
+    /**
+     * Returns the response format of the species triage call.
+     *
+     * @param withConfidence whether the model also reports how sure it is
+     */
+    static ResponseFormatJsonSchema species(boolean withConfidence) {
+        return SPECIES.get(withConfidence);
+    }
+
+    /**
+     * Returns a copy of the JSON schema of a format.
+     */
+    static ObjectNode schemaOf(ResponseFormatJsonSchema.JsonSchema jsonSchema) {
+        // The SDK keeps the schemas it generates as raw JSON, withSchema() builds typed ones
+        JsonValue schema = jsonSchema._schema().asUnknown()
+                .orElseGet(() -> JsonValue.from(jsonSchema.schema().orElseThrow()._additionalProperties()));
+        return schema.convert(ObjectNode.class);
+    }
+
+    /**
+     * Returns a format with the same name and settings as another one, but a different schema.
+     */
+    static ResponseFormatJsonSchema withSchema(ResponseFormatJsonSchema.JsonSchema jsonSchema, ObjectNode schema) {
+        ResponseFormatJsonSchema.JsonSchema.Schema.Builder builder = ResponseFormatJsonSchema.JsonSchema.Schema.builder();
+        schema.fields().forEachRemaining(field ->
+                builder.putAdditionalProperty(field.getKey(), JsonValue.fromJsonNode(field.getValue())));
+        return ResponseFormatJsonSchema.builder()
+                .jsonSchema(jsonSchema.toBuilder().schema(builder.build()).build())
+                .build();
+    }
+
+    private static Variants variants(InsectProjection projection) {
+        if (projection.isAll()) {
+            return FULL;
+        }
+
+        Variants variants = RESTRICTED.get(projection.getProperties());
+        if (variants == null) {
+            variants = Variants.of(restrict(projection.getProperties()));
+            if (RESTRICTED.size() >= MAX_CACHED_FORMATS) {
+                RESTRICTED.clear();
+            }
+            RESTRICTED.put(projection.getProperties(), variants);
+        }
+        return variants;
+    }
+
+    private static ResponseFormatJsonSchema generate(Class<?> type) {
+        return ChatCompletionCreateParams.builder()
+                .model(ChatModel.GPT_4_1)
+                .responseFormat(type)
+                .addUserMessage("")
+                .build()
+                .rawParams()
+                .responseFormat()
+                .orElseThrow()
+                .asJsonSchema();
+    }
+
+    private static ResponseFormatJsonSchema restrict(Set<String> properties) {
+        ResponseFormatJsonSchema.JsonSchema full = FULL.plain().jsonSchema();
+        ObjectNode schema = schemaOf(full);
+        ObjectNode kept = ((ObjectNode) schema.get("properties")).retain(properties);
+
+        // Strict mode requires every property to be listed as required
+        ArrayNode required = schema.putArray("required");
+        kept.fieldNames().forEachRemaining(required::add);
+
+        return withSchema(full, schema);
+    }
+
+    private record Variants(ResponseFormatJsonSchema plain, ResponseFormatJsonSchema confident) {
+
+        static Variants of(ResponseFormatJsonSchema format) {
+            return new Variants(format, ModelCascade.withConfidence(format));
+        }
+
+        ResponseFormatJsonSchema get(boolean withConfidence) {
+            return withConfidence ? confident : plain;
+        }
+    }
+}
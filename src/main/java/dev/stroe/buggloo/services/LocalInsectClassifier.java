@@ -0,0 +1,238 @@
+package dev.stroe.buggloo.services;
+
+import ai.onnxruntime.NodeInfo;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+import dev.stroe.buggloo.config.LocalClassifierConfig;
+import dev.stroe.buggloo.models.Classification;
+import dev.stroe.buggloo.models.PreparedImage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Classifies insect images in-process with a compact ONNX model on the CPU, in
+ * milliseconds and without a network round trip.
+ * <p>
+ * Each classification runs on a single core; up to {@code threads} images are classified
+ * at the same time on a dedicated pool, so a burst of uploads queues instead of
+ * oversubscribing the CPUs serving requests.
+ */
+@Service
+public class LocalInsectClassifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalInsectClassifier.class);
+
+    // ImageNet channel statistics, which compact pretrained classifiers are normalised with
+    private static final float[] MEAN = {0.485f, 0.456f, 0.406f};
+    private static final float[] STD = {0.229f, 0.224f, 0.225f};
+
+    private final LocalClassifierConfig config;
+    private final Timer inferenceTimer;
+
+    private OrtEnvironment environment;
+    private OrtSession session;
+    private String inputName;
+    private List<String> labels;
+    private ExecutorService executor;
+
+    public LocalInsectClassifier(LocalClassifierConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.inferenceTimer = Timer.builder("buggloo.identification.local.inference")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns whether a local model is configured and loaded.
+     */
+    public boolean isEnabled() {
+        return session != null;
+    }
+
+    /**
+     * Classifies an image.
+     *
+     * @param image the prepared image data and its MIME type
+     * @return the top class, or empty if the image cannot be decoded locally (e.g. WebP)
+     * @throws IllegalStateException if the classifier is not enabled
+     * @throws IOException if reading the image or running the model fails
+     */
+    public Optional<Classification> classify(PreparedImage image) throws IOException {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Local classifier is not enabled");
+        }
+
+        BufferedImage decoded;
+        try (InputStream content = image.openStream()) {
+            decoded = ImageIO.read(content);
+        }
+        if (decoded == null) {
+            return Optional.empty();
+        }
+
+        float[] scores;
+        Timer.Sample sample = Timer.start();
+        try (OnnxTensor input = OnnxTensor.createTensor(environment, toPixels(decoded),
+                new long[] {1, 3, config.getInputSize(), config.getInputSize()});
+             OrtSession.Result result = session.run(Map.of(inputName, input))) {
+            scores = ((float[][]) result.get(0).getValue())[0];
+        } catch (OrtException e) {
+            throw new IOException("Local classification failed: " + e.getMessage(), e);
+        } finally {
+            sample.stop(inferenceTimer);
+        }
+
+        if (config.isSoftmax()) {
+            softmax(scores);
+        }
+        int top = 0;
+        for (int i = 1; i < scores.length; i++) {
+            if (scores[i] > scores[top]) {
+                top = i;
+            }
+        }
+        return Optional.of(new Classification(labels.get(top), scores[top]));
+    }
+
+    /**
+     * Classifies an image on the classifier's own thread pool.
+     *
+     * @param image the prepared image data and its MIME type
+     * @return a future completed like {@link #classify(PreparedImage)}, or failed with the
+     *         exception it throws
+     */
+    public CompletableFuture<Optional<Classification>> classifyAsync(PreparedImage image) {
+        CompletableFuture<Optional<Classification>> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(classify(image));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @PostConstruct
+    public void load() throws IOException, OrtException {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (config.getModelPath() == null || config.getLabelsPath() == null) {
+            throw new IllegalStateException("identification.local.model-path and labels-path are required");
+        }
+
+        labels = Files.readAllLines(Path.of(config.getLabelsPath())).stream()
+                .map(String::trim)
+                .filter(label -> !label.isEmpty())
+                .toList();
+
+        environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            // Parallelism comes from classifying several images at once, not from splitting one
+            options.setIntraOpNumThreads(1);
+            options.setInterOpNumThreads(1);
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            session = environment.createSession(config.getModelPath(), options);
+        }
+        inputName = session.getInputNames().iterator().next();
+
+        NodeInfo output = session.getOutputInfo().values().iterator().next();
+        long[] shape = ((TensorInfo) output.getInfo()).getShape();
+        long classes = shape[shape.length - 1];
+        if (classes > 0 && classes != labels.size()) {
+            close();
+            throw new IllegalStateException("Model returns " + classes + " classes but "
+                    + labels.size() + " labels are configured");
+        }
+
+        int threads = config.getThreads() > 0 ? config.getThreads() : Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(threads, Thread.ofPlatform()
+                .name("local-classifier-", 0)
+                .daemon(true)
+                .factory());
+        logger.info("Loaded local classifier {} with {} classes on {} threads",
+                config.getModelPath(), labels.size(), threads);
+    }
+
+    @PreDestroy
+    public void close() throws OrtException {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+    }
+
+    /**
+     * Scales the shorter side of the image to the model input size, crops the centre and
+     * returns the normalised pixels in channel-major order.
+     */
+    private FloatBuffer toPixels(BufferedImage source) {
+        int size = config.getInputSize();
+        int side = Math.min(source.getWidth(), source.getHeight());
+        int x = (source.getWidth() - side) / 2;
+        int y = (source.getHeight() - side) / 2;
+
+        BufferedImage resized = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(source, 0, 0, size, size, x, y, x + side, y + side, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        int[] rgb = resized.getRGB(0, 0, size, size, null, 0, size);
+        int plane = size * size;
+        float[] pixels = new float[3 * plane];
+        for (int i = 0; i < plane; i++) {
+            pixels[i] = (((rgb[i] >> 16) & 0xff) / 255f - MEAN[0]) / STD[0];
+            pixels[plane + i] = (((rgb[i] >> 8) & 0xff) / 255f - MEAN[1]) / STD[1];
+            pixels[2 * plane + i] = ((rgb[i] & 0xff) / 255f - MEAN[2]) / STD[2];
+        }
+        return FloatBuffer.wrap(pixels);
+    }
+
+    private static void softmax(float[] scores) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (float score : scores) {
+            max = Math.max(max, score);
+        }
+        float sum = 0;
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = (float) Math.exp(scores[i] - max);
+            sum += scores[i];
+        }
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] /= sum;
+        }
+    }
+}
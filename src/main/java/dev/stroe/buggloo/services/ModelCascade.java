@@ -0,0 +1,186 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.openai.models.ResponseFormatJsonSchema;
+import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.completions.CompletionUsage;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.exceptions.ServiceException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The model tiers identification calls are made on. With the cascade enabled, a small,
+ * fast model answers first and reports its confidence, and the large model
+ * ({@code openai.model}) is called only when that answer is not accepted; otherwise every
+ * call is made on the large model.
+ * <p>
+ * Tuning the thresholds is guided by three meters: {@code buggloo.cascade.calls}, the
+ * latency of the calls on each tier, {@code buggloo.cascade.decisions}, the accepted and
+ * escalated answers of the small model with the reason for each escalation, and
+ * {@code buggloo.cascade.cost}, the price in US dollars of the tokens used on each tier,
+ * for the models {@code openai.pricing} lists.
+ */
+@Service
+public class ModelCascade {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelCascade.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final String METRIC_PREFIX = "buggloo.cascade";
+    private static final String CONFIDENCE = "confidence";
+    private static final double TOKENS_PER_PRICE_UNIT = 1_000_000.0;
+
+    /**
+     * Tier of the cascade a call is made on.
+     */
+    public enum Tier {
+        /** The small, fast model, whose answers come with a confidence. */
+        SMALL,
+        /** The model answers are escalated to, and the only one with the cascade disabled. */
+        LARGE
+    }
+
+    /**
+     * A structured answer of the small model and the confidence it reported, if any.
+     */
+    record Graded<T>(T value, Double confidence) {
+    }
+
+    private final OpenAIConfig config;
+    private final OpenAIConfig.Cascade settings;
+    private final MeterRegistry meterRegistry;
+
+    public ModelCascade(OpenAIConfig config, MeterRegistry meterRegistry) {
+        this.config = config;
+        this.settings = config.getCascade();
+        this.meterRegistry = meterRegistry;
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Returns the tier the first call of an identification is made on.
+     */
+    public Tier firstTier() {
+        return isEnabled() ? Tier.SMALL : Tier.LARGE;
+    }
+
+    /**
+     * Returns the model of a tier.
+     */
+    public String model(Tier tier) {
+        return tier == Tier.SMALL ? settings.getModel() : config.getModel();
+    }
+
+    /**
+     * Adds a required {@code confidence} property to a structured-output format, for the
+     * small model to report how sure it is of its answer.
+     */
+    static ResponseFormatJsonSchema withConfidence(ResponseFormatJsonSchema format) {
+        ResponseFormatJsonSchema.JsonSchema jsonSchema = format.jsonSchema();
+        ObjectNode schema = InsectResponseFormat.schemaOf(jsonSchema);
+        ((ObjectNode) schema.get("properties")).putObject(CONFIDENCE)
+                .put("type", "number")
+                .put("description", "How confident you are that this answer is correct, from 0 (a guess) to 1 (certain). "
+                        + "Be lower when the photo is blurry, dark, partial or shows a species easily confused with others.");
+        ((ArrayNode) schema.get("required")).add(CONFIDENCE);
+        return InsectResponseFormat.withSchema(jsonSchema, schema);
+    }
+
+    /**
+     * Reads a structured answer of the small model, separating the confidence from the
+     * answer itself.
+     */
+    static <T> Graded<T> grade(ChatCompletion completion, Class<T> type) {
+        String content = completion.choices().stream()
+                .flatMap(choice -> choice.message().content().stream())
+                .findFirst()
+                .orElseThrow(() -> new ServiceException("No identification result received from OpenAI"));
+        try {
+            ObjectNode answer = (ObjectNode) JSON.readTree(content);
+            JsonNode confidence = answer.remove(CONFIDENCE);
+            return new Graded<>(JSON.treeToValue(answer, type),
+                    confidence != null && confidence.isNumber() ? confidence.asDouble() : null);
+        } catch (Exception e) {
+            throw new ServiceException("Malformed identification result received from OpenAI", e);
+        }
+    }
+
+    /**
+     * Decides whether an answer of the small model is accepted or escalated to the large
+     * model, and counts the decision.
+     *
+     * @param operation the kind of call answered, as tagged on the upstream meters
+     * @param isInsect whether the answer says the photo shows an insect
+     * @param confidence the confidence reported with the answer
+     * @return whether the answer is accepted
+     */
+    public boolean accept(String operation, Boolean isInsect, Double confidence) {
+        String escalation;
+        if (confidence == null || isInsect == null) {
+            escalation = "ambiguous";
+        } else if (!isInsect && confidence < settings.getNoInsectConfidenceThreshold()) {
+            escalation = "not_insect";
+        } else if (confidence < settings.getConfidenceThreshold()) {
+            escalation = "low_confidence";
+        } else {
+            decision(operation, "accepted", "confident").increment();
+            return true;
+        }
+
+        logger.debug("Escalating {} answer (is_insect: {}, confidence: {}): {}", operation, isInsect, confidence, escalation);
+        decision(operation, "escalated", escalation).increment();
+        return false;
+    }
+
+    /**
+     * Records a completed call on a tier: its latency and the price of its tokens.
+     */
+    public void recordCall(Tier tier, long nanos, Optional<CompletionUsage> usage) {
+        String model = model(tier);
+        Timer.builder(METRIC_PREFIX + ".calls")
+                .tags("tier", tag(tier), "model", model)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+
+        OpenAIConfig.Pricing pricing = config.getPricing().get(model);
+        if (pricing == null || usage.isEmpty()) {
+            return;
+        }
+        CompletionUsage tokens = usage.get();
+        long cached = tokens.promptTokensDetails()
+                .flatMap(CompletionUsage.PromptTokensDetails::cachedTokens)
+                .orElse(0L);
+        double dollars = ((tokens.promptTokens() - cached) * pricing.getInput()
+                + cached * pricing.getCachedInput()
+                + tokens.completionTokens() * pricing.getOutput()) / TOKENS_PER_PRICE_UNIT;
+        Counter.builder(METRIC_PREFIX + ".cost")
+                .baseUnit("usd")
+                .tags("tier", tag(tier), "model", model)
+                .register(meterRegistry)
+                .increment(dollars);
+    }
+
+    private Counter decision(String operation, String outcome, String reason) {
+        return Counter.builder(METRIC_PREFIX + ".decisions")
+                .tags("operation", operation, "outcome", outcome, "reason", reason)
+                .register(meterRegistry);
+    }
+
+    private static String tag(Tier tier) {
+        return tier.name().toLowerCase();
+    }
+}
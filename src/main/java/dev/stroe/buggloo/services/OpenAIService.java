@@ -1,168 +1,749 @@
 package dev.stroe.buggloo.services;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.openai.client.OpenAIClient;
-import com.openai.client.okhttp.OpenAIOkHttpClient;
-import com.openai.models.ChatModel;
+import com.openai.core.http.StreamResponse;
+import com.openai.models.ResponseFormatJsonSchema;
+import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionChunk;
 import com.openai.models.chat.completions.ChatCompletionContentPart;
 import com.openai.models.chat.completions.ChatCompletionContentPartImage;
 import com.openai.models.chat.completions.ChatCompletionContentPartText;
 import com.openai.models.chat.completions.ChatCompletionCreateParams;
-import com.openai.models.chat.completions.StructuredChatCompletionCreateParams;
+import com.openai.models.chat.completions.ChatCompletionStreamOptions;
+import com.openai.models.chat.completions.StructuredChatCompletion;
+import com.openai.models.completions.CompletionUsage;
 
 import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.exceptions.InvalidImageException;
 import dev.stroe.buggloo.exceptions.NoInsectException;
 import dev.stroe.buggloo.exceptions.ServiceException;
+import dev.stroe.buggloo.exceptions.UpstreamBusyException;
+import dev.stroe.buggloo.models.ChatMessage;
 import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.InsectField;
+import dev.stroe.buggloo.models.InsectIdentification;
+import dev.stroe.buggloo.models.InsectProjection;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.utils.DataUrlEncoder;
+import dev.stroe.buggloo.utils.IncrementalJsonObjectParser;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * Service for interacting with OpenAI API to identify insects.
  */
 @Service
-public class OpenAIService {
+public class OpenAIService implements IdentificationEngine {
 
     private static final Logger logger = LoggerFactory.getLogger(OpenAIService.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
     private static final String IDENTIFICATION_PROMPT = "Identify the insect in the image provided. If the organism in the image is not an insect, set is_insect to false and provide as much information as possible about what it actually is.";
+    private static final String SPECIES_PROMPT = "Identify the insect in the image provided. If the organism in the image is not an insect, set is_insect to false.";
+    private static final String MULTI_VIEW_PROMPT_PREFIX = "The images provided are photos of the same specimen taken from different angles. Consider all of them together and describe it as one organism. ";
+
+    /**
+     * Output limit of the species-only call, which answers with three short fields.
+     */
+    private static final long SPECIES_MAX_TOKENS = 100;
+
+    /**
+     * Asks for a final chunk with the token usage of a streamed completion.
+     */
+    private static final ChatCompletionStreamOptions STREAM_OPTIONS = ChatCompletionStreamOptions.builder()
+            .includeUsage(true)
+            .build();
+
+    // Kinds of upstream calls, whose latencies are tracked separately for hedging
+    private static final String SPECIES_CALL = "species";
+    private static final String IDENTIFICATION_CALL = "identification";
+    private static final String CHAT_CALL = "chat";
+
+    /**
+     * Outcome of the species-only call: the stored record of a known species, or else the
+     * tier to identify the photo on.
+     */
+    private record SpeciesTriage(Optional<Insect> known, ModelCascade.Tier tier) {
+    }
 
     private final OpenAIClient client;
     private final OpenAIConfig config;
+    private final IdentificationCache identificationCache;
+    private final RequestCoalescer requestCoalescer;
+    private final UpstreamCallExecutor upstream;
+    private final SpeciesKnowledgeStore speciesKnowledge;
+    private final ModelCascade cascade;
+    private final SemanticChatCache chatCache;
+    private final IdentificationMetrics metrics;
+    private final AdmissionService admissionService;
 
-    public OpenAIService(OpenAIConfig config) {
+    public OpenAIService(OpenAIConfig config, OpenAIClient client, IdentificationCache identificationCache,
+                         RequestCoalescer requestCoalescer, UpstreamCallExecutor upstream,
+                         SpeciesKnowledgeStore speciesKnowledge, ModelCascade cascade, SemanticChatCache chatCache,
+                         IdentificationMetrics metrics, AdmissionService admissionService) {
         this.config = config;
-        this.client = OpenAIOkHttpClient.builder()
-                .apiKey(config.getApiKey())
-                .build();
+        this.client = client;
+        this.identificationCache = identificationCache;
+        this.requestCoalescer = requestCoalescer;
+        this.upstream = upstream;
+        this.speciesKnowledge = speciesKnowledge;
+        this.cascade = cascade;
+        this.chatCache = chatCache;
+        this.metrics = metrics;
+        this.admissionService = admissionService;
         logger.info("OpenAI service initialized.");
     }
 
     /**
-     * Identifies an insect from the provided image bytes.
+     * Identifies an insect from the provided image. Concurrent requests for
+     * byte-identical images share a single upstream call, and results for previously
+     * seen (or visually near-identical) images are served from the identification cache.
+     * <p>
+     * With the species knowledge store enabled, the model is first asked only which species
+     * the image shows. If that species has been identified before, its stored record is
+     * returned; otherwise the full structured identification is requested. With the
+     * {@link ModelCascade} enabled, both are asked of the small model first.
      * 
-     * @param imageBytes the image data as byte array
+     * @param image the prepared image data and its MIME type
      * @return Insect object with identification results
      * @throws ServiceException if identification fails
      */
-    public Insect identifyInsect(byte[] imageBytes) {
+    @Override
+    public Insect identifyInsect(PreparedImage image) {
+        return identifyInsect(image, InsectProjection.ALL);
+    }
+
+    /**
+     * Non-blocking variant of {@link #identifyInsect(PreparedImage)} built on the async OpenAI client.
+     *
+     * @param image the prepared image data and its MIME type
+     * @return a future completed with the identification results, or failed with the same
+     *         exceptions the blocking variant throws
+     */
+    @Override
+    public CompletableFuture<Insect> identifyInsectAsync(PreparedImage image) {
+        return identifyInsectAsync(image, InsectProjection.ALL);
+    }
+
+    /**
+     * Identifies an insect from the provided image, asking the model for the properties of
+     * a projection only, which shortens its answer. Identifications of the same image with
+     * the same projection share a single upstream call. A cached full record is served as
+     * is, but projected records are not cached, nor remembered as species knowledge.
+     *
+     * @param image the prepared image data and its MIME type
+     * @param projection the properties the caller needs
+     * @return Insect object with the projected properties set
+     * @throws ServiceException if identification fails
+     */
+    @Override
+    public Insect identifyInsect(PreparedImage image, InsectProjection projection) {
+        return requestCoalescer.execute(digestOf(image, projection),
+                () -> identificationCache.getOrIdentify(image,
+                        () -> requestIdentification(List.of(image), projection), projection.isAll()));
+    }
+
+    /**
+     * Non-blocking variant of {@link #identifyInsect(PreparedImage, InsectProjection)} built
+     * on the async OpenAI client.
+     *
+     * @param image the prepared image data and its MIME type
+     * @param projection the properties the caller needs
+     * @return a future completed with the identification results, or failed with the same
+     *         exceptions the blocking variant throws
+     */
+    @Override
+    public CompletableFuture<Insect> identifyInsectAsync(PreparedImage image, InsectProjection projection) {
+        return requestCoalescer.executeAsync(digestOf(image, projection),
+                () -> identificationCache.getOrIdentifyAsync(image,
+                        () -> requestIdentificationAsync(List.of(image), projection), projection.isAll()));
+    }
+
+    /**
+     * Identifies an insect from several photos of the same specimen, such as its top, side
+     * and underside, in a single call that sends every photo as its own image part and
+     * returns one consolidated result. Concurrent requests with the same photos share a
+     * single upstream call; results are not kept in the identification cache, which is
+     * keyed by single images. A single photo is identified like
+     * {@link #identifyInsect(PreparedImage)}.
+     *
+     * @param views the prepared photos, at most {@code openai.max-images-per-identification}
+     * @return Insect object with the consolidated identification results
+     * @throws InvalidImageException if no photos or too many photos are given
+     * @throws ServiceException if identification fails
+     */
+    public Insect identifyInsect(List<PreparedImage> views) {
+        checkViewCount(views);
+        if (views.size() == 1) {
+            return identifyInsect(views.get(0));
+        }
+        return requestCoalescer.execute(digestOf(views), () -> requestIdentification(views, InsectProjection.ALL));
+    }
+
+    /**
+     * Non-blocking variant of {@link #identifyInsect(List)} built on the async OpenAI client.
+     *
+     * @param views the prepared photos, at most {@code openai.max-images-per-identification}
+     * @return a future completed with the consolidated identification results, or failed with
+     *         the same exceptions the blocking variant throws
+     */
+    public CompletableFuture<Insect> identifyInsectAsync(List<PreparedImage> views) {
         try {
-            logger.debug("Starting insect identification for image of size: {} bytes", imageBytes.length);
+            checkViewCount(views);
+        } catch (InvalidImageException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (views.size() == 1) {
+            return identifyInsectAsync(views.get(0));
+        }
+        return requestCoalescer.executeAsync(digestOf(views), () -> requestIdentificationAsync(views, InsectProjection.ALL));
+    }
+
+    /**
+     * Streams the identification of an insect, emitting each top-level {@link Insect}
+     * property as soon as the model has finished generating it.
+     * <p>
+     * {@code isInsect} is the first property of the response schema, so when it arrives as
+     * false the stream fails with {@link NoInsectException} and the upstream completion is
+     * closed before the remaining fields are generated. Like
+     * {@link #streamChatResponse(List, String, String)}, chunks are pulled only on demand
+     * and cancelling the subscription closes the upstream stream. Streamed identifications
+     * are neither coalesced nor cached, and go to {@code openai.model} directly, since
+     * fields already sent cannot be taken back when escalating.
+     *
+     * @param image the prepared image data and its MIME type
+     * @return the completed fields in schema order, failing with {@link NoInsectException},
+     *         {@link ServiceException} or {@link UpstreamBusyException}
+     */
+    public Flux<InsectField> streamInsectIdentification(PreparedImage image) {
+        return Flux.using(upstream::acquireStreamPermit,
+                        permit -> Flux.using(
+                                () -> {
+                                    ChatCompletionCreateParams createParams = withStreamUsage(buildIdentificationParams(
+                                            List.of(encodeImage(image)), IDENTIFICATION_PROMPT,
+                                            InsectResponseFormat.of(InsectProjection.ALL, false),
+                                            config.getMaxTokens(), config.getModel()));
+                                    return upstream.openStream(() -> client.chat().completions().createStreaming(createParams));
+                                },
+                                this::toInsectFields,
+                                StreamResponse::close),
+                        UpstreamConcurrencyLimiter.Permit::close)
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(error -> !(error instanceof ServiceException), OpenAIService::identificationFailure);
+    }
+
+    private Flux<InsectField> toInsectFields(StreamResponse<ChatCompletionChunk> response) {
+        IncrementalJsonObjectParser parser = new IncrementalJsonObjectParser(JSON);
+        return Flux.fromStream(response.stream())
+                .doOnNext(chunk -> recordUsage(IDENTIFICATION_CALL, chunk.usage()))
+                .flatMapIterable(ChatCompletionChunk::choices)
+                .mapNotNull(choice -> choice.delta().content().orElse(null))
+                .concatMapIterable(delta -> parseFields(parser, delta))
+                .<InsectField>handle((field, sink) -> {
+                    if ("isInsect".equals(field.getKey()) && !field.getValue().asBoolean()) {
+                        logger.debug("Organism is not an insect, abandoning the rest of the response");
+                        sink.error(new NoInsectException("No insect identified"));
+                    } else {
+                        sink.next(new InsectField(field.getKey(), field.getValue()));
+                    }
+                })
+                .switchIfEmpty(Flux.error(() -> new ServiceException("No identification result received from OpenAI")));
+    }
 
-            String imageBase64Url = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(imageBytes);
+    private static List<Map.Entry<String, JsonNode>> parseFields(IncrementalJsonObjectParser parser, String delta) {
+        try {
+            return parser.feed(delta);
+        } catch (IOException e) {
+            throw new ServiceException("Malformed identification result received from OpenAI", e);
+        }
+    }
 
-            // Create image content part
-            ChatCompletionContentPart imageContentPart = ChatCompletionContentPart.ofImageUrl(
+    private Insect requestIdentification(List<PreparedImage> images, InsectProjection projection) {
+        try {
+            List<String> imageUrls = encodeImages(images);
+            ModelCascade.Tier firstTier = cascade.firstTier();
+            if (!speciesKnowledge.isEnabled()) {
+                return identify(imageUrls, projection, firstTier);
+            }
+
+            ChatCompletion species = identificationCall(SPECIES_CALL, firstTier, buildSpeciesParams(imageUrls, firstTier));
+            SpeciesTriage triage = parse(() -> triage(species, firstTier));
+            return triage.known().isPresent() ? triage.known().get() : identify(imageUrls, projection, triage.tier());
+        } catch (Exception e) {
+            throw identificationFailure(e);
+        }
+    }
+
+    private Insect identify(List<String> imageUrls, InsectProjection projection, ModelCascade.Tier tier) {
+        if (tier == ModelCascade.Tier.SMALL) {
+            ChatCompletion small = identificationCall(IDENTIFICATION_CALL, tier,
+                    buildInsectParams(imageUrls, projection, tier));
+            Optional<Insect> accepted = parse(() -> acceptedInsect(small));
+            if (accepted.isPresent()) {
+                return remember(accepted.get(), projection);
+            }
+        }
+
+        ChatCompletion identification = identificationCall(IDENTIFICATION_CALL, ModelCascade.Tier.LARGE,
+                buildInsectParams(imageUrls, projection, ModelCascade.Tier.LARGE));
+        return remember(parse(() -> toInsect(new StructuredChatCompletion<>(Insect.class, identification))),
+                projection);
+    }
+
+    private CompletableFuture<Insect> requestIdentificationAsync(List<PreparedImage> images,
+                                                                 InsectProjection projection) {
+        List<String> imageUrls;
+        try {
+            imageUrls = encodeImages(images);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(identificationFailure(e));
+        }
+
+        ModelCascade.Tier firstTier = cascade.firstTier();
+        CompletableFuture<SpeciesTriage> triage = CompletableFuture.completedFuture(
+                new SpeciesTriage(Optional.empty(), firstTier));
+        if (speciesKnowledge.isEnabled()) {
+            triage = identificationCallAsync(SPECIES_CALL, firstTier, buildSpeciesParams(imageUrls, firstTier))
+                    .thenApply(completion -> parse(() -> triage(completion, firstTier)));
+        }
+
+        return triage
+                .thenCompose(species -> species.known().map(CompletableFuture::completedFuture)
+                        .orElseGet(() -> identifyAsync(imageUrls, projection, species.tier())))
+                .exceptionally(error -> {
+                    throw identificationFailure(unwrap(error));
+                });
+    }
+
+    private CompletableFuture<Insect> identifyAsync(List<String> imageUrls, InsectProjection projection,
+                                                    ModelCascade.Tier tier) {
+        CompletableFuture<Optional<Insect>> accepted = CompletableFuture.completedFuture(Optional.empty());
+        if (tier == ModelCascade.Tier.SMALL) {
+            accepted = identificationCallAsync(IDENTIFICATION_CALL, tier, buildInsectParams(imageUrls, projection, tier))
+                    .thenApply(completion -> parse(() -> acceptedInsect(completion)));
+        }
+
+        return accepted
+                .thenCompose(insect -> insect.map(CompletableFuture::completedFuture).orElseGet(() ->
+                        identificationCallAsync(IDENTIFICATION_CALL, ModelCascade.Tier.LARGE,
+                                buildInsectParams(imageUrls, projection, ModelCascade.Tier.LARGE))
+                                .thenApply(completion -> parse(() -> toInsect(
+                                        new StructuredChatCompletion<>(Insect.class, completion))))))
+                .thenApply(insect -> remember(insect, projection));
+    }
+
+    /**
+     * Reads the species-only answer into the stored record of a known species, or else
+     * the tier the photo is to be identified on. An unsure answer of the small model is
+     * escalated straight to the large model, as the small one would be unsure of the
+     * full identification too.
+     */
+    private SpeciesTriage triage(ChatCompletion completion, ModelCascade.Tier tier) {
+        if (tier == ModelCascade.Tier.LARGE) {
+            return new SpeciesTriage(knownSpecies(toIdentification(
+                    new StructuredChatCompletion<>(InsectIdentification.class, completion))), tier);
+        }
+
+        ModelCascade.Graded<InsectIdentification> species = ModelCascade.grade(completion, InsectIdentification.class);
+        if (!cascade.accept(SPECIES_CALL, species.value().isInsect, species.confidence())) {
+            return new SpeciesTriage(Optional.empty(), ModelCascade.Tier.LARGE);
+        }
+        return new SpeciesTriage(knownSpecies(toIdentification(species.value())), tier);
+    }
+
+    /**
+     * Returns the small model's identification if the cascade accepts it.
+     */
+    private Optional<Insect> acceptedInsect(ChatCompletion completion) {
+        ModelCascade.Graded<Insect> insect = ModelCascade.grade(completion, Insect.class);
+        if (!cascade.accept(IDENTIFICATION_CALL, insect.value().isInsect, insect.confidence())) {
+            return Optional.empty();
+        }
+        if (!insect.value().isInsect) {
+            throw new NoInsectException("No insect identified");
+        }
+        return Optional.of(insect.value());
+    }
+
+    private ChatCompletion identificationCall(String operation, ModelCascade.Tier tier, ChatCompletionCreateParams params) {
+        long started = System.nanoTime();
+        ChatCompletion completion = metrics.record(IdentificationMetrics.Stage.UPSTREAM,
+                () -> upstream.call(operation, () -> client.chat().completions().create(params)));
+        cascade.recordCall(tier, System.nanoTime() - started, completion.usage());
+        recordUsage(operation, completion.usage());
+        return completion;
+    }
+
+    private CompletableFuture<ChatCompletion> identificationCallAsync(String operation, ModelCascade.Tier tier,
+                                                                      ChatCompletionCreateParams params) {
+        long started = System.nanoTime();
+        IdentificationMetrics.Sample sample = metrics.start(IdentificationMetrics.Stage.UPSTREAM);
+        return upstream.callAsync(operation, () -> client.async().chat().completions().create(params))
+                .whenComplete((completion, error) -> {
+                    sample.stop();
+                    if (completion != null) {
+                        cascade.recordCall(tier, System.nanoTime() - started, completion.usage());
+                        recordUsage(operation, completion.usage());
+                    }
+                });
+    }
+
+    private <T> T parse(Supplier<T> parser) {
+        return metrics.record(IdentificationMetrics.Stage.PARSING, parser);
+    }
+
+    private Optional<Insect> knownSpecies(InsectIdentification identification) {
+        Optional<Insect> known = speciesKnowledge.lookup(identification.scientificName);
+        logger.debug("Species {} is {}", identification.scientificName, known.isPresent() ? "known" : "unknown");
+        return known;
+    }
+
+    private Insect remember(Insect insect, InsectProjection projection) {
+        // A projected record lacks the properties the next request for the species may need
+        if (speciesKnowledge.isEnabled() && projection.isAll()) {
+            speciesKnowledge.remember(insect);
+        }
+        return insect;
+    }
+
+    private void checkViewCount(List<PreparedImage> views) {
+        if (views == null || views.isEmpty()) {
+            throw new InvalidImageException("No image file provided");
+        }
+        if (views.size() > config.getMaxImagesPerIdentification()) {
+            throw new InvalidImageException("At most " + config.getMaxImagesPerIdentification()
+                    + " images of a specimen can be identified together");
+        }
+    }
+
+    private List<String> encodeImages(List<PreparedImage> images) throws IOException {
+        List<String> imageUrls = new ArrayList<>(images.size());
+        for (PreparedImage image : images) {
+            imageUrls.add(encodeImage(image));
+        }
+        return imageUrls;
+    }
+
+    private String encodeImage(PreparedImage image) throws IOException {
+        logger.debug("Starting insect identification for {} image of size: {} bytes",
+                image.getMimeType(), image.getSize());
+
+        IdentificationMetrics.Sample sample = metrics.start(IdentificationMetrics.Stage.ENCODING);
+        try (InputStream content = image.openStream()) {
+            return DataUrlEncoder.encode(content, image.getSize(), image.getMimeType());
+        } finally {
+            sample.stop();
+        }
+    }
+
+    /**
+     * Records the tokens a call used and charges them to the admission lane it was made for.
+     */
+    private void recordUsage(String operation, Optional<CompletionUsage> usage) {
+        upstream.recordUsage(operation, usage);
+        usage.ifPresent(tokens -> admissionService.charge(
+                CHAT_CALL.equals(operation) ? AdmissionService.Lane.CHAT : AdmissionService.Lane.IDENTIFY,
+                tokens.totalTokens()));
+    }
+
+    private static ChatCompletionCreateParams buildIdentificationParams(List<String> imageBase64Urls, String prompt,
+                                                                        ResponseFormatJsonSchema responseFormat,
+                                                                        long maxTokens, String model) {
+        // Create text content part, telling the model when several images show one specimen
+        List<ChatCompletionContentPart> contentParts = new ArrayList<>(imageBase64Urls.size() + 1);
+        contentParts.add(ChatCompletionContentPart.ofText(
+                ChatCompletionContentPartText.builder()
+                        .text(imageBase64Urls.size() > 1 ? MULTI_VIEW_PROMPT_PREFIX + prompt : prompt)
+                        .build()
+        ));
+
+        // Create one image content part per image
+        for (String imageBase64Url : imageBase64Urls) {
+            contentParts.add(ChatCompletionContentPart.ofImageUrl(
                     ChatCompletionContentPartImage.builder()
                             .imageUrl(ChatCompletionContentPartImage.ImageUrl.builder()
                                     .url(imageBase64Url)
                                     .build())
                             .build()
-            );
+            ));
+        }
 
-            // Create text content part
-            ChatCompletionContentPart textContentPart = ChatCompletionContentPart.ofText(
-                    ChatCompletionContentPartText.builder()
-                            .text(IDENTIFICATION_PROMPT)
-                            .build()
-            );
-
-            // Build chat completion parameters
-            StructuredChatCompletionCreateParams<Insect> createParams = ChatCompletionCreateParams.builder()
-                    .model(ChatModel.GPT_4_1)
-                    .maxCompletionTokens(config.getMaxTokens())
-                    .responseFormat(Insect.class)
-                    .addUserMessageOfArrayOfContentParts(List.of(textContentPart, imageContentPart))
-                    .build();
-
-            Insect result = client.chat().completions().create(createParams)
-                    .choices()
-                    .stream()
-                    .flatMap(choice -> choice.message().content().stream())
-                    .findFirst()
-                    .orElse(null);
-
-            if (result == null) {
-                throw new ServiceException("No identification result received from OpenAI");
-            }
+        // Build chat completion parameters
+        return ChatCompletionCreateParams.builder()
+                .model(model)
+                .maxCompletionTokens(maxTokens)
+                .responseFormat(responseFormat)
+                .addUserMessageOfArrayOfContentParts(contentParts)
+                .build();
+    }
 
-            if (!result.isInsect) {
-                throw new NoInsectException("No insect identified");
-            }
+    private ChatCompletionCreateParams buildSpeciesParams(List<String> imageUrls, ModelCascade.Tier tier) {
+        return buildIdentificationParams(imageUrls, SPECIES_PROMPT,
+                InsectResponseFormat.species(tier == ModelCascade.Tier.SMALL), SPECIES_MAX_TOKENS, cascade.model(tier));
+    }
 
-            return result;
+    ChatCompletionCreateParams buildInsectParams(List<String> imageUrls, InsectProjection projection,
+                                                 ModelCascade.Tier tier) {
+        return buildIdentificationParams(imageUrls, IDENTIFICATION_PROMPT,
+                InsectResponseFormat.of(projection, tier == ModelCascade.Tier.SMALL), config.getMaxTokens(),
+                cascade.model(tier));
+    }
 
-        } catch (NoInsectException e) {
-            throw e;
-        } catch (Exception e) {
-            logger.error("Failed to identify insect", e);
-            throw new ServiceException("Failed to identify insect: " + e.getMessage(), e);
+    private static InsectIdentification toIdentification(StructuredChatCompletion<InsectIdentification> completion) {
+        InsectIdentification result = completion
+                .choices()
+                .stream()
+                .flatMap(choice -> choice.message().content().stream())
+                .findFirst()
+                .orElseThrow(() -> new ServiceException("No identification result received from OpenAI"));
+        return toIdentification(result);
+    }
+
+    private static InsectIdentification toIdentification(InsectIdentification result) {
+        if (!Boolean.TRUE.equals(result.isInsect)) {
+            throw new NoInsectException("No insect identified");
+        }
+
+        return result;
+    }
+
+    private static Insect toInsect(StructuredChatCompletion<Insect> completion) {
+        Insect result = completion
+                .choices()
+                .stream()
+                .flatMap(choice -> choice.message().content().stream())
+                .findFirst()
+                .orElse(null);
+
+        if (result == null) {
+            throw new ServiceException("No identification result received from OpenAI");
+        }
+
+        if (!result.isInsect) {
+            throw new NoInsectException("No insect identified");
+        }
+
+        return result;
+    }
+
+    private static RuntimeException identificationFailure(Throwable e) {
+        if (e instanceof NoInsectException || e instanceof UpstreamBusyException) {
+            return (RuntimeException) e;
         }
+        logger.error("Failed to identify insect", e);
+        return new ServiceException("Failed to identify insect: " + e.getMessage(), e);
     }
 
     /**
-     * Generates a chat response using OpenAI API based on past conversation, current message, and insect context.
+     * Generates a chat response using OpenAI API based on the conversation history, current message, and insect context.
+     * Questions asked without earlier history are answered from the {@link SemanticChatCache}
+     * when the same question about the insect has been answered before.
      * 
-     * @param pastConversation the previous conversation context
+     * @param history the earlier messages of the conversation, oldest first
      * @param message the current user message
      * @param insectName the name of the insect being discussed
      * @return String containing the AI's response
      * @throws ServiceException if chat generation fails
      */
-    public String generateChatResponse(String pastConversation, String message, String insectName) {
+    public String generateChatResponse(List<ChatMessage> history, String message, String insectName) {
+        Optional<String> cached = cachedChatResponse(history, message, insectName);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        ChatCompletionCreateParams createParams = buildChatParams(history, message, insectName);
+
+        try {
+            ChatCompletion completion = upstream.call(CHAT_CALL, () -> client.chat().completions().create(createParams));
+            recordUsage(CHAT_CALL, completion.usage());
+            return rememberChatResponse(history, message, insectName, toChatText(completion));
+        } catch (Exception e) {
+            throw chatFailure(e);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #generateChatResponse(List, String, String)} built on the async OpenAI client.
+     *
+     * @param history the earlier messages of the conversation, oldest first
+     * @param message the current user message
+     * @param insectName the name of the insect being discussed
+     * @return a future completed with the AI's response
+     */
+    public CompletableFuture<String> generateChatResponseAsync(List<ChatMessage> history, String message, String insectName) {
+        Optional<String> cached = cachedChatResponse(history, message, insectName);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        ChatCompletionCreateParams createParams;
+        try {
+            createParams = buildChatParams(history, message, insectName);
+        } catch (ServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return upstream.callAsync(CHAT_CALL, () -> client.async().chat().completions().create(createParams))
+                .thenApply(completion -> {
+                    recordUsage(CHAT_CALL, completion.usage());
+                    return rememberChatResponse(history, message, insectName, toChatText(completion));
+                })
+                .exceptionally(error -> {
+                    throw chatFailure(unwrap(error));
+                });
+    }
+
+    /**
+     * Streams a chat response as the model generates it, one content delta per element.
+     * <p>
+     * Chunks are read from the upstream stream only as the subscriber requests them, so a
+     * slow client applies backpressure all the way to the OpenAI connection. Cancelling the
+     * subscription (for example when the client disconnects) closes the upstream stream and
+     * frees its concurrency permit.
+     * <p>
+     * A cached answer is emitted as a single element, and the answer to a question asked
+     * without earlier history is cached once its stream completes.
+     *
+     * @param history the earlier messages of the conversation, oldest first
+     * @param message the current user message
+     * @param insectName the name of the insect being discussed
+     * @return the response deltas, failing with {@link ServiceException} or {@link UpstreamBusyException}
+     * @throws ServiceException if the message is empty
+     */
+    public Flux<String> streamChatResponse(List<ChatMessage> history, String message, String insectName) {
+        Optional<String> cached = cachedChatResponse(history, message, insectName);
+        if (cached.isPresent()) {
+            return Flux.just(cached.get());
+        }
+        ChatCompletionCreateParams createParams = withStreamUsage(buildChatParams(history, message, insectName));
+
+        Flux<String> deltas = Flux.using(upstream::acquireStreamPermit,
+                        permit -> Flux.using(() -> upstream.openStream(() -> client.chat().completions().createStreaming(createParams)),
+                                this::toChatDeltas,
+                                StreamResponse::close),
+                        UpstreamConcurrencyLimiter.Permit::close)
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(error -> !(error instanceof ServiceException), OpenAIService::chatFailure);
+        if (!history.isEmpty()) {
+            return deltas;
+        }
+        return Flux.defer(() -> {
+            StringBuilder response = new StringBuilder();
+            return deltas.doOnNext(response::append)
+                    .doOnComplete(() -> chatCache.store(insectName, message, response.toString()));
+        });
+    }
+
+    /**
+     * Returns the cached answer to a question asked without earlier history, looked up
+     * before the prompt is built; answers to follow-up questions depend on the
+     * conversation and are never cached.
+     */
+    private Optional<String> cachedChatResponse(List<ChatMessage> history, String message, String insectName) {
+        boolean cacheable = history.isEmpty() && message != null && !message.isBlank();
+        return cacheable ? chatCache.lookup(insectName, message) : Optional.empty();
+    }
+
+    private String rememberChatResponse(List<ChatMessage> history, String message, String insectName, String response) {
+        if (history.isEmpty()) {
+            chatCache.store(insectName, message, response);
+        }
+        return response;
+    }
+
+    private Flux<String> toChatDeltas(StreamResponse<ChatCompletionChunk> response) {
+        return Flux.fromStream(response.stream())
+                .doOnNext(chunk -> recordUsage(CHAT_CALL, chunk.usage()))
+                .flatMapIterable(ChatCompletionChunk::choices)
+                .mapNotNull(choice -> choice.delta().content().orElse(null))
+                .filter(delta -> !delta.isEmpty())
+                .switchIfEmpty(Flux.error(() -> new ServiceException("No response received from OpenAI")));
+    }
+
+    /**
+     * Assembles the chat completion request sent for a message: the fixed instructions,
+     * the insect being discussed, the earlier turns as role-tagged messages and the current
+     * message, laid out by {@link ChatPromptTemplate}.
+     *
+     * @param history the earlier messages of the conversation, oldest first
+     * @param message the current user message
+     * @param insectName the name of the insect being discussed
+     * @return the request parameters
+     * @throws ServiceException if the message is empty
+     */
+    ChatCompletionCreateParams buildChatParams(List<ChatMessage> history, String message, String insectName) {
         if (message == null || message.trim().isEmpty()) {
             throw new ServiceException("Message cannot be empty");
         }
 
-        try {
-            logger.debug("Generating chat response for insect: {}, message: {}", insectName, message);
-
-            // Build developer message with system context
-            StringBuilder developerMessageBuilder = new StringBuilder();
-            
-            // Add system context about the insect
-            String systemContext = String.format(
-                "You are an expert insect assistant. You are discussing %s. " +
-                "ONLY respond to questions and conversations about insects, bugs, and related entomology topics. " +
-                "If the user asks about anything unrelated to insects, politely redirect them back to insect topics. " +
-                "Provide concise, accurate information about insects only. " +
-                "Keep responses brief, conversational, and in a single paragraph without line breaks or newlines. " +
-                "Avoid using \\n or multiple paragraphs in your response.",
-                insectName != null && !insectName.trim().isEmpty() ? insectName : "insects in general"
-            );
-            developerMessageBuilder.append(systemContext);
-            
-            // Add past conversation context if provided
-            if (pastConversation != null && !pastConversation.trim().isEmpty()) {
-                developerMessageBuilder.append(" Previous conversation context: ");
-                developerMessageBuilder.append(pastConversation);
-            }
+        logger.debug("Generating chat response for insect: {}, message: {}", insectName, message);
 
-            ChatCompletionCreateParams createParams = ChatCompletionCreateParams.builder()
-                    .model(ChatModel.GPT_4_1)
-                    .maxCompletionTokens(2048)
-                    .addDeveloperMessage(developerMessageBuilder.toString())
-                    .addUserMessage(message)
-                    .build();
-
-            String result = client.chat().completions().create(createParams)
-                    .choices()
-                    .stream()
-                    .findFirst()
-                    .map(choice -> choice.message().content().orElse(""))
-                    .orElse("");
-
-            if (result.isEmpty()) {
-                throw new ServiceException("No response received from OpenAI");
-            }
+        ChatCompletionCreateParams.Builder builder = ChatCompletionCreateParams.builder()
+                .model(config.getModel())
+                .maxCompletionTokens(2048);
+        return ChatPromptTemplate.apply(builder, history, message, insectName).build();
+    }
 
-            return result;
+    private static ChatCompletionCreateParams withStreamUsage(ChatCompletionCreateParams params) {
+        return params.toBuilder().streamOptions(STREAM_OPTIONS).build();
+    }
 
-        } catch (Exception e) {
-            logger.error("Failed to generate chat response", e);
-            throw new ServiceException("Failed to generate chat response: " + e.getMessage(), e);
+    private static String toChatText(ChatCompletion completion) {
+        String result = completion
+                .choices()
+                .stream()
+                .findFirst()
+                .map(choice -> choice.message().content().orElse(""))
+                .orElse("");
+
+        if (result.isEmpty()) {
+            throw new ServiceException("No response received from OpenAI");
+        }
+
+        return result;
+    }
+
+    private static RuntimeException chatFailure(Throwable e) {
+        if (e instanceof UpstreamBusyException) {
+            return (RuntimeException) e;
+        }
+        logger.error("Failed to generate chat response", e);
+        return new ServiceException("Failed to generate chat response: " + e.getMessage(), e);
+    }
+
+    private static String digestOf(PreparedImage image) {
+        try (InputStream content = image.openStream()) {
+            return RequestCoalescer.digest(content);
+        } catch (IOException e) {
+            throw new InvalidImageException("Failed to read uploaded image", e);
+        }
+    }
+
+    private static String digestOf(PreparedImage image, InsectProjection projection) {
+        return projection.isAll() ? digestOf(image) : digestOf(image) + ":fields=" + projection;
+    }
+
+    private static String digestOf(List<PreparedImage> views) {
+        StringBuilder key = new StringBuilder("views");
+        for (PreparedImage view : views) {
+            key.append(':').append(digestOf(view));
         }
+        return key.toString();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,152 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.exceptions.ServiceException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent calls that share the same key into a single execution
+ * (single-flight). The first caller runs the call; callers arriving while it is
+ * in flight wait for it and receive the same result or the same exception.
+ */
+@Service
+public class RequestCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestCoalescer.class);
+    private static final String METRIC_PREFIX = "buggloo.coalescer";
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter executed;
+    private final Counter coalesced;
+
+    public RequestCoalescer(MeterRegistry meterRegistry) {
+        this.executed = Counter.builder(METRIC_PREFIX + ".requests").tag("outcome", "executed").register(meterRegistry);
+        this.coalesced = Counter.builder(METRIC_PREFIX + ".requests").tag("outcome", "coalesced").register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".in.flight", inFlight, ConcurrentHashMap::size).register(meterRegistry);
+    }
+
+    /**
+     * Runs the call unless another call with the same key is already in flight,
+     * in which case its outcome is shared.
+     *
+     * @param key identifies equivalent calls, e.g. a content digest
+     * @param call the call to execute
+     * @return the result of the (possibly shared) call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> call) {
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, own);
+
+        if (existing != null) {
+            coalesced.increment();
+            logger.debug("Joining in-flight request for key {}", key);
+            try {
+                return (T) existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new ServiceException("Coalesced request failed: " + e.getCause().getMessage(), e.getCause());
+            }
+        }
+
+        executed.increment();
+        try {
+            T result = call.get();
+            own.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #execute(String, Supplier)}. Each caller gets its own
+     * dependent future, so cancelling one waiter does not cancel the shared call.
+     *
+     * @param key identifies equivalent calls, e.g. a content digest
+     * @param call starts the call to execute
+     * @return a future with the result of the (possibly shared) call
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, own);
+
+        if (existing != null) {
+            coalesced.increment();
+            logger.debug("Joining in-flight request for key {}", key);
+            return existing.thenApply(result -> (T) result);
+        }
+
+        executed.increment();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        result.whenComplete((value, error) -> {
+            inFlight.remove(key, own);
+            if (error != null) {
+                own.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause()
+                        : error);
+            } else {
+                own.complete(value);
+            }
+        });
+        return own.thenApply(value -> (T) value);
+    }
+
+    /**
+     * Returns the hex-encoded SHA-256 digest of the given content, suitable as a coalescing key.
+     */
+    public static String digest(byte[] content) {
+        MessageDigest digest = sha256();
+        return HexFormat.of().formatHex(digest.digest(content));
+    }
+
+    /**
+     * Returns the hex-encoded SHA-256 digest of the content read from the given stream.
+     *
+     * @param content the content; it is not closed
+     * @throws IOException if reading the content fails
+     */
+    public static String digest(InputStream content) throws IOException {
+        MessageDigest digest = sha256();
+        content.transferTo(new DigestOutputStream(OutputStream.nullOutputStream(), digest));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
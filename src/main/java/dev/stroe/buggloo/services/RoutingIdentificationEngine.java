@@ -0,0 +1,131 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.LocalClassifierConfig;
+import dev.stroe.buggloo.models.Classification;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.InsectProjection;
+import dev.stroe.buggloo.models.PreparedImage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Identification engine used by the endpoints. With the local classifier enabled, images
+ * are classified on the CPU first and answered from the species knowledge store when the
+ * classifier is confident and the species has a stored record. Uncertain images, species
+ * without a record and images the classifier cannot read are escalated to OpenAI.
+ */
+@Service
+@Primary
+public class RoutingIdentificationEngine implements IdentificationEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoutingIdentificationEngine.class);
+    private static final String METRIC_NAME = "buggloo.identification.local.outcomes";
+
+    private final LocalClassifierConfig config;
+    private final LocalInsectClassifier localClassifier;
+    private final SpeciesKnowledgeStore speciesKnowledge;
+    private final OpenAIService openAIService;
+
+    private final Counter answered;
+    private final Counter uncertain;
+    private final Counter unknownSpecies;
+    private final Counter unreadable;
+    private final Counter failed;
+
+    public RoutingIdentificationEngine(LocalClassifierConfig config, LocalInsectClassifier localClassifier,
+                                       SpeciesKnowledgeStore speciesKnowledge, OpenAIService openAIService,
+                                       MeterRegistry meterRegistry) {
+        this.config = config;
+        this.localClassifier = localClassifier;
+        this.speciesKnowledge = speciesKnowledge;
+        this.openAIService = openAIService;
+        this.answered = Counter.builder(METRIC_NAME).tag("outcome", "answered").register(meterRegistry);
+        this.uncertain = Counter.builder(METRIC_NAME).tag("outcome", "uncertain").register(meterRegistry);
+        this.unknownSpecies = Counter.builder(METRIC_NAME).tag("outcome", "unknown_species").register(meterRegistry);
+        this.unreadable = Counter.builder(METRIC_NAME).tag("outcome", "unreadable").register(meterRegistry);
+        this.failed = Counter.builder(METRIC_NAME).tag("outcome", "failed").register(meterRegistry);
+    }
+
+    @Override
+    public Insect identifyInsect(PreparedImage image) {
+        return identifyInsect(image, InsectProjection.ALL);
+    }
+
+    @Override
+    public CompletableFuture<Insect> identifyInsectAsync(PreparedImage image) {
+        return identifyInsectAsync(image, InsectProjection.ALL);
+    }
+
+    @Override
+    public Insect identifyInsect(PreparedImage image, InsectProjection projection) {
+        if (!localClassifier.isEnabled()) {
+            return openAIService.identifyInsect(image, projection);
+        }
+
+        Optional<Classification> classification;
+        try {
+            classification = localClassifier.classify(image);
+        } catch (Exception e) {
+            classificationFailed(e);
+            return openAIService.identifyInsect(image, projection);
+        }
+        return answerLocally(classification).orElseGet(() -> openAIService.identifyInsect(image, projection));
+    }
+
+    @Override
+    public CompletableFuture<Insect> identifyInsectAsync(PreparedImage image, InsectProjection projection) {
+        if (!localClassifier.isEnabled()) {
+            return openAIService.identifyInsectAsync(image, projection);
+        }
+
+        return localClassifier.classifyAsync(image)
+                .handle((classification, error) -> {
+                    if (error != null) {
+                        classificationFailed(error);
+                        return Optional.<Insect>empty();
+                    }
+                    return answerLocally(classification);
+                })
+                .thenCompose(local -> local.map(CompletableFuture::completedFuture)
+                        .orElseGet(() -> openAIService.identifyInsectAsync(image, projection)));
+    }
+
+    private Optional<Insect> answerLocally(Optional<Classification> classification) {
+        if (classification.isEmpty()) {
+            unreadable.increment();
+            return Optional.empty();
+        }
+
+        Classification top = classification.get();
+        if (top.getConfidence() < config.getConfidenceThreshold()) {
+            logger.debug("Local classification {} ({}) is uncertain, escalating to OpenAI",
+                    top.getScientificName(), top.getConfidence());
+            uncertain.increment();
+            return Optional.empty();
+        }
+
+        Optional<Insect> known = speciesKnowledge.lookup(top.getScientificName());
+        if (known.isEmpty()) {
+            logger.debug("No stored record for locally classified {}, escalating to OpenAI", top.getScientificName());
+            unknownSpecies.increment();
+            return Optional.empty();
+        }
+
+        logger.debug("Identified {} locally ({})", top.getScientificName(), top.getConfidence());
+        answered.increment();
+        return known;
+    }
+
+    private void classificationFailed(Throwable e) {
+        logger.warn("Local classification failed, escalating to OpenAI: {}", e.getMessage());
+        failed.increment();
+    }
+}
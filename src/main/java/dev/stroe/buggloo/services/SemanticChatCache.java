@@ -0,0 +1,254 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.ChatCacheConfig;
+import dev.stroe.buggloo.utils.QuestionEmbedding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Caches the answers to chat questions asked without earlier context, so that the same
+ * question about an insect, however it is phrased, is answered without calling OpenAI.
+ * A question matches a cached one about the same insect when their
+ * {@link QuestionEmbedding embeddings} are at least {@code chat-cache.similarity-threshold}
+ * similar.
+ * <p>
+ * The vectors are kept off the heap, in one preallocated buffer of
+ * {@code chat-cache.max-entries} slots. A question is only compared with those cached for
+ * its insect, at most {@code chat-cache.max-entries-per-insect}, so a flat scan of their
+ * vectors takes microseconds and an approximate index would only add overhead and misses.
+ * Entries expire after a fixed TTL and are evicted in LRU order, both per insect and overall.
+ */
+@Service
+public class SemanticChatCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SemanticChatCache.class);
+    private static final String METRIC_PREFIX = "buggloo.chat.cache";
+
+    private final ChatCacheConfig settings;
+    private final int dimensions;
+    private final FloatBuffer vectors;
+    private final Deque<Integer> freeSlots;
+    private final LinkedHashMap<Integer, Entry> entries;
+    private final Map<String, List<Entry>> entriesByInsect = new HashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expirations;
+    private final DistributionSummary similarities;
+
+    public SemanticChatCache(ChatCacheConfig settings, MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.dimensions = settings.getDimensions();
+        int capacity = settings.isEnabled() ? settings.getMaxEntries() : 0;
+        this.vectors = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, dimensions * Float.BYTES))
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        this.freeSlots = new ArrayDeque<>(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            freeSlots.add(slot);
+        }
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        this.hits = Counter.builder(METRIC_PREFIX + ".gets").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder(METRIC_PREFIX + ".gets").tag("result", "miss").register(meterRegistry);
+        this.sizeEvictions = Counter.builder(METRIC_PREFIX + ".evictions").tag("cause", "size").register(meterRegistry);
+        this.expirations = Counter.builder(METRIC_PREFIX + ".evictions").tag("cause", "expired").register(meterRegistry);
+        this.similarities = DistributionSummary.builder(METRIC_PREFIX + ".similarity")
+                .description("Similarity of each looked-up question to the closest cached one")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".size", this, SemanticChatCache::size).register(meterRegistry);
+    }
+
+    /**
+     * Returns the cached answer to a question about an insect, or to a rephrasing of it.
+     *
+     * @param insectName the insect the question is about, or null
+     * @param question the question as asked
+     * @return the answer, or empty if no similar enough question is cached
+     */
+    public Optional<String> lookup(String insectName, String question) {
+        if (!settings.isEnabled()) {
+            return Optional.empty();
+        }
+
+        float[] vector = QuestionEmbedding.embed(question, dimensions);
+        String answer = vector != null ? find(key(insectName), vector) : null;
+        if (answer == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        logger.debug("Chat cache hit for insect: {}, message: {}", insectName, question);
+        return Optional.of(answer);
+    }
+
+    /**
+     * Caches the answer to a question about an insect, replacing the answer to a cached
+     * rephrasing of it.
+     *
+     * @param insectName the insect the question is about, or null
+     * @param question the question as asked
+     * @param answer the model's answer
+     */
+    public void store(String insectName, String question, String answer) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+
+        float[] vector = QuestionEmbedding.embed(question, dimensions);
+        if (vector != null) {
+            store(key(insectName), vector, answer);
+        }
+    }
+
+    /**
+     * Returns the number of cached answers.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized String find(String insect, float[] vector) {
+        List<Entry> partition = entriesByInsect.get(insect);
+        if (partition == null) {
+            return null;
+        }
+
+        Entry closest = closest(insect, partition, vector, true);
+        if (closest == null) {
+            return null;
+        }
+        // Move the entry to the most recently used position, in its insect and overall
+        partition.remove(closest);
+        partition.add(closest);
+        entries.get(closest.slot);
+        return closest.answer;
+    }
+
+    private synchronized void store(String insect, float[] vector, String answer) {
+        long expiresAt = System.nanoTime() + settings.getTtl().toNanos();
+
+        List<Entry> partition = entriesByInsect.get(insect);
+        Entry rephrased = partition != null ? closest(insect, partition, vector, false) : null;
+        if (rephrased != null) {
+            rephrased.answer = answer;
+            rephrased.expiresAt = expiresAt;
+            return;
+        }
+
+        if (partition != null && partition.size() >= settings.getMaxEntriesPerInsect()) {
+            remove(partition.get(0));
+            sizeEvictions.increment();
+        }
+        if (freeSlots.isEmpty()) {
+            remove(entries.values().iterator().next());
+            sizeEvictions.increment();
+        }
+
+        Entry entry = new Entry(freeSlots.pop(), insect, answer, expiresAt);
+        vectors.put(entry.slot * dimensions, vector);
+        entriesByInsect.computeIfAbsent(insect, key -> new ArrayList<>()).add(entry);
+        entries.put(entry.slot, entry);
+    }
+
+    /**
+     * Returns the entry most similar to a vector, if it reaches the threshold, dropping
+     * the expired entries on the way.
+     */
+    private Entry closest(String insect, List<Entry> partition, float[] vector, boolean recordSimilarity) {
+        long now = System.nanoTime();
+        Entry closest = null;
+        float closestSimilarity = -1;
+        Iterator<Entry> iterator = partition.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.isExpired(now)) {
+                iterator.remove();
+                entries.remove(entry.slot);
+                freeSlots.push(entry.slot);
+                expirations.increment();
+                continue;
+            }
+            float similarity = similarity(entry.slot, vector);
+            if (similarity > closestSimilarity) {
+                closest = entry;
+                closestSimilarity = similarity;
+            }
+        }
+
+        if (partition.isEmpty()) {
+            entriesByInsect.remove(insect);
+        }
+        if (closest == null) {
+            return null;
+        }
+        if (recordSimilarity) {
+            similarities.record(closestSimilarity);
+        }
+        return closestSimilarity >= settings.getSimilarityThreshold() ? closest : null;
+    }
+
+    private float similarity(int slot, float[] vector) {
+        // Both vectors are unit length, so their dot product is the cosine similarity
+        int offset = slot * dimensions;
+        float dot = 0;
+        for (int i = 0; i < dimensions; i++) {
+            dot += vectors.get(offset + i) * vector[i];
+        }
+        return dot;
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.slot);
+        List<Entry> partition = entriesByInsect.get(entry.insect);
+        partition.remove(entry);
+        if (partition.isEmpty()) {
+            entriesByInsect.remove(entry.insect);
+        }
+        freeSlots.push(entry.slot);
+    }
+
+    private static String key(String insectName) {
+        return insectName == null ? "" : insectName.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Entry {
+
+        private final int slot;
+        private final String insect;
+        private String answer;
+        private long expiresAt;
+
+        private Entry(int slot, String insect, String answer, long expiresAt) {
+            this.slot = slot;
+            this.insect = insect;
+            this.answer = answer;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt > 0;
+        }
+    }
+}
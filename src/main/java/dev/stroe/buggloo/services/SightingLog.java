@@ -0,0 +1,588 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.SightingConfig;
+import dev.stroe.buggloo.models.Coordinates;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.SpeciesCount;
+import dev.stroe.buggloo.models.TaxonRank;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of identified insects: when, optionally where, and under which order,
+ * family, genus and species, answering counts and top species by time window and taxon.
+ * <p>
+ * Sightings are appended in time order to fixed-width records in memory-mapped
+ * {@link SightingSegment} files, and each distinct order/family/genus/species combination
+ * (a lineage) is stored once in {@code lineages.log} and referred to by its ID. In memory
+ * the log keeps an index of the lineages under each taxon and per-hour rollups of the
+ * sightings of each lineage, so a query reads whole hours from the rollups and only the
+ * partial hours at either end of its window from the records, found by binary search.
+ * The rollups are rebuilt from the segments at startup.
+ * <p>
+ * A periodic compaction flushes the segments, drops sightings older than the retention
+ * period and merges segments that have become small enough to share one file.
+ * <p>
+ * Without a directory the segments live on the heap, and only the newest
+ * {@code sightings.max-memory-segments} of them are kept.
+ */
+@Service
+public class SightingLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(SightingLog.class);
+    private static final String METRIC_PREFIX = "buggloo.sightings";
+    private static final long BUCKET_MILLIS = Duration.ofHours(1).toMillis();
+    private static final String LINEAGES_FILE = "lineages.log";
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)\\.log");
+
+    private final SightingConfig settings;
+    private final Counter recorded;
+
+    private final List<String[]> lineages = new ArrayList<>();
+    private final Map<String, Integer> lineageIds = new HashMap<>();
+    private final Map<TaxonRank, Map<String, BitSet>> lineagesByTaxon = new EnumMap<>(TaxonRank.class);
+    private final List<SightingSegment> segments = new ArrayList<>();
+    private final NavigableMap<Long, Rollup> rollups = new TreeMap<>();
+    private long size;
+    private long lastTimestamp;
+    private long nextSegmentNumber = 1;
+
+    private BufferedWriter lineageOutput;
+    private ScheduledExecutorService compactor;
+
+    public SightingLog(SightingConfig settings, MeterRegistry meterRegistry) {
+        this.settings = settings;
+        for (TaxonRank rank : TaxonRank.values()) {
+            lineagesByTaxon.put(rank, new HashMap<>());
+        }
+
+        this.recorded = Counter.builder(METRIC_PREFIX + ".recorded").register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".size", this, SightingLog::size).register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".segments", this, SightingLog::segmentCount).register(meterRegistry);
+    }
+
+    /**
+     * Returns whether identifications are logged.
+     */
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Logs a sighting of an identified insect at the current time. Failures to write the
+     * log are logged and do not affect the identification.
+     *
+     * @param insect the identification result
+     * @param coordinates where the photo was taken, or null
+     */
+    public void record(Insect insect, Coordinates coordinates) {
+        record(insect, coordinates, System.currentTimeMillis());
+    }
+
+    synchronized void record(Insect insect, Coordinates coordinates, long timestamp) {
+        if (!settings.isEnabled() || insect == null || Boolean.FALSE.equals(insect.isInsect)) {
+            return;
+        }
+
+        // Never step back in time, so the records stay sorted across clock adjustments
+        long time = Math.max(timestamp, lastTimestamp);
+        int lineage;
+        try {
+            lineage = lineageOf(insect);
+            writableSegment().append(time,
+                    coordinates != null ? (float) coordinates.getLatitude() : Float.NaN,
+                    coordinates != null ? (float) coordinates.getLongitude() : Float.NaN,
+                    lineage);
+        } catch (IOException e) {
+            logger.error("Failed to log sighting of {}", insect.scientificName, e);
+            return;
+        }
+        lastTimestamp = time;
+        size++;
+        rollups.computeIfAbsent(bucketOf(time), bucket -> new Rollup()).add(lineage, 1);
+        recorded.increment();
+    }
+
+    /**
+     * Counts the sightings in a time window.
+     *
+     * @param from the start of the window, inclusive
+     * @param to the end of the window, exclusive
+     * @param rank the rank of {@code taxon}, or null to count all sightings
+     * @param taxon the taxon to count, compared case-insensitively
+     * @return the number of sightings
+     */
+    public synchronized long count(Instant from, Instant to, TaxonRank rank, String taxon) {
+        return Arrays.stream(countsByLineage(from.toEpochMilli(), to.toEpochMilli(), lineagesOf(rank, taxon))).sum();
+    }
+
+    /**
+     * Returns the most sighted species in a time window. A species identified under
+     * different higher ranks is counted once, with the ranks it was most often identified
+     * under.
+     *
+     * @param from the start of the window, inclusive
+     * @param to the end of the window, exclusive
+     * @param rank the rank of {@code taxon}, or null for all species
+     * @param taxon the taxon to restrict the species to, compared case-insensitively
+     * @param limit the maximum number of species returned
+     * @return the species, most sighted first
+     */
+    public synchronized List<SpeciesCount> topSpecies(Instant from, Instant to, TaxonRank rank, String taxon, int limit) {
+        long[] counts = countsByLineage(from.toEpochMilli(), to.toEpochMilli(), lineagesOf(rank, taxon));
+
+        Map<String, SpeciesTotal> bySpecies = new HashMap<>();
+        for (int lineage = 0; lineage < counts.length; lineage++) {
+            String species = lineages.get(lineage)[TaxonRank.SPECIES.ordinal()];
+            if (counts[lineage] > 0 && !species.isEmpty()) {
+                bySpecies.computeIfAbsent(species.toLowerCase(Locale.ROOT), key -> new SpeciesTotal())
+                        .add(lineage, counts[lineage]);
+            }
+        }
+
+        return bySpecies.values().stream()
+                .sorted(Comparator.comparingLong(SpeciesTotal::total).reversed())
+                .limit(limit)
+                .map(total -> {
+                    String[] names = lineages.get(total.mainLineage);
+                    return new SpeciesCount(nameOrNull(names[3]), nameOrNull(names[2]), nameOrNull(names[1]),
+                            nameOrNull(names[0]), total.total);
+                })
+                .toList();
+    }
+
+    /**
+     * Returns the number of sightings in the log.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    private synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    @PostConstruct
+    synchronized void open() throws IOException {
+        if (!settings.isEnabled()) {
+            return;
+        }
+
+        Path directory = directory();
+        if (directory != null) {
+            Files.createDirectories(directory);
+            loadLineages(directory.resolve(LINEAGES_FILE));
+            loadSegments(directory);
+            lineageOutput = Files.newBufferedWriter(directory.resolve(LINEAGES_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            logger.info("Loaded {} sightings of {} lineages from {}", size, lineages.size(), directory);
+        }
+
+        long interval = settings.getCompactionInterval().toMillis();
+        if (interval > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(
+                    Thread.ofPlatform().daemon().name("sighting-compactor").factory());
+            compactor.scheduleWithFixedDelay(() -> compact(System.currentTimeMillis()),
+                    interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    synchronized void close() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+        segments.forEach(SightingSegment::flush);
+        if (lineageOutput != null) {
+            try {
+                lineageOutput.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close {}", LINEAGES_FILE, e);
+            }
+        }
+    }
+
+    /**
+     * Flushes the segments, drops sightings older than the retention period and merges
+     * neighbouring segments that fit in one. Writes are blocked while it runs, which takes
+     * about as long as copying one segment.
+     */
+    synchronized void compact(long now) {
+        segments.forEach(SightingSegment::flush);
+        try {
+            if (!settings.getRetention().isZero()) {
+                expire(now - settings.getRetention().toMillis());
+            }
+            mergeSmallSegments();
+            dropOldestSegments(settings.getMaxMemorySegments());
+        } catch (IOException e) {
+            logger.error("Failed to compact the sighting log", e);
+        }
+    }
+
+    private void expire(long cutoff) throws IOException {
+        while (!segments.isEmpty()) {
+            SightingSegment oldest = segments.get(0);
+            int expired = oldest.indexOf(cutoff);
+            if (expired == 0) {
+                return;
+            }
+
+            for (int i = 0; i < expired; i++) {
+                forget(oldest.timestamp(i), oldest.lineage(i));
+            }
+            if (expired < oldest.count()) {
+                segments.set(0, rewrite(oldest, expired, null));
+                return;
+            }
+            segments.remove(0);
+            oldest.delete();
+        }
+    }
+
+    /**
+     * Drops the oldest in-memory segments beyond the given number; segments on disk are
+     * only dropped by the retention period.
+     */
+    private void dropOldestSegments(int keep) throws IOException {
+        if (directory() != null) {
+            return;
+        }
+        while (segments.size() > keep) {
+            SightingSegment oldest = segments.remove(0);
+            for (int i = 0; i < oldest.count(); i++) {
+                forget(oldest.timestamp(i), oldest.lineage(i));
+            }
+            oldest.delete();
+        }
+    }
+
+    private void mergeSmallSegments() throws IOException {
+        // The newest segment is still being appended to and is left alone
+        int i = 0;
+        while (i + 2 < segments.size()) {
+            SightingSegment first = segments.get(i);
+            SightingSegment second = segments.get(i + 1);
+            if (first.count() + second.count() > settings.getSegmentRecords()) {
+                i++;
+                continue;
+            }
+            segments.set(i, rewrite(first, 0, second));
+            segments.remove(i + 1);
+            second.delete();
+        }
+    }
+
+    /**
+     * Copies the records of a segment, from the given index, and optionally all of the
+     * next segment, into a new segment that replaces the first one's file.
+     */
+    private SightingSegment rewrite(SightingSegment first, int start, SightingSegment second) throws IOException {
+        Path target = first.file();
+        Path temporary = target != null ? target.resolveSibling(target.getFileName() + ".tmp") : null;
+        if (temporary != null) {
+            Files.deleteIfExists(temporary);
+        }
+
+        SightingSegment rewritten = SightingSegment.create(temporary, settings.getSegmentRecords());
+        copy(first, start, rewritten);
+        if (second != null) {
+            copy(second, 0, rewritten);
+        }
+        if (temporary != null) {
+            rewritten.moveTo(target);
+        }
+        return rewritten;
+    }
+
+    private static void copy(SightingSegment source, int start, SightingSegment target) {
+        for (int i = start; i < source.count(); i++) {
+            target.append(source.timestamp(i), source.latitude(i), source.longitude(i), source.lineage(i));
+        }
+    }
+
+    private void forget(long timestamp, int lineage) {
+        long bucket = bucketOf(timestamp);
+        Rollup rollup = rollups.get(bucket);
+        if (rollup != null && rollup.add(lineage, -1) == 0) {
+            rollups.remove(bucket);
+        }
+        size--;
+    }
+
+    /**
+     * Sums the sightings of each lineage in the window: whole hours from the rollups, the
+     * partial hours at either end from the records.
+     */
+    private long[] countsByLineage(long from, long to, BitSet filter) {
+        long[] counts = new long[lineages.size()];
+        long firstWholeHour = bucketOf(from + BUCKET_MILLIS - 1);
+        long lastWholeHourEnd = bucketOf(to);
+        if (firstWholeHour >= lastWholeHourEnd) {
+            scan(from, to, filter, counts);
+            return counts;
+        }
+
+        scan(from, firstWholeHour, filter, counts);
+        for (Rollup rollup : rollups.subMap(firstWholeHour, true, lastWholeHourEnd, false).values()) {
+            rollup.addTo(counts, filter);
+        }
+        scan(lastWholeHourEnd, to, filter, counts);
+        return counts;
+    }
+
+    private void scan(long from, long to, BitSet filter, long[] counts) {
+        if (from >= to) {
+            return;
+        }
+        for (SightingSegment segment : segments) {
+            if (segment.count() == 0 || segment.lastTimestamp() < from) {
+                continue;
+            }
+            for (int i = segment.indexOf(from); i < segment.count(); i++) {
+                if (segment.timestamp(i) >= to) {
+                    return;
+                }
+                int lineage = segment.lineage(i);
+                if (lineage < counts.length && (filter == null || filter.get(lineage))) {
+                    counts[lineage]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the lineages under a taxon, or null for no restriction.
+     */
+    private BitSet lineagesOf(TaxonRank rank, String taxon) {
+        if (rank == null) {
+            return null;
+        }
+        BitSet matching = lineagesByTaxon.get(rank).get(taxon.trim().toLowerCase(Locale.ROOT));
+        return matching != null ? matching : new BitSet();
+    }
+
+    private int lineageOf(Insect insect) throws IOException {
+        String[] names = {clean(insect.order), clean(insect.family), clean(insect.genus), clean(insect.species)};
+        Integer id = lineageIds.get(key(names));
+        if (id != null) {
+            return id;
+        }
+
+        if (lineageOutput != null) {
+            lineageOutput.write(String.join("\t", names));
+            lineageOutput.newLine();
+            lineageOutput.flush();
+        }
+        return addLineage(names);
+    }
+
+    private int addLineage(String[] names) {
+        int id = lineages.size();
+        lineages.add(names);
+        lineageIds.put(key(names), id);
+        for (TaxonRank rank : TaxonRank.values()) {
+            String name = names[rank.ordinal()];
+            if (!name.isEmpty()) {
+                lineagesByTaxon.get(rank).computeIfAbsent(name.toLowerCase(Locale.ROOT), key -> new BitSet()).set(id);
+            }
+        }
+        return id;
+    }
+
+    private void loadLineages(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        byte[] content = Files.readAllBytes(file);
+        int end = content.length;
+        while (end > 0 && content[end - 1] != '\n') {
+            end--;
+        }
+        if (end < content.length) {
+            // A lineage was being written when the process stopped; none of its sightings were
+            logger.warn("Dropping an incomplete lineage at the end of {}", file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        }
+
+        for (String line : new String(content, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                addLineage(Arrays.copyOf(line.split("\t", -1), TaxonRank.values().length));
+            }
+        }
+    }
+
+    private void loadSegments(Path directory) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (Stream<Path> entries = Files.list(directory)) {
+            for (Path entry : entries.toList()) {
+                String name = entry.getFileName().toString();
+                Matcher matcher = SEGMENT_FILE.matcher(name);
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), entry);
+                } else if (name.endsWith(".tmp")) {
+                    // Left over from a compaction that did not finish; the original is intact
+                    Files.delete(entry);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Path> file : files.entrySet()) {
+            SightingSegment segment;
+            try {
+                segment = SightingSegment.open(file.getValue());
+            } catch (IOException e) {
+                logger.warn("Skipping unreadable sighting segment {}", file.getValue(), e);
+                continue;
+            }
+            segments.add(segment);
+            nextSegmentNumber = file.getKey() + 1;
+            for (int i = 0; i < segment.count(); i++) {
+                long timestamp = segment.timestamp(i);
+                int lineage = segment.lineage(i);
+                if (lineage >= 0 && lineage < lineages.size()) {
+                    rollups.computeIfAbsent(bucketOf(timestamp), bucket -> new Rollup()).add(lineage, 1);
+                }
+                lastTimestamp = Math.max(lastTimestamp, timestamp);
+            }
+            size += segment.count();
+        }
+    }
+
+    private SightingSegment writableSegment() throws IOException {
+        SightingSegment newest = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (newest != null && !newest.isFull()) {
+            return newest;
+        }
+
+        if (newest != null) {
+            newest.flush();
+        }
+        dropOldestSegments(settings.getMaxMemorySegments() - 1);
+        Path directory = directory();
+        Path file = directory != null ? directory.resolve(String.format("segment-%012d.log", nextSegmentNumber++)) : null;
+        SightingSegment segment = SightingSegment.create(file, settings.getSegmentRecords());
+        segments.add(segment);
+        return segment;
+    }
+
+    private Path directory() {
+        String directory = settings.getDirectory();
+        return directory != null && !directory.trim().isEmpty() ? Path.of(directory) : null;
+    }
+
+    private static long bucketOf(long timestamp) {
+        return Math.floorDiv(timestamp, BUCKET_MILLIS) * BUCKET_MILLIS;
+    }
+
+    private static String clean(String name) {
+        return name != null ? name.replaceAll("[\\t\\r\\n]", " ").trim() : "";
+    }
+
+    private static String key(String[] names) {
+        return String.join("\t", names).toLowerCase(Locale.ROOT);
+    }
+
+    private static String nameOrNull(String name) {
+        return name.isEmpty() ? null : name;
+    }
+
+    /**
+     * The sightings of each lineage within one hour, as parallel arrays; an hour rarely
+     * sees more than a few dozen lineages.
+     */
+    private static final class Rollup {
+
+        private int[] lineages = new int[4];
+        private long[] counts = new long[4];
+        private int size;
+        private long total;
+
+        /**
+         * Adds to the count of a lineage and returns the new total of the hour.
+         */
+        long add(int lineage, long delta) {
+            total += delta;
+            for (int i = 0; i < size; i++) {
+                if (lineages[i] == lineage) {
+                    counts[i] += delta;
+                    return total;
+                }
+            }
+            if (size == lineages.length) {
+                lineages = Arrays.copyOf(lineages, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            lineages[size] = lineage;
+            counts[size++] = delta;
+            return total;
+        }
+
+        void addTo(long[] totals, BitSet filter) {
+            for (int i = 0; i < size; i++) {
+                if (filter == null || filter.get(lineages[i])) {
+                    totals[lineages[i]] += counts[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * The sightings of one species across the lineages it was identified under.
+     */
+    private static final class SpeciesTotal {
+
+        private long total;
+        private int mainLineage;
+        private long mainLineageCount;
+
+        void add(int lineage, long count) {
+            total += count;
+            if (count > mainLineageCount) {
+                mainLineage = lineage;
+                mainLineageCount = count;
+            }
+        }
+
+        long total() {
+            return total;
+        }
+    }
+}
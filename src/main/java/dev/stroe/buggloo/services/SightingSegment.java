@@ -0,0 +1,176 @@
+package dev.stroe.buggloo.services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One segment of the {@link SightingLog}: a fixed-capacity array of fixed-width sighting
+ * records, memory-mapped from its file or held on the heap when the log is not persisted.
+ * <p>
+ * A 16-byte header holds a magic number, the format version and the record count, which
+ * is updated after each record is written, so a crash loses at most the record being
+ * appended. Each record is the timestamp in epoch milliseconds, the latitude and
+ * longitude as floats (NaN when unknown), the lineage ID and 4 reserved bytes.
+ */
+final class SightingSegment {
+
+    static final int RECORD_BYTES = 24;
+
+    private static final int HEADER_BYTES = 16;
+    private static final int MAGIC = 0x4247534C;
+    private static final int VERSION = 1;
+    private static final int COUNT_OFFSET = 8;
+
+    private Path file;
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private int count;
+
+    private SightingSegment(Path file, ByteBuffer buffer, int capacity, int count) {
+        this.file = file;
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.count = count;
+    }
+
+    /**
+     * Creates an empty segment.
+     *
+     * @param file the file to map, which must not exist, or null for a heap segment
+     * @param capacity the number of records the segment holds
+     */
+    static SightingSegment create(Path file, int capacity) throws IOException {
+        long size = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+        ByteBuffer buffer;
+        if (file == null) {
+            buffer = ByteBuffer.allocate((int) size);
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(COUNT_OFFSET, 0);
+        return new SightingSegment(file, buffer, capacity, 0);
+    }
+
+    /**
+     * Maps an existing segment file.
+     *
+     * @throws IOException if the file is not a segment
+     */
+    static SightingSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || (size - HEADER_BYTES) % RECORD_BYTES != 0) {
+                throw new IOException("Not a sighting segment: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a sighting segment: " + file);
+            }
+            int capacity = (int) ((size - HEADER_BYTES) / RECORD_BYTES);
+            int count = Math.min(Math.max(0, buffer.getInt(COUNT_OFFSET)), capacity);
+            return new SightingSegment(file, buffer, capacity, count);
+        }
+    }
+
+    void append(long timestamp, float latitude, float longitude, int lineage) {
+        int offset = offset(count);
+        buffer.putLong(offset, timestamp)
+                .putFloat(offset + 8, latitude)
+                .putFloat(offset + 12, longitude)
+                .putInt(offset + 16, lineage)
+                .putInt(offset + 20, 0);
+        count++;
+        buffer.putInt(COUNT_OFFSET, count);
+    }
+
+    long timestamp(int index) {
+        return buffer.getLong(offset(index));
+    }
+
+    float latitude(int index) {
+        return buffer.getFloat(offset(index) + 8);
+    }
+
+    float longitude(int index) {
+        return buffer.getFloat(offset(index) + 12);
+    }
+
+    int lineage(int index) {
+        return buffer.getInt(offset(index) + 16);
+    }
+
+    /**
+     * Returns the index of the first record at or after the given time, relying on records
+     * being appended in time order.
+     */
+    int indexOf(long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (timestamp(middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    boolean isFull() {
+        return count == capacity;
+    }
+
+    long lastTimestamp() {
+        return timestamp(count - 1);
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Writes the mapped content back to the file.
+     */
+    void flush() {
+        if (buffer instanceof MappedByteBuffer mapped) {
+            mapped.force();
+        }
+    }
+
+    /**
+     * Replaces the given file with this segment's, which keeps its mapping.
+     */
+    void moveTo(Path target) throws IOException {
+        flush();
+        Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        file = target;
+    }
+
+    void delete() throws IOException {
+        if (file != null) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static int offset(int index) {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+}
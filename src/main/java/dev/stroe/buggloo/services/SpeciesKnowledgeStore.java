@@ -0,0 +1,160 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.stroe.buggloo.config.SpeciesKnowledgeConfig;
+import dev.stroe.buggloo.models.Insect;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Remembers the full {@link Insect} record of every species identified so far, keyed by
+ * scientific name. Nearly all of the record describes the species rather than the photo,
+ * so once a species is known a later identification only needs the model to name it.
+ * Entries are bounded in number, expire after a fixed TTL and are evicted in LRU order.
+ */
+@Service
+public class SpeciesKnowledgeStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpeciesKnowledgeStore.class);
+    private static final String METRIC_PREFIX = "buggloo.species.knowledge";
+
+    private final SpeciesKnowledgeConfig settings;
+    private final ObjectMapper objectMapper;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public SpeciesKnowledgeStore(SpeciesKnowledgeConfig settings, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.settings = settings;
+        this.objectMapper = objectMapper;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > settings.getMaxEntries();
+            }
+        };
+
+        this.hits = Counter.builder(METRIC_PREFIX + ".gets").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder(METRIC_PREFIX + ".gets").tag("result", "miss").register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".size", this, SpeciesKnowledgeStore::size).register(meterRegistry);
+    }
+
+    /**
+     * Returns whether identifications should go through the store.
+     */
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    /**
+     * Returns the stored record of a species.
+     *
+     * @param scientificName the scientific name, compared case- and whitespace-insensitively
+     * @return the record, or empty if the species is unknown or its record has expired
+     */
+    public synchronized Optional<Insect> lookup(String scientificName) {
+        String key = key(scientificName);
+        Entry entry = key != null ? entries.get(key) : null;
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key);
+            entry = null;
+        }
+
+        (entry != null ? hits : misses).increment();
+        return entry != null ? Optional.of(entry.insect()) : Optional.empty();
+    }
+
+    /**
+     * Stores the record of an identified species, replacing any earlier one.
+     */
+    public synchronized void remember(Insect insect) {
+        String key = key(insect.scientificName);
+        if (key == null || !Boolean.TRUE.equals(insect.isInsect)) {
+            return;
+        }
+        entries.put(key, new Entry(insect, System.currentTimeMillis() + settings.getTtl().toMillis()));
+    }
+
+    /**
+     * Returns the number of stored species.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static String key(String scientificName) {
+        if (scientificName == null || scientificName.isBlank()) {
+            return null;
+        }
+        return scientificName.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    @PostConstruct
+    synchronized void load() {
+        Path file = persistenceFile();
+        if (file == null || !Files.exists(file)) {
+            return;
+        }
+
+        try {
+            List<Entry> stored = objectMapper.readValue(file.toFile(), new TypeReference<>() {});
+            long now = System.currentTimeMillis();
+            for (Entry entry : stored) {
+                if (!entry.isExpired(now)) {
+                    entries.put(key(entry.insect().scientificName), entry);
+                }
+            }
+            logger.info("Loaded {} species records from {}", entries.size(), file);
+        } catch (IOException e) {
+            logger.warn("Failed to load species records from {}, starting empty", file, e);
+        }
+    }
+
+    @PreDestroy
+    synchronized void save() {
+        Path file = persistenceFile();
+        if (file == null) {
+            return;
+        }
+
+        try {
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            objectMapper.writeValue(temporary.toFile(), List.copyOf(entries.values()));
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Saved {} species records to {}", entries.size(), file);
+        } catch (IOException e) {
+            logger.error("Failed to save species records to {}", file, e);
+        }
+    }
+
+    private Path persistenceFile() {
+        String file = settings.getPersistenceFile();
+        return file != null && !file.isBlank() ? Path.of(file) : null;
+    }
+
+    private record Entry(Insect insect, long expiresAt) {
+
+        private boolean isExpired(long now) {
+            return now > expiresAt;
+        }
+    }
+}
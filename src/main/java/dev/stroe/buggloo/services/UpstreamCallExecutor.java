@@ -0,0 +1,394 @@
+package dev.stroe.buggloo.services;
+
+import com.openai.errors.OpenAIIoException;
+import com.openai.errors.OpenAIServiceException;
+import com.openai.errors.RateLimitException;
+import com.openai.models.completions.CompletionUsage;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.exceptions.ServiceException;
+import dev.stroe.buggloo.exceptions.UpstreamBusyException;
+import dev.stroe.buggloo.utils.LatencyWindow;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs calls to OpenAI so that a slow or failing upstream cannot tie up the callers:
+ * <ul>
+ *     <li>every call has a deadline, after which it fails with {@link ServiceException};</li>
+ *     <li>a call still unanswered after the usual latency of its kind (the configured
+ *     percentile of recent calls) is hedged with a second request if a permit is free and
+ *     the hedge budget allows, and the first answer wins;</li>
+ *     <li>calls fail fast with {@link ServiceException} while the {@link UpstreamCircuitBreaker}
+ *     is open;</li>
+ *     <li>requests in flight are bounded by the adaptive {@link UpstreamConcurrencyLimiter},
+ *     which is fed each request's latency and rate limiting.</li>
+ * </ul>
+ * Streamed calls are only subject to the circuit breaker and the concurrency limit, as
+ * their duration depends on how fast the client reads.
+ */
+@Service
+public class UpstreamCallExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamCallExecutor.class);
+    private static final String METRIC_PREFIX = "buggloo.openai";
+    private static final int LATENCY_WINDOW_SIZE = 200;
+
+    /**
+     * Hedged requests that may be saved up during quiet periods.
+     */
+    private static final double MAX_HEDGE_TOKENS = 10;
+
+    private final OpenAIConfig.Resilience settings;
+    private final UpstreamConcurrencyLimiter limiter;
+    private final UpstreamCircuitBreaker circuitBreaker;
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+    private final Counter deadlinesExceeded;
+
+    private final MeterRegistry meterRegistry;
+
+    private double hedgeTokens = MAX_HEDGE_TOKENS;
+
+    /**
+     * Blocking calls run on a virtual thread each, so they can be hedged and abandoned.
+     */
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Runs the hedge and deadline timers, which are removed as soon as their call settles
+     * so that the call's request is not kept until the deadline.
+     */
+    private final ScheduledThreadPoolExecutor timers =
+            new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().daemon().name("openai-timers").factory());
+
+    public UpstreamCallExecutor(OpenAIConfig config, MeterRegistry meterRegistry) {
+        this.settings = config.getResilience();
+        this.meterRegistry = meterRegistry;
+        this.limiter = new UpstreamConcurrencyLimiter(config, meterRegistry);
+        this.circuitBreaker = new UpstreamCircuitBreaker(config, meterRegistry);
+        this.hedgesSent = Counter.builder(METRIC_PREFIX + ".hedges").tag("outcome", "sent").register(meterRegistry);
+        this.hedgesWon = Counter.builder(METRIC_PREFIX + ".hedges").tag("outcome", "won").register(meterRegistry);
+        this.deadlinesExceeded = Counter.builder(METRIC_PREFIX + ".deadline.exceeded").register(meterRegistry);
+        timers.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    void close() {
+        timers.shutdownNow();
+    }
+
+    /**
+     * Makes a blocking call.
+     *
+     * @param operation the kind of call, whose latencies are tracked together
+     * @param call the upstream call; it may be started twice when hedged
+     * @return the call result
+     * @throws ServiceException if the deadline passes or the circuit is open
+     * @throws UpstreamBusyException if no permit became available in time
+     */
+    public <T> T call(String operation, Supplier<T> call) {
+        CompletableFuture<T> result = callAsync(operation, () -> runInterruptibly(call));
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw propagate(e.getCause());
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServiceException("Interrupted while waiting for OpenAI", e);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #call(String, Supplier)}.
+     *
+     * @param operation the kind of call, whose latencies are tracked together
+     * @param call starts the upstream call; it may be invoked twice when hedged
+     * @return a future with the call result, failed with the same exceptions the blocking
+     *         variant throws
+     */
+    public <T> CompletableFuture<T> callAsync(String operation, Supplier<CompletableFuture<T>> call) {
+        try {
+            circuitBreaker.acquirePermission();
+        } catch (ServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        HedgedCall<T> hedgedCall = new HedgedCall<>(operation, call);
+        limiter.acquirePermitAsync().whenComplete((permit, error) -> {
+            if (error != null) {
+                circuitBreaker.release();
+                hedgedCall.result.completeExceptionally(unwrap(error));
+            } else {
+                hedgedCall.start(permit);
+            }
+        });
+        return hedgedCall.result;
+    }
+
+    /**
+     * Takes a concurrency permit for a streamed call, held until the stream is closed.
+     *
+     * @throws UpstreamBusyException if no permit became available in time
+     */
+    public UpstreamConcurrencyLimiter.Permit acquireStreamPermit() {
+        return limiter.acquirePermit();
+    }
+
+    /**
+     * Opens a streamed call, recording whether it could be opened with the circuit breaker.
+     *
+     * @param open opens the upstream stream
+     * @return the opened stream
+     * @throws ServiceException if the circuit is open
+     */
+    public <T> T openStream(Supplier<T> open) {
+        circuitBreaker.acquirePermission();
+        try {
+            T stream = open.get();
+            circuitBreaker.record(false);
+            return stream;
+        } catch (RuntimeException e) {
+            circuitBreaker.record(isUpstreamFault(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Records the tokens a call used in {@code buggloo.openai.tokens}: prompt, completion,
+     * and the part of the prompt served from OpenAI's prompt cache ({@code type=cached}),
+     * which shows how much of the prompt prefix is being reused. Only the answer that was
+     * used is reported; the tokens of an abandoned hedged request are not known.
+     *
+     * @param operation the kind of call
+     * @param usage the usage reported with the completion, if any
+     */
+    public void recordUsage(String operation, Optional<CompletionUsage> usage) {
+        usage.ifPresent(tokens -> {
+            tokenSummary(operation, "prompt").record(tokens.promptTokens());
+            tokenSummary(operation, "completion").record(tokens.completionTokens());
+            tokens.promptTokensDetails()
+                    .flatMap(CompletionUsage.PromptTokensDetails::cachedTokens)
+                    .ifPresent(cached -> tokenSummary(operation, "cached").record(cached));
+        });
+    }
+
+    private DistributionSummary tokenSummary(String operation, String type) {
+        return DistributionSummary.builder(METRIC_PREFIX + ".tokens")
+                .baseUnit("tokens")
+                .tags("operation", operation, "type", type)
+                .register(meterRegistry);
+    }
+
+    /**
+     * A call and its hedged request, completing {@link #result} with the first answer.
+     */
+    private final class HedgedCall<T> {
+
+        private final String operation;
+        private final Supplier<CompletableFuture<T>> call;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final List<CompletableFuture<T>> attempts = new CopyOnWriteArrayList<>();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile boolean timedOut;
+
+        HedgedCall(String operation, Supplier<CompletableFuture<T>> call) {
+            this.operation = operation;
+            this.call = call;
+        }
+
+        void start(UpstreamConcurrencyLimiter.Permit permit) {
+            earnHedgeToken();
+            Optional<ScheduledFuture<?>> hedgeTimer = hedgeDelay()
+                    .map(delay -> timers.schedule(this::hedge, delay.toNanos(), TimeUnit.NANOSECONDS));
+            ScheduledFuture<?> deadlineTimer = timers.schedule(this::expire, settings.getDeadline().toNanos(),
+                    TimeUnit.NANOSECONDS);
+            result.whenComplete((value, error) -> {
+                hedgeTimer.ifPresent(timer -> timer.cancel(false));
+                deadlineTimer.cancel(false);
+                attempts.forEach(attempt -> attempt.cancel(true));
+            });
+            launch(permit, false);
+        }
+
+        private void hedge() {
+            if (result.isDone() || !takeHedgeToken()) {
+                return;
+            }
+            Optional<UpstreamConcurrencyLimiter.Permit> permit = limiter.tryAcquirePermit();
+            if (permit.isEmpty()) {
+                returnHedgeToken();
+                return;
+            }
+            logger.debug("No answer to {} call yet, sending a hedged request", operation);
+            hedgesSent.increment();
+            launch(permit.get(), true);
+        }
+
+        private void expire() {
+            if (!result.isDone()) {
+                timedOut = true;
+                deadlinesExceeded.increment();
+                fail(new ServiceException("OpenAI did not respond within " + settings.getDeadline().toMillis() + " ms"));
+            }
+        }
+
+        private void launch(UpstreamConcurrencyLimiter.Permit permit, boolean hedged) {
+            pending.incrementAndGet();
+            long started = System.nanoTime();
+            CompletableFuture<T> attempt;
+            try {
+                attempt = call.get();
+            } catch (RuntimeException e) {
+                attempt = CompletableFuture.failedFuture(e);
+            }
+            attempts.add(attempt);
+            if (result.isDone()) {
+                attempt.cancel(true);
+            }
+
+            attempt.whenComplete((value, error) -> {
+                Duration latency = Duration.ofNanos(System.nanoTime() - started);
+                LatencyWindow window = window();
+                Throwable cause = error != null ? unwrap(error) : null;
+                if (cause == null) {
+                    permit.complete(latencyRatio(window, latency));
+                } else if (cause instanceof RateLimitException || (cause instanceof CancellationException && timedOut)) {
+                    permit.drop();
+                } else {
+                    permit.close();
+                }
+
+                // Abandoned first requests are recorded too, so hedging does not hide slow calls
+                if (!hedged && (cause == null || cause instanceof CancellationException)) {
+                    window.record(latency);
+                }
+
+                if (cause == null) {
+                    if (settled.compareAndSet(false, true)) {
+                        circuitBreaker.record(false);
+                        if (hedged) {
+                            hedgesWon.increment();
+                        }
+                        result.complete(value);
+                    }
+                } else if (pending.decrementAndGet() == 0) {
+                    fail(cause);
+                }
+            });
+        }
+
+        private void fail(Throwable error) {
+            // Settle before completing, so the caller sees the outcome already recorded
+            if (settled.compareAndSet(false, true)) {
+                circuitBreaker.record(timedOut || isUpstreamFault(error));
+                result.completeExceptionally(error);
+            }
+        }
+
+        private Optional<Duration> hedgeDelay() {
+            OpenAIConfig.Hedge hedge = settings.getHedge();
+            LatencyWindow window = window();
+            if (!hedge.isEnabled() || window.count() < hedge.getMinSamples()) {
+                return Optional.empty();
+            }
+            Duration delay = window.percentile(hedge.getPercentile());
+            return Optional.of(delay.compareTo(hedge.getMinDelay()) > 0 ? delay : hedge.getMinDelay());
+        }
+
+        private LatencyWindow window() {
+            return latencies.computeIfAbsent(operation, key -> new LatencyWindow(LATENCY_WINDOW_SIZE));
+        }
+    }
+
+    private synchronized boolean takeHedgeToken() {
+        // Every call earns a fraction of a hedge, so hedges stay a bounded share of the calls
+        if (hedgeTokens < 1) {
+            return false;
+        }
+        hedgeTokens--;
+        return true;
+    }
+
+    private synchronized void returnHedgeToken() {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + 1);
+    }
+
+    private synchronized void earnHedgeToken() {
+        hedgeTokens = Math.min(MAX_HEDGE_TOKENS, hedgeTokens + settings.getHedge().getBudget());
+    }
+
+    private double latencyRatio(LatencyWindow window, Duration latency) {
+        if (window.count() < settings.getHedge().getMinSamples()) {
+            return 1.0;
+        }
+        long median = window.percentile(0.5).toNanos();
+        return median > 0 ? (double) latency.toNanos() / median : 1.0;
+    }
+
+    private <T> CompletableFuture<T> runInterruptibly(Supplier<T> call) {
+        CompletableFuture<T> attempt = new CompletableFuture<>();
+        Future<?> task = workers.submit(() -> {
+            try {
+                attempt.complete(call.get());
+            } catch (Throwable e) {
+                attempt.completeExceptionally(e);
+            }
+        });
+        attempt.whenComplete((value, error) -> {
+            if (attempt.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return attempt;
+    }
+
+    /**
+     * Returns whether a failure shows OpenAI is unhealthy, as opposed to rejecting this
+     * particular request or rate-limiting us.
+     */
+    private static boolean isUpstreamFault(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (cause instanceof OpenAIServiceException serviceError) {
+            return serviceError.statusCode() >= 500;
+        }
+        return cause instanceof OpenAIIoException;
+    }
+
+    private static RuntimeException propagate(Throwable error) {
+        return error instanceof RuntimeException runtimeError ? runtimeError : new ServiceException(error.getMessage(), error);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
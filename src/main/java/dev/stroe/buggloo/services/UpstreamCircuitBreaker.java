@@ -0,0 +1,148 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.exceptions.ServiceException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker over the calls to OpenAI. Once the failure rate of the recent calls
+ * reaches the threshold, the circuit opens and calls fail immediately with
+ * {@link ServiceException} instead of piling up behind a struggling upstream. After the
+ * open duration a few trial calls are let through: if they succeed the circuit closes
+ * again, if any fails it reopens.
+ */
+public class UpstreamCircuitBreaker {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamCircuitBreaker.class);
+    private static final String METRIC_PREFIX = "buggloo.openai.circuit";
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final OpenAIConfig.CircuitBreaker settings;
+    private final Counter rejected;
+
+    private final boolean[] outcomes;
+    private int next;
+    private int recorded;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long stateSince = System.nanoTime();
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    public UpstreamCircuitBreaker(OpenAIConfig config, MeterRegistry meterRegistry) {
+        this.settings = config.getResilience().getCircuitBreaker();
+        this.outcomes = new boolean[settings.getWindowSize()];
+        this.rejected = Counter.builder(METRIC_PREFIX + ".rejected").register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".state", this, breaker -> breaker.state().ordinal()).register(meterRegistry);
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Checks that a call may be made now.
+     *
+     * @throws ServiceException if the circuit is open, or half-open with all trial calls taken
+     */
+    public synchronized void acquirePermission() {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        if (state == State.OPEN && elapsedInState() >= settings.getOpenDuration().toNanos()) {
+            transitionTo(State.HALF_OPEN);
+        }
+        // Trial calls whose outcome never got recorded must not keep the circuit half-open forever
+        if (state == State.HALF_OPEN && elapsedInState() >= settings.getOpenDuration().toNanos()) {
+            transitionTo(State.HALF_OPEN);
+        }
+
+        if (state == State.CLOSED) {
+            return;
+        }
+        if (state == State.HALF_OPEN && trialsStarted < settings.getHalfOpenCalls()) {
+            trialsStarted++;
+            return;
+        }
+        rejected.increment();
+        throw new ServiceException("OpenAI is temporarily unavailable, please retry later");
+    }
+
+    /**
+     * Records the outcome of a call made after {@link #acquirePermission()}.
+     *
+     * @param failed whether the call failed in a way that shows OpenAI is unhealthy
+     */
+    public synchronized void record(boolean failed) {
+        if (!settings.isEnabled()) {
+            return;
+        }
+        switch (state) {
+            case CLOSED -> {
+                if (recorded == outcomes.length) {
+                    failures -= outcomes[next] ? 1 : 0;
+                } else {
+                    recorded++;
+                }
+                outcomes[next] = failed;
+                failures += failed ? 1 : 0;
+                next = (next + 1) % outcomes.length;
+
+                if (recorded >= settings.getMinimumCalls()
+                        && failures >= settings.getFailureRateThreshold() * recorded) {
+                    logger.warn("{} of the last {} calls to OpenAI failed, opening the circuit for {}",
+                            failures, recorded, settings.getOpenDuration());
+                    transitionTo(State.OPEN);
+                }
+            }
+            case HALF_OPEN -> {
+                if (failed) {
+                    logger.warn("Trial call to OpenAI failed, reopening the circuit for {}", settings.getOpenDuration());
+                    transitionTo(State.OPEN);
+                } else if (++trialsSucceeded >= settings.getHalfOpenCalls()) {
+                    logger.info("Trial calls to OpenAI succeeded, closing the circuit");
+                    transitionTo(State.CLOSED);
+                }
+            }
+            case OPEN -> {
+                // A call started before the circuit opened; the open duration stands
+            }
+        }
+    }
+
+    /**
+     * Gives back the permission of a call that was never made, without recording an outcome.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && trialsStarted > 0) {
+            trialsStarted--;
+        }
+    }
+
+    private void transitionTo(State newState) {
+        state = newState;
+        stateSince = System.nanoTime();
+        trialsStarted = 0;
+        trialsSucceeded = 0;
+        if (newState == State.CLOSED) {
+            next = 0;
+            recorded = 0;
+            failures = 0;
+        }
+    }
+
+    private long elapsedInState() {
+        return System.nanoTime() - stateSince;
+    }
+}
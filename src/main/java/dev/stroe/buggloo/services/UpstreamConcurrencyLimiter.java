@@ -0,0 +1,224 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.exceptions.UpstreamBusyException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounds the number of OpenAI calls in flight at once. Callers over the limit
+ * wait up to the configured timeout for a permit before being rejected.
+ * <p>
+ * When adaptive, the limit is tuned from the outcome of each call in the manner of TCP
+ * congestion control: it grows by one per limit's worth of fast calls made while at least
+ * half of it is in use (additive increase), and is cut by the backoff ratio when OpenAI
+ * rate-limits a call, a call misses its deadline, or recent calls take noticeably longer
+ * than their usual median, as they do once requests queue upstream (multiplicative
+ * decrease). It is cut at most once per limit's worth of completed calls, so the calls
+ * already in flight when it backs off cannot drive it down further.
+ */
+public class UpstreamConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamConcurrencyLimiter.class);
+    private static final String METRIC_PREFIX = "buggloo.openai.concurrency";
+
+    /**
+     * Weight of the latest call in the moving average of latency ratios, about the last ten calls.
+     */
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final OpenAIConfig.Concurrency settings;
+    private final AdjustableSemaphore permits;
+    private final Counter rejected;
+
+    private double estimatedLimit;
+    private int limit;
+    private double latencyRatio = 1.0;
+    private int completedSinceBackoff;
+
+    /**
+     * Async callers that find no free permit wait on a virtual thread, never on an event loop.
+     */
+    private final ExecutorService waiters = Executors.newVirtualThreadPerTaskExecutor();
+
+    public UpstreamConcurrencyLimiter(OpenAIConfig config, MeterRegistry meterRegistry) {
+        this.settings = config.getConcurrency();
+        this.limit = settings.getMaxConcurrentRequests();
+        this.estimatedLimit = limit;
+        this.completedSinceBackoff = limit;
+        this.permits = new AdjustableSemaphore(limit);
+        this.rejected = Counter.builder(METRIC_PREFIX + ".rejected").register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".in.use", this, UpstreamConcurrencyLimiter::inUse).register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".waiting", permits, Semaphore::getQueueLength).register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".limit", this, UpstreamConcurrencyLimiter::limit).register(meterRegistry);
+    }
+
+    /**
+     * Returns the current limit on calls in flight.
+     */
+    public synchronized int limit() {
+        return limit;
+    }
+
+    /**
+     * Takes a permit, waiting for one to become available.
+     *
+     * @return the held permit
+     * @throws UpstreamBusyException if no permit became available in time
+     */
+    public Permit acquirePermit() {
+        acquire();
+        return new Permit();
+    }
+
+    /**
+     * Non-blocking variant of {@link #acquirePermit()}.
+     *
+     * @return a future with the held permit, failed with {@link UpstreamBusyException}
+     *         if no permit became available in time
+     */
+    public CompletableFuture<Permit> acquirePermitAsync() {
+        if (permits.tryAcquire()) {
+            return CompletableFuture.completedFuture(new Permit());
+        }
+        return CompletableFuture.supplyAsync(this::acquirePermit, waiters);
+    }
+
+    /**
+     * Takes a permit only if one is free right now.
+     *
+     * @return the held permit, or empty if the limit is reached
+     */
+    public Optional<Permit> tryAcquirePermit() {
+        return permits.tryAcquire() ? Optional.of(new Permit()) : Optional.empty();
+    }
+
+    /**
+     * A held permit. Closing it releases the permit without affecting the limit; completing
+     * or dropping it also reports how the call went. Only the first of these has an effect.
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {
+        }
+
+        /**
+         * Releases the permit after a successful call.
+         *
+         * @param latencyRatio the call's latency divided by the usual latency of such calls
+         */
+        public void complete(double latencyRatio) {
+            if (release()) {
+                onCompleted(latencyRatio);
+            }
+        }
+
+        /**
+         * Releases the permit after a call that was rate-limited or timed out.
+         */
+        public void drop() {
+            if (release()) {
+                onDropped();
+            }
+        }
+
+        @Override
+        public void close() {
+            release();
+        }
+
+        private boolean release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private synchronized void onCompleted(double ratio) {
+        if (!settings.isAdaptive()) {
+            return;
+        }
+        completedSinceBackoff++;
+        latencyRatio += LATENCY_SMOOTHING * (ratio - latencyRatio);
+        if (latencyRatio > settings.getLatencyTolerance()) {
+            backOff("latency rose to " + String.format("%.1f", latencyRatio) + "x the usual");
+        } else if (inUse() + 1 >= limit / 2.0) {
+            setLimit(estimatedLimit + 1.0 / limit);
+        }
+    }
+
+    private synchronized void onDropped() {
+        if (settings.isAdaptive()) {
+            completedSinceBackoff++;
+            backOff("a call was rate-limited or timed out");
+        }
+    }
+
+    private void backOff(String reason) {
+        if (completedSinceBackoff < limit) {
+            return;
+        }
+        completedSinceBackoff = 0;
+        setLimit(estimatedLimit * settings.getBackoffRatio());
+        logger.info("Lowered the OpenAI concurrency limit to {} because {}", limit, reason);
+    }
+
+    private void setLimit(double newLimit) {
+        estimatedLimit = Math.max(settings.getMinConcurrentRequests(),
+                Math.min(settings.getMaxConcurrentRequests(), newLimit));
+        int applied = (int) estimatedLimit;
+        if (applied > limit) {
+            permits.release(applied - limit);
+        } else if (applied < limit) {
+            permits.shrink(limit - applied);
+        }
+        limit = applied;
+    }
+
+    private synchronized int inUse() {
+        return limit - permits.availablePermits();
+    }
+
+    private void acquire() {
+        try {
+            if (!permits.tryAcquire(settings.getAcquireTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                rejected.increment();
+                throw new UpstreamBusyException("Too many concurrent requests to OpenAI, please retry later");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UpstreamBusyException("Interrupted while waiting for an OpenAI request slot", e);
+        }
+    }
+
+    /**
+     * Semaphore whose permits can be taken away while they are held; the available count
+     * then goes negative until enough are released.
+     */
+    private static final class AdjustableSemaphore extends Semaphore {
+
+        AdjustableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        void shrink(int reduction) {
+            reducePermits(reduction);
+        }
+    }
+}
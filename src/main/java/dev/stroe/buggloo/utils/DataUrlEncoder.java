@@ -0,0 +1,118 @@
+package dev.stroe.buggloo.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Encodes image content as a Base64 {@code data:} URL in a single pass.
+ * <p>
+ * The content is streamed through a Base64 encoder straight into one buffer sized
+ * exactly for the final URL, so the only per-request allocation is the resulting
+ * String. Buffers up to {@link #MAX_POOLED_BUFFER_SIZE} are pooled and reused.
+ */
+public final class DataUrlEncoder {
+
+    private static final int MAX_POOLED_BUFFER_SIZE = 8 * 1024 * 1024;
+    private static final int MIN_BUFFER_SIZE = 256 * 1024;
+    private static final int GROWTH_MARGIN = 64 * 1024;
+
+    private static final ArrayBlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(4);
+
+    private DataUrlEncoder() {
+    }
+
+    /**
+     * Encodes the given bytes as a data URL.
+     */
+    public static String encode(byte[] content, String mimeType) {
+        try {
+            return encode(new ByteArrayInputStream(content), content.length, mimeType);
+        } catch (IOException e) {
+            throw new IllegalStateException("Reading from a byte array cannot fail", e);
+        }
+    }
+
+    /**
+     * Streams the given content into a data URL.
+     *
+     * @param content the raw image content; it is not closed
+     * @param contentLength the expected number of bytes, used to size the buffer
+     * @param mimeType the MIME type written into the URL
+     * @return the data URL
+     * @throws IOException if reading the content fails
+     */
+    public static String encode(InputStream content, long contentLength, String mimeType) throws IOException {
+        byte[] prefix = ("data:" + mimeType + ";base64,").getBytes(StandardCharsets.US_ASCII);
+        long encodedLength = prefix.length + 4 * ((contentLength + 2) / 3);
+        if (encodedLength > Integer.MAX_VALUE - 8) {
+            throw new IOException("Content too large to encode: " + contentLength + " bytes");
+        }
+
+        byte[] buffer = acquire((int) encodedLength);
+        try {
+            System.arraycopy(prefix, 0, buffer, 0, prefix.length);
+            BufferOutputStream target = new BufferOutputStream(buffer, prefix.length);
+            try (OutputStream encoder = Base64.getEncoder().wrap(target)) {
+                content.transferTo(encoder);
+            }
+            return new String(target.buffer, 0, target.position, StandardCharsets.ISO_8859_1);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private static byte[] acquire(int minimumSize) {
+        byte[] pooled = POOL.poll();
+        if (pooled != null && pooled.length >= minimumSize) {
+            return pooled;
+        }
+        return new byte[Math.max(minimumSize, MIN_BUFFER_SIZE)];
+    }
+
+    private static void release(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_BUFFER_SIZE) {
+            POOL.offer(buffer);
+        }
+    }
+
+    /**
+     * Writes into a preallocated array, growing it only if the declared content
+     * length turned out to be too small.
+     */
+    private static final class BufferOutputStream extends OutputStream {
+
+        private byte[] buffer;
+        private int position;
+
+        private BufferOutputStream(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (position + additional > buffer.length) {
+                byte[] grown = new byte[Math.max(buffer.length * 2, position + additional + GROWTH_MARGIN)];
+                System.arraycopy(buffer, 0, grown, 0, position);
+                buffer = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package dev.stroe.buggloo.utils;
+
+import dev.stroe.buggloo.models.ImageHeader;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Detects the format and dimensions of JPEG, PNG, GIF, BMP and WebP images from their
+ * magic bytes and headers alone, without decoding any pixel data.
+ * <p>
+ * Only the first {@link #HEADER_WINDOW} bytes are looked at. That is enough for every
+ * format but JPEG, whose frame header may follow up to 64KB of EXIF data and, rarely,
+ * further metadata; when it lies beyond the window the format is still reported, without
+ * dimensions.
+ */
+public final class ImageHeaderSniffer {
+
+    /**
+     * Number of leading bytes inspected: room for a maximum-size EXIF segment ahead of the
+     * JPEG frame header.
+     */
+    public static final int HEADER_WINDOW = 66 * 1024;
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private ImageHeaderSniffer() {
+    }
+
+    /**
+     * Sniffs the leading bytes of an image.
+     *
+     * @param head the first bytes of the content
+     * @param length the number of valid bytes in {@code head}
+     * @param complete whether {@code head} holds the whole content, so that a header
+     *                 running past its end means the image is truncated
+     * @return the header, or empty if the content is not in a supported image format
+     * @throws IllegalArgumentException if the content is in a supported format but its
+     *                                  header is truncated or malformed
+     */
+    public static Optional<ImageHeader> sniff(byte[] head, int length, boolean complete) {
+        Reader reader = new Reader(head, length, complete);
+        if (reader.startsWith(0, (byte) 0xFF, (byte) 0xD8, (byte) 0xFF)) {
+            return Optional.of(jpeg(reader));
+        }
+        if (reader.startsWith(0, PNG_SIGNATURE)) {
+            return Optional.of(png(reader));
+        }
+        if (reader.startsWith(0, ascii("GIF87a")) || reader.startsWith(0, ascii("GIF89a"))) {
+            return Optional.of(gif(reader));
+        }
+        if (reader.startsWith(0, ascii("RIFF")) && reader.startsWith(8, ascii("WEBP"))) {
+            return Optional.of(webp(reader));
+        }
+        if (reader.startsWith(0, ascii("BM"))) {
+            return Optional.of(bmp(reader));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Walks the marker segments up to the first start-of-frame, skipping metadata.
+     */
+    private static ImageHeader jpeg(Reader reader) {
+        int offset = 2;
+        while (true) {
+            if (!reader.has(offset, 2)) {
+                return new ImageHeader("image/jpeg");
+            }
+            if (reader.u8(offset) != 0xFF) {
+                throw new IllegalArgumentException("Malformed JPEG header");
+            }
+            int marker = reader.u8(offset + 1);
+            if (marker == 0xFF) {
+                // Fill byte before the marker
+                offset++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                offset += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                throw new IllegalArgumentException("JPEG has no frame header");
+            }
+            boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (startOfFrame) {
+                if (!reader.has(offset, 9)) {
+                    return new ImageHeader("image/jpeg");
+                }
+                return dimensions("image/jpeg", reader.u16be(offset + 7), reader.u16be(offset + 5));
+            }
+            if (!reader.has(offset, 4)) {
+                return new ImageHeader("image/jpeg");
+            }
+            int segmentLength = reader.u16be(offset + 2);
+            if (segmentLength < 2) {
+                throw new IllegalArgumentException("Malformed JPEG header");
+            }
+            offset += 2 + segmentLength;
+        }
+    }
+
+    private static ImageHeader png(Reader reader) {
+        if (!reader.has(0, 24)) {
+            return new ImageHeader("image/png");
+        }
+        if (!reader.startsWith(12, ascii("IHDR"))) {
+            throw new IllegalArgumentException("Malformed PNG header");
+        }
+        return dimensions("image/png", reader.s32be(16), reader.s32be(20));
+    }
+
+    private static ImageHeader gif(Reader reader) {
+        if (!reader.has(0, 10)) {
+            return new ImageHeader("image/gif");
+        }
+        return dimensions("image/gif", reader.u16le(6), reader.u16le(8));
+    }
+
+    private static ImageHeader webp(Reader reader) {
+        if (!reader.has(0, 16)) {
+            return new ImageHeader("image/webp");
+        }
+        if (reader.startsWith(12, ascii("VP8 "))) {
+            // Lossy: a 3-byte frame tag, the start code, then 14-bit dimensions
+            if (!reader.has(0, 30)) {
+                return new ImageHeader("image/webp");
+            }
+            if (!reader.startsWith(23, (byte) 0x9D, (byte) 0x01, (byte) 0x2A)) {
+                throw new IllegalArgumentException("Malformed WebP header");
+            }
+            return dimensions("image/webp", reader.u16le(26) & 0x3FFF, reader.u16le(28) & 0x3FFF);
+        }
+        if (reader.startsWith(12, ascii("VP8L"))) {
+            // Lossless: a signature byte, then 14-bit width and height minus one
+            if (!reader.has(0, 25)) {
+                return new ImageHeader("image/webp");
+            }
+            if (reader.u8(20) != 0x2F) {
+                throw new IllegalArgumentException("Malformed WebP header");
+            }
+            int bits = reader.s32le(21);
+            return dimensions("image/webp", (bits & 0x3FFF) + 1, ((bits >>> 14) & 0x3FFF) + 1);
+        }
+        if (reader.startsWith(12, ascii("VP8X"))) {
+            // Extended: 24-bit canvas width and height minus one
+            if (!reader.has(0, 30)) {
+                return new ImageHeader("image/webp");
+            }
+            return dimensions("image/webp", reader.u24le(24) + 1, reader.u24le(27) + 1);
+        }
+        throw new IllegalArgumentException("Malformed WebP header");
+    }
+
+    private static ImageHeader bmp(Reader reader) {
+        if (!reader.has(0, 18)) {
+            return new ImageHeader("image/bmp");
+        }
+        int infoHeaderSize = reader.s32le(14);
+        if (infoHeaderSize == 12) {
+            if (!reader.has(0, 22)) {
+                return new ImageHeader("image/bmp");
+            }
+            return dimensions("image/bmp", reader.u16le(18), reader.u16le(20));
+        }
+        if (infoHeaderSize < 16 || infoHeaderSize > 124) {
+            throw new IllegalArgumentException("Malformed BMP header");
+        }
+        if (!reader.has(0, 26)) {
+            return new ImageHeader("image/bmp");
+        }
+        // A negative height marks a top-down bitmap
+        return dimensions("image/bmp", reader.s32le(18), Math.abs(reader.s32le(22)));
+    }
+
+    private static ImageHeader dimensions(String mimeType, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image has invalid dimensions " + width + "x" + height);
+        }
+        return new ImageHeader(mimeType, width, height);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Bounds-checked access to the leading bytes.
+     */
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private final int length;
+        private final boolean complete;
+
+        Reader(byte[] bytes, int length, boolean complete) {
+            this.bytes = bytes;
+            this.length = length;
+            this.complete = complete;
+        }
+
+        /**
+         * Returns whether {@code count} bytes are available at {@code offset}. A header
+         * running past the end of the whole content is truncated; one running past the
+         * end of the window just lies beyond what is inspected.
+         */
+        boolean has(int offset, int count) {
+            if ((long) offset + count <= length) {
+                return true;
+            }
+            if (complete) {
+                throw new IllegalArgumentException("Image header is truncated");
+            }
+            return false;
+        }
+
+        boolean startsWith(int offset, byte... prefix) {
+            if (offset + prefix.length > length) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length; i++) {
+                if (bytes[offset + i] != prefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int u8(int offset) {
+            return bytes[offset] & 0xFF;
+        }
+
+        int u16be(int offset) {
+            return u8(offset) << 8 | u8(offset + 1);
+        }
+
+        int u16le(int offset) {
+            return u8(offset) | u8(offset + 1) << 8;
+        }
+
+        int u24le(int offset) {
+            return u16le(offset) | u8(offset + 2) << 16;
+        }
+
+        int s32be(int offset) {
+            return u16be(offset) << 16 | u16be(offset + 2);
+        }
+
+        int s32le(int offset) {
+            return u16le(offset) | u16le(offset + 2) << 16;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package dev.stroe.buggloo.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses a JSON object that arrives in arbitrary fragments, such as the deltas of a
+ * streamed structured completion, and reports each top-level property as soon as its
+ * value is complete. Nested objects and arrays are reported whole.
+ * <p>
+ * Backed by Jackson's non-blocking parser, so every fragment is scanned once and
+ * nothing is re-parsed as the document grows. Not thread-safe.
+ */
+public class IncrementalJsonObjectParser {
+
+    private final ObjectMapper objectMapper;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+
+    private int depth;
+    private String currentField;
+    private TokenBuffer currentValue;
+
+    public IncrementalJsonObjectParser(ObjectMapper objectMapper) {
+        try {
+            this.objectMapper = objectMapper;
+            this.parser = objectMapper.getFactory().createNonBlockingByteArrayParser();
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        } catch (IOException e) {
+            throw new IllegalStateException("Non-blocking JSON parsing is not available", e);
+        }
+    }
+
+    /**
+     * Consumes the next fragment of the document.
+     *
+     * @param fragment the next piece of JSON text
+     * @return the top-level properties completed by this fragment, in document order
+     * @throws IOException if the text so far is not a valid JSON object
+     */
+    public List<Map.Entry<String, JsonNode>> feed(String fragment) throws IOException {
+        byte[] bytes = fragment.getBytes(StandardCharsets.UTF_8);
+        feeder.feedInput(bytes, 0, bytes.length);
+
+        List<Map.Entry<String, JsonNode>> completed = new ArrayList<>();
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            if (depth == 0) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected a JSON object but found " + token);
+                }
+                depth = 1;
+            } else if (depth == 1 && currentValue == null) {
+                if (token == JsonToken.FIELD_NAME) {
+                    currentField = parser.currentName();
+                } else if (token == JsonToken.END_OBJECT) {
+                    depth = 0;
+                } else {
+                    currentValue = new TokenBuffer(parser);
+                    currentValue.copyCurrentEvent(parser);
+                    if (token.isStructStart()) {
+                        depth++;
+                    } else {
+                        completed.add(complete());
+                    }
+                }
+            } else {
+                currentValue.copyCurrentEvent(parser);
+                if (token.isStructStart()) {
+                    depth++;
+                } else if (token.isStructEnd() && --depth == 1) {
+                    completed.add(complete());
+                }
+            }
+        }
+        return completed;
+    }
+
+    private Map.Entry<String, JsonNode> complete() throws IOException {
+        try (JsonParser valueParser = currentValue.asParser(objectMapper)) {
+            JsonNode value = objectMapper.readTree(valueParser);
+            return Map.entry(currentField, value != null ? value : NullNode.getInstance());
+        } finally {
+            currentValue = null;
+        }
+    }
+}
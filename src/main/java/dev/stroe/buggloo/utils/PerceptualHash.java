@@ -0,0 +1,122 @@
+package dev.stroe.buggloo.utils;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.OptionalLong;
+
+/**
+ * Computes 64-bit difference hashes (dHash) of images, so that re-encoded,
+ * resized or slightly edited copies of the same photo map to nearby hashes.
+ */
+public final class PerceptualHash {
+
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+
+    /**
+     * Shortest edge the image is subsampled to while decoding. The hash only
+     * needs a 9x8 grid, so decoding anything larger just wastes memory.
+     */
+    private static final int SAMPLE_EDGE = 64;
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Computes the dHash of the given encoded image.
+     *
+     * @param imageBytes the encoded image (any format ImageIO can read)
+     * @return the hash, or empty if the bytes could not be decoded
+     */
+    public static OptionalLong dHash(byte[] imageBytes) {
+        return dHash(new ByteArrayInputStream(imageBytes));
+    }
+
+    /**
+     * Computes the dHash of an encoded image read from the given stream.
+     *
+     * @param imageStream the encoded image; it is not closed
+     * @return the hash, or empty if the image could not be decoded
+     */
+    public static OptionalLong dHash(InputStream imageStream) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(imageStream)) {
+            if (input == null) {
+                return OptionalLong.empty();
+            }
+
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return OptionalLong.empty();
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int step = Math.max(1, Math.min(reader.getWidth(0), reader.getHeight(0)) / SAMPLE_EDGE);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                return OptionalLong.of(dHash(reader.read(0, param)));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * Computes the dHash of a decoded image: the image is reduced to a 9x8
+     * luminance grid and each bit records whether a cell is darker than its
+     * right-hand neighbour.
+     *
+     * @param image the decoded image
+     * @return the 64-bit hash
+     */
+    public static long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double[] luminance = new double[GRID_WIDTH * GRID_HEIGHT];
+
+        for (int row = 0; row < GRID_HEIGHT; row++) {
+            int y0 = Math.min(row * height / GRID_HEIGHT, height - 1);
+            int y1 = Math.max(y0 + 1, (row + 1) * height / GRID_HEIGHT);
+            for (int col = 0; col < GRID_WIDTH; col++) {
+                int x0 = Math.min(col * width / GRID_WIDTH, width - 1);
+                int x1 = Math.max(x0 + 1, (col + 1) * width / GRID_WIDTH);
+                double sum = 0;
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        int rgb = image.getRGB(x, y);
+                        sum += 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+                    }
+                }
+                luminance[row * GRID_WIDTH + col] = sum / ((y1 - y0) * (x1 - x0));
+            }
+        }
+
+        long hash = 0;
+        for (int row = 0; row < GRID_HEIGHT; row++) {
+            for (int col = 0; col < GRID_WIDTH - 1; col++) {
+                hash <<= 1;
+                if (luminance[row * GRID_WIDTH + col] < luminance[row * GRID_WIDTH + col + 1]) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the number of differing bits between two hashes.
+     */
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+}
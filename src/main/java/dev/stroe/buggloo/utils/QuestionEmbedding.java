@@ -0,0 +1,120 @@
+package dev.stroe.buggloo.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Maps chat questions to unit-length vectors, so that rephrasings of the same question
+ * ("does it sting?", "can they sting me?") land close together under cosine similarity.
+ * <p>
+ * Questions are reduced to their content words, dropping case, accents, punctuation and
+ * filler words, and each word and its character trigrams are hashed into a fixed number
+ * of dimensions. Trigrams keep inflections and typos nearer the word they vary, without
+ * merging them: "what does it eat" and "what eats it" must stay apart. Question words
+ * and negations are kept, since "where does it live" and "how long does it live" are
+ * different questions.
+ * <p>
+ * Pairs of adjacent words are hashed too, so that word order counts: "does it eat ants"
+ * and "do ants eat it" share every word but no pair. Pronouns that stand for the insect
+ * being discussed are kept as one placeholder for these pairs, since whether it is the
+ * subject or the object of a question is what tells such questions apart.
+ */
+public final class QuestionEmbedding {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+
+    private static final Set<String> FILLER_WORDS = Set.of(
+            "a", "an", "the", "is", "are", "was", "were", "be", "been", "am",
+            "do", "does", "did", "can", "could", "will", "would", "should", "shall", "may", "might",
+            "s", "this", "that", "these", "those", "there",
+            "i", "me", "my", "you", "your", "we", "us", "our", "one", "ones",
+            "of", "to", "in", "on", "at", "by", "for", "with", "about", "from", "as",
+            "and", "or", "so", "if", "then", "just", "really", "actually",
+            "please", "tell", "know", "hey", "hi", "hello", "thanks");
+
+    /**
+     * Pronouns for the insect being discussed, all replaced by {@link #INSECT}.
+     */
+    private static final Set<String> INSECT_PRONOUNS = Set.of("it", "its", "itself", "they", "them", "their", "themselves");
+    private static final String INSECT = "@it";
+
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+    private static final float PAIR_WEIGHT = 1.0f;
+
+    private QuestionEmbedding() {
+    }
+
+    /**
+     * Reduces a question to its content words, in order, with the pronouns for the insect
+     * replaced by a placeholder.
+     */
+    public static List<String> normalise(String question) {
+        String folded = ACCENTS.matcher(Normalizer.normalize(question, Normalizer.Form.NFKD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<>();
+        for (String word : NON_WORD.split(folded)) {
+            if (INSECT_PRONOUNS.contains(word)) {
+                words.add(INSECT);
+            } else if (!word.isEmpty() && !FILLER_WORDS.contains(word)) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Embeds a question.
+     *
+     * @param question the question as asked
+     * @param dimensions the length of the vector
+     * @return the L2-normalised vector, or null if the question has no content words
+     */
+    public static float[] embed(String question, int dimensions) {
+        List<String> words = normalise(question);
+        if (words.stream().allMatch(INSECT::equals)) {
+            return null;
+        }
+
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            if (i > 0) {
+                add(vector, words.get(i - 1) + " " + word, PAIR_WEIGHT);
+            }
+            if (word.equals(INSECT)) {
+                continue;
+            }
+            add(vector, word, WORD_WEIGHT);
+            String bounded = "<" + word + ">";
+            for (int j = 0; j + 3 <= bounded.length(); j++) {
+                add(vector, "#" + bounded.substring(j, j + 3), TRIGRAM_WEIGHT);
+            }
+        }
+
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    /**
+     * Adds a feature to its dimension, with a hash-derived sign so that colliding features
+     * cancel out on average instead of adding up.
+     */
+    private static void add(float[] vector, String feature, float weight) {
+        int hash = feature.hashCode() * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        vector[Math.floorMod(hash, vector.length)] += (hash & 0x8000_0000) == 0 ? weight : -weight;
+    }
+}
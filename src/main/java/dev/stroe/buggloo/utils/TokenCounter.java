@@ -0,0 +1,59 @@
+package dev.stroe.buggloo.utils;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+
+/**
+ * Counts tokens the way the chat models do, with the {@code o200k_base} encoding used by
+ * GPT-4.1 and GPT-4o, so that prompts can be kept within a token budget locally.
+ * <p>
+ * Special tokens such as {@code <|endoftext|>} in user text are counted as ordinary text,
+ * which is how the API treats them in message content.
+ */
+public final class TokenCounter {
+
+    /**
+     * Tokens the chat format adds around each message for its role and delimiters.
+     */
+    public static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    private static final Encoding ENCODING = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.O200K_BASE);
+
+    private TokenCounter() {
+    }
+
+    /**
+     * Counts the tokens of a text.
+     */
+    public static int count(String text) {
+        return ENCODING.countTokensOrdinary(text);
+    }
+
+    /**
+     * Counts the tokens a message with the given content takes up in a chat prompt.
+     */
+    public static int countMessage(String content) {
+        return count(content) + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    /**
+     * Returns the end of a text that fits in the given number of tokens, or the whole text
+     * if it already fits.
+     */
+    public static String keepLast(String text, int maxTokens) {
+        IntArrayList tokens = ENCODING.encodeOrdinary(text);
+        if (tokens.size() <= maxTokens) {
+            return text;
+        }
+
+        IntArrayList tail = new IntArrayList(Math.max(0, maxTokens));
+        for (int i = tokens.size() - maxTokens; i < tokens.size(); i++) {
+            tail.add(tokens.get(i));
+        }
+        // The cut may split a multi-byte character, which decodes to a replacement character
+        String decoded = ENCODING.decode(tail);
+        return decoded.startsWith("\uFFFD") ? decoded.substring(1) : decoded;
+    }
+}
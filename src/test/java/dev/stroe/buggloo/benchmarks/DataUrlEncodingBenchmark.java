@@ -0,0 +1,64 @@
+package dev.stroe.buggloo.benchmarks;
+
+import dev.stroe.buggloo.utils.DataUrlEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the original upload path (read the whole part into a byte array, Base64 it
+ * into a String, then concatenate the data URL) with the single-buffer streaming encoder.
+ * Run with {@code -prof gc} to compare bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class DataUrlEncodingBenchmark {
+
+	@Param({"262144", "4194304", "31457280"})
+	private int uploadSize;
+
+	private byte[] upload;
+
+	@Setup
+	public void setUp() {
+		upload = new byte[uploadSize];
+		new Random(42).nextBytes(upload);
+	}
+
+	@Benchmark
+	public String getBytesAndEncodeToString() throws IOException {
+		// Mirrors MultipartFile.getBytes() on a disk-backed part, which reads it fully
+		byte[] imageBytes = openUpload().readAllBytes();
+		return "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(imageBytes);
+	}
+
+	@Benchmark
+	public String streamingEncoder() throws IOException {
+		try (InputStream content = openUpload()) {
+			return DataUrlEncoder.encode(content, uploadSize, "image/jpeg");
+		}
+	}
+
+	private InputStream openUpload() {
+		return new ByteArrayInputStream(upload);
+	}
+}
@@ -0,0 +1,86 @@
+package dev.stroe.buggloo.benchmarks;
+
+import dev.stroe.buggloo.config.ImagePreprocessingConfig;
+import dev.stroe.buggloo.exceptions.InvalidImageException;
+import dev.stroe.buggloo.models.ImageHeader;
+import dev.stroe.buggloo.services.IdentificationMetrics;
+import dev.stroe.buggloo.services.ImageValidationService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures validating an upload, including the stage timer around it: an accepted JPEG,
+ * one rejected on its declared content type and one whose content is not an image, both
+ * rejected with {@link InvalidImageException}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class ImageValidationBenchmark {
+
+	private ImageValidationService validationService;
+	private MockMultipartFile validUpload;
+	private MockMultipartFile invalidUpload;
+	private MockMultipartFile nonImageUpload;
+
+	@Setup
+	public void setUp() throws IOException {
+		validationService = new ImageValidationService(new IdentificationMetrics(new SimpleMeterRegistry()),
+				new ImagePreprocessingConfig());
+
+		byte[] noise = new byte[4 * 1024 * 1024];
+		new Random(42).nextBytes(noise);
+		// A real JPEG header followed by the noise, standing in for a 4MB photo
+		ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(4032, 3024, BufferedImage.TYPE_INT_RGB), "jpg", jpeg);
+		jpeg.write(noise);
+
+		validUpload = new MockMultipartFile("image", "bee.JPG", "image/JPEG", jpeg.toByteArray());
+		invalidUpload = new MockMultipartFile("image", "bee.tiff", "image/tiff", jpeg.toByteArray());
+		nonImageUpload = new MockMultipartFile("image", "bee.jpg", "image/jpeg", noise);
+	}
+
+	@Benchmark
+	public ImageHeader validUpload() {
+		return validationService.validateImage(validUpload);
+	}
+
+	@Benchmark
+	public InvalidImageException invalidUpload() {
+		return rejection(invalidUpload);
+	}
+
+	@Benchmark
+	public InvalidImageException nonImageUpload() {
+		return rejection(nonImageUpload);
+	}
+
+	private InvalidImageException rejection(MockMultipartFile upload) {
+		try {
+			validationService.validateImage(upload);
+			throw new IllegalStateException("Upload was accepted");
+		} catch (InvalidImageException e) {
+			return e;
+		}
+	}
+}
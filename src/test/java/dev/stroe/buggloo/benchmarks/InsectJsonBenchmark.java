@@ -0,0 +1,130 @@
+package dev.stroe.buggloo.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.openai.core.ObjectMappers;
+import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.StructuredChatCompletion;
+import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.models.Insect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JSON work around a full {@link Insect}: parsing it out of a structured
+ * completion the way the identification does, plain Jackson deserialisation for
+ * comparison, and serialising the {@link ApiResponse} returned to the client with an
+ * {@link ObjectMapper} configured like Spring Boot's.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class InsectJsonBenchmark {
+
+	private ObjectMapper objectMapper;
+	private String insectJson;
+	private ChatCompletion completion;
+	private Insect insect;
+
+	@Setup
+	public void setUp() throws Exception {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		insect = honeyBee();
+		insectJson = objectMapper.writeValueAsString(insect);
+
+		ObjectNode json = objectMapper.createObjectNode()
+				.put("id", "chatcmpl-benchmark")
+				.put("object", "chat.completion")
+				.put("created", 1700000000L)
+				.put("model", "gpt-4.1");
+		ObjectNode choice = json.putArray("choices").addObject()
+				.put("index", 0)
+				.put("finish_reason", "stop");
+		choice.putNull("logprobs");
+		choice.putObject("message")
+				.put("role", "assistant")
+				.put("content", insectJson)
+				.putNull("refusal");
+		completion = ObjectMappers.jsonMapper().treeToValue(json, ChatCompletion.class);
+	}
+
+	@Benchmark
+	public Insect parseStructuredCompletion() {
+		// A new wrapper per call, as the identification does for each completion
+		return new StructuredChatCompletion<>(Insect.class, completion)
+				.choices()
+				.get(0)
+				.message()
+				.content()
+				.orElseThrow();
+	}
+
+	@Benchmark
+	public Insect readInsect() throws Exception {
+		return objectMapper.readValue(insectJson, Insect.class);
+	}
+
+	@Benchmark
+	public byte[] writeApiResponse() throws Exception {
+		return objectMapper.writeValueAsBytes(ApiResponse.success(insect, "Insect identification completed successfully"));
+	}
+
+	static Insect honeyBee() {
+		Insect insect = new Insect();
+		insect.isInsect = true;
+		insect.urlWikipedia = "https://en.wikipedia.org/wiki/Western_honey_bee";
+		insect.commonName = "Western honey bee";
+		insect.scientificName = "Apis mellifera";
+		insect.alternativeNames = List.of("European honey bee", "Honeybee");
+		insect.conservationStatus = "Not evaluated";
+		insect.domain = "Eukaryota";
+		insect.kingdom = "Animalia";
+		insect.phylum = "Arthropoda";
+		insect.clazz = "Insecta";
+		insect.order = "Hymenoptera";
+		insect.family = "Apidae";
+		insect.genus = "Apis";
+		insect.species = "Apis mellifera";
+		insect.geographicRange = "Native to Europe, Africa and western Asia; introduced on every continent except Antarctica";
+		insect.habitatType = "Meadows, orchards, gardens and woodland edges with abundant flowering plants";
+		insect.seasonalAppearance = "Foraging from early spring to late autumn, clustering in the hive over winter";
+		insect.size = "Workers 10-15 mm, queens 18-20 mm";
+		insect.colors = List.of("#C8A13A", "#3B2A1A", "#E8D9A8");
+		insect.hasWings = true;
+		insect.legCount = 6;
+		insect.distinctiveMarkings = "Amber and dark brown banded abdomen, hairy thorax, pollen baskets on the hind legs";
+		insect.diet = "Nectar and pollen; larvae are fed royal jelly and bee bread";
+		insect.activityTime = "Diurnal";
+		insect.lifespan = "Workers 5-6 weeks in summer, several months in winter; queens 2-5 years";
+		insect.predators = List.of("Asian hornet", "European bee-eater", "Crab spiders", "Honey badger");
+		insect.defenseMechanisms = List.of("Barbed stinger", "Alarm pheromones", "Heat-balling of intruders");
+		insect.roleInEcosystem = "Major pollinator of wild plants and crops";
+		insect.interestingFacts = List.of(
+				"Foragers communicate the direction and distance of food with the waggle dance.",
+				"A colony can hold up to 60,000 workers at its summer peak.",
+				"A worker produces about a twelfth of a teaspoon of honey in its lifetime.");
+		insect.similarSpecies = List.of("Apis cerana", "Bombus terrestris", "Eristalis tenax");
+		insect.populationTrend = "Managed colonies stable, wild colonies declining";
+		insect.threats = List.of("Varroa mites", "Pesticides", "Habitat loss", "Climate change");
+		insect.pestStatus = "None";
+		insect.beneficialStatus = "Pollinator and honey producer";
+		insect.venomous = true;
+		insect.toxicToHumans = false;
+		return insect;
+	}
+}
@@ -0,0 +1,104 @@
+package dev.stroe.buggloo.benchmarks;
+
+import dev.stroe.buggloo.config.LocalClassifierConfig;
+import dev.stroe.buggloo.models.Classification;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.services.LocalInsectClassifier;
+import dev.stroe.buggloo.support.TinyOnnxModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures local classification latency and throughput on a single core, including
+ * decoding and resizing a preprocessed 1024px JPEG. Each classification is single-threaded,
+ * so throughput per core multiplied by {@code identification.local.threads} bounds the
+ * local fast path; run with {@code -t N} to check how it scales.
+ * <p>
+ * Point {@code modelPath} and {@code labelsPath} at a real classifier, e.g.
+ * {@code -Dbenchmark="LocalClassifierBenchmark -p modelPath=... -p labelsPath=..."}.
+ * Without them a tiny generated model measures the fixed decode, resize and runtime cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Threads(1)
+public class LocalClassifierBenchmark {
+
+	@Param({""})
+	private String modelPath;
+
+	@Param({""})
+	private String labelsPath;
+
+	@Param({"224"})
+	private int inputSize;
+
+	private LocalInsectClassifier classifier;
+	private PreparedImage image;
+
+	@Setup
+	public void setUp() throws Exception {
+		if (modelPath.isEmpty()) {
+			Path directory = Files.createTempDirectory("local-classifier-benchmark");
+			Path model = directory.resolve("model.onnx");
+			Path labels = directory.resolve("labels.txt");
+			TinyOnnxModel.write(model, labels, inputSize, "Apis mellifera", "Coccinella septempunctata", "Bombus terrestris");
+			modelPath = model.toString();
+			labelsPath = labels.toString();
+		}
+
+		LocalClassifierConfig config = new LocalClassifierConfig();
+		config.setEnabled(true);
+		config.setModelPath(modelPath);
+		config.setLabelsPath(labelsPath);
+		config.setInputSize(inputSize);
+		config.setThreads(1);
+		classifier = new LocalInsectClassifier(config, new SimpleMeterRegistry());
+		classifier.load();
+
+		BufferedImage photo = new BufferedImage(1024, 768, BufferedImage.TYPE_INT_RGB);
+		Random random = new Random(42);
+		for (int y = 0; y < photo.getHeight(); y++) {
+			for (int x = 0; x < photo.getWidth(); x++) {
+				photo.setRGB(x, y, random.nextInt(0x1000000));
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(photo, "jpg", out);
+		image = new PreparedImage(out.toByteArray(), "image/jpeg");
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		classifier.close();
+	}
+
+	@Benchmark
+	public Optional<Classification> classify() throws Exception {
+		return classifier.classify(image);
+	}
+}
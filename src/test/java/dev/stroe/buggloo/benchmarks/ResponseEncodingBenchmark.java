@@ -0,0 +1,78 @@
+package dev.stroe.buggloo.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.InsectProjection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures serialising the identification response for each encoding a client can
+ * negotiate, for the full {@link Insect} and for the fields a list view asks for, as
+ * {@code /insect/identify} does: projecting, writing with a mapper configured like Spring
+ * Boot's and, for the gzip variants, compressing like the server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class ResponseEncodingBenchmark {
+
+	@Param({"json", "json-gzip", "cbor", "cbor-gzip", "smile", "smile-gzip"})
+	public String encoding;
+
+	@Param({"", "commonName,scientificName,conservationStatus"})
+	public String fields;
+
+	private ObjectMapper objectMapper;
+	private ObjectMapper encodingMapper;
+	private boolean gzip;
+	private InsectProjection projection;
+	private Insect insect;
+
+	@Setup
+	public void setUp() throws IOException {
+		objectMapper = Jackson2ObjectMapperBuilder.json().build();
+		String format = encoding.replace("-gzip", "");
+		encodingMapper = switch (format) {
+			case "cbor" -> Jackson2ObjectMapperBuilder.cbor().build();
+			case "smile" -> Jackson2ObjectMapperBuilder.smile().build();
+			default -> objectMapper;
+		};
+		gzip = encoding.endsWith("-gzip");
+		projection = InsectProjection.parse(fields);
+		insect = InsectJsonBenchmark.honeyBee();
+	}
+
+	@Benchmark
+	public byte[] writeResponse() throws IOException {
+		byte[] body = encodingMapper.writeValueAsBytes(ApiResponse.success(
+				projection.apply(insect, objectMapper), "Insect identification completed successfully"));
+		if (!gzip) {
+			return body;
+		}
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length);
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+			out.write(body);
+		}
+		return compressed.toByteArray();
+	}
+}
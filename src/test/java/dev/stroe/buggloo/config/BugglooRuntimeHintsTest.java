@@ -0,0 +1,33 @@
+package dev.stroe.buggloo.config;
+
+import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionChunk;
+import dev.stroe.buggloo.models.ApiResponse;
+import dev.stroe.buggloo.models.Insect;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BugglooRuntimeHintsTest {
+
+	private final RuntimeHints hints = new RuntimeHints();
+
+	BugglooRuntimeHintsTest() {
+		new BugglooRuntimeHints().registerHints(hints, getClass().getClassLoader());
+	}
+
+	@Test
+	void structuredOutputAndResponseTypesAreReflectable() throws NoSuchFieldException, NoSuchMethodException {
+		assertThat(RuntimeHintsPredicates.reflection().onField(Insect.class.getField("scientificName"))).accepts(hints);
+		assertThat(RuntimeHintsPredicates.reflection().onMethod(ApiResponse.class.getMethod("getData"))).accepts(hints);
+		assertThat(RuntimeHintsPredicates.reflection().onType(ChatCompletion.class)).accepts(hints);
+		assertThat(RuntimeHintsPredicates.reflection().onType(ChatCompletionChunk.Choice.Delta.class)).accepts(hints);
+	}
+
+	@Test
+	void tokenizerVocabularyIsIncluded() {
+		assertThat(RuntimeHintsPredicates.resource().forResource("com/knuddels/jtokkit/o200k_base.tiktoken")).accepts(hints);
+	}
+}
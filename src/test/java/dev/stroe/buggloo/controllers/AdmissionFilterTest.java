@@ -0,0 +1,136 @@
+package dev.stroe.buggloo.controllers;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import dev.stroe.buggloo.config.AdmissionConfig;
+import dev.stroe.buggloo.exceptions.GlobalExceptionHandler;
+import dev.stroe.buggloo.services.AdmissionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdmissionFilterTest {
+
+	private AdmissionConfig config;
+	private AdmissionService admissionService;
+	private AdmissionFilter filter;
+
+	@BeforeEach
+	void setUp() {
+		config = new AdmissionConfig();
+		config.setMaxConcurrentRequests(1);
+		config.getIdentify().setQueueCapacity(1);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		admissionService = new AdmissionService(config, meterRegistry);
+		filter = new AdmissionFilter(admissionService, new GlobalExceptionHandler(meterRegistry),
+				JsonMapper.builder().findAndAddModules().build());
+	}
+
+	@Test
+	void rejectedRequestsGetTheErrorAndRetryAfter() throws Exception {
+		admissionService.admit(AdmissionService.Lane.IDENTIFY).get();
+		admissionService.admit(AdmissionService.Lane.IDENTIFY);
+		MockHttpServletRequest request = identifyRequest();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+
+		filter.doFilter(request, response, chain);
+
+		assertThat(response.getStatus()).isEqualTo(503);
+		assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("15");
+		assertThat(response.getContentAsString()).contains("\"error\":\"OVERLOADED\"");
+		assertThat(chain.getRequest()).isNull();
+	}
+
+	@Test
+	void queuedRequestsReleaseTheThreadAndResumeOnceAdmitted() throws Exception {
+		AdmissionService.Admission running = admissionService.admit(AdmissionService.Lane.IDENTIFY).get();
+		MockHttpServletRequest request = identifyRequest();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+
+		filter.doFilter(request, response, chain);
+
+		assertThat(request.isAsyncStarted()).isTrue();
+		assertThat(chain.getRequest()).isNull();
+
+		running.close();
+		redispatch(request, response, chain);
+
+		assertThat(chain.getRequest()).isSameAs(request);
+		assertThat(admissionService.admit(AdmissionService.Lane.IDENTIFY)).isDone();
+	}
+
+	@Test
+	void queuedRequestsThatTimeOutAreRejectedWithRetryAfter() throws Exception {
+		config.getIdentify().setQueueTimeout(Duration.ofMillis(50));
+		admissionService.admit(AdmissionService.Lane.IDENTIFY).get();
+		MockHttpServletRequest request = identifyRequest();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+
+		filter.doFilter(request, response, chain);
+		redispatch(request, response, chain);
+
+		assertThat(response.getStatus()).isEqualTo(503);
+		assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+		assertThat(chain.getRequest()).isNull();
+	}
+
+	@Test
+	void asyncResponsesKeepTheirSlotUntilTheyComplete() throws Exception {
+		MockHttpServletRequest request = identifyRequest();
+		FilterChain streaming = (chainRequest, chainResponse) -> chainRequest.startAsync();
+
+		filter.doFilter(request, new MockHttpServletResponse(), streaming);
+		CompletableFuture<AdmissionService.Admission> next = admissionService.admit(AdmissionService.Lane.IDENTIFY);
+
+		assertThat(next).isNotDone();
+		((MockAsyncContext) request.getAsyncContext()).complete();
+		assertThat(next).isDone();
+	}
+
+	@Test
+	void otherEndpointsAreNotQueued() throws Exception {
+		admissionService.admit(AdmissionService.Lane.IDENTIFY).get();
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/sightings/count");
+		MockFilterChain chain = new MockFilterChain();
+
+		filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+		assertThat(chain.getRequest()).isSameAs(request);
+	}
+
+	/**
+	 * Waits for a queued request to be dispatched, then runs the filter again as the
+	 * container does.
+	 */
+	private void redispatch(MockHttpServletRequest request, MockHttpServletResponse response, MockFilterChain chain)
+			throws Exception {
+		CountDownLatch dispatched = new CountDownLatch(1);
+		((MockAsyncContext) request.getAsyncContext()).addDispatchHandler(dispatched::countDown);
+		assertThat(dispatched.await(5, TimeUnit.SECONDS)).isTrue();
+		request.setAsyncStarted(false);
+		request.setDispatcherType(DispatcherType.ASYNC);
+		filter.doFilter(request, response, chain);
+	}
+
+	private static MockHttpServletRequest identifyRequest() {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/insect/identify");
+		request.setAsyncSupported(true);
+		return request;
+	}
+}
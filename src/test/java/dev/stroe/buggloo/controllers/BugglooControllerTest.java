@@ -0,0 +1,178 @@
+package dev.stroe.buggloo.controllers;
+
+import dev.stroe.buggloo.BugglooApplication;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BugglooControllerTest {
+
+	private static StubOpenAIServer stub;
+	private static ConfigurableApplicationContext context;
+	private static WebTestClient client;
+
+	@BeforeAll
+	static void startApplication() throws IOException {
+		stub = StubOpenAIServer.start();
+		context = new SpringApplicationBuilder(BugglooApplication.class).run(
+				"--server.port=0",
+				"--spring.main.web-application-type=servlet",
+				"--spring.servlet.multipart.max-file-size=1MB",
+				"--spring.servlet.multipart.max-request-size=1MB",
+				"--batch.max-images=3",
+				"--admission.max-concurrent-requests=1",
+				"--openai.api-key=test",
+				"--openai.base-url=" + stub.baseUrl());
+		client = WebTestClient.bindToServer()
+				.baseUrl("http://localhost:" + context.getEnvironment().getProperty("local.server.port"))
+				.build();
+	}
+
+	@AfterAll
+	static void stopApplication() {
+		context.close();
+		stub.close();
+	}
+
+	@Test
+	void identifyBatchAcceptsMoreThanTheGlobalRequestSize() throws IOException {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		for (int i = 0; i < 3; i++) {
+			addImage(builder, "images", "bee-" + i + ".png", noisyPng(i));
+		}
+
+		List<ServerSentEvent<String>> events = client.post().uri("/insect/identify/batch")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.body(BodyInserters.fromMultipartData(builder.build()))
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+				.getResponseBody()
+				.collectList()
+				.block();
+
+		assertThat(events).hasSize(4);
+		assertThat(events.get(3).event()).isEqualTo("done");
+		assertThat(events.get(3).data()).contains("\"total\":3,\"succeeded\":3,\"failed\":0");
+	}
+
+	@Test
+	void otherEndpointsKeepTheGlobalRequestSize() throws IOException {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		addImage(builder, "images", "top.png", noisyPng(0));
+		addImage(builder, "images", "side.png", noisyPng(1));
+
+		client.post().uri("/insect/identify/views")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(builder.build()))
+				.exchange()
+				.expectStatus().isEqualTo(413)
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("FILE_TOO_LARGE");
+	}
+
+	@Test
+	void identifyBatchRejectsTooManyImagesAsAWhole() throws IOException {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		for (int i = 0; i < 5; i++) {
+			addImage(builder, "images", "bee-" + i + ".png", noisyPng(i));
+		}
+		int requestsBefore = stub.requestCount();
+
+		client.post().uri("/insect/identify/batch")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.accept(MediaType.TEXT_EVENT_STREAM, MediaType.APPLICATION_JSON)
+				.body(BodyInserters.fromMultipartData(builder.build()))
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("INVALID_REQUEST")
+				.jsonPath("$.message").isEqualTo("Batch exceeds the maximum of 3 images");
+
+		assertThat(stub.requestCount()).isEqualTo(requestsBefore);
+	}
+
+	@Test
+	void queuedRequestsAreServedOnceAdmitted() throws Exception {
+		// Images not identified by the other tests, so that both requests reach OpenAI
+		List<byte[]> images = List.of(noisyPng(100), noisyPng(101));
+		Timer waits = context.getBean(MeterRegistry.class).timer("buggloo.admission.wait", "lane", "identify");
+		double waitedBefore = waits.totalTime(TimeUnit.MILLISECONDS);
+		stub.setLatency(Duration.ofMillis(300));
+		try {
+			List<CompletableFuture<Void>> requests = new ArrayList<>();
+			for (byte[] image : images) {
+				requests.add(CompletableFuture.runAsync(() -> client.post().uri("/insect/identify")
+						.contentType(MediaType.MULTIPART_FORM_DATA)
+						.body(BodyInserters.fromMultipartData(imagePart(image)))
+						.exchange()
+						.expectStatus().isOk()));
+			}
+			CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+		} finally {
+			stub.setLatency(Duration.ZERO);
+		}
+
+		// One request ran while the other waited for its slot
+		assertThat(waits.totalTime(TimeUnit.MILLISECONDS) - waitedBefore).isGreaterThan(200);
+	}
+
+	private static MultiValueMap<String, HttpEntity<?>> imagePart(byte[] content) {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		addImage(builder, "image", "bee.png", content);
+		return builder.build();
+	}
+
+	private static void addImage(MultipartBodyBuilder builder, String name, String filename, byte[] content) {
+		builder.part(name, new ByteArrayResource(content) {
+			@Override
+			public String getFilename() {
+				return filename;
+			}
+		}).contentType(MediaType.IMAGE_PNG);
+	}
+
+	/**
+	 * Returns a PNG of random pixels, which does not compress: about 600 KB.
+	 */
+	private static byte[] noisyPng(long seed) throws IOException {
+		Random random = new Random(seed);
+		BufferedImage image = new BufferedImage(450, 450, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				image.setRGB(x, y, random.nextInt());
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,86 @@
+package dev.stroe.buggloo.controllers;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import dev.stroe.buggloo.config.AdmissionConfig;
+import dev.stroe.buggloo.exceptions.GlobalExceptionHandler;
+import dev.stroe.buggloo.services.AdmissionService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReactiveAdmissionFilterTest {
+
+	private AdmissionConfig config;
+	private AdmissionService admissionService;
+	private ReactiveAdmissionFilter filter;
+
+	@BeforeEach
+	void setUp() {
+		config = new AdmissionConfig();
+		config.setMaxConcurrentRequests(1);
+		config.getIdentify().setQueueCapacity(1);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		admissionService = new AdmissionService(config, meterRegistry);
+		filter = new ReactiveAdmissionFilter(admissionService, new GlobalExceptionHandler(meterRegistry),
+				JsonMapper.builder().findAndAddModules().build());
+	}
+
+	@Test
+	void rejectedRequestsGetTheErrorAndRetryAfter() throws Exception {
+		admissionService.admit(AdmissionService.Lane.IDENTIFY).get();
+		admissionService.admit(AdmissionService.Lane.IDENTIFY);
+		MockServerWebExchange exchange = identifyExchange();
+		AtomicBoolean called = new AtomicBoolean();
+
+		filter.filter(exchange, chainExchange -> Mono.fromRunnable(() -> called.set(true))).block(Duration.ofSeconds(5));
+
+		assertThat(exchange.getResponse().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(exchange.getResponse().getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("15");
+		assertThat(exchange.getResponse().getBodyAsString().block(Duration.ofSeconds(5)))
+				.contains("\"error\":\"OVERLOADED\"");
+		assertThat(called).isFalse();
+	}
+
+	@Test
+	void requestsKeepTheirSlotUntilTheResponseCompletes() {
+		Sinks.Empty<Void> response = Sinks.empty();
+
+		filter.filter(identifyExchange(), chainExchange -> response.asMono()).subscribe();
+		CompletableFuture<AdmissionService.Admission> next = admissionService.admit(AdmissionService.Lane.IDENTIFY);
+
+		assertThat(next).isNotDone();
+		response.tryEmitEmpty();
+		assertThat(next).isDone();
+	}
+
+	@Test
+	void clientsThatDisconnectWhileQueuedWithdrawTheirRequest() throws Exception {
+		AdmissionService.Admission running = admissionService.admit(AdmissionService.Lane.IDENTIFY).get();
+		AtomicBoolean called = new AtomicBoolean();
+
+		Disposable queued = filter.filter(identifyExchange(), chainExchange -> Mono.fromRunnable(() -> called.set(true)))
+				.subscribe();
+		queued.dispose();
+		running.close();
+
+		assertThat(called).isFalse();
+		assertThat(admissionService.admit(AdmissionService.Lane.IDENTIFY)).isDone();
+	}
+
+	private static MockServerWebExchange identifyExchange() {
+		return MockServerWebExchange.from(MockServerHttpRequest.post("/insect/identify"));
+	}
+}
@@ -0,0 +1,485 @@
+package dev.stroe.buggloo.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import dev.stroe.buggloo.BugglooApplication;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReactiveBugglooControllerTest {
+
+	private static StubOpenAIServer stub;
+	private static Path uploads;
+	private static ConfigurableApplicationContext context;
+	private static WebTestClient client;
+
+	@BeforeAll
+	static void startApplication() throws IOException {
+		stub = StubOpenAIServer.start();
+		uploads = Files.createTempDirectory("uploads");
+		context = new SpringApplicationBuilder(BugglooApplication.class).run(
+				"--server.port=0",
+				"--spring.main.web-application-type=reactive",
+				"--spring.webflux.multipart.file-storage-directory=" + uploads,
+				"--spring.webflux.multipart.max-disk-usage-per-part=64KB",
+				"--openai.api-key=test",
+				"--openai.http-client=jdk",
+				// The chat tests ask the same question and each expects a generated answer
+				"--chat-cache.enabled=false",
+				"--batch.max-images=3",
+				"--openai.base-url=" + stub.baseUrl());
+		client = WebTestClient.bindToServer()
+				.baseUrl("http://localhost:" + context.getEnvironment().getProperty("local.server.port"))
+				.build();
+	}
+
+	@AfterAll
+	static void stopApplication() {
+		context.close();
+		stub.close();
+		FileSystemUtils.deleteRecursively(uploads.toFile());
+	}
+
+	@Test
+	void identifyReturnsTheSameContractAsTheServletController() throws IOException {
+		client.post().uri("/insect/identify")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, png())))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.success").isEqualTo(true)
+				.jsonPath("$.message").isEqualTo("Insect identification completed successfully")
+				.jsonPath("$.data.scientificName").isEqualTo("Apis mellifera");
+	}
+
+	@Test
+	void identifyRejectsUnsupportedContentType() {
+		client.post().uri("/insect/identify")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(imagePart("notes.txt", MediaType.TEXT_PLAIN, new byte[] {1})))
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.success").isEqualTo(false)
+				.jsonPath("$.error").isEqualTo("INVALID_IMAGE");
+	}
+
+	@Test
+	void identifyRejectsContentThatIsNotAnImageBeforeCallingOpenAI() {
+		byte[] text = "Not a photo of a bee".repeat(5000).getBytes(StandardCharsets.UTF_8);
+		int requestsBefore = stub.requestCount();
+
+		client.post().uri("/insect/identify")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, text)))
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("INVALID_IMAGE");
+
+		assertThat(stub.requestCount()).isEqualTo(requestsBefore);
+	}
+
+	@Test
+	void identifiedInsectsAreCountedAsSightings() throws IOException {
+		client.post().uri("/insect/identify?latitude=44.43&longitude=26.10")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, png())))
+				.exchange()
+				.expectStatus().isOk();
+
+		client.get().uri("/sightings/top-species?rank=family&taxon=apidae&limit=1")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.data[0].species").isEqualTo("Apis mellifera")
+				.jsonPath("$.data[0].order").isEqualTo("Hymenoptera");
+		client.get().uri("/sightings/count?rank=genus&taxon=Vespa")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.data.count").isEqualTo(0);
+	}
+
+	@Test
+	void sightingQueriesRejectInstantsBeyondTheMillisecondRange() {
+		client.get().uri("/sightings/count?to={to}", "+300000000-01-01T00:00:00Z")
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("INVALID_REQUEST");
+	}
+
+	@Test
+	void identifyRejectsImagesOverThePartLimit() throws IOException {
+		client.post().uri("/insect/identify")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, noisyPng())))
+				.exchange()
+				.expectStatus().isEqualTo(413)
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("FILE_TOO_LARGE");
+	}
+
+	@Test
+	void uploadedImagesAreDeletedOnceIdentified() throws Exception {
+		client.post().uri("/insect/identify")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, png(0x00ff00))))
+				.exchange()
+				.expectStatus().isOk();
+
+		// The response may be sent just before the files are deleted
+		for (int i = 0; i < 50 && !isEmpty(uploads); i++) {
+			Thread.sleep(20);
+		}
+		assertThat(uploads).isEmptyDirectory();
+	}
+
+	@Test
+	void identifyRejectsHalfALocation() throws IOException {
+		client.post().uri("/insect/identify?latitude=44.43")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, png())))
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("INVALID_REQUEST");
+	}
+
+	@Test
+	void identifyGeneratesAndReturnsOnlyTheRequestedFields() throws IOException {
+		client.post().uri("/insect/identify?fields=commonName, scientificName")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, png(0x3366cc))))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.data.isInsect").isEqualTo(true)
+				.jsonPath("$.data.commonName").isEqualTo("Western honey bee")
+				.jsonPath("$.data.scientificName").isEqualTo("Apis mellifera")
+				.jsonPath("$.data.order").doesNotExist()
+				.jsonPath("$.data.description").doesNotExist();
+
+		assertThat(stub.lastRequestBody())
+				.contains("\"required\":[\"commonName\",\"isInsect\",\"scientificName\"]")
+				.doesNotContain("\"description\":{");
+	}
+
+	@Test
+	void identifyRejectsUnknownFields() throws IOException {
+		client.post().uri("/insect/identify?fields=commonName,wingspan")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, png())))
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("INVALID_REQUEST");
+	}
+
+	@Test
+	void identifyAnswersInCborOrSmileWhenTheClientAcceptsIt() throws IOException {
+		MediaType smile = MediaType.parseMediaType("application/x-jackson-smile");
+		for (ObjectMapper mapper : List.of(new CBORMapper(), new SmileMapper())) {
+			MediaType type = mapper instanceof CBORMapper ? MediaType.APPLICATION_CBOR : smile;
+			byte[] body = client.post().uri("/insect/identify")
+					.contentType(MediaType.MULTIPART_FORM_DATA)
+					.accept(type)
+					.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, png())))
+					.exchange()
+					.expectStatus().isOk()
+					.expectHeader().contentType(type)
+					.expectBody(byte[].class)
+					.returnResult()
+					.getResponseBody();
+
+			JsonNode response = mapper.readTree(body);
+			assertThat(response.path("success").asBoolean()).isTrue();
+			assertThat(response.path("data").path("scientificName").asText()).isEqualTo("Apis mellifera");
+		}
+	}
+
+	@Test
+	void identifyViewsSendsEveryPhotoInOneCall() throws IOException {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		addImage(builder, "images", "top.png", MediaType.IMAGE_PNG, png());
+		addImage(builder, "images", "side.png", MediaType.IMAGE_PNG, png());
+		int requestsBefore = stub.requestCount();
+
+		client.post().uri("/insect/identify/views")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(builder.build()))
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.success").isEqualTo(true)
+				.jsonPath("$.data.scientificName").isEqualTo("Apis mellifera");
+
+		assertThat(stub.lastRequestBody().split("\"image_url\":\\{", -1)).hasSize(3);
+		assertThat(stub.lastRequestBody()).contains("photos of the same specimen");
+		assertThat(stub.requestCount() - requestsBefore).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	void identifyViewsRejectsTooManyPhotos() throws IOException {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		for (int i = 0; i < 5; i++) {
+			addImage(builder, "images", "view-" + i + ".png", MediaType.IMAGE_PNG, png());
+		}
+
+		client.post().uri("/insect/identify/views")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.body(BodyInserters.fromMultipartData(builder.build()))
+				.exchange()
+				.expectStatus().isBadRequest()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("INVALID_IMAGE");
+	}
+
+	@Test
+	void identifyStreamSendsFieldsThenTheFullResult() throws IOException {
+		List<ServerSentEvent<String>> events = client.post().uri("/insect/identify/stream")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.body(BodyInserters.fromMultipartData(imagePart("bee.png", MediaType.IMAGE_PNG, png())))
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+				.getResponseBody()
+				.collectList()
+				.block();
+
+		assertThat(events).hasSize(8);
+		assertThat(events.get(0).event()).isEqualTo("field");
+		assertThat(events.get(0).data()).isEqualTo("{\"name\":\"isInsect\",\"value\":true}");
+		assertThat(events.get(7).event()).isEqualTo("done");
+		assertThat(events.get(7).data())
+				.contains("\"message\":\"Insect identification completed successfully\"")
+				.contains("\"scientificName\":\"Apis mellifera\"");
+	}
+
+	@Test
+	void identifyBatchSendsAResultPerImageThenTheTotals() throws IOException {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		addImage(builder, "images", "bee-1.png", MediaType.IMAGE_PNG, png());
+		addImage(builder, "images", "bee-2.png", MediaType.IMAGE_PNG, png());
+		addImage(builder, "images", "notes.txt", MediaType.TEXT_PLAIN, new byte[] {1});
+		double duplicatesBefore = context.getBean(MeterRegistry.class).counter("buggloo.batch.duplicates").count();
+
+		List<ServerSentEvent<String>> events = client.post().uri("/insect/identify/batch")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.body(BodyInserters.fromMultipartData(builder.build()))
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+				.getResponseBody()
+				.collectList()
+				.block();
+
+		assertThat(events).hasSize(4);
+		List<String> results = events.subList(0, 3).stream()
+				.peek(event -> assertThat(event.event()).isEqualTo("result"))
+				.map(ServerSentEvent::data)
+				.toList();
+		assertThat(results).filteredOn(data -> data.contains("\"filename\":\"notes.txt\""))
+				.singleElement().asString()
+				.contains("\"index\":2")
+				.contains("\"error\":\"INVALID_IMAGE\"");
+		assertThat(results).filteredOn(data -> data.contains("\"scientificName\":\"Apis mellifera\""))
+				.hasSize(2);
+		assertThat(events.get(3).event()).isEqualTo("done");
+		assertThat(events.get(3).data()).contains("\"total\":3,\"succeeded\":2,\"failed\":1");
+		assertThat(context.getBean(MeterRegistry.class).counter("buggloo.batch.duplicates").count())
+				.isEqualTo(duplicatesBefore + 1);
+	}
+
+	@Test
+	void identifyBatchEndsWithOneErrorAtTheFirstImageOverTheLimit() throws IOException {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		for (int i = 0; i < 6; i++) {
+			addImage(builder, "images", "bee-" + i + ".png", MediaType.IMAGE_PNG, png(i));
+		}
+
+		List<ServerSentEvent<String>> events = client.post().uri("/insect/identify/batch")
+				.contentType(MediaType.MULTIPART_FORM_DATA)
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.body(BodyInserters.fromMultipartData(builder.build()))
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+				.getResponseBody()
+				.collectList()
+				.block();
+
+		assertThat(events).hasSize(4);
+		assertThat(events.subList(0, 3)).extracting(ServerSentEvent::event).containsOnly("result");
+		assertThat(events.get(3).event()).isEqualTo("error");
+		assertThat(events.get(3).data())
+				.contains("\"error\":\"INVALID_REQUEST\"")
+				.contains("Batch exceeds the maximum of 3 images");
+	}
+
+	@Test
+	void chatReturnsTheGeneratedResponse() {
+		client.post().uri("/insect/chat")
+				.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+				.bodyValue("message=Does+it+sting%3F&insectName=Honey+bee")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.success").isEqualTo(true)
+				.jsonPath("$.data").isEqualTo("Honey bees can sting, but only when they feel threatened.");
+	}
+
+	@Test
+	void chatStreamSendsTokensThenTheFullResponse() {
+		List<ServerSentEvent<String>> events = client.post().uri("/insect/chat/stream")
+				.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+				.accept(MediaType.TEXT_EVENT_STREAM)
+				.bodyValue("message=Does+it+sting%3F&insectName=Honey+bee")
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(new ParameterizedTypeReference<ServerSentEvent<String>>() {})
+				.getResponseBody()
+				.collectList()
+				.block();
+
+		assertThat(events).hasSizeGreaterThan(3);
+		assertThat(events.get(0).event()).isEqualTo("conversation");
+		List<ServerSentEvent<String>> tokens = events.subList(1, events.size() - 1);
+		assertThat(tokens).allSatisfy(event -> assertThat(event.event()).isEqualTo("token"));
+		assertThat(String.join("", tokens.stream().map(ServerSentEvent::data).toList()))
+				.isEqualTo("Honey bees can sting, but only when they feel threatened.");
+
+		ServerSentEvent<String> done = events.get(events.size() - 1);
+		assertThat(done.event()).isEqualTo("done");
+		assertThat(done.data())
+				.contains("\"success\":true")
+				.contains("\"data\":\"Honey bees can sting, but only when they feel threatened.\"")
+				.contains("\"message\":\"Chat response generated successfully\"");
+	}
+
+	@Test
+	void chatContinuesTheConversationNamedInTheRequest() {
+		String conversationId = client.post().uri("/insect/chat")
+				.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+				.bodyValue("message=Does+it+sting%3F&insectName=Honey+bee")
+				.exchange()
+				.expectStatus().isOk()
+				.returnResult(String.class)
+				.getResponseHeaders()
+				.getFirst("X-Conversation-Id");
+		assertThat(conversationId).isNotBlank();
+
+		client.post().uri("/insect/chat")
+				.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+				.bodyValue("message=Does+it+hurt%3F&conversationId=" + conversationId)
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().valueEquals("X-Conversation-Id", conversationId);
+
+		assertThat(stub.lastRequestBody())
+				.contains("You are discussing Honey bee")
+				.contains("{\"content\":\"Does it sting?\",\"role\":\"user\"}")
+				.contains("\"role\":\"assistant\"")
+				.contains("{\"content\":\"Does it hurt?\",\"role\":\"user\"}");
+	}
+
+	@Test
+	void chatRejectsUnknownConversations() {
+		client.post().uri("/insect/chat")
+				.contentType(MediaType.APPLICATION_FORM_URLENCODED)
+				.bodyValue("message=Hello&conversationId=missing")
+				.exchange()
+				.expectStatus().isNotFound()
+				.expectBody()
+				.jsonPath("$.error").isEqualTo("CONVERSATION_NOT_FOUND");
+	}
+
+	private static MultiValueMap<String, HttpEntity<?>> imagePart(
+			String filename, MediaType contentType, byte[] content) {
+		MultipartBodyBuilder builder = new MultipartBodyBuilder();
+		addImage(builder, "image", filename, contentType, content);
+		return builder.build();
+	}
+
+	private static void addImage(MultipartBodyBuilder builder, String name,
+			String filename, MediaType contentType, byte[] content) {
+		builder.part(name, new ByteArrayResource(content) {
+			@Override
+			public String getFilename() {
+				return filename;
+			}
+		}).contentType(contentType);
+	}
+
+	private static byte[] png() throws IOException {
+		return png(0);
+	}
+
+	/**
+	 * Returns a PNG of random pixels, which does not compress: about 120 KB.
+	 */
+	private static byte[] noisyPng() throws IOException {
+		Random random = new Random(0);
+		BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				image.setRGB(x, y, random.nextInt());
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+
+	private static boolean isEmpty(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.findAny().isEmpty();
+		}
+	}
+
+	private static byte[] png(int rgb) throws IOException {
+		BufferedImage image = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < image.getWidth(); x++) {
+			for (int y = 0; y < image.getHeight(); y++) {
+				image.setRGB(x, y, rgb);
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,233 @@
+package dev.stroe.buggloo.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Starts each packaged variant of the service as its own process and measures the time
+ * from launch to the first successful identification, against a local stub standing in
+ * for OpenAI, and the resident set size right after it. Reports the median of several
+ * cold starts per variant to the log and to {@code target/startup-report.json}.
+ * <p>
+ * Variants that have not been built are skipped:
+ * <ul>
+ *     <li>{@code jvm}, the plain executable jar ({@code ./mvnw package});</li>
+ *     <li>{@code aot-cds}, the AOT-processed application with its AppCDS archive
+ *     ({@code ./mvnw -Pfast-startup package});</li>
+ *     <li>{@code native}, the GraalVM executable ({@code ./mvnw -Pnative native:compile}).</li>
+ * </ul>
+ * Run with {@code ./mvnw -Pload-test test -Dtest=ColdStartLoadTest}, with the number of
+ * {@code startup.runs} per variant (5), the {@code startup.timeout} of one start (60s),
+ * the {@code startup.target} directory holding the builds ({@code target}) and
+ * {@code startup.report}, where to write the report. Resident set sizes are read from
+ * {@code /proc} and are only reported on Linux.
+ */
+@Tag("load")
+class ColdStartLoadTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ColdStartLoadTest.class);
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final String BOUNDARY = "buggloo-cold-start";
+	private static final Duration POLL_INTERVAL = Duration.ofMillis(5);
+
+	private final int runs = Integer.parseInt(setting("runs", "5"));
+	private final Duration timeout = DurationStyle.detectAndParse(setting("timeout", "60s"));
+	private final Path target = Path.of(setting("target", "target"));
+
+	private final HttpClient http = HttpClient.newBuilder()
+			.connectTimeout(Duration.ofSeconds(1))
+			.build();
+
+	private record Variant(String name, List<String> command) {
+	}
+
+	private record Start(long millisToFirstResponse, long residentKilobytes) {
+	}
+
+	@Test
+	void measureColdStartOfEachVariant() throws Exception {
+		List<Variant> variants = variants();
+		assertThat(variants).as("no packaged variant in %s", target.toAbsolutePath()).isNotEmpty();
+
+		ObjectNode report = MAPPER.createObjectNode();
+		try (StubOpenAIServer stub = StubOpenAIServer.start()) {
+			byte[] upload = multipart(ReplayCorpus.load(null).images().get(0));
+			for (Variant variant : variants) {
+				List<Start> starts = new ArrayList<>();
+				for (int i = 0; i < runs; i++) {
+					starts.add(start(variant, stub, upload));
+				}
+				report.set(variant.name(), summarize(starts));
+			}
+		}
+
+		Path reportFile = Path.of(setting("report", target.resolve("startup-report.json").toString()));
+		MAPPER.writerWithDefaultPrettyPrinter().writeValue(reportFile.toFile(), report);
+		logger.info("Cold starts ({} per variant), time to the first successful identification and RSS:\n{}",
+				runs, report.toPrettyString());
+		logger.info("Report written to {}", reportFile.toAbsolutePath());
+	}
+
+	private List<Variant> variants() throws IOException {
+		String java = ProcessHandle.current().info().command().orElse("java");
+		List<Variant> variants = new ArrayList<>();
+
+		Optional<Path> jar = executableJar(target);
+		jar.ifPresent(file -> variants.add(new Variant("jvm", List.of(java, "-jar", file.toString()))));
+
+		Path fastStartup = target.resolve("fast-startup");
+		Path archive = fastStartup.resolve("application.jsa");
+		Optional<Path> extractedJar = executableJar(fastStartup);
+		if (Files.exists(archive) && extractedJar.isPresent()) {
+			variants.add(new Variant("aot-cds", List.of(java, "-XX:SharedArchiveFile=" + archive, "-Xlog:cds=error",
+					"-Dspring.aot.enabled=true", "-jar", extractedJar.get().toString())));
+		}
+
+		Path executable = target.resolve("buggloo");
+		if (Files.isExecutable(executable)) {
+			variants.add(new Variant("native", List.of(executable.toString())));
+		}
+
+		for (String name : List.of("jvm", "aot-cds", "native")) {
+			if (variants.stream().noneMatch(variant -> variant.name().equals(name))) {
+				logger.info("Skipping the {} variant, which has not been built", name);
+			}
+		}
+		return variants;
+	}
+
+	private Start start(Variant variant, StubOpenAIServer stub, byte[] upload) throws Exception {
+		int port = freePort();
+		List<String> command = new ArrayList<>(variant.command());
+		command.addAll(List.of(
+				"--server.port=" + port,
+				"--openai.api-key=test",
+				"--openai.base-url=" + stub.baseUrl()));
+		HttpRequest identify = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/insect/identify"))
+				.timeout(timeout)
+				.header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+				.POST(HttpRequest.BodyPublishers.ofByteArray(upload))
+				.build();
+
+		long launched = System.nanoTime();
+		Process process = new ProcessBuilder(command)
+				.redirectErrorStream(true)
+				.redirectOutput(target.resolve("startup-" + variant.name() + ".log").toFile())
+				.start();
+		try {
+			while (true) {
+				if (!process.isAlive()) {
+					throw new IllegalStateException(variant.name() + " exited with " + process.exitValue()
+							+ ", see " + target.resolve("startup-" + variant.name() + ".log"));
+				}
+				if (System.nanoTime() - launched > timeout.toNanos()) {
+					throw new IllegalStateException(variant.name() + " did not answer within " + timeout);
+				}
+				try {
+					HttpResponse<String> response = http.send(identify, HttpResponse.BodyHandlers.ofString());
+					if (response.statusCode() == 200) {
+						long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launched);
+						return new Start(millis, residentKilobytes(process.pid()));
+					}
+					throw new IllegalStateException(variant.name() + " answered " + response.statusCode() + ": " + response.body());
+				} catch (ConnectException e) {
+					Thread.sleep(POLL_INTERVAL);
+				}
+			}
+		} finally {
+			process.destroy();
+			if (!process.waitFor(10, TimeUnit.SECONDS)) {
+				process.destroyForcibly().waitFor();
+			}
+		}
+	}
+
+	private static ObjectNode summarize(List<Start> starts) {
+		long[] millis = starts.stream().mapToLong(Start::millisToFirstResponse).sorted().toArray();
+		long[] resident = starts.stream().mapToLong(Start::residentKilobytes).sorted().toArray();
+
+		ObjectNode summary = MAPPER.createObjectNode();
+		summary.put("firstResponseMillisMedian", millis[millis.length / 2]);
+		summary.put("firstResponseMillisMin", millis[0]);
+		summary.put("firstResponseMillisMax", millis[millis.length - 1]);
+		if (resident[0] >= 0) {
+			summary.put("rssMegabytesMedian", resident[resident.length / 2] / 1024);
+		}
+		ArrayNode all = summary.putArray("firstResponseMillis");
+		starts.forEach(start -> all.add(start.millisToFirstResponse()));
+		return summary;
+	}
+
+	/**
+	 * Returns the resident set size of a process in kilobytes, or -1 where {@code /proc} is
+	 * not available.
+	 */
+	private static long residentKilobytes(long pid) {
+		try (Stream<String> lines = Files.lines(Path.of("/proc", Long.toString(pid), "status"))) {
+			return lines.filter(line -> line.startsWith("VmRSS:"))
+					.map(line -> Long.parseLong(line.replaceAll("\\D", "")))
+					.findFirst()
+					.orElse(-1L);
+		} catch (IOException e) {
+			return -1;
+		}
+	}
+
+	private static Optional<Path> executableJar(Path directory) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return Optional.empty();
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().matches("buggloo-.*\\.jar"))
+					.findFirst();
+		}
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	private static byte[] multipart(ReplayCorpus.Image image) {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(image.content().length + 512);
+		body.writeBytes(("--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"image\"; filename=\"" + image.filename() + "\"\r\n"
+				+ "Content-Type: " + image.contentType() + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+		body.writeBytes(image.content());
+		body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+		return body.toByteArray();
+	}
+
+	private static String setting(String name, String defaultValue) {
+		return System.getProperty("startup." + name, defaultValue);
+	}
+}
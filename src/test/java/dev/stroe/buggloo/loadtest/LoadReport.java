@@ -0,0 +1,152 @@
+package dev.stroe.buggloo.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+/**
+ * Results of a load test: latency percentiles, throughput and status codes per endpoint,
+ * plus the heap and garbage collection figures of the measured window. The service runs
+ * in the same JVM as the load generator and the stub, so the heap and GC figures cover
+ * all three.
+ */
+class LoadReport {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final Map<String, Double> PERCENTILES = Map.of("p50", 0.5, "p90", 0.9, "p99", 0.99, "p999", 0.999);
+
+	/**
+	 * Status recorded for requests that got no HTTP response at all.
+	 */
+	static final int NO_RESPONSE = -1;
+
+	private final Map<String, Queue<Sample>> samples = new ConcurrentHashMap<>();
+	private final Map<String, long[]> gcBefore = new HashMap<>();
+	private long allocatedBefore;
+	private long measuredNanos;
+
+	private record Sample(long latencyNanos, int status) {
+	}
+
+	/**
+	 * Starts the measured window, from which heap and GC figures are taken.
+	 */
+	void startMeasuring() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			pool.resetPeakUsage();
+		}
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcBefore.put(collector.getName(), new long[] {collector.getCollectionCount(), collector.getCollectionTime()});
+		}
+		allocatedBefore = allocatedBytes();
+	}
+
+	/**
+	 * Ends the measured window.
+	 *
+	 * @param measuredNanos the length of the window, from its start to the last measured response
+	 */
+	void stopMeasuring(long measuredNanos) {
+		this.measuredNanos = measuredNanos;
+	}
+
+	/**
+	 * Records a measured request.
+	 *
+	 * @param latencyNanos time from when the request was scheduled to be sent until its
+	 *                     response, so requests delayed by a backed-up client count too
+	 * @param status the HTTP status, or {@link #NO_RESPONSE}
+	 */
+	void record(String endpoint, long latencyNanos, int status) {
+		samples.computeIfAbsent(endpoint, name -> new ConcurrentLinkedQueue<>()).add(new Sample(latencyNanos, status));
+	}
+
+	int requests() {
+		return samples.values().stream().mapToInt(Queue::size).sum();
+	}
+
+	int requests(int status) {
+		return (int) samples.values().stream()
+				.flatMap(Queue::stream)
+				.filter(sample -> sample.status() == status)
+				.count();
+	}
+
+	ObjectNode toJson() {
+		ObjectNode report = MAPPER.createObjectNode();
+		report.put("measuredSeconds", measuredNanos / 1e9);
+		report.put("throughput", requests() / (measuredNanos / 1e9));
+
+		ObjectNode endpoints = report.putObject("endpoints");
+		new TreeMap<>(samples).forEach((endpoint, endpointSamples) -> {
+			Sample[] sorted = endpointSamples.toArray(Sample[]::new);
+			Arrays.sort(sorted, (a, b) -> Long.compare(a.latencyNanos(), b.latencyNanos()));
+			ObjectNode summary = endpoints.putObject(endpoint);
+			summary.put("requests", sorted.length);
+			summary.put("throughput", sorted.length / (measuredNanos / 1e9));
+			ObjectNode latency = summary.putObject("latencyMillis");
+			new TreeMap<>(PERCENTILES).forEach((name, percentile) -> latency.put(name, percentile(sorted, percentile)));
+			latency.put("max", sorted.length > 0 ? sorted[sorted.length - 1].latencyNanos() / 1e6 : 0);
+			ObjectNode statuses = summary.putObject("statuses");
+			Arrays.stream(sorted)
+					.collect(Collectors.groupingBy(Sample::status, TreeMap::new, Collectors.counting()))
+					.forEach((status, count) -> statuses.put(status == NO_RESPONSE ? "none" : status.toString(), count));
+		});
+
+		ObjectNode heap = report.putObject("heap");
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		heap.put("peakUsedBytes", peak);
+		heap.put("usedBytes", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+		heap.put("maxBytes", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax());
+		heap.put("allocatedBytes", allocatedBytes() - allocatedBefore);
+
+		ObjectNode gc = report.putObject("gc");
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			long[] before = gcBefore.getOrDefault(collector.getName(), new long[2]);
+			gc.putObject(collector.getName())
+					.put("collections", collector.getCollectionCount() - before[0])
+					.put("timeMillis", collector.getCollectionTime() - before[1]);
+		}
+		return report;
+	}
+
+	void write(Path file) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		MAPPER.writerWithDefaultPrettyPrinter().writeValue(file.toFile(), toJson());
+	}
+
+	private static double percentile(Sample[] sorted, double percentile) {
+		if (sorted.length == 0) {
+			return 0;
+		}
+		int index = (int) Math.ceil(percentile * sorted.length) - 1;
+		return sorted[Math.max(0, index)].latencyNanos() / 1e6;
+	}
+
+	private static long allocatedBytes() {
+		return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+				? threads.getTotalThreadAllocatedBytes()
+				: -1;
+	}
+}
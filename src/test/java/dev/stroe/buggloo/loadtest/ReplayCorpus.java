@@ -0,0 +1,149 @@
+package dev.stroe.buggloo.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * The requests a load test replays: image uploads, chat sessions of several turns, and the
+ * recorded structured responses the stub answers identifications with.
+ * <p>
+ * Images are read from a directory when one is given and generated otherwise, in the
+ * sizes a phone camera and a cropped screenshot produce. Chat sessions and recorded
+ * responses come from {@code src/test/resources/loadtest}.
+ */
+class ReplayCorpus {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final List<Image> images;
+	private final List<ChatSession> chatSessions;
+	private final List<String> recordedInsects;
+
+	private ReplayCorpus(List<Image> images, List<ChatSession> chatSessions, List<String> recordedInsects) {
+		this.images = images;
+		this.chatSessions = chatSessions;
+		this.recordedInsects = recordedInsects;
+	}
+
+	/**
+	 * Loads the corpus.
+	 *
+	 * @param imageDirectory directory of JPEG, PNG, GIF, BMP or WebP files to upload, or
+	 *                       null to generate images
+	 */
+	static ReplayCorpus load(Path imageDirectory) throws IOException {
+		List<Image> images = imageDirectory != null ? readImages(imageDirectory) : generateImages();
+		List<ChatSession> chatSessions = MAPPER.readValue(resource("chat-sessions.json"), new TypeReference<>() {
+		});
+		List<String> recordedInsects = new ArrayList<>();
+		for (JsonNode insect : MAPPER.readTree(resource("insects.json"))) {
+			recordedInsects.add(MAPPER.writeValueAsString(insect));
+		}
+		return new ReplayCorpus(images, chatSessions, recordedInsects);
+	}
+
+	List<Image> images() {
+		return images;
+	}
+
+	List<ChatSession> chatSessions() {
+		return chatSessions;
+	}
+
+	List<String> recordedInsects() {
+		return recordedInsects;
+	}
+
+	record Image(String filename, String contentType, byte[] content) {
+	}
+
+	record ChatSession(String insectName, List<String> messages) {
+	}
+
+	private static List<Image> readImages(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			List<Image> images = files.sorted()
+					.map(file -> {
+						String contentType = contentType(file.getFileName().toString());
+						return contentType != null ? new Image(file.getFileName().toString(), contentType, read(file)) : null;
+					})
+					.filter(image -> image != null)
+					.toList();
+			if (images.isEmpty()) {
+				throw new IllegalArgumentException("No images found in " + directory);
+			}
+			return images;
+		}
+	}
+
+	private static List<Image> generateImages() throws IOException {
+		Random random = new Random(42);
+		return List.of(
+				generate("small.jpg", 800, 600, random),
+				generate("medium.jpg", 2048, 1536, random),
+				generate("large.jpg", 4032, 3024, random));
+	}
+
+	/**
+	 * Generates a photo-like JPEG: smooth gradients with some noise, so it compresses
+	 * about as well as a real photo.
+	 */
+	private static Image generate(String filename, int width, int height, Random random) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int red = Math.min(255, 255 * x / width + random.nextInt(24));
+				int green = Math.min(255, 255 * y / height + random.nextInt(24));
+				int blue = Math.min(255, 128 + random.nextInt(24));
+				image.setRGB(x, y, red << 16 | green << 8 | blue);
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", out);
+		return new Image(filename, "image/jpeg", out.toByteArray());
+	}
+
+	private static String contentType(String filename) {
+		String name = filename.toLowerCase(Locale.ROOT);
+		if (name.endsWith(".jpg") || name.endsWith(".jpeg")) {
+			return "image/jpeg";
+		}
+		for (String extension : List.of("png", "gif", "bmp", "webp")) {
+			if (name.endsWith("." + extension)) {
+				return "image/" + extension;
+			}
+		}
+		return null;
+	}
+
+	private static byte[] read(Path file) {
+		try {
+			return Files.readAllBytes(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static InputStream resource(String name) throws IOException {
+		InputStream resource = ReplayCorpus.class.getResourceAsStream("/loadtest/" + name);
+		if (resource == null) {
+			throw new IOException("Missing load test resource " + name);
+		}
+		return resource;
+	}
+}
@@ -0,0 +1,258 @@
+package dev.stroe.buggloo.loadtest;
+
+import dev.stroe.buggloo.BugglooApplication;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Replays image uploads and chat sessions against the service at a fixed rate, with a
+ * local stub standing in for OpenAI, and reports latency percentiles, throughput, heap
+ * and GC figures to the log and to {@code target/load-report.json}.
+ * <p>
+ * Requests are sent on schedule whether or not earlier ones have been answered, and
+ * latencies are measured from the scheduled time, so a saturated service shows up as
+ * growing latencies rather than a slower request rate. Chat sessions are replayed turn by
+ * turn in one conversation; uploads are made unique so that the cache and request
+ * coalescing do not answer them without the pipeline.
+ * <p>
+ * Run with {@code ./mvnw -Pload-test test -Dtest=ReplayLoadTest}, tuned with these
+ * system properties:
+ * <ul>
+ *     <li>{@code loadtest.rps} requests per second (20), {@code loadtest.duration} of the
+ *     measured window (60s) after {@code loadtest.warm-up} (10s), and
+ *     {@code loadtest.identify-share} of requests that are uploads (0.3);</li>
+ *     <li>{@code loadtest.latency-median} (800ms) and {@code loadtest.latency-p99} (5s) of
+ *     the stub, {@code loadtest.tokens-per-second} it generates at (80), and the
+ *     {@code loadtest.rate-limited-rate} (0.02) and {@code loadtest.server-error-rate}
+ *     (0.01) of injected 429 and 500 responses;</li>
+ *     <li>{@code loadtest.images}, a directory of images to upload instead of generated
+ *     ones, {@code loadtest.app-args}, extra space-separated arguments for the service
+ *     such as {@code --admission.enabled=false}, and {@code loadtest.report}, where to
+ *     write the report.</li>
+ * </ul>
+ */
+@Tag("load")
+class ReplayLoadTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplayLoadTest.class);
+
+	private static final String BOUNDARY = "buggloo-load-test";
+	private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(2);
+
+	private final double rps = Double.parseDouble(setting("rps", "20"));
+	private final Duration duration = duration("duration", "60s");
+	private final Duration warmUp = duration("warm-up", "10s");
+	private final double identifyShare = Double.parseDouble(setting("identify-share", "0.3"));
+
+	private final Queue<Session> idleSessions = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger nextSession = new AtomicInteger();
+	private final AtomicInteger nextImage = new AtomicInteger();
+	private final AtomicLong lastMeasuredResponse = new AtomicLong();
+
+	private ReplayCorpus corpus;
+	private HttpClient http;
+	private URI baseUri;
+
+	@Test
+	void replayCorpusAtTargetRate() throws Exception {
+		String images = setting("images", null);
+		corpus = ReplayCorpus.load(images != null ? Path.of(images) : null);
+
+		try (StubOpenAIServer stub = StubOpenAIServer.start()) {
+			stub.setLatencyDistribution(duration("latency-median", "800ms"), duration("latency-p99", "5s"));
+			stub.setTokensPerSecond(Double.parseDouble(setting("tokens-per-second", "80")));
+			stub.setFailureRate(429, Double.parseDouble(setting("rate-limited-rate", "0.02")));
+			stub.setFailureRate(500, Double.parseDouble(setting("server-error-rate", "0.01")));
+			stub.setStructuredContents(corpus.recordedInsects());
+
+			List<String> args = new ArrayList<>(List.of(
+					"--server.port=0",
+					"--openai.api-key=test",
+					"--openai.base-url=" + stub.baseUrl(),
+					"--logging.level.dev.stroe.buggloo.controllers=WARN",
+					"--logging.level.dev.stroe.buggloo.services=WARN"));
+			args.addAll(Arrays.asList(setting("app-args", "").split("\\s+")));
+			args.removeIf(String::isBlank);
+
+			try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BugglooApplication.class)
+					.run(args.toArray(String[]::new))) {
+				baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+				http = HttpClient.newBuilder()
+						.executor(Executors.newVirtualThreadPerTaskExecutor())
+						.build();
+
+				LoadReport report = run();
+
+				Path reportFile = Path.of(setting("report", "target/load-report.json"));
+				report.write(reportFile);
+				logger.info("Load test at {} requests/s against {} upstream requests ({} injected failures):\n{}",
+						rps, stub.requestCount(), stub.injectedFailures(),
+						report.toJson().toPrettyString());
+				logger.info("Report written to {}", reportFile.toAbsolutePath());
+
+				assertThat(report.requests()).isPositive();
+				assertThat(report.requests(LoadReport.NO_RESPONSE)).isZero();
+			}
+		}
+	}
+
+	private LoadReport run() {
+		LoadReport report = new LoadReport();
+		long intervalNanos = (long) (1e9 / rps);
+		long warmUpRequests = (long) (warmUp.toNanos() / 1e9 * rps);
+		long totalRequests = warmUpRequests + (long) (duration.toNanos() / 1e9 * rps);
+
+		List<CompletableFuture<?>> requests = new ArrayList<>();
+		long start = System.nanoTime();
+		long measuredStart = start + warmUpRequests * intervalNanos;
+		for (long i = 0; i < totalRequests; i++) {
+			long scheduled = start + i * intervalNanos;
+			while (System.nanoTime() < scheduled) {
+				LockSupport.parkNanos(scheduled - System.nanoTime());
+			}
+			if (i == warmUpRequests) {
+				report.startMeasuring();
+			}
+			LoadReport target = i >= warmUpRequests ? report : null;
+			requests.add(ThreadLocalRandom.current().nextDouble() < identifyShare
+					? identify(scheduled, target)
+					: chat(scheduled, target));
+		}
+		CompletableFuture.allOf(requests.toArray(CompletableFuture[]::new)).join();
+		report.stopMeasuring(lastMeasuredResponse.get() - measuredStart);
+		return report;
+	}
+
+	private CompletableFuture<?> identify(long scheduled, LoadReport report) {
+		ReplayCorpus.Image image = corpus.images().get(Math.floorMod(nextImage.getAndIncrement(), corpus.images().size()));
+		HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/insect/identify"))
+				.timeout(REQUEST_TIMEOUT)
+				.header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+				.POST(HttpRequest.BodyPublishers.ofByteArray(multipart(image)))
+				.build();
+		return send(request, scheduled, report, "identify");
+	}
+
+	/**
+	 * Sends the next turn of an idle chat session, or the first turn of a new one.
+	 */
+	private CompletableFuture<?> chat(long scheduled, LoadReport report) {
+		Session session = idleSessions.poll();
+		if (session == null) {
+			List<ReplayCorpus.ChatSession> sessions = corpus.chatSessions();
+			session = new Session(sessions.get(Math.floorMod(nextSession.getAndIncrement(), sessions.size())));
+		}
+
+		StringBuilder form = new StringBuilder("message=").append(encode(session.script.messages().get(session.turn)));
+		if (session.conversationId != null) {
+			form.append("&conversationId=").append(encode(session.conversationId));
+		}
+		if (session.script.insectName() != null) {
+			form.append("&insectName=").append(encode(session.script.insectName()));
+		}
+		HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/insect/chat"))
+				.timeout(REQUEST_TIMEOUT)
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString(form.toString()))
+				.build();
+
+		Session current = session;
+		return send(request, scheduled, report, "chat").thenAccept(response -> {
+			if (response == null || response.statusCode() != 200) {
+				// Failed turns are not retried; the session ends here
+				return;
+			}
+			current.conversationId = response.headers().firstValue("X-Conversation-Id").orElse(current.conversationId);
+			if (++current.turn < current.script.messages().size()) {
+				idleSessions.add(current);
+			}
+		});
+	}
+
+	private CompletableFuture<HttpResponse<String>> send(HttpRequest request, long scheduled, LoadReport report,
+			String endpoint) {
+		return http.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+				.handle((response, error) -> {
+					long now = System.nanoTime();
+					if (report != null) {
+						lastMeasuredResponse.accumulateAndGet(now, Math::max);
+						report.record(endpoint, now - scheduled, response != null ? response.statusCode() : LoadReport.NO_RESPONSE);
+					}
+					if (error != null) {
+						logger.warn("{} request failed without a response: {}", endpoint, error.toString());
+					}
+					return response;
+				});
+	}
+
+	/**
+	 * Builds the upload, with a random trailer after the image data that decoders ignore but
+	 * that makes every upload distinct.
+	 */
+	private static byte[] multipart(ReplayCorpus.Image image) {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(image.content().length + 512);
+		body.writeBytes(("--" + BOUNDARY + "\r\n"
+				+ "Content-Disposition: form-data; name=\"image\"; filename=\"" + image.filename() + "\"\r\n"
+				+ "Content-Type: " + image.contentType() + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+		body.writeBytes(image.content());
+		body.writeBytes(UUID.randomUUID().toString().getBytes(StandardCharsets.US_ASCII));
+		body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+		return body.toByteArray();
+	}
+
+	private static String encode(String value) {
+		return URLEncoder.encode(value, StandardCharsets.UTF_8);
+	}
+
+	private static String setting(String name, String defaultValue) {
+		return System.getProperty("loadtest." + name, defaultValue);
+	}
+
+	private static Duration duration(String name, String defaultValue) {
+		return DurationStyle.detectAndParse(setting(name, defaultValue));
+	}
+
+	/**
+	 * A chat session being replayed, idle between its turns.
+	 */
+	private static final class Session {
+
+		private final ReplayCorpus.ChatSession script;
+		private volatile String conversationId;
+		private volatile int turn;
+
+		Session(ReplayCorpus.ChatSession script) {
+			this.script = script;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package dev.stroe.buggloo.loadtest;
+
+import dev.stroe.buggloo.BugglooApplication;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares chat throughput with the default platform-thread Tomcat pool against
+ * virtual threads, with a slow local stub standing in for OpenAI.
+ * Run with {@code ./mvnw -Pload-test test}.
+ */
+@Tag("load")
+class VirtualThreadLoadTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreadLoadTest.class);
+
+	private static final int CONCURRENT_REQUESTS = 200;
+	private static final int WARM_UP_REQUESTS = 100;
+	private static final int PLATFORM_THREADS = 10;
+	private static final Duration UPSTREAM_LATENCY = Duration.ofMillis(500);
+
+	@Test
+	void virtualThreadsOutperformPlatformPoolOnSlowUpstream() throws Exception {
+		try (StubOpenAIServer stub = StubOpenAIServer.start()) {
+			stub.setLatency(UPSTREAM_LATENCY);
+
+			double platformThroughput = measureThroughput(stub, false);
+			double virtualThroughput = measureThroughput(stub, true);
+
+			logger.info("Chat throughput with {} concurrent requests: platform pool ({} threads) {} req/s, virtual threads {} req/s",
+					CONCURRENT_REQUESTS, PLATFORM_THREADS,
+					String.format("%.1f", platformThroughput), String.format("%.1f", virtualThroughput));
+			assertThat(virtualThroughput).isGreaterThan(platformThroughput * 2);
+		}
+	}
+
+	private double measureThroughput(StubOpenAIServer stub, boolean virtualThreads) {
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BugglooApplication.class).run(
+				"--server.port=0",
+				"--openai.api-key=test",
+				"--openai.base-url=" + stub.baseUrl(),
+				"--openai.concurrency.max-concurrent-requests=" + CONCURRENT_REQUESTS,
+				"--spring.threads.virtual.enabled=" + virtualThreads,
+				"--server.tomcat.threads.max=" + PLATFORM_THREADS,
+				"--logging.level.dev.stroe.buggloo.controllers=WARN",
+				"--logging.level.dev.stroe.buggloo.services=WARN")) {
+			URI chatUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port")
+					+ "/insect/chat");
+			HttpClient http = HttpClient.newBuilder()
+					.executor(Executors.newVirtualThreadPerTaskExecutor())
+					.build();
+
+			// Warm up the connection pools and JIT before measuring
+			fire(http, chatUri, WARM_UP_REQUESTS);
+
+			long start = System.nanoTime();
+			fire(http, chatUri, CONCURRENT_REQUESTS);
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			return CONCURRENT_REQUESTS / seconds;
+		}
+	}
+
+	private static void fire(HttpClient http, URI uri, int count) {
+		List<CompletableFuture<HttpResponse<String>>> responses = IntStream.range(0, count)
+				.mapToObj(i -> chat(http, uri))
+				.toList();
+		responses.forEach(response -> assertThat(response.join().statusCode()).isEqualTo(200));
+	}
+
+	private static CompletableFuture<HttpResponse<String>> chat(HttpClient http, URI uri) {
+		HttpRequest request = HttpRequest.newBuilder(uri)
+				.header("Content-Type", "application/x-www-form-urlencoded")
+				.POST(HttpRequest.BodyPublishers.ofString("message=Does+it+sting%3F&insectName=Honey+bee"))
+				.build();
+		return http.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+	}
+}
@@ -0,0 +1,171 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.AdmissionConfig;
+import dev.stroe.buggloo.exceptions.AdmissionRejectedException;
+import dev.stroe.buggloo.exceptions.GlobalExceptionHandler;
+import dev.stroe.buggloo.models.ApiResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionServiceTest {
+
+	private AdmissionConfig config;
+	private SimpleMeterRegistry meterRegistry;
+	private AdmissionService admissionService;
+
+	@BeforeEach
+	void setUp() {
+		config = new AdmissionConfig();
+		config.setMaxConcurrentRequests(1);
+		config.getIdentify().setWeight(1);
+		config.getChat().setWeight(3);
+		meterRegistry = new SimpleMeterRegistry();
+	}
+
+	@Test
+	void freedSlotsGoToTheLanesByWeight() throws Exception {
+		createService();
+		AdmissionService.Admission running = admissionService.admit(AdmissionService.Lane.IDENTIFY).get();
+
+		List<AdmissionService.Lane> admitted = new ArrayList<>();
+		List<CompletableFuture<AdmissionService.Admission>> queued = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			queued.add(admitLogging(AdmissionService.Lane.IDENTIFY, admitted));
+			queued.add(admitLogging(AdmissionService.Lane.CHAT, admitted));
+		}
+		assertThat(queueDepth("chat")).isEqualTo(4);
+
+		for (int i = 0; i < 4; i++) {
+			running.close();
+			CompletableFuture<AdmissionService.Admission> next = queued.stream()
+					.filter(CompletableFuture::isDone)
+					.findFirst()
+					.orElseThrow();
+			queued.remove(next);
+			running = next.join();
+		}
+
+		assertThat(admitted).hasSize(4);
+		assertThat(admitted).filteredOn(lane -> lane == AdmissionService.Lane.CHAT).hasSize(3);
+		assertThat(meterRegistry.get("buggloo.admission.wait").tag("lane", "chat").timer().count()).isEqualTo(3);
+	}
+
+	@Test
+	void fullQueueIsRejectedWithServiceUnavailable() throws Exception {
+		config.getChat().setQueueCapacity(2);
+		createService();
+		admissionService.admit(AdmissionService.Lane.CHAT).get();
+		admissionService.admit(AdmissionService.Lane.CHAT);
+		admissionService.admit(AdmissionService.Lane.CHAT);
+
+		AdmissionRejectedException rejected = rejection(admissionService.admit(AdmissionService.Lane.CHAT));
+
+		ResponseEntity<ApiResponse<Void>> response = new GlobalExceptionHandler(meterRegistry).handleAdmissionRejectedException(rejected);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER)).isEqualTo("5");
+		assertThat(response.getBody().getError()).isEqualTo("OVERLOADED");
+		// Identification requests queue separately
+		assertThat(admissionService.admit(AdmissionService.Lane.IDENTIFY)).isNotCompletedExceptionally();
+	}
+
+	@Test
+	void exhaustedTokenBudgetIsRejectedWithTooManyRequests() throws Exception {
+		config.setMaxConcurrentRequests(10);
+		config.getChat().setTokensPerMinute(600);
+		config.getChat().setEstimatedTokens(300);
+		config.getChat().setQueueTimeout(Duration.ofSeconds(1));
+		createService();
+		admissionService.admit(AdmissionService.Lane.CHAT).get();
+		admissionService.admit(AdmissionService.Lane.CHAT).get();
+
+		AdmissionRejectedException rejected = rejection(admissionService.admit(AdmissionService.Lane.CHAT));
+
+		ResponseEntity<ApiResponse<Void>> response = new GlobalExceptionHandler(meterRegistry).handleAdmissionRejectedException(rejected);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+		// 300 tokens at 10 per second
+		assertThat(Long.parseLong(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER))).isBetween(29L, 30L);
+		assertThat(rejectedCount("chat", "budget")).isEqualTo(1);
+	}
+
+	@Test
+	void requestsAreChargedWhatTheirCallsUsedInsteadOfTheEstimate() throws Exception {
+		config.setMaxConcurrentRequests(10);
+		config.getChat().setTokensPerMinute(600);
+		config.getChat().setEstimatedTokens(300);
+		config.getChat().setQueueTimeout(Duration.ofSeconds(1));
+		createService();
+		// Answered without calling OpenAI, as from the chat cache
+		for (int i = 0; i < 3; i++) {
+			admissionService.admit(AdmissionService.Lane.CHAT).get().close();
+		}
+
+		AdmissionService.Admission manyCalls = admissionService.admit(AdmissionService.Lane.CHAT).get();
+		admissionService.charge(AdmissionService.Lane.CHAT, 500);
+		admissionService.charge(AdmissionService.Lane.CHAT, 500);
+		manyCalls.close();
+
+		AdmissionRejectedException rejected = rejection(admissionService.admit(AdmissionService.Lane.CHAT));
+		// 700 tokens short at 10 per second
+		assertThat(rejected.getRetryAfter()).isBetween(Duration.ofSeconds(69), Duration.ofSeconds(70));
+		assertThat(rejectedCount("chat", "budget")).isEqualTo(1);
+		assertThat(admissionService.admit(AdmissionService.Lane.IDENTIFY)).isCompleted();
+	}
+
+	@Test
+	void requestStillQueuedAtItsTimeoutIsRejected() throws Exception {
+		config.getChat().setQueueTimeout(Duration.ofMillis(100));
+		createService();
+		admissionService.admit(AdmissionService.Lane.IDENTIFY).get();
+
+		CompletableFuture<AdmissionService.Admission> queued = admissionService.admit(AdmissionService.Lane.CHAT);
+
+		assertThatThrownBy(() -> queued.get(2, TimeUnit.SECONDS))
+				.hasCauseInstanceOf(AdmissionRejectedException.class);
+		assertThat(rejectedCount("chat", "timeout")).isEqualTo(1);
+		assertThat(queueDepth("chat")).isZero();
+	}
+
+	private void createService() {
+		admissionService = new AdmissionService(config, meterRegistry);
+	}
+
+	private CompletableFuture<AdmissionService.Admission> admitLogging(AdmissionService.Lane lane,
+			List<AdmissionService.Lane> admitted) {
+		CompletableFuture<AdmissionService.Admission> admission = admissionService.admit(lane);
+		admission.thenRun(() -> admitted.add(lane));
+		return admission;
+	}
+
+	private static AdmissionRejectedException rejection(CompletableFuture<AdmissionService.Admission> admission) {
+		try {
+			admission.get(1, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			return (AdmissionRejectedException) e.getCause();
+		} catch (Exception e) {
+			throw new AssertionError(e);
+		}
+		throw new AssertionError("Request was admitted");
+	}
+
+	private double queueDepth(String lane) {
+		return meterRegistry.get("buggloo.admission.queue.depth").tag("lane", lane).gauge().value();
+	}
+
+	private double rejectedCount(String lane, String reason) {
+		return meterRegistry.get("buggloo.admission.rejected").tags("lane", lane, "reason", reason).counter().count();
+	}
+}
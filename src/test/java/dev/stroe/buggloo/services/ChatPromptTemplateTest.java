@@ -0,0 +1,75 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.models.ChatModel;
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import com.openai.models.chat.completions.ChatCompletionMessageParam;
+import dev.stroe.buggloo.config.ConversationConfig;
+import dev.stroe.buggloo.models.ChatMessage;
+import dev.stroe.buggloo.models.ConversationTurn;
+import dev.stroe.buggloo.utils.TokenCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatPromptTemplateTest {
+
+	@Test
+	void everyRequestStartsWithTheSameInstructions() {
+		List<ChatCompletionMessageParam> bee = messages(List.of(), "Does it sting?", "Honey bee");
+		List<ChatCompletionMessageParam> general = messages(List.of(), "What is an insect?", null);
+
+		assertThat(bee.get(0)).isEqualTo(general.get(0));
+		assertThat(bee.get(0).asDeveloper().content().asText()).isEqualTo(ChatPromptTemplate.INSTRUCTIONS);
+		assertThat(bee.get(1).asDeveloper().content().asText()).isEqualTo("You are discussing Honey bee.");
+		assertThat(general.get(1).asDeveloper().content().asText()).isEqualTo("You are discussing insects in general.");
+	}
+
+	@Test
+	void eachTurnExtendsThePreviousPrompt() {
+		List<ChatCompletionMessageParam> first = messages(List.of(), "Does it sting?", "Honey bee");
+		List<ChatCompletionMessageParam> second = messages(
+				List.of(ChatMessage.user("Does it sting?"), ChatMessage.assistant("Only when threatened.")),
+				"Does it hurt?", "Honey bee");
+
+		assertThat(second).hasSize(first.size() + 2);
+		assertThat(second.subList(0, first.size())).isEqualTo(first);
+		assertThat(second.get(second.size() - 1).asUser().content().asText()).isEqualTo("Does it hurt?");
+	}
+
+	@Test
+	void turnsPastTheContextBudgetMostlyExtendThePreviousPrompt() {
+		ConversationConfig config = new ConversationConfig();
+		config.setContextTokenBudget(200);
+		ConversationStore store = new ConversationStore(config, new ObjectMapper(), new SimpleMeterRegistry());
+		ConversationTurn turn = store.begin(null, "Honey bee", null);
+
+		List<ChatCompletionMessageParam> previous = List.of();
+		int trimmed = 0;
+		for (int i = 1; i <= 30; i++) {
+			store.record(turn, "question " + i, "answer " + i + ": " + "honey bees live in colonies ".repeat(3));
+			List<ChatMessage> history = store.begin(turn.getConversationId(), null, null).getHistory();
+			List<ChatCompletionMessageParam> prompt = messages(history, "question " + (i + 1), "Honey bee");
+
+			int historyTokens = history.stream().mapToInt(message -> TokenCounter.countMessage(message.getContent())).sum();
+			assertThat(historyTokens).isLessThanOrEqualTo(200);
+			// Minus the current message, the previous prompt must be a prefix of this one
+			List<ChatCompletionMessageParam> previousPrefix = previous.isEmpty() ? previous : previous.subList(0, previous.size() - 1);
+			if (prompt.size() < previousPrefix.size() || !prompt.subList(0, previousPrefix.size()).equals(previousPrefix)) {
+				trimmed++;
+				assertThat(historyTokens).isLessThanOrEqualTo(100);
+			}
+			previous = prompt;
+		}
+
+		assertThat(trimmed).isBetween(1, 10);
+	}
+
+	private static List<ChatCompletionMessageParam> messages(List<ChatMessage> history, String message, String insectName) {
+		ChatCompletionCreateParams.Builder builder = ChatCompletionCreateParams.builder().model(ChatModel.GPT_4_1);
+		return ChatPromptTemplate.apply(builder, history, message, insectName).build().messages();
+	}
+}
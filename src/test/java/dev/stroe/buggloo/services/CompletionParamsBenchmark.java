@@ -0,0 +1,127 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.client.OpenAIClient;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import dev.stroe.buggloo.config.ConversationConfig;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.models.ConversationTurn;
+import dev.stroe.buggloo.models.InsectProjection;
+import dev.stroe.buggloo.support.OpenAIServiceBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures assembling the requests sent to OpenAI: the chat prompt for a legacy request
+ * carrying its history in {@code pastConversation} and for a stored conversation of
+ * about the same length, and the structured identification request for a single image.
+ * Lives next to {@link OpenAIService} to reach its package-private request builders.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class CompletionParamsBenchmark {
+
+	private static final String MESSAGE = "How far does it fly from the hive to find food?";
+	private static final String INSECT_NAME = "Western honey bee";
+
+	@State(Scope.Benchmark)
+	public static class Chat {
+
+		@Param({"1000", "20000", "200000"})
+		private int pastConversationLength;
+
+		private OpenAIClient client;
+		private OpenAIService openAIService;
+		private ConversationStore conversationStore;
+		private String pastConversation;
+		private String conversationId;
+
+		@Setup
+		public void setUp() {
+			SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+			OpenAIConfig config = new OpenAIConfig();
+			config.setApiKey("benchmark");
+			// Never called; only builds requests
+			client = OpenAIOkHttpClient.builder().apiKey("benchmark").build();
+			openAIService = OpenAIServiceBuilder.openAIService(config, client).meterRegistry(meterRegistry).build();
+			conversationStore = new ConversationStore(new ConversationConfig(), new ObjectMapper(), meterRegistry);
+
+			StringBuilder history = new StringBuilder();
+			ConversationTurn turn = conversationStore.begin(null, INSECT_NAME, null);
+			conversationId = turn.getConversationId();
+			for (int i = 0; history.length() < pastConversationLength; i++) {
+				String question = "Question " + i + ": what else should I know about how honey bees live together?";
+				String answer = "Answer " + i + ": honey bees live in colonies with a single queen, thousands of female "
+						+ "workers and a few hundred drones, and divide the work of the hive by age.";
+				history.append("User: ").append(question).append('\n').append("Assistant: ").append(answer).append('\n');
+				conversationStore.record(conversationStore.begin(conversationId, null, null), question, answer);
+			}
+			pastConversation = history.toString();
+		}
+
+		@TearDown
+		public void tearDown() {
+			client.close();
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Identification {
+
+		private OpenAIClient client;
+		private OpenAIService openAIService;
+		private List<String> imageUrls;
+
+		@Setup
+		public void setUp() {
+			OpenAIConfig config = new OpenAIConfig();
+			config.setApiKey("benchmark");
+			// Never called; only builds requests
+			client = OpenAIOkHttpClient.builder().apiKey("benchmark").build();
+			openAIService = OpenAIServiceBuilder.openAIService(config, client).build();
+			// Stands in for a preprocessed image; only its reference is copied into the request
+			imageUrls = List.of("data:image/jpeg;base64," + "A".repeat(200_000));
+		}
+
+		@TearDown
+		public void tearDown() {
+			client.close();
+		}
+	}
+
+	@Benchmark
+	public ChatCompletionCreateParams pastConversationPrompt(Chat chat) {
+		ConversationTurn turn = chat.conversationStore.begin(null, INSECT_NAME, chat.pastConversation);
+		return chat.openAIService.buildChatParams(turn.getHistory(), MESSAGE, turn.getInsectName());
+	}
+
+	@Benchmark
+	public ChatCompletionCreateParams storedConversationPrompt(Chat chat) {
+		ConversationTurn turn = chat.conversationStore.begin(chat.conversationId, null, null);
+		return chat.openAIService.buildChatParams(turn.getHistory(), MESSAGE, turn.getInsectName());
+	}
+
+	@Benchmark
+	public ChatCompletionCreateParams identificationParams(Identification identification) {
+		return identification.openAIService.buildInsectParams(identification.imageUrls, InsectProjection.ALL,
+				ModelCascade.Tier.LARGE);
+	}
+}
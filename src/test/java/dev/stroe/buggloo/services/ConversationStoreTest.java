@@ -0,0 +1,149 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.stroe.buggloo.config.ConversationConfig;
+import dev.stroe.buggloo.exceptions.ConversationNotFoundException;
+import dev.stroe.buggloo.models.ChatMessage;
+import dev.stroe.buggloo.models.ConversationTurn;
+import dev.stroe.buggloo.utils.TokenCounter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConversationStoreTest {
+
+	private ConversationConfig config;
+	private SimpleMeterRegistry meterRegistry;
+	private ConversationStore store;
+
+	@BeforeEach
+	void setUp() {
+		config = new ConversationConfig();
+		config.setMaxMessages(4);
+		meterRegistry = new SimpleMeterRegistry();
+		store = new ConversationStore(config, new ObjectMapper(), meterRegistry);
+	}
+
+	@Test
+	void continuedConversationsReplayEarlierMessagesInOrder() {
+		ConversationTurn first = store.begin(null, "Honey bee", null);
+		store.record(first, "Does it sting?", "Only when threatened.");
+
+		ConversationTurn second = store.begin(first.getConversationId(), null, null);
+
+		assertThat(second.getInsectName()).isEqualTo("Honey bee");
+		assertThat(second.getHistory()).extracting(ChatMessage::getRole)
+				.containsExactly(ChatMessage.Role.USER, ChatMessage.Role.ASSISTANT);
+		assertThat(second.getHistory()).extracting(ChatMessage::getContent)
+				.containsExactly("Does it sting?", "Only when threatened.");
+	}
+
+	@Test
+	void onlyTheNewestMessagesAreKept() {
+		ConversationTurn turn = store.begin(null, "Honey bee", null);
+		for (int i = 1; i <= 3; i++) {
+			store.record(turn, "question " + i, "answer " + i);
+		}
+
+		// Once the ring drops sent messages, the history restarts from its newest half
+		assertThat(store.begin(turn.getConversationId(), null, null).getHistory()).extracting(ChatMessage::getContent)
+				.containsExactly("question 3", "answer 3");
+	}
+
+	@Test
+	void contextIsTrimmedToTheTokenBudget() {
+		config.setContextTokenBudget(TokenCounter.countMessage("x".repeat(400)));
+		ConversationTurn turn = store.begin(null, "Honey bee", null);
+		store.record(turn, "x".repeat(400), "y".repeat(20));
+
+		assertThat(store.begin(turn.getConversationId(), null, null).getHistory()).extracting(ChatMessage::getContent)
+				.containsExactly("y".repeat(20));
+	}
+
+	@Test
+	void legacyRequestsGetAOneOffTurnThatIsNotStored() {
+		ConversationTurn turn = store.begin(null, "Honey bee", "user: hi, assistant: hello");
+		store.record(turn, "Does it sting?", "Only when threatened.");
+
+		assertThat(turn.getConversationId()).isNull();
+		assertThat(turn.getHistory()).singleElement()
+				.satisfies(message -> assertThat(message.getRole()).isEqualTo(ChatMessage.Role.DEVELOPER));
+		assertThat(store.size()).isZero();
+	}
+
+	@Test
+	void legacyContextIsCutToItsNewestPartWithinTheTokenBudget() {
+		config.setContextTokenBudget(100);
+		StringBuilder pastConversation = new StringBuilder();
+		for (int i = 1; i <= 200; i++) {
+			pastConversation.append("user: question ").append(i).append(", assistant: answer ").append(i).append('\n');
+		}
+
+		ConversationTurn turn = store.begin(null, "Honey bee", pastConversation.toString());
+
+		String context = turn.getHistory().get(0).getContent();
+		assertThat(context).startsWith("Previous conversation context: ").endsWith("answer 200\n");
+		assertThat(TokenCounter.countMessage(context)).isLessThanOrEqualTo(100);
+	}
+
+	@Test
+	void legacyContextIsTrimmedWithoutWaitingForTheStore() throws Exception {
+		CompletableFuture<ConversationTurn> turn;
+		synchronized (store) {
+			turn = CompletableFuture.supplyAsync(() -> store.begin(null, "Honey bee", "user: hi, assistant: hello"));
+			assertThat(turn.get(5, TimeUnit.SECONDS).getHistory()).hasSize(1);
+		}
+	}
+
+	@Test
+	void expiredAndUnknownConversationsAreRejected() {
+		config.setTtl(Duration.ZERO.minusMillis(1));
+		ConversationTurn turn = store.begin(null, "Honey bee", null);
+
+		assertThatThrownBy(() -> store.begin(turn.getConversationId(), null, null))
+				.isInstanceOf(ConversationNotFoundException.class);
+		assertThatThrownBy(() -> store.begin("missing", null, null))
+				.isInstanceOf(ConversationNotFoundException.class);
+	}
+
+	@Test
+	void leastRecentlyUsedConversationsAreEvictedOverTheCharacterLimit() {
+		config.setMaxTotalCharacters(100);
+		ConversationTurn older = store.begin(null, null, null);
+		store.record(older, "a".repeat(30), "b".repeat(30));
+		ConversationTurn newer = store.begin(null, null, null);
+		store.record(newer, "c".repeat(30), "d".repeat(30));
+
+		assertThat(store.size()).isEqualTo(1);
+		assertThat(store.begin(newer.getConversationId(), null, null).getHistory()).hasSize(2);
+		assertThat(meterRegistry.counter("buggloo.conversations.evictions", "cause", "memory").count()).isEqualTo(1);
+	}
+
+	@Test
+	void conversationsSurviveARestartWithAPersistenceFile(@TempDir Path directory) {
+		config.setPersistenceFile(directory.resolve("conversations.json").toString());
+		ConversationTurn turn = store.begin(null, "Honey bee", null);
+		store.record(turn, "Does it sting?", "Only when threatened.");
+		store.save();
+
+		ConversationStore restarted = newStore();
+		restarted.load();
+
+		ConversationTurn resumed = restarted.begin(turn.getConversationId(), null, null);
+		assertThat(resumed.getInsectName()).isEqualTo("Honey bee");
+		assertThat(resumed.getHistory()).hasSize(2);
+	}
+
+	private ConversationStore newStore() {
+		return new ConversationStore(config, new ObjectMapper(), new SimpleMeterRegistry());
+	}
+}
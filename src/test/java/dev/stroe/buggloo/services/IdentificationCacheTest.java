@@ -0,0 +1,148 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.exceptions.NoInsectException;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.support.HashedImages;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IdentificationCacheTest {
+
+	private static final long BEE = 0x5A3C_F00F_C3A5_0FF0L;
+	private static final long WASP = 0L;
+	private static final long HORNET = -1L;
+
+	private OpenAIConfig config;
+	private SimpleMeterRegistry meterRegistry;
+	private AtomicInteger identifications;
+
+	@BeforeEach
+	void setUp() {
+		config = new OpenAIConfig();
+		meterRegistry = new SimpleMeterRegistry();
+		identifications = new AtomicInteger();
+	}
+
+	@Test
+	void exactAndNearDuplicatesAreAnsweredFromTheCache() {
+		IdentificationCache cache = newCache();
+		Insect bee = cache.getOrIdentify(image(BEE), identify("Apis mellifera"));
+
+		assertThat(cache.getOrIdentify(image(BEE), identify("Other"))).isSameAs(bee);
+		assertThat(cache.getOrIdentify(image(HashedImages.flip(BEE, 4)), identify("Other"))).isSameAs(bee);
+		assertThat(identifications).hasValue(1);
+		assertThat(gets("hit")).isEqualTo(2);
+		assertThat(gets("miss")).isEqualTo(1);
+	}
+
+	@Test
+	void imagesJustOverTheThresholdAreIdentifiedAgain() {
+		IdentificationCache cache = newCache();
+		cache.getOrIdentify(image(BEE), identify("Apis mellifera"));
+
+		Insect other = cache.getOrIdentify(image(HashedImages.flip(BEE, 5)), identify("Apis cerana"));
+
+		assertThat(other.scientificName).isEqualTo("Apis cerana");
+		assertThat(identifications).hasValue(2);
+		assertThat(cache.size()).isEqualTo(2);
+	}
+
+	@Test
+	void expiredIdentificationsAreNotReused() {
+		config.getCache().setTtl(Duration.ZERO.minusMillis(1));
+		IdentificationCache cache = newCache();
+		cache.getOrIdentify(image(BEE), identify("Apis mellifera"));
+
+		cache.getOrIdentify(image(BEE), identify("Apis mellifera"));
+
+		assertThat(identifications).hasValue(2);
+		assertThat(evictions("expired")).isEqualTo(1);
+	}
+
+	@Test
+	void leastRecentlyUsedIdentificationsAreEvictedFirst() {
+		config.getCache().setMaxEntries(2);
+		IdentificationCache cache = newCache();
+		cache.getOrIdentify(image(BEE), identify("Apis mellifera"));
+		cache.getOrIdentify(image(WASP), identify("Vespula vulgaris"));
+		cache.getOrIdentify(image(BEE), identify("Other"));
+		cache.getOrIdentify(image(HORNET), identify("Vespa crabro"));
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(evictions("size")).isEqualTo(1);
+		assertThat(cache.getOrIdentify(image(BEE), identify("Other")).scientificName).isEqualTo("Apis mellifera");
+		assertThat(cache.getOrIdentify(image(WASP), identify("Vespula germanica")).scientificName)
+				.isEqualTo("Vespula germanica");
+		assertThat(identifications).hasValue(4);
+	}
+
+	@Test
+	void photosWithoutAnInsectAreRememberedToo() {
+		IdentificationCache cache = newCache();
+		Supplier<Insect> noInsect = () -> {
+			identifications.incrementAndGet();
+			throw new NoInsectException("No insect identified");
+		};
+
+		assertThatThrownBy(() -> cache.getOrIdentify(image(BEE), noInsect)).isInstanceOf(NoInsectException.class);
+		assertThatThrownBy(() -> cache.getOrIdentify(image(BEE), identify("Apis mellifera")))
+				.isInstanceOf(NoInsectException.class);
+		CompletableFuture<Insect> async = cache.getOrIdentifyAsync(image(BEE),
+				() -> CompletableFuture.supplyAsync(identify("Apis mellifera")));
+		assertThatThrownBy(async::join).isInstanceOf(CompletionException.class)
+				.hasCauseInstanceOf(NoInsectException.class);
+		assertThat(identifications).hasValue(1);
+	}
+
+	@Test
+	void photosWithoutAnInsectAreAskedAgainWhenNegativeResultsAreNotCached() {
+		config.getCache().setCacheNegativeResults(false);
+		IdentificationCache cache = newCache();
+
+		assertThatThrownBy(() -> cache.getOrIdentify(image(BEE), () -> {
+			throw new NoInsectException("No insect identified");
+		})).isInstanceOf(NoInsectException.class);
+
+		assertThat(cache.getOrIdentify(image(BEE), identify("Apis mellifera")).scientificName)
+				.isEqualTo("Apis mellifera");
+		assertThat(cache.size()).isEqualTo(1);
+	}
+
+	private IdentificationCache newCache() {
+		return new IdentificationCache(config, meterRegistry);
+	}
+
+	private Supplier<Insect> identify(String scientificName) {
+		return () -> {
+			identifications.incrementAndGet();
+			Insect insect = new Insect();
+			insect.isInsect = true;
+			insect.scientificName = scientificName;
+			return insect;
+		};
+	}
+
+	private static PreparedImage image(long hash) {
+		return new PreparedImage(HashedImages.png(hash, 8), "image/png");
+	}
+
+	private double gets(String result) {
+		return meterRegistry.get("buggloo.identification.cache.gets").tag("result", result).counter().count();
+	}
+
+	private double evictions(String cause) {
+		return meterRegistry.get("buggloo.identification.cache.evictions").tag("cause", cause).counter().count();
+	}
+}
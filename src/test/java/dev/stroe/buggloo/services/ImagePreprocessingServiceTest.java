@@ -0,0 +1,119 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.ImagePreprocessingConfig;
+import dev.stroe.buggloo.exceptions.InvalidImageException;
+import dev.stroe.buggloo.models.PreparedImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImagePreprocessingServiceTest {
+
+	private ImagePreprocessingConfig config;
+	private ImagePreprocessingService service;
+
+	@BeforeEach
+	void setUp() {
+		config = new ImagePreprocessingConfig();
+		config.setMaxEdge(100);
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		service = new ImagePreprocessingService(config, new IdentificationMetrics(meterRegistry), meterRegistry);
+	}
+
+	@Test
+	void imagesOverThePixelBudgetAreRejectedFromTheirHeader() throws IOException {
+		config.setMaxPixels(20_000);
+		byte[] image = png(300, 200, 0);
+		// Only the signature and header chunk: decoding any pixel would fail
+		byte[] header = Arrays.copyOf(image, 33);
+
+		assertThatThrownBy(() -> preprocess(header, "image/png"))
+				.isInstanceOf(InvalidImageException.class)
+				.hasMessageContaining("300x200");
+	}
+
+	@Test
+	void largeImagesAreDownscaledToTheMaximumEdge() throws IOException {
+		for (int width : new int[] {150, 600}) {
+			byte[] image = png(width, width * 2 / 3, 0);
+
+			PreparedImage prepared = preprocess(image, "image/png");
+			BufferedImage decoded = decode(prepared);
+
+			assertThat(prepared.getMimeType()).isEqualTo("image/jpeg");
+			assertThat(decoded.getWidth()).as("width of %d", width).isEqualTo(100);
+			assertThat(decoded.getHeight()).as("height of %d", width).isEqualTo(67);
+			assertThat(prepared.getOriginalSize()).isEqualTo(image.length);
+		}
+	}
+
+	@Test
+	void smallImagesThatWouldGrowAreSentUnchanged() throws IOException {
+		byte[] image = png(16, 16, 0x3366CC);
+
+		PreparedImage prepared = preprocess(image, "image/png");
+
+		assertThat(prepared.getMimeType()).isEqualTo("image/png");
+		assertThat(bytes(prepared)).isEqualTo(image);
+	}
+
+	@Test
+	void imagesWithoutALocalDecoderAreSentUnchanged() throws IOException {
+		ByteArrayOutputStream webp = new ByteArrayOutputStream();
+		webp.writeBytes("RIFF".getBytes(StandardCharsets.US_ASCII));
+		webp.writeBytes(new byte[] {22, 0, 0, 0});
+		webp.writeBytes("WEBPVP8 ".getBytes(StandardCharsets.US_ASCII));
+		webp.writeBytes(new byte[] {10, 0, 0, 0, 0x30, 0x01, 0x00, (byte) 0x9D, 0x01, 0x2A, 0x40, 0x01, (byte) 0xF0, 0x00});
+		byte[] image = webp.toByteArray();
+
+		PreparedImage prepared = preprocess(image, "image/webp");
+
+		assertThat(prepared.getMimeType()).isEqualTo("image/webp");
+		assertThat(bytes(prepared)).isEqualTo(image);
+	}
+
+	private PreparedImage preprocess(byte[] image, String mimeType) {
+		return service.preprocess(new ByteArrayResource(image), image.length, mimeType);
+	}
+
+	private static byte[] bytes(PreparedImage image) throws IOException {
+		try (InputStream content = image.openStream()) {
+			return content.readAllBytes();
+		}
+	}
+
+	private static BufferedImage decode(PreparedImage image) throws IOException {
+		try (InputStream content = image.openStream()) {
+			return ImageIO.read(content);
+		}
+	}
+
+	/**
+	 * Returns a PNG of the given colour, or of random pixels if it is 0.
+	 */
+	private static byte[] png(int width, int height, int rgb) throws IOException {
+		Random random = new Random(width);
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				image.setRGB(x, y, rgb != 0 ? rgb : random.nextInt());
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,34 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.openai.models.ResponseFormatJsonSchema;
+import dev.stroe.buggloo.models.InsectProjection;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InsectResponseFormatTest {
+
+	@Test
+	void formatsAreBuiltOncePerProjection() {
+		InsectProjection projection = InsectProjection.parse("commonName,family");
+
+		assertThat(InsectResponseFormat.of(projection, false))
+				.isSameAs(InsectResponseFormat.of(InsectProjection.parse("family,commonName"), false));
+		assertThat(InsectResponseFormat.of(projection, true)).isSameAs(InsectResponseFormat.of(projection, true));
+		assertThat(InsectResponseFormat.species(true)).isSameAs(InsectResponseFormat.species(true));
+	}
+
+	@Test
+	void restrictedFormatsForTheSmallModelAlsoAskForTheConfidence() {
+		ResponseFormatJsonSchema format = InsectResponseFormat.of(InsectProjection.parse("commonName"), true);
+		ObjectNode schema = InsectResponseFormat.schemaOf(format.jsonSchema());
+
+		assertThat(schema.get("properties").fieldNames()).toIterable()
+				.containsExactlyInAnyOrder("isInsect", "commonName", "confidence");
+		assertThat(schema.get("required")).extracting(JsonNode::asText)
+				.containsExactlyInAnyOrder("isInsect", "commonName", "confidence");
+		assertThat(format.jsonSchema().strict()).hasValue(true);
+	}
+}
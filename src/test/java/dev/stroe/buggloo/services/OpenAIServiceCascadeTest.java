@@ -0,0 +1,162 @@
+package dev.stroe.buggloo.services;
+
+import com.openai.client.OpenAIClient;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.config.SpeciesKnowledgeConfig;
+import dev.stroe.buggloo.exceptions.NoInsectException;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static dev.stroe.buggloo.support.OpenAIServiceBuilder.openAIService;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class OpenAIServiceCascadeTest {
+
+	private static final String SMALL_MODEL = "\"model\":\"gpt-4.1-mini\"";
+	private static final String LARGE_MODEL = "\"model\":\"gpt-4.1\"";
+
+	private StubOpenAIServer stub;
+	private OpenAIClient client;
+	private OpenAIConfig config;
+	private SpeciesKnowledgeConfig speciesKnowledgeConfig;
+	private SimpleMeterRegistry meterRegistry;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		stub = StubOpenAIServer.start();
+		config = new OpenAIConfig();
+		config.setApiKey("test");
+		config.getCache().setEnabled(false);
+		config.getCascade().setEnabled(true);
+		config.getPricing().put("gpt-4.1", pricing(2.00, 0.50, 8.00));
+		config.getPricing().put("gpt-4.1-mini", pricing(0.40, 0.10, 1.60));
+		client = OpenAIOkHttpClient.builder()
+				.apiKey("test")
+				.baseUrl(stub.baseUrl())
+				.build();
+
+		meterRegistry = new SimpleMeterRegistry();
+		speciesKnowledgeConfig = new SpeciesKnowledgeConfig();
+		speciesKnowledgeConfig.setEnabled(false);
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		stub.close();
+	}
+
+	@Test
+	void confidentAnswersOfTheSmallModelAreAccepted() {
+		stub.setStructuredContent(honeyBee(0.93));
+
+		Insect insect = newService().identifyInsect(new PreparedImage(new byte[] {1}, "image/png"));
+
+		assertThat(insect.scientificName).isEqualTo("Apis mellifera");
+		assertThat(stub.requestCount()).isEqualTo(1);
+		assertThat(stub.lastRequestBody()).contains(SMALL_MODEL).contains("\"confidence\":{");
+		assertThat(decisions("accepted", "confident")).isEqualTo(1);
+		assertThat(meterRegistry.get("buggloo.cascade.calls").tag("tier", "small").timer().count()).isEqualTo(1);
+		// 36 uncached and 64 cached prompt tokens, 50 completion tokens
+		assertThat(cost("small")).isCloseTo((36 * 0.40 + 64 * 0.10 + 50 * 1.60) / 1e6, within(1e-12));
+	}
+
+	@Test
+	void unsureAnswersAreEscalatedToTheLargeModel() {
+		stub.setStructuredContent(honeyBee(0.4));
+
+		Insect insect = newService().identifyInsect(new PreparedImage(new byte[] {1}, "image/png"));
+
+		assertThat(insect.scientificName).isEqualTo("Apis mellifera");
+		assertThat(stub.requestCount()).isEqualTo(2);
+		assertThat(stub.lastRequestBody()).contains(LARGE_MODEL).doesNotContain("\"confidence\"");
+		assertThat(decisions("escalated", "low_confidence")).isEqualTo(1);
+		assertThat(cost("large")).isCloseTo((36 * 2.00 + 64 * 0.50 + 50 * 8.00) / 1e6, within(1e-12));
+	}
+
+	@Test
+	void noInsectAnswersNeedTheHigherThreshold() {
+		stub.setStructuredContents(List.of(
+				"{\"isInsect\":false,\"commonName\":\"House spider\",\"confidence\":0.9}",
+				honeyBee(0.9)));
+
+		Insect insect = newService().identifyInsect(new PreparedImage(new byte[] {1}, "image/png"));
+
+		assertThat(insect.isInsect).isTrue();
+		assertThat(stub.requestCount()).isEqualTo(2);
+		assertThat(decisions("escalated", "not_insect")).isEqualTo(1);
+
+		stub.setStructuredContent("{\"isInsect\":false,\"commonName\":\"House spider\",\"confidence\":0.99}");
+		assertThatThrownBy(() -> newService().identifyInsect(new PreparedImage(new byte[] {2}, "image/png")))
+				.isInstanceOf(NoInsectException.class);
+		assertThat(stub.requestCount()).isEqualTo(3);
+	}
+
+	@Test
+	void theSpeciesIsTriagedOnTheSmallModel() {
+		speciesKnowledgeConfig.setEnabled(true);
+		stub.setStructuredContent(honeyBee(0.9));
+		OpenAIService openAIService = newService();
+
+		Insect first = openAIService.identifyInsectAsync(new PreparedImage(new byte[] {1}, "image/png")).join();
+		Insect second = openAIService.identifyInsectAsync(new PreparedImage(new byte[] {2}, "image/png")).join();
+
+		assertThat(stub.requestCount()).isEqualTo(3);
+		assertThat(stub.lastRequestBody()).contains(SMALL_MODEL).contains("\"max_completion_tokens\":100");
+		assertThat(second).isSameAs(first);
+		assertThat(meterRegistry.get("buggloo.cascade.calls").tag("tier", "small").timer().count()).isEqualTo(3);
+	}
+
+	@Test
+	void unsureSpeciesGoStraightToTheLargeModel() {
+		speciesKnowledgeConfig.setEnabled(true);
+		stub.setStructuredContent(honeyBee(0.5));
+
+		newService().identifyInsectAsync(new PreparedImage(new byte[] {1}, "image/png")).join();
+
+		assertThat(stub.requestCount()).isEqualTo(2);
+		assertThat(stub.lastRequestBody()).contains(LARGE_MODEL).doesNotContain("\"max_completion_tokens\":100");
+		assertThat(meterRegistry.get("buggloo.cascade.decisions").tags("operation", "species", "outcome", "escalated")
+				.counter().count()).isEqualTo(1);
+	}
+
+	private OpenAIService newService() {
+		return openAIService(config, client)
+				.meterRegistry(meterRegistry)
+				.speciesKnowledgeConfig(speciesKnowledgeConfig)
+				.build();
+	}
+
+	private double decisions(String outcome, String reason) {
+		return meterRegistry.get("buggloo.cascade.decisions").tags("operation", "identification",
+				"outcome", outcome, "reason", reason).counter().count();
+	}
+
+	private double cost(String tier) {
+		return meterRegistry.get("buggloo.cascade.cost").tag("tier", tier).counter().count();
+	}
+
+	private static String honeyBee(double confidence) {
+		return "{\"isInsect\":true,\"commonName\":\"Western honey bee\",\"scientificName\":\"Apis mellifera\","
+				+ "\"order\":\"Hymenoptera\",\"family\":\"Apidae\",\"confidence\":" + confidence + "}";
+	}
+
+	private static OpenAIConfig.Pricing pricing(double input, double cachedInput, double output) {
+		OpenAIConfig.Pricing pricing = new OpenAIConfig.Pricing();
+		pricing.setInput(input);
+		pricing.setCachedInput(cachedInput);
+		pricing.setOutput(output);
+		return pricing;
+	}
+}
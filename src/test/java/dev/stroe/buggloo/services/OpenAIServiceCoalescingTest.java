@@ -0,0 +1,138 @@
+package dev.stroe.buggloo.services;
+
+import com.openai.client.OpenAIClient;
+import com.openai.core.RequestOptions;
+import com.openai.models.chat.completions.ChatCompletion;
+import com.openai.models.chat.completions.ChatCompletionCreateParams;
+import com.openai.models.chat.completions.ChatCompletionMessage;
+import com.openai.services.blocking.ChatService;
+import com.openai.services.blocking.chat.ChatCompletionService;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.config.SpeciesKnowledgeConfig;
+import dev.stroe.buggloo.exceptions.NoInsectException;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.PreparedImage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.stroe.buggloo.support.OpenAIServiceBuilder.openAIService;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+class OpenAIServiceCoalescingTest {
+
+	private static final int PARALLEL_REQUESTS = 32;
+
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+	private final CountDownLatch allSubmitted = new CountDownLatch(PARALLEL_REQUESTS);
+
+	private SimpleMeterRegistry meterRegistry;
+	private ChatCompletionService completions;
+	private OpenAIService openAIService;
+
+	@BeforeEach
+	void setUp() {
+		OpenAIConfig config = new OpenAIConfig();
+		config.setApiKey("test");
+		SpeciesKnowledgeConfig speciesKnowledgeConfig = new SpeciesKnowledgeConfig();
+		speciesKnowledgeConfig.setEnabled(false);
+		config.getCache().setEnabled(false);
+
+		completions = mock(ChatCompletionService.class, withSettings().defaultAnswer(invocation -> invocation.callRealMethod()));
+		ChatService chat = mock(ChatService.class);
+		OpenAIClient client = mock(OpenAIClient.class);
+		when(client.chat()).thenReturn(chat);
+		when(chat.completions()).thenReturn(completions);
+
+		meterRegistry = new SimpleMeterRegistry();
+		openAIService = openAIService(config, client)
+				.meterRegistry(meterRegistry)
+				.speciesKnowledgeConfig(speciesKnowledgeConfig)
+				.build();
+	}
+
+	@Test
+	void parallelIdenticalUploadsShareOneUpstreamCall() throws Exception {
+		stubUpstream("{\"isInsect\":true,\"commonName\":\"Western honey bee\",\"scientificName\":\"Apis mellifera\"}");
+
+		List<Insect> results = identifyInParallel(new byte[] {1, 2, 3, 4});
+
+		assertThat(upstreamCalls).hasValue(1);
+		assertThat(results).hasSize(PARALLEL_REQUESTS)
+				.allSatisfy(insect -> assertThat(insect).isSameAs(results.get(0)));
+		assertThat(results.get(0).scientificName).isEqualTo("Apis mellifera");
+		assertThat(meterRegistry.counter("buggloo.coalescer.requests", "outcome", "coalesced").count())
+				.isEqualTo(PARALLEL_REQUESTS - 1);
+	}
+
+	@Test
+	void parallelIdenticalUploadsShareTheSameFailure() {
+		stubUpstream("{\"isInsect\":false,\"commonName\":\"House spider\"}");
+
+		assertThatThrownBy(() -> identifyInParallel(new byte[] {5, 6, 7, 8}))
+				.hasRootCauseInstanceOf(NoInsectException.class);
+		assertThat(upstreamCalls).hasValue(1);
+	}
+
+	private void stubUpstream(String content) {
+		doAnswer(invocation -> {
+			upstreamCalls.incrementAndGet();
+			// Hold the upstream call open until every request has been submitted
+			allSubmitted.await();
+			Thread.sleep(100);
+			return completion(content);
+		}).when(completions).create(any(ChatCompletionCreateParams.class), any(RequestOptions.class));
+	}
+
+	private List<Insect> identifyInParallel(byte[] image) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_REQUESTS);
+		try {
+			List<Future<Insect>> futures = new ArrayList<>();
+			for (int i = 0; i < PARALLEL_REQUESTS; i++) {
+				futures.add(executor.submit(() -> {
+					allSubmitted.countDown();
+					return openAIService.identifyInsect(new PreparedImage(image.clone(), "image/jpeg"));
+				}));
+			}
+			List<Insect> results = new ArrayList<>();
+			for (Future<Insect> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static ChatCompletion completion(String content) {
+		return ChatCompletion.builder()
+				.id("chatcmpl-test")
+				.created(0)
+				.model("gpt-4.1")
+				.addChoice(ChatCompletion.Choice.builder()
+						.index(0)
+						.finishReason(ChatCompletion.Choice.FinishReason.STOP)
+						.logprobs(Optional.empty())
+						.message(ChatCompletionMessage.builder()
+								.content(content)
+								.refusal(Optional.empty())
+								.build())
+						.build())
+				.build();
+	}
+}
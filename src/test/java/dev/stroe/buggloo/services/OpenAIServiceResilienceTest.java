@@ -0,0 +1,174 @@
+package dev.stroe.buggloo.services;
+
+import com.openai.client.OpenAIClient;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+import dev.stroe.buggloo.config.AdmissionConfig;
+import dev.stroe.buggloo.config.ChatCacheConfig;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.config.SpeciesKnowledgeConfig;
+import dev.stroe.buggloo.exceptions.ServiceException;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static dev.stroe.buggloo.support.OpenAIServiceBuilder.openAIService;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OpenAIServiceResilienceTest {
+
+	private static final String ANSWER = "Honey bees can sting, but only when they feel threatened.";
+
+	private StubOpenAIServer stub;
+	private OpenAIClient client;
+	private OpenAIConfig config;
+	private SimpleMeterRegistry meterRegistry;
+	private OpenAIService openAIService;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		stub = StubOpenAIServer.start();
+		config = new OpenAIConfig();
+		config.setApiKey("test");
+		config.getConcurrency().setMaxConcurrentRequests(16);
+		OpenAIConfig.Resilience resilience = config.getResilience();
+		resilience.setDeadline(Duration.ofSeconds(5));
+		resilience.getHedge().setMinSamples(5);
+		resilience.getHedge().setMinDelay(Duration.ofMillis(200));
+		resilience.getCircuitBreaker().setWindowSize(4);
+		resilience.getCircuitBreaker().setMinimumCalls(4);
+		resilience.getCircuitBreaker().setOpenDuration(Duration.ofMillis(300));
+		resilience.getCircuitBreaker().setHalfOpenCalls(1);
+
+		client = OpenAIOkHttpClient.builder()
+				.apiKey("test")
+				.baseUrl(stub.baseUrl())
+				.maxRetries(0)
+				.build();
+		meterRegistry = new SimpleMeterRegistry();
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		stub.close();
+	}
+
+	@Test
+	void slowResponseIsHedgedAfterTheUsualLatency() throws Exception {
+		createService();
+		// Enough calls that the slow first one, which opens the connection, is not the p95
+		for (int i = 0; i < 20; i++) {
+			chat();
+		}
+
+		stub.delayNextRequest(Duration.ofSeconds(3));
+		long started = System.nanoTime();
+		String response = openAIService.generateChatResponseAsync(List.of(), "Does it sting?", "Honey bee")
+				.get(10, TimeUnit.SECONDS);
+
+		assertThat(response).isEqualTo(ANSWER);
+		assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(2));
+		assertThat(stub.requestCount()).isEqualTo(22);
+		assertThat(meterRegistry.counter("buggloo.openai.hedges", "outcome", "won").count()).isEqualTo(1);
+	}
+
+	@Test
+	void callFailsOnceTheDeadlinePasses() {
+		config.getResilience().setDeadline(Duration.ofMillis(300));
+		config.getResilience().getHedge().setEnabled(false);
+		createService();
+		stub.setLatency(Duration.ofSeconds(3));
+
+		long started = System.nanoTime();
+		assertThatThrownBy(this::chat)
+				.isInstanceOf(ServiceException.class)
+				.hasMessageContaining("did not respond");
+		assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(2));
+		assertThat(meterRegistry.counter("buggloo.openai.deadline.exceeded").count()).isEqualTo(1);
+	}
+
+	@Test
+	void circuitOpensOnServerErrorsAndClosesOnceOpenAIRecovers() throws Exception {
+		createService();
+		stub.setFailureStatus(500);
+		for (int i = 0; i < 4; i++) {
+			assertThatThrownBy(this::chat).isInstanceOf(ServiceException.class);
+		}
+
+		assertThatThrownBy(this::chat)
+				.isInstanceOf(ServiceException.class)
+				.hasMessageContaining("temporarily unavailable");
+		assertThat(stub.requestCount()).isEqualTo(4);
+		assertThat(meterRegistry.counter("buggloo.openai.circuit.rejected").count()).isEqualTo(1);
+
+		stub.setFailureStatus(0);
+		Thread.sleep(400);
+		assertThat(chat()).isEqualTo(ANSWER);
+		assertThat(meterRegistry.get("buggloo.openai.circuit.state").gauge().value())
+				.isEqualTo(UpstreamCircuitBreaker.State.CLOSED.ordinal());
+	}
+
+	@Test
+	void rateLimitedCallsLowerTheConcurrencyLimit() {
+		createService();
+		stub.setFailureStatus(429);
+
+		assertThatThrownBy(this::chat).isInstanceOf(ServiceException.class);
+
+		assertThat(concurrencyGauge("limit")).isEqualTo(14);
+		assertThat(concurrencyGauge("in.use")).isZero();
+		// Rate limiting says nothing about upstream health, so the circuit stays closed
+		for (int i = 0; i < 4; i++) {
+			assertThatThrownBy(this::chat).isInstanceOf(ServiceException.class);
+		}
+		assertThat(stub.requestCount()).isEqualTo(5);
+	}
+
+	@Test
+	void tokensUsedByChatCallsAreChargedToTheChatLane() throws Exception {
+		AdmissionConfig admissionConfig = new AdmissionConfig();
+		admissionConfig.getChat().setTokensPerMinute(300);
+		admissionConfig.getChat().setEstimatedTokens(150);
+		admissionConfig.getChat().setQueueTimeout(Duration.ofMillis(100));
+		AdmissionService admissionService = new AdmissionService(admissionConfig, meterRegistry);
+		openAIService = openAIService(config, client)
+				.meterRegistry(meterRegistry)
+				.admissionService(admissionService)
+				.build();
+
+		chat();
+
+		// The stub reports 150 tokens, leaving the budget for one more request
+		admissionService.admit(AdmissionService.Lane.CHAT).get(1, TimeUnit.SECONDS);
+		assertThat(admissionService.admit(AdmissionService.Lane.CHAT)).isCompletedExceptionally();
+	}
+
+	private void createService() {
+		SpeciesKnowledgeConfig speciesKnowledgeConfig = new SpeciesKnowledgeConfig();
+		speciesKnowledgeConfig.setEnabled(false);
+		// Every chat call below has to reach the stub
+		ChatCacheConfig chatCacheConfig = new ChatCacheConfig();
+		chatCacheConfig.setEnabled(false);
+		openAIService = openAIService(config, client)
+				.meterRegistry(meterRegistry)
+				.speciesKnowledgeConfig(speciesKnowledgeConfig)
+				.chatCacheConfig(chatCacheConfig)
+				.build();
+	}
+
+	private String chat() {
+		return openAIService.generateChatResponse(List.of(), "Does it sting?", "Honey bee");
+	}
+
+	private double concurrencyGauge(String name) {
+		return meterRegistry.get("buggloo.openai.concurrency." + name).gauge().value();
+	}
+}
@@ -0,0 +1,107 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.client.OpenAIClient;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.config.SpeciesKnowledgeConfig;
+import dev.stroe.buggloo.exceptions.NoInsectException;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static dev.stroe.buggloo.support.OpenAIServiceBuilder.openAIService;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OpenAIServiceSpeciesKnowledgeTest {
+
+	private StubOpenAIServer stub;
+	private OpenAIClient client;
+	private SpeciesKnowledgeStore speciesKnowledge;
+	private SimpleMeterRegistry meterRegistry;
+	private OpenAIService openAIService;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		stub = StubOpenAIServer.start();
+		OpenAIConfig config = new OpenAIConfig();
+		config.setApiKey("test");
+		config.getCache().setEnabled(false);
+		client = OpenAIOkHttpClient.builder()
+				.apiKey("test")
+				.baseUrl(stub.baseUrl())
+				.build();
+
+		meterRegistry = new SimpleMeterRegistry();
+		speciesKnowledge = new SpeciesKnowledgeStore(new SpeciesKnowledgeConfig(), new ObjectMapper(), meterRegistry);
+		openAIService = openAIService(config, client)
+				.meterRegistry(meterRegistry)
+				.speciesKnowledge(speciesKnowledge)
+				.build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		stub.close();
+	}
+
+	@Test
+	void knownSpeciesAreIdentifiedWithTheSpeciesOnlyCall() {
+		Insect first = openAIService.identifyInsect(new PreparedImage(new byte[] {1}, "image/png"));
+		assertThat(stub.requestCount()).isEqualTo(2);
+		assertThat(speciesKnowledge.size()).isEqualTo(1);
+
+		Insect second = openAIService.identifyInsect(new PreparedImage(new byte[] {2}, "image/png"));
+
+		assertThat(stub.requestCount()).isEqualTo(3);
+		assertThat(stub.lastRequestBody()).contains("\"max_completion_tokens\":100");
+		assertThat(second).isSameAs(first);
+	}
+
+	@Test
+	void asyncIdentificationReusesKnownSpeciesToo() {
+		Insect first = openAIService.identifyInsectAsync(new PreparedImage(new byte[] {1}, "image/png")).join();
+		Insect second = openAIService.identifyInsectAsync(new PreparedImage(new byte[] {2}, "image/png")).join();
+
+		assertThat(stub.requestCount()).isEqualTo(3);
+		assertThat(second).isSameAs(first);
+	}
+
+	@Test
+	void eachStageAndTheTokenUsageAreRecorded() {
+		openAIService.identifyInsect(new PreparedImage(new byte[] {1}, "image/png"));
+
+		assertThat(stageCount("encoding")).isEqualTo(1);
+		assertThat(stageCount("upstream")).isEqualTo(2);
+		assertThat(stageCount("parsing")).isEqualTo(2);
+		assertThat(meterRegistry.get("buggloo.identify.stage.active").tag("stage", "upstream").longTaskTimer().activeTasks())
+				.isZero();
+		assertThat(meterRegistry.get("buggloo.openai.tokens").tags("operation", "species", "type", "prompt").summary().totalAmount())
+				.isEqualTo(100);
+		assertThat(meterRegistry.get("buggloo.openai.tokens").tags("operation", "identification", "type", "completion").summary().totalAmount())
+				.isEqualTo(50);
+		assertThat(meterRegistry.get("buggloo.openai.tokens").tags("operation", "identification", "type", "cached").summary().totalAmount())
+				.isEqualTo(64);
+	}
+
+	@Test
+	void nonInsectsAreRejectedWithoutTheFullCall() {
+		stub.setStructuredContent("{\"isInsect\":false,\"commonName\":\"House spider\",\"scientificName\":\"Tegenaria domestica\"}");
+
+		assertThatThrownBy(() -> openAIService.identifyInsect(new PreparedImage(new byte[] {1}, "image/png")))
+				.isInstanceOf(NoInsectException.class);
+		assertThat(stub.requestCount()).isEqualTo(1);
+	}
+
+	private long stageCount(String stage) {
+		return meterRegistry.get("buggloo.identify.stage").tag("stage", stage).timer().count();
+	}
+}
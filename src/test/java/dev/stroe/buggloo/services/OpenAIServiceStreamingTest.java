@@ -0,0 +1,141 @@
+package dev.stroe.buggloo.services;
+
+import com.openai.client.OpenAIClient;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+import dev.stroe.buggloo.config.ChatCacheConfig;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.config.SpeciesKnowledgeConfig;
+import dev.stroe.buggloo.exceptions.NoInsectException;
+import dev.stroe.buggloo.models.ChatMessage;
+import dev.stroe.buggloo.models.InsectField;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+
+import static dev.stroe.buggloo.support.OpenAIServiceBuilder.openAIService;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OpenAIServiceStreamingTest {
+
+	private StubOpenAIServer stub;
+	private OpenAIClient client;
+	private SimpleMeterRegistry meterRegistry;
+	private OpenAIService openAIService;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		stub = StubOpenAIServer.start();
+		OpenAIConfig config = new OpenAIConfig();
+		config.setApiKey("test");
+		SpeciesKnowledgeConfig speciesKnowledgeConfig = new SpeciesKnowledgeConfig();
+		speciesKnowledgeConfig.setEnabled(false);
+		ChatCacheConfig chatCacheConfig = new ChatCacheConfig();
+		chatCacheConfig.setEnabled(true);
+		client = OpenAIOkHttpClient.builder()
+				.apiKey("test")
+				.baseUrl(stub.baseUrl())
+				.build();
+
+		meterRegistry = new SimpleMeterRegistry();
+		openAIService = openAIService(config, client)
+				.meterRegistry(meterRegistry)
+				.speciesKnowledgeConfig(speciesKnowledgeConfig)
+				.chatCacheConfig(chatCacheConfig)
+				.build();
+	}
+
+	@AfterEach
+	void tearDown() {
+		client.close();
+		stub.close();
+	}
+
+	@Test
+	void deltasArriveInOrder() {
+		List<String> deltas = openAIService.streamChatResponse(List.of(), "Does it sting?", "Honey bee")
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+		assertThat(deltas).hasSizeGreaterThan(1);
+		assertThat(String.join("", deltas)).isEqualTo("Honey bees can sting, but only when they feel threatened.");
+		assertThat(permitsInUse()).isZero();
+	}
+
+	@Test
+	void firstTurnAnswersAreCachedForRephrasedQuestions() {
+		openAIService.streamChatResponse(List.of(), "Does it sting?", "Honey bee")
+				.blockLast(Duration.ofSeconds(10));
+
+		List<String> deltas = openAIService.streamChatResponse(List.of(), "Can they sting?", "Honey bee")
+				.collectList()
+				.block(Duration.ofSeconds(10));
+		String answer = openAIService.generateChatResponse(List.of(), "can it sting", "Honey bee");
+
+		assertThat(deltas).containsExactly("Honey bees can sting, but only when they feel threatened.");
+		assertThat(answer).isEqualTo("Honey bees can sting, but only when they feel threatened.");
+		assertThat(stub.requestCount()).isEqualTo(1);
+
+		openAIService.generateChatResponse(List.of(new ChatMessage(ChatMessage.Role.USER, "Hi")), "Does it sting?", "Honey bee");
+		assertThat(stub.requestCount()).isEqualTo(2);
+	}
+
+	@Test
+	void cancellingTheSubscriptionAbortsTheUpstreamStream() throws InterruptedException {
+		stub.setChatContent("word ".repeat(200));
+		stub.setChunkInterval(Duration.ofMillis(20));
+
+		List<String> deltas = openAIService.streamChatResponse(List.of(), "Tell me everything", "Honey bee")
+				.take(3)
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+		assertThat(deltas).hasSize(3);
+		awaitAbortedStream();
+		assertThat(permitsInUse()).isZero();
+	}
+
+	@Test
+	void identificationFieldsArriveInSchemaOrder() {
+		List<InsectField> fields = openAIService.streamInsectIdentification(new PreparedImage(new byte[] {1, 2, 3}, "image/png"))
+				.collectList()
+				.block(Duration.ofSeconds(10));
+
+		assertThat(fields).extracting(InsectField::getName)
+				.containsExactly("isInsect", "commonName", "scientificName", "order", "family", "genus", "species");
+		assertThat(fields.get(2).getValue().asText()).isEqualTo("Apis mellifera");
+	}
+
+	@Test
+	void identificationStopsAsSoonAsTheOrganismIsNotAnInsect() throws InterruptedException {
+		stub.setStructuredContent("{\"isInsect\":false,\"commonName\":\"House spider\",\"interestingFacts\":[\""
+				+ "Spiders are arachnids. ".repeat(100) + "\"]}");
+		stub.setChunkInterval(Duration.ofMillis(20));
+
+		assertThatThrownBy(() -> openAIService.streamInsectIdentification(new PreparedImage(new byte[] {1, 2, 3}, "image/png"))
+				.blockLast(Duration.ofSeconds(10)))
+				.isInstanceOf(NoInsectException.class);
+
+		awaitAbortedStream();
+		assertThat(permitsInUse()).isZero();
+	}
+
+	private void awaitAbortedStream() throws InterruptedException {
+		long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (stub.abortedStreams() == 0 && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		assertThat(stub.abortedStreams()).isEqualTo(1);
+	}
+
+	private double permitsInUse() {
+		return meterRegistry.get("buggloo.openai.concurrency.in.use").gauge().value();
+	}
+}
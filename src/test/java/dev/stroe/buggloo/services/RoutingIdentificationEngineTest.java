@@ -0,0 +1,138 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.client.OpenAIClient;
+import com.openai.client.okhttp.OpenAIOkHttpClient;
+import dev.stroe.buggloo.config.LocalClassifierConfig;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.config.SpeciesKnowledgeConfig;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.PreparedImage;
+import dev.stroe.buggloo.support.StubOpenAIServer;
+import dev.stroe.buggloo.support.TinyOnnxModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+
+import static dev.stroe.buggloo.support.OpenAIServiceBuilder.openAIService;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoutingIdentificationEngineTest {
+
+	@TempDir
+	Path directory;
+
+	private StubOpenAIServer stub;
+	private OpenAIClient client;
+	private SpeciesKnowledgeStore speciesKnowledge;
+	private LocalInsectClassifier localClassifier;
+	private SimpleMeterRegistry meterRegistry;
+	private RoutingIdentificationEngine engine;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		stub = StubOpenAIServer.start();
+		OpenAIConfig openAIConfig = new OpenAIConfig();
+		openAIConfig.setApiKey("test");
+		openAIConfig.getCache().setEnabled(false);
+		client = OpenAIOkHttpClient.builder()
+				.apiKey("test")
+				.baseUrl(stub.baseUrl())
+				.build();
+
+		meterRegistry = new SimpleMeterRegistry();
+		SpeciesKnowledgeConfig speciesConfig = new SpeciesKnowledgeConfig();
+		speciesConfig.setEnabled(false);
+		speciesKnowledge = new SpeciesKnowledgeStore(speciesConfig, new ObjectMapper(), meterRegistry);
+		OpenAIService openAIService = openAIService(openAIConfig, client)
+				.meterRegistry(meterRegistry)
+				.speciesKnowledge(speciesKnowledge)
+				.build();
+
+		Path model = directory.resolve("model.onnx");
+		Path labels = directory.resolve("labels.txt");
+		TinyOnnxModel.write(model, labels, 32, "Apis mellifera", "Coccinella septempunctata", "Bombus terrestris");
+		LocalClassifierConfig config = new LocalClassifierConfig();
+		config.setEnabled(true);
+		config.setModelPath(model.toString());
+		config.setLabelsPath(labels.toString());
+		config.setInputSize(32);
+		config.setThreads(1);
+		localClassifier = new LocalInsectClassifier(config, meterRegistry);
+		localClassifier.load();
+
+		engine = new RoutingIdentificationEngine(config, localClassifier, speciesKnowledge, openAIService, meterRegistry);
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		localClassifier.close();
+		client.close();
+		stub.close();
+	}
+
+	@Test
+	void confidentClassificationsOfKnownSpeciesAreAnsweredLocally() throws Exception {
+		Insect known = insect("Apis mellifera");
+		speciesKnowledge.remember(known);
+
+		assertThat(engine.identifyInsect(image(Color.RED))).isSameAs(known);
+		assertThat(engine.identifyInsectAsync(image(Color.RED)).join()).isSameAs(known);
+
+		assertThat(stub.requestCount()).isZero();
+		assertThat(outcomes("answered")).isEqualTo(2);
+	}
+
+	@Test
+	void speciesWithoutAStoredRecordAreEscalated() throws Exception {
+		speciesKnowledge.remember(insect("Coccinella septempunctata"));
+
+		Insect result = engine.identifyInsect(image(Color.RED));
+
+		assertThat(result.scientificName).isEqualTo("Apis mellifera");
+		assertThat(stub.requestCount()).isEqualTo(1);
+		assertThat(outcomes("unknown_species")).isEqualTo(1);
+	}
+
+	@Test
+	void uncertainClassificationsAreEscalated() throws Exception {
+		speciesKnowledge.remember(insect("Bombus terrestris"));
+
+		Insect result = engine.identifyInsectAsync(image(Color.GRAY)).join();
+
+		assertThat(result.scientificName).isEqualTo("Apis mellifera");
+		assertThat(stub.requestCount()).isEqualTo(1);
+		assertThat(outcomes("uncertain")).isEqualTo(1);
+	}
+
+	private double outcomes(String outcome) {
+		return meterRegistry.counter("buggloo.identification.local.outcomes", "outcome", outcome).count();
+	}
+
+	private static Insect insect(String scientificName) {
+		Insect insect = new Insect();
+		insect.isInsect = true;
+		insect.scientificName = scientificName;
+		return insect;
+	}
+
+	private static PreparedImage image(Color color) throws Exception {
+		BufferedImage image = new BufferedImage(48, 40, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = image.createGraphics();
+		graphics.setColor(color);
+		graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+		graphics.dispose();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return new PreparedImage(out.toByteArray(), "image/png");
+	}
+}
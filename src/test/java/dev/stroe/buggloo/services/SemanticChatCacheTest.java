@@ -0,0 +1,105 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.ChatCacheConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SemanticChatCacheTest {
+
+	private static final String ANSWER = "Honey bees can sting, but only when they feel threatened.";
+
+	private final ChatCacheConfig config = new ChatCacheConfig();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@BeforeEach
+	void setUp() {
+		config.setEnabled(true);
+	}
+
+	@Test
+	void rephrasedQuestionsAreAnsweredFromTheCache() {
+		SemanticChatCache cache = newCache();
+		cache.store("Honey bee", "Does it sting?", ANSWER);
+
+		assertThat(cache.lookup("  honey BEE ", "Can they sting me??")).hasValue(ANSWER);
+		assertThat(cache.lookup("Honey bee", "Do bees sting?")).isEmpty();
+		assertThat(cache.lookup("Honey bee", "Does it bite?")).isEmpty();
+		assertThat(cache.lookup("Honey bee", "Does it not sting?")).isEmpty();
+		assertThat(cache.lookup("Wasp", "Does it sting?")).isEmpty();
+		assertThat(meterRegistry.get("buggloo.chat.cache.gets").tag("result", "hit").counter().count()).isEqualTo(1);
+		assertThat(meterRegistry.get("buggloo.chat.cache.gets").tag("result", "miss").counter().count()).isEqualTo(4);
+	}
+
+	@Test
+	void questionsWithTheInsectAsSubjectAndAsObjectAreKeptApart() {
+		SemanticChatCache cache = newCache();
+		cache.store("Honey bee", "Does it eat ants?", "No, it feeds on nectar and pollen.");
+		cache.store("Honey bee", "Does it kill bees?", "Only intruders from other colonies.");
+		cache.store("Honey bee", "Is it dangerous to dogs?", "A sting can hurt a dog but is rarely dangerous.");
+
+		assertThat(cache.lookup("Honey bee", "Do ants eat it?")).isEmpty();
+		assertThat(cache.lookup("Honey bee", "Do bees kill it?")).isEmpty();
+		assertThat(cache.lookup("Honey bee", "Are dogs dangerous to it?")).isEmpty();
+		assertThat(cache.lookup("Honey bee", "Do they eat ants?")).hasValue("No, it feeds on nectar and pollen.");
+	}
+
+	@Test
+	void answersToRephrasingsReplaceEachOther() {
+		SemanticChatCache cache = newCache();
+		cache.store("Honey bee", "Does it sting?", "Yes.");
+		cache.store("Honey bee", "Can they sting?", ANSWER);
+
+		assertThat(cache.size()).isEqualTo(1);
+		assertThat(cache.lookup("Honey bee", "Does it sting?")).hasValue(ANSWER);
+	}
+
+	@Test
+	void leastRecentlyUsedQuestionsOfAnInsectAreEvictedFirst() {
+		config.setMaxEntriesPerInsect(2);
+		SemanticChatCache cache = newCache();
+		cache.store("Honey bee", "Does it sting?", ANSWER);
+		cache.store("Honey bee", "What does it eat?", "Nectar and pollen.");
+		cache.lookup("Honey bee", "Does it sting?");
+		cache.store("Honey bee", "How long does it live?", "A few weeks in summer.");
+		cache.store("Wasp", "Does it sting?", "Yes, repeatedly.");
+
+		assertThat(cache.lookup("Honey bee", "What does it eat?")).isEmpty();
+		assertThat(cache.lookup("Honey bee", "Does it sting?")).hasValue(ANSWER);
+		assertThat(cache.lookup("Wasp", "Does it sting?")).hasValue("Yes, repeatedly.");
+		assertThat(cache.size()).isEqualTo(3);
+	}
+
+	@Test
+	void slotsAreReusedOnceTheCacheIsFull() {
+		config.setMaxEntries(2);
+		SemanticChatCache cache = newCache();
+		cache.store("Honey bee", "Does it sting?", ANSWER);
+		cache.store("Wasp", "Does it sting?", "Yes, repeatedly.");
+		cache.store("Hornet", "Does it sting?", "Yes, painfully.");
+
+		assertThat(cache.size()).isEqualTo(2);
+		assertThat(cache.lookup("Honey bee", "Does it sting?")).isEmpty();
+		assertThat(cache.lookup("Wasp", "Does it sting?")).hasValue("Yes, repeatedly.");
+		assertThat(cache.lookup("Hornet", "Does it sting?")).hasValue("Yes, painfully.");
+		assertThat(meterRegistry.get("buggloo.chat.cache.evictions").tag("cause", "size").counter().count()).isEqualTo(1);
+	}
+
+	@Test
+	void expiredAnswersAreNotReused() {
+		config.setTtl(Duration.ZERO.minusMillis(1));
+		SemanticChatCache cache = newCache();
+		cache.store("Honey bee", "Does it sting?", ANSWER);
+
+		assertThat(cache.lookup("Honey bee", "Does it sting?")).isEmpty();
+		assertThat(cache.size()).isZero();
+	}
+
+	private SemanticChatCache newCache() {
+		return new SemanticChatCache(config, meterRegistry);
+	}
+}
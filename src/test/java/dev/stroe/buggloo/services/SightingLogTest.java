@@ -0,0 +1,206 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.SightingConfig;
+import dev.stroe.buggloo.models.Coordinates;
+import dev.stroe.buggloo.models.Insect;
+import dev.stroe.buggloo.models.SpeciesCount;
+import dev.stroe.buggloo.models.TaxonRank;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class SightingLogTest {
+
+	private static final Instant START = Instant.parse("2025-06-01T00:00:00Z");
+
+	private SightingConfig config;
+	private SightingLog log;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		config = new SightingConfig();
+		config.setSegmentRecords(1024);
+		config.setCompactionInterval(Duration.ZERO);
+		log = newLog();
+	}
+
+	@AfterEach
+	void tearDown() {
+		log.close();
+	}
+
+	@Test
+	void countsMatchAScanOfTheWindowAtAnyBoundary() {
+		// One sighting every 7 minutes for two days, alternating bees and ladybirds
+		for (int i = 0; i < 2 * 24 * 60 / 7; i++) {
+			log.record(i % 2 == 0 ? honeyBee() : ladybird(), null, millisAt(i * 7L));
+		}
+
+		for (long[] window : new long[][] {{0, 2880}, {13, 61}, {59, 61}, {30, 1500}, {60, 120}, {2000, 5000}}) {
+			Instant from = at(window[0]);
+			Instant to = at(window[1]);
+			long expected = Stream.iterate(0L, i -> i + 7).limit(2 * 24 * 60 / 7)
+					.filter(minute -> minute >= window[0] && minute < window[1])
+					.count();
+			long bees = Stream.iterate(0L, i -> i + 7).limit(2 * 24 * 60 / 7)
+					.filter(minute -> minute >= window[0] && minute < window[1] && (minute / 7) % 2 == 0)
+					.count();
+
+			assertThat(log.count(from, to, null, null)).as("window %s-%s", window[0], window[1]).isEqualTo(expected);
+			assertThat(log.count(from, to, TaxonRank.FAMILY, "apidae")).isEqualTo(bees);
+			assertThat(log.count(from, to, TaxonRank.ORDER, "Coleoptera")).isEqualTo(expected - bees);
+		}
+		assertThat(log.count(START, START.plus(Duration.ofDays(2)), TaxonRank.GENUS, "Vespa")).isZero();
+	}
+
+	@Test
+	void topSpeciesAreRankedByCountAndFilteredByTaxon() {
+		for (int i = 0; i < 5; i++) {
+			log.record(honeyBee(), null, millisAt(i));
+		}
+		for (int i = 0; i < 3; i++) {
+			log.record(ladybird(), new Coordinates(45.0, 25.0), millisAt(10 + i));
+		}
+		log.record(insect("Hymenoptera", "Apidae", "Bombus", "Bombus terrestris"), null, millisAt(20));
+
+		assertThat(log.topSpecies(START, at(60), null, null, 10)).extracting(SpeciesCount::getSpecies, SpeciesCount::getCount)
+				.containsExactly(
+						tuple("Apis mellifera", 5L),
+						tuple("Coccinella septempunctata", 3L),
+						tuple("Bombus terrestris", 1L));
+		assertThat(log.topSpecies(START, at(60), TaxonRank.FAMILY, "Apidae", 1)).singleElement()
+				.satisfies(top -> {
+					assertThat(top.getSpecies()).isEqualTo("Apis mellifera");
+					assertThat(top.getOrder()).isEqualTo("Hymenoptera");
+				});
+	}
+
+	@Test
+	void sightingsSurviveARestart(@TempDir Path directory) throws IOException {
+		log.close();
+		config.setDirectory(directory.toString());
+		log = newLog();
+		for (int i = 0; i < 2500; i++) {
+			log.record(i % 5 == 0 ? ladybird() : honeyBee(), null, millisAt(i));
+		}
+		log.close();
+
+		log = newLog();
+
+		assertThat(log.size()).isEqualTo(2500);
+		assertThat(log.count(START, at(2500), TaxonRank.SPECIES, "Coccinella septempunctata")).isEqualTo(500);
+		log.record(honeyBee(), null, millisAt(2500));
+		assertThat(log.count(START, at(2501), TaxonRank.GENUS, "apis")).isEqualTo(2001);
+	}
+
+	@Test
+	void compactionDropsExpiredSightings(@TempDir Path directory) throws IOException {
+		log.close();
+		config.setDirectory(directory.toString());
+		config.setRetention(Duration.ofDays(1));
+		log = newLog();
+		for (int i = 0; i < 3000; i++) {
+			log.record(honeyBee(), null, millisAt(i));
+		}
+
+		log.compact(at(1500).plus(Duration.ofDays(1)).toEpochMilli());
+
+		assertThat(log.size()).isEqualTo(1500);
+		assertThat(log.count(START, at(3000), null, null)).isEqualTo(1500);
+		assertThat(log.count(at(1400), at(1600), null, null)).isEqualTo(100);
+		log.close();
+
+		// The first segment expired entirely and the second was cut down
+		log = newLog();
+		assertThat(log.size()).isEqualTo(1500);
+		assertThat(segmentFiles(directory)).isEqualTo(2);
+	}
+
+	@Test
+	void compactionMergesSegmentsThatFitInOne(@TempDir Path directory) throws IOException {
+		log.close();
+		config.setDirectory(directory.toString());
+		log = newLog();
+		for (int i = 0; i < 2500; i++) {
+			log.record(honeyBee(), null, millisAt(i));
+		}
+		log.close();
+		config.setSegmentRecords(4096);
+		log = newLog();
+
+		log.compact(millisAt(2500));
+
+		assertThat(segmentFiles(directory)).isEqualTo(2);
+		assertThat(log.count(START, at(2500), TaxonRank.SPECIES, "Apis mellifera")).isEqualTo(2500);
+		assertThat(log.count(at(1000), at(1100), null, null)).isEqualTo(100);
+	}
+
+	@Test
+	void inMemoryLogsKeepOnlyTheNewestSegments() {
+		config.setMaxMemorySegments(3);
+		for (int i = 0; i < 5000; i++) {
+			log.record(honeyBee(), null, millisAt(i));
+		}
+
+		// Five segments were started, so the two oldest were dropped to make room
+		assertThat(log.size()).isEqualTo(5000 - 2 * 1024);
+		assertThat(log.count(START, at(2048), null, null)).isZero();
+
+		config.setMaxMemorySegments(1);
+		log.compact(millisAt(5000));
+
+		assertThat(log.size()).isEqualTo(5000 - 4 * 1024);
+		assertThat(log.count(START, at(5000), TaxonRank.SPECIES, "Apis mellifera")).isEqualTo(5000 - 4 * 1024);
+		assertThat(log.count(at(4000), at(4200), null, null)).isEqualTo(104);
+	}
+
+	private static long segmentFiles(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().startsWith("segment-")).count();
+		}
+	}
+
+	private SightingLog newLog() throws IOException {
+		SightingLog sightingLog = new SightingLog(config, new SimpleMeterRegistry());
+		sightingLog.open();
+		return sightingLog;
+	}
+
+	private static long millisAt(long minutes) {
+		return at(minutes).toEpochMilli();
+	}
+
+	private static Instant at(long minutes) {
+		return START.plus(Duration.ofMinutes(minutes));
+	}
+
+	private static Insect honeyBee() {
+		return insect("Hymenoptera", "Apidae", "Apis", "Apis mellifera");
+	}
+
+	private static Insect ladybird() {
+		return insect("Coleoptera", "Coccinellidae", "Coccinella", "Coccinella septempunctata");
+	}
+
+	private static Insect insect(String order, String family, String genus, String species) {
+		Insect insect = new Insect();
+		insect.isInsect = true;
+		insect.order = order;
+		insect.family = family;
+		insect.genus = genus;
+		insect.species = species;
+		return insect;
+	}
+}
@@ -0,0 +1,63 @@
+package dev.stroe.buggloo.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.stroe.buggloo.config.SpeciesKnowledgeConfig;
+import dev.stroe.buggloo.models.Insect;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpeciesKnowledgeStoreTest {
+
+	private final SpeciesKnowledgeConfig config = new SpeciesKnowledgeConfig();
+
+	@Test
+	void lookupIgnoresCaseAndWhitespace() {
+		SpeciesKnowledgeStore store = newStore();
+		store.remember(insect("Apis mellifera"));
+
+		assertThat(store.lookup("  apis   MELLIFERA ")).isPresent();
+		assertThat(store.lookup("Bombus terrestris")).isEmpty();
+		assertThat(store.lookup(null)).isEmpty();
+	}
+
+	@Test
+	void expiredRecordsAreNotReused() {
+		config.setTtl(Duration.ZERO.minusMillis(1));
+		SpeciesKnowledgeStore store = newStore();
+		store.remember(insect("Apis mellifera"));
+
+		assertThat(store.lookup("Apis mellifera")).isEmpty();
+	}
+
+	@Test
+	void recordsSurviveARestartWithAPersistenceFile(@TempDir Path directory) {
+		config.setPersistenceFile(directory.resolve("species.json").toString());
+		SpeciesKnowledgeStore store = newStore();
+		store.remember(insect("Apis mellifera"));
+		store.save();
+
+		SpeciesKnowledgeStore restarted = newStore();
+		restarted.load();
+
+		assertThat(restarted.lookup("Apis mellifera"))
+				.hasValueSatisfying(insect -> assertThat(insect.commonName).isEqualTo("Western honey bee"));
+	}
+
+	private SpeciesKnowledgeStore newStore() {
+		return new SpeciesKnowledgeStore(config, new ObjectMapper(), new SimpleMeterRegistry());
+	}
+
+	private static Insect insect(String scientificName) {
+		Insect insect = new Insect();
+		insect.isInsect = true;
+		insect.commonName = "Western honey bee";
+		insect.scientificName = scientificName;
+		return insect;
+	}
+}
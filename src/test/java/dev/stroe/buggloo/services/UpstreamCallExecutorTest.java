@@ -0,0 +1,53 @@
+package dev.stroe.buggloo.services;
+
+import dev.stroe.buggloo.config.OpenAIConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpstreamCallExecutorTest {
+
+	private UpstreamCallExecutor executor;
+
+	@BeforeEach
+	void setUp() {
+		OpenAIConfig config = new OpenAIConfig();
+		config.getResilience().setDeadline(Duration.ofSeconds(90));
+		config.getResilience().getHedge().setMinSamples(1);
+		executor = new UpstreamCallExecutor(config, new SimpleMeterRegistry());
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.close();
+	}
+
+	@Test
+	void completedCallsDoNotKeepTheirRequestUntilTheDeadline() throws Exception {
+		// The first call gives the latencies that schedule a hedge for the second
+		call(new byte[16]);
+		WeakReference<byte[]> params = call(new byte[1024 * 1024]);
+
+		for (int i = 0; i < 50 && params.get() != null; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+
+		assertThat(params.get()).isNull();
+	}
+
+	private WeakReference<byte[]> call(byte[] params) throws Exception {
+		CompletableFuture<Integer> result = executor.callAsync("test",
+				() -> CompletableFuture.completedFuture(params.length));
+		assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(params.length);
+		return new WeakReference<>(params);
+	}
+}
@@ -0,0 +1,58 @@
+package dev.stroe.buggloo.support;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Draws images with a chosen perceptual hash: a 9x8 grid of grey cells whose brightness
+ * rises from one cell to the next where the hash has a 1 bit and falls where it has a 0,
+ * which is exactly what {@code PerceptualHash.dHash} records.
+ */
+public final class HashedImages {
+
+	private static final int COLUMNS = 9;
+	private static final int ROWS = 8;
+
+	private HashedImages() {
+	}
+
+	/**
+	 * Returns a PNG of {@code cellSize}-pixel cells whose dHash is {@code hash}.
+	 */
+	public static byte[] png(long hash, int cellSize) {
+		BufferedImage image = new BufferedImage(COLUMNS * cellSize, ROWS * cellSize, BufferedImage.TYPE_INT_RGB);
+		for (int row = 0; row < ROWS; row++) {
+			int grey = 128;
+			for (int col = 0; col < COLUMNS; col++) {
+				if (col > 0) {
+					int bit = (int) (hash >>> (63 - (row * (COLUMNS - 1) + col - 1))) & 1;
+					grey += bit == 1 ? 12 : -12;
+				}
+				int rgb = grey << 16 | grey << 8 | grey;
+				for (int y = row * cellSize; y < (row + 1) * cellSize; y++) {
+					for (int x = col * cellSize; x < (col + 1) * cellSize; x++) {
+						image.setRGB(x, y, rgb);
+					}
+				}
+			}
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			ImageIO.write(image, "png", out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns the hash with its lowest {@code bits} bits inverted.
+	 */
+	public static long flip(long hash, int bits) {
+		return hash ^ ((1L << bits) - 1);
+	}
+}
@@ -0,0 +1,88 @@
+package dev.stroe.buggloo.support;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openai.client.OpenAIClient;
+import dev.stroe.buggloo.config.AdmissionConfig;
+import dev.stroe.buggloo.config.ChatCacheConfig;
+import dev.stroe.buggloo.config.OpenAIConfig;
+import dev.stroe.buggloo.config.SpeciesKnowledgeConfig;
+import dev.stroe.buggloo.services.AdmissionService;
+import dev.stroe.buggloo.services.IdentificationCache;
+import dev.stroe.buggloo.services.IdentificationMetrics;
+import dev.stroe.buggloo.services.ModelCascade;
+import dev.stroe.buggloo.services.OpenAIService;
+import dev.stroe.buggloo.services.RequestCoalescer;
+import dev.stroe.buggloo.services.SemanticChatCache;
+import dev.stroe.buggloo.services.SpeciesKnowledgeStore;
+import dev.stroe.buggloo.services.UpstreamCallExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Wires an {@link OpenAIService} with real collaborators built from the given settings,
+ * as the application context does, so that tests only name what they change. By default
+ * the species knowledge store and the chat cache use their default settings and meters
+ * go to a fresh {@link SimpleMeterRegistry}; the tokens used are charged to an admission
+ * service with the default settings.
+ */
+public final class OpenAIServiceBuilder {
+
+	private final OpenAIConfig config;
+	private final OpenAIClient client;
+	private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private SpeciesKnowledgeConfig speciesKnowledgeConfig = new SpeciesKnowledgeConfig();
+	private SpeciesKnowledgeStore speciesKnowledge;
+	private ChatCacheConfig chatCacheConfig = new ChatCacheConfig();
+	private AdmissionService admissionService;
+
+	private OpenAIServiceBuilder(OpenAIConfig config, OpenAIClient client) {
+		this.config = config;
+		this.client = client;
+	}
+
+	public static OpenAIServiceBuilder openAIService(OpenAIConfig config, OpenAIClient client) {
+		return new OpenAIServiceBuilder(config, client);
+	}
+
+	public OpenAIServiceBuilder meterRegistry(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+		return this;
+	}
+
+	public OpenAIServiceBuilder speciesKnowledgeConfig(SpeciesKnowledgeConfig speciesKnowledgeConfig) {
+		this.speciesKnowledgeConfig = speciesKnowledgeConfig;
+		return this;
+	}
+
+	/**
+	 * Uses a store the test also inspects, instead of one built from the species knowledge settings.
+	 */
+	public OpenAIServiceBuilder speciesKnowledge(SpeciesKnowledgeStore speciesKnowledge) {
+		this.speciesKnowledge = speciesKnowledge;
+		return this;
+	}
+
+	public OpenAIServiceBuilder chatCacheConfig(ChatCacheConfig chatCacheConfig) {
+		this.chatCacheConfig = chatCacheConfig;
+		return this;
+	}
+
+	/**
+	 * Charges the tokens used to an admission service the test also inspects.
+	 */
+	public OpenAIServiceBuilder admissionService(AdmissionService admissionService) {
+		this.admissionService = admissionService;
+		return this;
+	}
+
+	public OpenAIService build() {
+		SpeciesKnowledgeStore store = speciesKnowledge != null
+				? speciesKnowledge
+				: new SpeciesKnowledgeStore(speciesKnowledgeConfig, new ObjectMapper(), meterRegistry);
+		return new OpenAIService(config, client, new IdentificationCache(config, meterRegistry),
+				new RequestCoalescer(meterRegistry), new UpstreamCallExecutor(config, meterRegistry), store,
+				new ModelCascade(config, meterRegistry), new SemanticChatCache(chatCacheConfig, meterRegistry),
+				new IdentificationMetrics(meterRegistry),
+				admissionService != null ? admissionService : new AdmissionService(new AdmissionConfig(), meterRegistry));
+	}
+}
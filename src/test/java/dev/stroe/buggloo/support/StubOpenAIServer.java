@@ -0,0 +1,303 @@
+package dev.stroe.buggloo.support;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Minimal OpenAI-compatible HTTP server for tests. It answers
+ * {@code POST /v1/chat/completions} with a canned completion after a configurable delay.
+ * Streaming requests get the chat content back word by word, or the structured content
+ * in short slices, as completion chunks.
+ * <p>
+ * Faults can be injected: individual requests can be delayed, and requests can be
+ * answered with an error status instead, always or at random.
+ * <p>
+ * For load tests the latency can be drawn from a distribution, generation can be paced
+ * at a token rate, and structured requests can be answered from a set of recorded
+ * responses in turn.
+ */
+public class StubOpenAIServer implements AutoCloseable {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final HttpServer server;
+	private final AtomicInteger requestCount = new AtomicInteger();
+	private final AtomicInteger abortedStreams = new AtomicInteger();
+	private volatile String lastRequestBody;
+
+	private final AtomicInteger injectedFailures = new AtomicInteger();
+	private final AtomicInteger structuredResponses = new AtomicInteger();
+
+	private volatile Supplier<Duration> latency = () -> Duration.ZERO;
+	private volatile Duration chunkInterval = Duration.ZERO;
+	private volatile double tokensPerSecond;
+	private final Queue<Duration> nextLatencies = new ConcurrentLinkedQueue<>();
+	private volatile int failureStatus;
+	private final Map<Integer, Double> failureRates = new ConcurrentHashMap<>();
+	private volatile String chatContent = "Honey bees can sting, but only when they feel threatened.";
+	private volatile List<String> structuredContents = List.of("{\"isInsect\":true,\"commonName\":\"Western honey bee\","
+			+ "\"scientificName\":\"Apis mellifera\",\"order\":\"Hymenoptera\",\"family\":\"Apidae\","
+			+ "\"genus\":\"Apis\",\"species\":\"Apis mellifera\"}");
+
+	private StubOpenAIServer(HttpServer server) {
+		this.server = server;
+	}
+
+	public static StubOpenAIServer start() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+		StubOpenAIServer stub = new StubOpenAIServer(server);
+		server.createContext("/v1/chat/completions", stub::handleChatCompletion);
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.start();
+		return stub;
+	}
+
+	public String baseUrl() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/v1";
+	}
+
+	public void setLatency(Duration latency) {
+		this.latency = () -> latency;
+	}
+
+	/**
+	 * Draws the latency of each request from a log-normal distribution with the given
+	 * median and 99th percentile, the long-tailed shape of real completion latencies.
+	 */
+	public void setLatencyDistribution(Duration median, Duration p99) {
+		// 2.326 is the standard normal quantile of the 99th percentile
+		double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / 2.326;
+		this.latency = () -> Duration.ofNanos((long) (median.toNanos()
+				* Math.exp(sigma * ThreadLocalRandom.current().nextGaussian())));
+	}
+
+	/**
+	 * Paces generation at the given rate, taking about four characters per token, on top
+	 * of the latency: a full response is delayed by its length, and streamed chunks are
+	 * spaced by theirs. 0 generates instantly.
+	 */
+	public void setTokensPerSecond(double tokensPerSecond) {
+		this.tokensPerSecond = tokensPerSecond;
+	}
+
+	/**
+	 * Delays the next request by the given latency instead of the usual one.
+	 */
+	public void delayNextRequest(Duration latency) {
+		nextLatencies.add(latency);
+	}
+
+	/**
+	 * Answers every request with the given error status, or normally again with 0.
+	 */
+	public void setFailureStatus(int failureStatus) {
+		this.failureStatus = failureStatus;
+	}
+
+	/**
+	 * Answers each request with the given error status with the given probability.
+	 */
+	public void setFailureRate(int status, double probability) {
+		failureRates.put(status, probability);
+	}
+
+	public void setChunkInterval(Duration chunkInterval) {
+		this.chunkInterval = chunkInterval;
+	}
+
+	public void setChatContent(String chatContent) {
+		this.chatContent = chatContent;
+	}
+
+	public void setStructuredContent(String structuredContent) {
+		this.structuredContents = List.of(structuredContent);
+	}
+
+	/**
+	 * Answers structured requests with the given recorded responses in turn.
+	 */
+	public void setStructuredContents(List<String> structuredContents) {
+		this.structuredContents = List.copyOf(structuredContents);
+	}
+
+	public int requestCount() {
+		return requestCount.get();
+	}
+
+	public String lastRequestBody() {
+		return lastRequestBody;
+	}
+
+	/**
+	 * Number of requests answered with an error status drawn by {@link #setFailureRate}.
+	 */
+	public int injectedFailures() {
+		return injectedFailures.get();
+	}
+
+	/**
+	 * Number of streamed responses the client hung up on before the last chunk.
+	 */
+	public int abortedStreams() {
+		return abortedStreams.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	private void handleChatCompletion(HttpExchange exchange) throws IOException {
+		requestCount.incrementAndGet();
+		String request;
+		try (InputStream body = exchange.getRequestBody()) {
+			request = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+		}
+		lastRequestBody = request;
+
+		Duration nextLatency = nextLatencies.poll();
+		sleep(nextLatency != null ? nextLatency : latency.get());
+
+		if (failureStatus != 0) {
+			respond(exchange, failureStatus, error(failureStatus));
+			return;
+		}
+		for (Map.Entry<Integer, Double> failureRate : failureRates.entrySet()) {
+			if (ThreadLocalRandom.current().nextDouble() < failureRate.getValue()) {
+				injectedFailures.incrementAndGet();
+				respond(exchange, failureRate.getKey(), error(failureRate.getKey()));
+				return;
+			}
+		}
+
+		boolean structured = request.contains("\"json_schema\"");
+		String content = structured ? projectOntoSchema(nextStructuredContent(), request) : chatContent;
+		if (request.contains("\"stream\":true")) {
+			stream(exchange, structured ? content.split("(?<=\\G.{8})") : content.split("(?<= )"));
+			return;
+		}
+
+		sleep(generationTime(content));
+		respond(exchange, 200, completion(content));
+	}
+
+	private String nextStructuredContent() {
+		List<String> contents = structuredContents;
+		return contents.get(Math.floorMod(structuredResponses.getAndIncrement(), contents.size()));
+	}
+
+	private Duration generationTime(String content) {
+		double rate = tokensPerSecond;
+		return rate > 0 ? Duration.ofNanos((long) (content.length() / 4.0 / rate * 1e9)) : Duration.ZERO;
+	}
+
+	/**
+	 * Drops the properties the requested response schema does not declare, as a strict
+	 * structured output would never contain them.
+	 */
+	private static String projectOntoSchema(String content, String request) throws IOException {
+		JsonNode properties = MAPPER.readTree(request).at("/response_format/json_schema/schema/properties");
+		ObjectNode projected = (ObjectNode) MAPPER.readTree(content);
+		projected.retain(properties.properties().stream().map(Map.Entry::getKey).toList());
+		return MAPPER.writeValueAsString(projected);
+	}
+
+	private void stream(HttpExchange exchange, String[] deltas) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+		exchange.sendResponseHeaders(200, 0);
+		try (OutputStream output = exchange.getResponseBody()) {
+			for (String delta : deltas) {
+				output.write(("data: " + chunk(delta) + "\n\n").getBytes(StandardCharsets.UTF_8));
+				output.flush();
+				sleep(chunkInterval.plus(generationTime(delta)));
+			}
+			output.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			abortedStreams.incrementAndGet();
+		}
+	}
+
+	private static String chunk(String content) throws IOException {
+		ObjectNode chunk = MAPPER.createObjectNode()
+				.put("id", "chatcmpl-stub")
+				.put("object", "chat.completion.chunk")
+				.put("created", System.currentTimeMillis() / 1000)
+				.put("model", "gpt-4.1");
+		ObjectNode choice = chunk.putArray("choices").addObject()
+				.put("index", 0);
+		choice.putNull("finish_reason");
+		choice.putObject("delta")
+				.put("content", content);
+		return MAPPER.writeValueAsString(chunk);
+	}
+
+	private static void sleep(Duration duration) {
+		try {
+			Thread.sleep(duration.toMillis());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String completion(String content) throws IOException {
+		ObjectNode completion = MAPPER.createObjectNode()
+				.put("id", "chatcmpl-stub")
+				.put("object", "chat.completion")
+				.put("created", System.currentTimeMillis() / 1000)
+				.put("model", "gpt-4.1");
+		ObjectNode choice = completion.putArray("choices").addObject()
+				.put("index", 0)
+				.put("finish_reason", "stop");
+		choice.putNull("logprobs");
+		choice.putObject("message")
+				.put("role", "assistant")
+				.put("content", content)
+				.putNull("refusal");
+		completion.putObject("usage")
+				.put("prompt_tokens", 100)
+				.put("completion_tokens", 50)
+				.put("total_tokens", 150)
+				.putObject("prompt_tokens_details")
+				.put("cached_tokens", 64);
+		return MAPPER.writeValueAsString(completion);
+	}
+
+	private static String error(int status) throws IOException {
+		ObjectNode error = MAPPER.createObjectNode();
+		error.putObject("error")
+				.put("message", "Injected failure with status " + status)
+				.put("type", status == 429 ? "rate_limit_exceeded" : "server_error")
+				.putNull("param")
+				.putNull("code");
+		return MAPPER.writeValueAsString(error);
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package dev.stroe.buggloo.support;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes a minimal ONNX image classifier with three classes, one per colour channel: an
+ * image scores highest for the class of its dominant channel. The model averages each
+ * channel of a {@code [1, 3, size, size]} input and multiplies the averages with a
+ * diagonal weight matrix, so it runs in the real runtime without shipping a trained model.
+ * <p>
+ * The protobuf encoding is written by hand to avoid a protobuf dependency in tests.
+ */
+public final class TinyOnnxModel {
+
+	public static final int CLASSES = 3;
+
+	private static final int FLOAT = 1;
+	private static final int ATTRIBUTE_INT = 2;
+
+	private TinyOnnxModel() {
+	}
+
+	/**
+	 * Writes the model and a labels file with the given names, in red, green, blue order.
+	 */
+	public static void write(Path model, Path labels, int inputSize, String... names) throws IOException {
+		Files.write(model, build(inputSize));
+		Files.writeString(labels, String.join("\n", names) + "\n");
+	}
+
+	private static byte[] build(int inputSize) {
+		float[] weights = new float[CLASSES * CLASSES];
+		for (int i = 0; i < CLASSES; i++) {
+			weights[i * CLASSES + i] = 4f;
+		}
+		ByteBuffer raw = ByteBuffer.allocate(weights.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		raw.asFloatBuffer().put(weights);
+
+		Message graph = new Message()
+				.message(1, node("GlobalAveragePool", "pixels", "pooled"))
+				.message(1, node("Flatten", "pooled", "features").message(5,
+						new Message().string(1, "axis").varint(3, 1).varint(20, ATTRIBUTE_INT)))
+				.message(1, node("MatMul", "features", "weights", "logits"))
+				.string(2, "tiny-insect-classifier")
+				.message(5, new Message()
+						.varint(1, CLASSES).varint(1, CLASSES)
+						.varint(2, FLOAT)
+						.string(8, "weights")
+						.bytes(9, raw.array()))
+				.message(11, valueInfo("pixels", 1, 3, inputSize, inputSize))
+				.message(12, valueInfo("logits", 1, CLASSES));
+
+		return new Message()
+				.varint(1, 8)
+				.string(2, "buggloo-tests")
+				.message(7, graph)
+				.message(8, new Message().string(1, "").varint(2, 13))
+				.toByteArray();
+	}
+
+	private static Message node(String opType, String... inputsAndOutput) {
+		Message node = new Message();
+		for (int i = 0; i < inputsAndOutput.length - 1; i++) {
+			node.string(1, inputsAndOutput[i]);
+		}
+		return node.string(2, inputsAndOutput[inputsAndOutput.length - 1]).string(4, opType);
+	}
+
+	private static Message valueInfo(String name, long... dims) {
+		Message shape = new Message();
+		for (long dim : dims) {
+			shape.message(1, new Message().varint(1, dim));
+		}
+		Message tensorType = new Message().varint(1, FLOAT).message(2, shape);
+		return new Message().string(1, name).message(2, new Message().message(1, tensorType));
+	}
+
+	private static final class Message {
+
+		private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Message varint(int field, long value) {
+			tag(field, 0);
+			writeVarint(value);
+			return this;
+		}
+
+		Message string(int field, String value) {
+			return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+		}
+
+		Message message(int field, Message value) {
+			return bytes(field, value.toByteArray());
+		}
+
+		Message bytes(int field, byte[] value) {
+			tag(field, 2);
+			writeVarint(value.length);
+			out.writeBytes(value);
+			return this;
+		}
+
+		byte[] toByteArray() {
+			return out.toByteArray();
+		}
+
+		private void tag(int field, int wireType) {
+			writeVarint((long) field << 3 | wireType);
+		}
+
+		private void writeVarint(long value) {
+			while ((value & ~0x7fL) != 0) {
+				out.write((int) (value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			out.write((int) value);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package dev.stroe.buggloo.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DataUrlEncoderTest {
+
+	private static final String MIME_TYPE = "image/jpeg";
+
+	private final Random random = new Random(42);
+
+	@Test
+	void encodesTheSameUrlAsTheJdkForEveryPaddingLength() {
+		for (int length : new int[] {0, 1, 2, 3, 4, 5, 1000, 300_001}) {
+			byte[] content = randomBytes(length);
+
+			assertThat(DataUrlEncoder.encode(content, MIME_TYPE)).as("%d bytes", length).isEqualTo(expected(content));
+		}
+	}
+
+	@Test
+	void contentLongerThanDeclaredGrowsTheBuffer() throws IOException {
+		byte[] content = randomBytes(1_000_000);
+
+		assertThat(DataUrlEncoder.encode(new ByteArrayInputStream(content), 0, MIME_TYPE)).isEqualTo(expected(content));
+		assertThat(DataUrlEncoder.encode(new ByteArrayInputStream(content), 600_000, MIME_TYPE))
+				.isEqualTo(expected(content));
+	}
+
+	@Test
+	void contentShorterThanDeclaredIsNotPadded() throws IOException {
+		byte[] content = randomBytes(100);
+
+		assertThat(DataUrlEncoder.encode(new ByteArrayInputStream(content), 5_000_000, MIME_TYPE))
+				.isEqualTo(expected(content));
+	}
+
+	@Test
+	void contentBeyondThePooledBufferSizeIsEncodedToo() {
+		byte[] large = randomBytes(9 * 1024 * 1024);
+		byte[] small = randomBytes(10);
+
+		assertThat(DataUrlEncoder.encode(large, MIME_TYPE)).isEqualTo(expected(large));
+		// Buffers are reused, so what an earlier image left behind must not show
+		assertThat(DataUrlEncoder.encode(small, MIME_TYPE)).isEqualTo(expected(small));
+	}
+
+	private byte[] randomBytes(int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+
+	private static String expected(byte[] content) {
+		return "data:" + MIME_TYPE + ";base64," + Base64.getEncoder().encodeToString(content);
+	}
+}
@@ -0,0 +1,118 @@
+package dev.stroe.buggloo.utils;
+
+import dev.stroe.buggloo.models.ImageHeader;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ImageHeaderSnifferTest {
+
+	@Test
+	void readsTheFormatAndDimensionsOfEncodedImages() throws IOException {
+		for (String format : new String[] {"jpeg", "png", "gif", "bmp"}) {
+			byte[] image = encode(format, 123, 45);
+
+			ImageHeader header = sniff(image).orElseThrow();
+
+			assertThat(header.getMimeType()).isEqualTo("image/" + format);
+			assertThat(header.getWidth()).as(format).isEqualTo(123);
+			assertThat(header.getHeight()).as(format).isEqualTo(45);
+		}
+	}
+
+	@Test
+	void readsWebPDimensionsFromEachKindOfBitstream() {
+		byte[] lossy = webp("VP8 ", 10, 0x30, 0x01, 0x00, 0x9D, 0x01, 0x2A, 0x40, 0x01, 0xF0, 0x00);
+		// 320 - 1 and 240 - 1 packed as two 14-bit fields
+		int bits = 319 | 239 << 14;
+		byte[] lossless = webp("VP8L", 5, 0x2F, bits & 0xFF, bits >> 8 & 0xFF, bits >> 16 & 0xFF, bits >> 24 & 0xFF);
+		byte[] extended = webp("VP8X", 10, 0x10, 0, 0, 0, 0x3F, 0x01, 0x00, 0xEF, 0x00, 0x00);
+
+		for (byte[] image : new byte[][] {lossy, lossless, extended}) {
+			ImageHeader header = sniff(image).orElseThrow();
+
+			assertThat(header.getMimeType()).isEqualTo("image/webp");
+			assertThat(header.getWidth()).isEqualTo(320);
+			assertThat(header.getHeight()).isEqualTo(240);
+		}
+	}
+
+	@Test
+	void skipsJpegMetadataToReachTheFrameHeader() throws IOException {
+		byte[] jpeg = encode("jpeg", 640, 480);
+		// A near-maximum APP1 segment, as a camera's EXIF block with a thumbnail can be
+		byte[] app1 = new byte[2 + 65_000];
+		app1[0] = (byte) 0xFF;
+		app1[1] = (byte) 0xE1;
+		app1[2] = (byte) (65_000 >> 8);
+		app1[3] = (byte) (65_000 & 0xFF);
+		ByteArrayOutputStream withMetadata = new ByteArrayOutputStream();
+		withMetadata.write(jpeg, 0, 2);
+		withMetadata.write(app1);
+		withMetadata.write(jpeg, 2, jpeg.length - 2);
+		byte[] image = withMetadata.toByteArray();
+
+		ImageHeader header = sniff(image).orElseThrow();
+		assertThat(header.getWidth()).isEqualTo(640);
+		assertThat(header.getHeight()).isEqualTo(480);
+
+		// Cut off before the frame header but more content still to come
+		ImageHeader partial = ImageHeaderSniffer.sniff(image, 4096, false).orElseThrow();
+		assertThat(partial.getMimeType()).isEqualTo("image/jpeg");
+		assertThat(partial.hasDimensions()).isFalse();
+	}
+
+	@Test
+	void rejectsImagesWhoseHeaderIsCutShort() throws IOException {
+		byte[] png = encode("png", 64, 64);
+
+		assertThatThrownBy(() -> sniff(Arrays.copyOf(png, 20)))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("truncated");
+		assertThatThrownBy(() -> sniff(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 2}))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessageContaining("no frame header");
+	}
+
+	@Test
+	void doesNotRecogniseOtherContent() {
+		assertThat(sniff("%PDF-1.7\n".getBytes(StandardCharsets.US_ASCII))).isEmpty();
+		assertThat(sniff("<svg xmlns=\"http://www.w3.org/2000/svg\"/>".getBytes(StandardCharsets.US_ASCII))).isEmpty();
+		assertThat(sniff(new byte[0])).isEmpty();
+	}
+
+	private static Optional<ImageHeader> sniff(byte[] content) {
+		return ImageHeaderSniffer.sniff(content, content.length, true);
+	}
+
+	private static byte[] encode(String format, int width, int height) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, format, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Builds a RIFF container holding a single chunk that starts with the given bytes.
+	 */
+	private static byte[] webp(String chunk, int chunkSize, int... payload) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.writeBytes("RIFF".getBytes(StandardCharsets.US_ASCII));
+		out.writeBytes(new byte[] {(byte) (chunkSize + 12), 0, 0, 0});
+		out.writeBytes(("WEBP" + chunk).getBytes(StandardCharsets.US_ASCII));
+		out.writeBytes(new byte[] {(byte) chunkSize, 0, 0, 0});
+		for (int b : payload) {
+			out.write(b);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,53 @@
+package dev.stroe.buggloo.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IncrementalJsonObjectParserTest {
+
+	private final IncrementalJsonObjectParser parser = new IncrementalJsonObjectParser(new ObjectMapper());
+
+	@Test
+	void reportsEachPropertyOnceItsValueIsComplete() throws IOException {
+		assertThat(parser.feed("{\"isInsect\":tr")).isEmpty();
+		assertThat(names(parser.feed("ue,\"commonName\":\"Honey"))).containsExactly("isInsect");
+		assertThat(parser.feed(" bee\",\"colors\":[\"#FFC30B\",")).extracting(Map.Entry::getValue)
+				.map(JsonNode::asText)
+				.containsExactly("Honey bee");
+
+		List<Map.Entry<String, JsonNode>> fields = parser.feed("\"#000000\"],\"size\":null}");
+
+		assertThat(names(fields)).containsExactly("colors", "size");
+		assertThat(fields.get(0).getValue()).hasSize(2);
+		assertThat(fields.get(1).getValue().isNull()).isTrue();
+	}
+
+	@Test
+	void reportsNestedValuesWhole() throws IOException {
+		List<Map.Entry<String, JsonNode>> fields = new ArrayList<>();
+		for (char c : "{\"a\":{\"b\":[1,{\"c\":2}]},\"d\":3}".toCharArray()) {
+			fields.addAll(parser.feed(String.valueOf(c)));
+		}
+
+		assertThat(names(fields)).containsExactly("a", "d");
+		assertThat(fields.get(0).getValue().at("/b/1/c").asInt()).isEqualTo(2);
+	}
+
+	@Test
+	void rejectsDocumentsThatAreNotObjects() {
+		assertThatThrownBy(() -> parser.feed("[1,2]")).isInstanceOf(IOException.class);
+	}
+
+	private static List<String> names(List<Map.Entry<String, JsonNode>> fields) {
+		return fields.stream().map(Map.Entry::getKey).toList();
+	}
+}
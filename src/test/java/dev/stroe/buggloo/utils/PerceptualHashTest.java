@@ -0,0 +1,39 @@
+package dev.stroe.buggloo.utils;
+
+import dev.stroe.buggloo.support.HashedImages;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PerceptualHashTest {
+
+	private static final long HASH = 0x5A3C_F00F_C3A5_0FF0L;
+
+	@Test
+	void hashesRecordWhereBrightnessRisesAcrossTheGrid() {
+		assertThat(PerceptualHash.dHash(HashedImages.png(HASH, 8))).hasValue(HASH);
+		assertThat(PerceptualHash.dHash(HashedImages.png(~HASH, 8))).hasValue(~HASH);
+	}
+
+	@Test
+	void resizedCopiesOfAPhotoHashAlike() {
+		// Large images are subsampled while decoding
+		assertThat(PerceptualHash.dHash(HashedImages.png(HASH, 80))).hasValue(HASH);
+		assertThat(PerceptualHash.dHash(HashedImages.png(HASH, 3))).hasValue(HASH);
+	}
+
+	@Test
+	void distanceCountsTheDifferingBits() {
+		assertThat(PerceptualHash.distance(HASH, HASH)).isZero();
+		assertThat(PerceptualHash.distance(HASH, HashedImages.flip(HASH, 5))).isEqualTo(5);
+		assertThat(PerceptualHash.distance(0, -1)).isEqualTo(64);
+	}
+
+	@Test
+	void undecodableBytesHaveNoHash() {
+		assertThat(PerceptualHash.dHash("not an image".getBytes(StandardCharsets.UTF_8))).isEmpty();
+		assertThat(PerceptualHash.dHash(new byte[0])).isEmpty();
+	}
+}